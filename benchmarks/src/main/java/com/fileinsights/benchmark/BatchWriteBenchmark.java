@@ -0,0 +1,139 @@
+package com.fileinsights.benchmark;
+
+import com.fileinsights.config.CacheConfig;
+import com.fileinsights.entity.FileMetadata;
+import com.fileinsights.repository.FileMetadataRepository;
+import com.fileinsights.service.ElasticsearchService;
+import com.fileinsights.service.FileMetadataService;
+import com.fileinsights.service.FileRollupService;
+import com.fileinsights.service.TikaService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-row cost of {@link FileMetadataService#saveFileMetadataBatch}: one lookup of the batch's paths by path
+ * hash, then inserts of new paths or in-place updates of stored ones, and the analytics rollup update, in one
+ * transaction.
+ *
+ * Runs the service in a minimal Spring context with the application's JPA, transaction and cache settings.
+ * Elasticsearch is not needed; its client points at an unused port. By default the database is an in-memory
+ * H2 in MySQL mode; for numbers that carry over to production, point it at a scratch MySQL schema (its tables
+ * are dropped and recreated):
+ * {@code -Dbench.jdbc.url=jdbc:mysql://localhost:3306/fileinsights_bench?rewriteBatchedStatements=true
+ * -Dbench.jdbc.user=... -Dbench.jdbc.password=...}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@OperationsPerInvocation(BatchWriteBenchmark.ROWS_PER_BATCH)
+public class BatchWriteBenchmark {
+
+    static final int ROWS_PER_BATCH = 500;
+
+    // hibernate.jdbc.batch_size: 1 sends every statement on its own
+    @Param({"1", "500"})
+    public int jdbcBatchSize;
+
+    private ConfigurableApplicationContext context;
+    private FileMetadataService fileMetadataService;
+    private long nextFile;
+    private List<String> storedPaths;
+    private long updateRound;
+
+    /**
+     * The beans saveFileMetadataBatch needs, without the web layer, the ingestion engine or folder watching.
+     */
+    @Configuration
+    @EnableAutoConfiguration
+    @EnableJpaRepositories(basePackageClasses = FileMetadataRepository.class)
+    @EntityScan(basePackageClasses = FileMetadata.class)
+    @Import({FileMetadataService.class, FileRollupService.class, ElasticsearchService.class, TikaService.class, CacheConfig.class})
+    static class BatchWriteContext {
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String url = System.getProperty("bench.jdbc.url", "jdbc:h2:mem:bench;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        boolean h2 = url.startsWith("jdbc:h2:");
+        String dialect = h2 ? "org.hibernate.dialect.H2Dialect" : "org.hibernate.dialect.MySQLDialect";
+        // Passed as arguments, which take precedence over the application's application.properties
+        context = new SpringApplicationBuilder(BatchWriteContext.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=" + url,
+                        "--spring.datasource.username=" + System.getProperty("bench.jdbc.user", "sa"),
+                        "--spring.datasource.password=" + System.getProperty("bench.jdbc.password", ""),
+                        "--spring.datasource.driver-class-name=" + (h2 ? "org.h2.Driver" : "com.mysql.cj.jdbc.Driver"),
+                        "--spring.jpa.database-platform=" + dialect,
+                        "--spring.jpa.properties.hibernate.dialect=" + dialect,
+                        "--spring.jpa.hibernate.ddl-auto=create",
+                        "--spring.jpa.properties.hibernate.jdbc.batch_size=" + jdbcBatchSize,
+                        "--spring.elasticsearch.uris=http://localhost:1",
+                        "--spring.elasticsearch.connection-timeout=200ms");
+        fileMetadataService = context.getBean(FileMetadataService.class);
+
+        // The rows rewritten by the update benchmark
+        storedPaths = new ArrayList<>(ROWS_PER_BATCH);
+        List<FileMetadata> batch = new ArrayList<>(ROWS_PER_BATCH);
+        for (int i = 0; i < ROWS_PER_BATCH; i++) {
+            FileMetadata fileMetadata = newFileMetadata(nextFile++, 0);
+            storedPaths.add(fileMetadata.getPath());
+            batch.add(fileMetadata);
+        }
+        fileMetadataService.saveFileMetadataBatch(batch);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void insertBatch() {
+        List<FileMetadata> batch = new ArrayList<>(ROWS_PER_BATCH);
+        for (int i = 0; i < ROWS_PER_BATCH; i++) {
+            batch.add(newFileMetadata(nextFile++, 0));
+        }
+        fileMetadataService.saveFileMetadataBatch(batch);
+    }
+
+    @Benchmark
+    public void updateBatch() {
+        // A new size and mtime every round, so every row really changes
+        updateRound++;
+        List<FileMetadata> batch = new ArrayList<>(ROWS_PER_BATCH);
+        for (String path : storedPaths) {
+            FileMetadata fileMetadata = newFileMetadata(0, updateRound);
+            fileMetadata.setPath(path);
+            batch.add(fileMetadata);
+        }
+        fileMetadataService.saveFileMetadataBatch(batch);
+    }
+
+    private static FileMetadata newFileMetadata(long file, long round) {
+        Date time = new Date(1_700_000_000_000L + round * 1000);
+        FileMetadata fileMetadata = new FileMetadata();
+        fileMetadata.setPath("/bench/d" + file / 10_000 + "/s" + file / 100 % 100 + "/f" + file % 100 + ".txt");
+        fileMetadata.setName("f" + file % 100 + ".txt");
+        fileMetadata.setSize(1024 + round);
+        fileMetadata.setContentType("text/plain");
+        fileMetadata.setCtime(time);
+        fileMetadata.setMtime(time);
+        fileMetadata.setAtime(time);
+        return fileMetadata;
+    }
+}
@@ -0,0 +1,224 @@
+package com.fileinsights.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates a reproducible synthetic corpus of plain text, HTML, PDF, DOCX and binary files.
+ * The same seed, count and size always produce byte-identical files, so benchmark runs are comparable.
+ * PDF and DOCX files are written by hand (no PDFBox/POI needed) and contain only text; binary files are
+ * random bytes that Tika can only detect as application/octet-stream.
+ *
+ * Usage: {@code java -cp benchmarks.jar com.fileinsights.benchmark.CorpusGenerator <dir> <filesPerType> <sizesKb> [seed]},
+ * with sizes comma-separated, e.g. {@code 4,256,4096}.
+ */
+public final class CorpusGenerator {
+
+    public static final List<String> TYPES = List.of("txt", "html", "pdf", "docx", "bin");
+
+    public static final long DEFAULT_SEED = 42L;
+
+    private static final String[] WORDS = {
+            "file", "insight", "metadata", "storage", "archive", "report", "invoice", "quarter", "budget",
+            "network", "share", "folder", "document", "analysis", "capacity", "growth", "retention", "backup",
+            "policy", "customer", "project", "summary", "draft", "final", "review", "index", "search", "cluster"
+    };
+
+    private static final int LINES_PER_PDF_PAGE = 60;
+
+    // 1980-01-01, the earliest timestamp a zip entry can hold
+    private static final long FIXED_ENTRY_TIME = 315532800000L;
+
+    private CorpusGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3 && args.length != 4) {
+            System.err.println("Usage: CorpusGenerator <dir> <filesPerType> <sizesKb> [seed]");
+            System.exit(1);
+        }
+        Path dir = Path.of(args[0]);
+        int count = Integer.parseInt(args[1]);
+        long seed = args.length == 4 ? Long.parseLong(args[3]) : DEFAULT_SEED;
+        for (String sizeKb : args[2].split(",")) {
+            int sizeBytes = Integer.parseInt(sizeKb.trim()) * 1024;
+            for (String type : TYPES) {
+                List<Path> files = generate(dir, type, count, sizeBytes, seed);
+                System.out.println("Generated " + files.size() + " " + type + " files of " + sizeKb.trim() + " KB in " + dir);
+            }
+        }
+    }
+
+    /**
+     * Writes {@code count} files of the given type, each with roughly {@code approxTextBytes} of text.
+     *
+     * @param dir             Target directory (created if missing).
+     * @param type            One of {@link #TYPES}.
+     * @param count           Number of files to write.
+     * @param approxTextBytes Approximate amount of text per file.
+     * @param seed            Seed for the word generator.
+     * @return The generated files.
+     * @throws IOException If a file cannot be written.
+     */
+    public static List<Path> generate(Path dir, String type, int count, int approxTextBytes, long seed) throws IOException {
+        Files.createDirectories(dir);
+        Random random = new Random(seed ^ type.hashCode());
+        List<Path> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Path file = dir.resolve(String.format("%s-%d-%05d.%s", type, approxTextBytes, i, type));
+            if ("bin".equals(type)) {
+                byte[] bytes = new byte[approxTextBytes];
+                random.nextBytes(bytes);
+                Files.write(file, bytes);
+                files.add(file);
+                continue;
+            }
+            List<String> lines = lines(random, approxTextBytes);
+            switch (type) {
+                case "txt" -> Files.write(file, String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+                case "html" -> Files.write(file, html(lines));
+                case "pdf" -> Files.write(file, pdf(lines));
+                case "docx" -> Files.write(file, docx(lines));
+                default -> throw new IllegalArgumentException("Unsupported corpus file type: " + type);
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    private static List<String> lines(Random random, int approxBytes) {
+        List<String> lines = new ArrayList<>();
+        int written = 0;
+        while (written < approxBytes) {
+            StringBuilder line = new StringBuilder();
+            int words = 8 + random.nextInt(8);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) {
+                    line.append(' ');
+                }
+                line.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            written += line.length() + 1;
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    /**
+     * An HTML page with a title and one paragraph per line.
+     */
+    static byte[] html(List<String> lines) {
+        StringBuilder page = new StringBuilder("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>")
+                .append(lines.isEmpty() ? "" : lines.get(0))
+                .append("</title></head>\n<body>\n");
+        for (String line : lines) {
+            page.append("<p>").append(line).append("</p>\n");
+        }
+        page.append("</body></html>\n");
+        return page.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A minimal PDF 1.4 document with one Helvetica text stream per page.
+     */
+    static byte[] pdf(List<String> lines) throws IOException {
+        int pages = Math.max(1, (lines.size() + LINES_PER_PDF_PAGE - 1) / LINES_PER_PDF_PAGE);
+        // Objects: 1 catalog, 2 page tree, 3 font, then a (page, content) pair per page
+        int objectCount = 3 + pages * 2;
+        long[] offsets = new long[objectCount + 1];
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        write(out, "%PDF-1.4\n");
+        offsets[1] = out.size();
+        write(out, "1 0 obj\n<< /Type /Catalog /Pages 2 0 R >>\nendobj\n");
+
+        StringBuilder kids = new StringBuilder();
+        for (int p = 0; p < pages; p++) {
+            kids.append(4 + p * 2).append(" 0 R ");
+        }
+        offsets[2] = out.size();
+        write(out, "2 0 obj\n<< /Type /Pages /Kids [" + kids + "] /Count " + pages + " >>\nendobj\n");
+        offsets[3] = out.size();
+        write(out, "3 0 obj\n<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica >>\nendobj\n");
+
+        for (int p = 0; p < pages; p++) {
+            int pageObject = 4 + p * 2;
+            int contentObject = pageObject + 1;
+
+            StringBuilder text = new StringBuilder("BT /F1 10 Tf 12 TL 50 760 Td\n");
+            int end = Math.min(lines.size(), (p + 1) * LINES_PER_PDF_PAGE);
+            for (int l = p * LINES_PER_PDF_PAGE; l < end; l++) {
+                text.append('(').append(lines.get(l)).append(") Tj T*\n");
+            }
+            text.append("ET\n");
+            byte[] stream = text.toString().getBytes(StandardCharsets.US_ASCII);
+
+            offsets[pageObject] = out.size();
+            write(out, pageObject + " 0 obj\n<< /Type /Page /Parent 2 0 R /MediaBox [0 0 612 792] /Contents "
+                    + contentObject + " 0 R /Resources << /Font << /F1 3 0 R >> >> >>\nendobj\n");
+            offsets[contentObject] = out.size();
+            write(out, contentObject + " 0 obj\n<< /Length " + stream.length + " >>\nstream\n");
+            out.write(stream);
+            write(out, "endstream\nendobj\n");
+        }
+
+        long xref = out.size();
+        write(out, "xref\n0 " + (objectCount + 1) + "\n0000000000 65535 f \n");
+        for (int o = 1; o <= objectCount; o++) {
+            write(out, String.format("%010d 00000 n \n", offsets[o]));
+        }
+        write(out, "trailer\n<< /Size " + (objectCount + 1) + " /Root 1 0 R >>\nstartxref\n" + xref + "\n%%EOF\n");
+        return out.toByteArray();
+    }
+
+    /**
+     * A minimal WordprocessingML package with one paragraph per line.
+     */
+    static byte[] docx(List<String> lines) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            entry(zip, "[Content_Types].xml",
+                    "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                            + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                            + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                            + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                            + "<Override PartName=\"/word/document.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.wordprocessingml.document.main+xml\"/>"
+                            + "</Types>");
+            entry(zip, "_rels/.rels",
+                    "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                            + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                            + "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\" Target=\"word/document.xml\"/>"
+                            + "</Relationships>");
+
+            StringBuilder body = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                    + "<w:document xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\"><w:body>");
+            for (String line : lines) {
+                body.append("<w:p><w:r><w:t>").append(line).append("</w:t></w:r></w:p>");
+            }
+            body.append("</w:body></w:document>");
+            entry(zip, "word/document.xml", body.toString());
+        }
+        return out.toByteArray();
+    }
+
+    private static void entry(ZipOutputStream zip, String name, String content) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setTime(FIXED_ENTRY_TIME); // Keeps the archive byte-identical between runs
+        zip.putNextEntry(entry);
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    private static void write(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.US_ASCII));
+    }
+}
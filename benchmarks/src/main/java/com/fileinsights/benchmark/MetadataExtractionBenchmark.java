@@ -0,0 +1,87 @@
+package com.fileinsights.benchmark;
+
+import com.fileinsights.entity.FileMetadata;
+import com.fileinsights.service.FileMetadataService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cost of building file metadata in {@link FileMetadataService#extractMetadata}: with its own attribute
+ * read (uploads), from attributes already read by the directory walk, and the attribute read alone.
+ * The difference between the first two is the stat the walk saves per file; the rest is path hashing
+ * and object construction.
+ *
+ * The files cycle through a corpus large enough ({@code files}) to fall out of the CPU caches; the OS
+ * caches their attributes after the first pass, so this is the warm-cache cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class MetadataExtractionBenchmark {
+
+    @Param({"10000"})
+    public int files;
+
+    private Path corpus;
+    private List<File> corpusFiles;
+    private List<BasicFileAttributes> attributes;
+    private FileMetadataService fileMetadataService;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        corpus = Files.createTempDirectory("stat-bench-");
+        corpusFiles = new ArrayList<>(files);
+        attributes = new ArrayList<>(files);
+        for (Path path : CorpusGenerator.generate(corpus, "txt", files, 1024, CorpusGenerator.DEFAULT_SEED)) {
+            corpusFiles.add(path.toFile());
+            attributes.add(Files.readAttributes(path, BasicFileAttributes.class));
+        }
+        // extractMetadata uses none of the injected collaborators
+        fileMetadataService = new FileMetadataService();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(corpus)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public FileMetadata statAndBuild() throws IOException {
+        File file = corpusFiles.get(nextIndex());
+        return fileMetadataService.extractMetadata(file, file.getName());
+    }
+
+    @Benchmark
+    public FileMetadata buildFromWalkAttributes() {
+        int index = nextIndex();
+        Path path = corpusFiles.get(index).toPath();
+        return fileMetadataService.extractMetadata(path, path.getFileName().toString(), attributes.get(index));
+    }
+
+    @Benchmark
+    public BasicFileAttributes statOnly() throws IOException {
+        return Files.readAttributes(corpusFiles.get(nextIndex()).toPath(), BasicFileAttributes.class);
+    }
+
+    private int nextIndex() {
+        int index = next;
+        next = index + 1 == files ? 0 : index + 1;
+        return index;
+    }
+}
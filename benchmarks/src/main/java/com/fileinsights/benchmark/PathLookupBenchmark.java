@@ -0,0 +1,168 @@
+package com.fileinsights.benchmark;
+
+import com.fileinsights.util.PathKeys;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point lookups and folder listings on the full path column versus the path hash and parent directory
+ * columns, against a MySQL table with the production schema.
+ *
+ * Needs a running MySQL; the table {@code file_metadata_bench} is created and filled once (10M rows take
+ * several minutes) and reused by later runs. Connection settings come from system properties:
+ * {@code -Dbench.jdbc.url=... -Dbench.jdbc.user=... -Dbench.jdbc.password=...}.
+ *
+ * Layout: {@code /bench/d<i>/s<j>/f<k>.txt} with 100 files per subfolder and 100 subfolders per folder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class PathLookupBenchmark {
+
+    private static final String TABLE = "file_metadata_bench";
+    private static final int FILES_PER_FOLDER = 100;
+    private static final int SUBFOLDERS_PER_FOLDER = 100;
+    private static final int INSERT_BATCH_SIZE = 5000;
+
+    @Param({"10000000"})
+    public int rows;
+
+    private Connection connection;
+    private PreparedStatement byPath;
+    private PreparedStatement byPathHash;
+    private PreparedStatement folderByPathLike;
+    private PreparedStatement folderByParentLike;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection(
+                System.getProperty("bench.jdbc.url", "jdbc:mysql://localhost:3306/fileinsights_bench?rewriteBatchedStatements=true"),
+                System.getProperty("bench.jdbc.user", "root"),
+                System.getProperty("bench.jdbc.password", ""));
+        createTable();
+        fill();
+
+        byPath = connection.prepareStatement("SELECT id, size FROM " + TABLE + " WHERE path = ?");
+        byPathHash = connection.prepareStatement("SELECT id, size FROM " + TABLE + " WHERE path_hash = ?");
+        folderByPathLike = connection.prepareStatement("SELECT id, path, size FROM " + TABLE + " WHERE path LIKE ?");
+        folderByParentLike = connection.prepareStatement("SELECT id, path, size FROM " + TABLE + " WHERE parent_path LIKE ?");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public void pointLookupByPath(Blackhole blackhole) throws SQLException {
+        byPath.setString(1, randomFile());
+        consume(byPath, blackhole);
+    }
+
+    @Benchmark
+    public void pointLookupByPathHash(Blackhole blackhole) throws SQLException {
+        byPathHash.setBytes(1, PathKeys.hash(randomFile()));
+        consume(byPathHash, blackhole);
+    }
+
+    @Benchmark
+    public void folderListingByPathLike(Blackhole blackhole) throws SQLException {
+        folderByPathLike.setString(1, randomSubfolder() + "%");
+        consume(folderByPathLike, blackhole);
+    }
+
+    @Benchmark
+    public void folderListingByParentPathLike(Blackhole blackhole) throws SQLException {
+        folderByParentLike.setString(1, randomSubfolder() + "%");
+        consume(folderByParentLike, blackhole);
+    }
+
+    private void createTable() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+                    + "id BIGINT NOT NULL PRIMARY KEY, "
+                    + "path VARCHAR(1024) NOT NULL, "
+                    + "path_hash BINARY(32) NOT NULL, "
+                    + "parent_path VARCHAR(1024) NOT NULL, "
+                    + "name VARCHAR(255) NOT NULL, "
+                    + "size BIGINT NOT NULL, "
+                    + "ctime DATETIME(6), mtime DATETIME(6), atime DATETIME(6), "
+                    + "UNIQUE KEY uk_bench_path_hash (path_hash), "
+                    + "KEY idx_bench_parent_path (parent_path(255)))");
+        }
+    }
+
+    private void fill() throws SQLException {
+        long existing;
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM " + TABLE)) {
+            resultSet.next();
+            existing = resultSet.getLong(1);
+        }
+        if (existing >= rows) {
+            return;
+        }
+
+        connection.setAutoCommit(false);
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO " + TABLE
+                + " (id, path, path_hash, parent_path, name, size, ctime, mtime, atime) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (long id = existing; id < rows; id++) {
+                String path = file(id);
+                insert.setLong(1, id);
+                insert.setString(2, path);
+                insert.setBytes(3, PathKeys.hash(path));
+                insert.setString(4, PathKeys.parent(path));
+                insert.setString(5, path.substring(path.lastIndexOf('/') + 1));
+                insert.setLong(6, id % 1_000_000);
+                insert.setTimestamp(7, now);
+                insert.setTimestamp(8, now);
+                insert.setTimestamp(9, now);
+                insert.addBatch();
+                if ((id + 1) % INSERT_BATCH_SIZE == 0) {
+                    insert.executeBatch();
+                    connection.commit();
+                }
+            }
+            insert.executeBatch();
+            connection.commit();
+        }
+        connection.setAutoCommit(true);
+    }
+
+    private static String file(long id) {
+        long subfolder = id / FILES_PER_FOLDER;
+        return "/bench/d" + subfolder / SUBFOLDERS_PER_FOLDER + "/s" + subfolder % SUBFOLDERS_PER_FOLDER
+                + "/f" + id % FILES_PER_FOLDER + ".txt";
+    }
+
+    private String randomFile() {
+        return file(random.nextLong(rows));
+    }
+
+    private String randomSubfolder() {
+        return PathKeys.parent(randomFile());
+    }
+
+    private static void consume(PreparedStatement statement, Blackhole blackhole) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                blackhole.consume(resultSet.getLong(1));
+            }
+        }
+    }
+}
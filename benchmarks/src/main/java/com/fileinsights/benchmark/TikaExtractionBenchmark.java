@@ -0,0 +1,86 @@
+package com.fileinsights.benchmark;
+
+import com.fileinsights.entity.TikaMetadata;
+import com.fileinsights.service.TikaService;
+import com.fileinsights.util.TikaUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Files per second extracted with a new parser per file ({@link TikaUtils#extractTikaMetadata})
+ * versus the shared parser in {@link TikaService}, on each corpus file type and a mix of all of them,
+ * from small files to files large enough that reading and content limits dominate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class TikaExtractionBenchmark {
+
+    @Param({"mixed", "pdf", "docx", "txt", "html", "bin"})
+    public String fileType;
+
+    @Param({"16", "256", "4096"})
+    public int sizeKb;
+
+    private static final int FILES_PER_TYPE = 50;
+
+    private Path corpus;
+    private List<File> files;
+    private final AtomicInteger next = new AtomicInteger();
+    private TikaService tikaService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        corpus = Files.createTempDirectory("tika-bench-");
+        files = new ArrayList<>();
+        List<String> types = "mixed".equals(fileType) ? CorpusGenerator.TYPES : List.of(fileType);
+        for (String type : types) {
+            for (Path path : CorpusGenerator.generate(corpus, type, FILES_PER_TYPE, sizeKb * 1024, CorpusGenerator.DEFAULT_SEED)) {
+                files.add(path.toFile());
+            }
+        }
+        // Interleave types in the mixed corpus so every iteration sees all of them
+        files.sort(Comparator.comparing(f -> f.getName().substring(f.getName().lastIndexOf('-'))));
+
+        tikaService = new TikaService();
+        tikaService.init();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(corpus)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public TikaMetadata newParserPerFile() throws Exception {
+        File file = nextFile();
+        return TikaUtils.extractTikaMetadata(file, file.getName());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public TikaMetadata sharedParser() throws Exception {
+        File file = nextFile();
+        return tikaService.extractTikaMetadata(file, file.getName());
+    }
+
+    private File nextFile() {
+        return files.get(Math.floorMod(next.getAndIncrement(), files.size()));
+    }
+}
@@ -0,0 +1,83 @@
+package com.fileinsights.benchmark;
+
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import com.fileinsights.entity.TikaMetadata;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.json.stream.JsonParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of {@link TikaMetadata} with the mapper of the Elasticsearch client: writing a document
+ * into a bulk request body and reading one back from a search hit. Extracted text is by far the largest
+ * field, so documents are measured with increasing amounts of content.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class TikaMetadataSerializationBenchmark {
+
+    private static final String[] WORDS = {
+            "file", "insight", "metadata", "storage", "archive", "report", "invoice", "quarter", "budget",
+            "network", "share", "folder", "document", "analysis", "capacity", "growth", "retention", "backup"
+    };
+
+    @Param({"1", "64", "1024"})
+    public int contentKb;
+
+    @Param({"20"})
+    public int metadataFields;
+
+    private final JacksonJsonpMapper mapper = new JacksonJsonpMapper();
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private TikaMetadata document;
+    private byte[] json;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(CorpusGenerator.DEFAULT_SEED);
+        StringBuilder content = new StringBuilder(contentKb * 1024);
+        while (content.length() < contentKb * 1024) {
+            content.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(10) == 0 ? '\n' : ' ');
+        }
+
+        Map<String, String> metadataMap = new LinkedHashMap<>();
+        for (int i = 0; i < metadataFields; i++) {
+            metadataMap.put("meta:field-" + i, WORDS[random.nextInt(WORDS.length)] + " " + i);
+        }
+        document = new TikaMetadata("/bench/reports/q3/report-00042.pdf", "report-00042.pdf", content.toString(), metadataMap);
+        document.setContentType("application/pdf");
+        document.setAuthor("Benchmark");
+        document.setCreated(new Date(1_700_000_000_000L));
+        document.setModified(new Date(1_700_000_000_000L));
+        document.setPageCount(contentKb);
+
+        json = serialize();
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        out.reset();
+        try (JsonGenerator generator = mapper.jsonProvider().createGenerator(out)) {
+            mapper.serialize(document, generator);
+        }
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public TikaMetadata deserialize() {
+        try (JsonParser parser = mapper.jsonProvider().createParser(new ByteArrayInputStream(json))) {
+            return mapper.deserialize(parser, TikaMetadata.class);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.fileinsights.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An in-process stand-in for the Elasticsearch calls FileInsightsAPI makes: index template and settings,
+ * single and bulk indexing and deletes, point-in-time folder listings with search_after, delete-by-query
+ * and the content type aggregation.
+ *
+ * Documents are kept in memory ordered by id, which is the file path, so folder queries (a term on
+ * filePath.tree or a prefix on filePath) are a range scan and the listing sort on filePath is the map
+ * order. Anything else is answered with a 404. An optional delay per request approximates the round trip
+ * to a real cluster; with none, the stub measures the application's side of indexing only.
+ */
+public class ElasticsearchStub implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ElasticsearchStub.class);
+
+    private static final String SHARDS = "{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final NavigableMap<String, ObjectNode> documents = new ConcurrentSkipListMap<>();
+    private final long delayMillis;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private volatile boolean indexCreated;
+
+    /**
+     * Starts the stub on a free port of the loopback interface.
+     *
+     * @param threads     Request handler threads.
+     * @param delayMillis Delay added to every request.
+     * @throws IOException If the server cannot be started.
+     */
+    public ElasticsearchStub(int threads, long delayMillis) throws IOException {
+        this.delayMillis = delayMillis;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * The URI to configure as spring.elasticsearch.uris.
+     */
+    public String getUri() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * The number of documents currently stored.
+     */
+    public int getDocumentCount() {
+        return documents.size();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+            String method = exchange.getRequestMethod();
+            // Decoded, so document ids (file paths) appear as they were indexed
+            String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/", 3);
+            String first = path[0];
+            String second = path.length > 1 ? path[1] : "";
+
+            if (first.isEmpty()) {
+                respond(exchange, 200, info());
+            } else if ("_cluster".equals(first)) {
+                respond(exchange, 200, "{\"cluster_name\":\"stub\",\"status\":\"green\",\"timed_out\":false,"
+                        + "\"number_of_nodes\":1,\"number_of_data_nodes\":1,\"active_primary_shards\":1,\"active_shards\":1,"
+                        + "\"relocating_shards\":0,\"initializing_shards\":0,\"unassigned_shards\":0,\"delayed_unassigned_shards\":0,"
+                        + "\"number_of_pending_tasks\":0,\"number_of_in_flight_fetch\":0,\"task_max_waiting_in_queue_millis\":0,"
+                        + "\"active_shards_percent_as_number\":100.0}");
+            } else if ("_index_template".equals(first)) {
+                respond(exchange, 200, "{\"acknowledged\":true}");
+            } else if ("_bulk".equals(first) || "_bulk".equals(second)) {
+                respond(exchange, 200, bulk(exchange));
+            } else if ("_search".equals(first) || "_search".equals(second)) {
+                respond(exchange, 200, search(readJson(exchange)));
+            } else if ("_pit".equals(first)) {
+                respond(exchange, 200, "{\"succeeded\":true,\"num_freed\":1}");
+            } else if (second.isEmpty()) {
+                indexRequest(exchange, first, method);
+            } else {
+                switch (second) {
+                    case "_settings" -> respond(exchange, 200, "{\"acknowledged\":true}");
+                    case "_refresh" -> respond(exchange, 200, "{\"_shards\":" + SHARDS + "}");
+                    case "_pit" -> respond(exchange, 200, "{\"id\":\"" + UUID.randomUUID() + "\",\"_shards\":" + SHARDS + "}");
+                    case "_mapping" -> respond(exchange, 200, "{\"" + first + "\":{\"mappings\":{\"properties\":"
+                            + "{\"contentType\":{\"type\":\"keyword\"}}}}}");
+                    case "_delete_by_query" -> respond(exchange, 200, deleteByQuery(readJson(exchange)));
+                    case "_doc" -> document(exchange, first, path.length > 2 ? path[2] : "", method);
+                    default -> notFound(exchange);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Elasticsearch stub failed on {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+            respond(exchange, 500, "{\"error\":{\"type\":\"stub_exception\",\"reason\":" + quote(String.valueOf(e)) + "},\"status\":500}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void indexRequest(HttpExchange exchange, String index, String method) throws IOException {
+        switch (method) {
+            case "HEAD" -> {
+                exchange.getResponseHeaders().set("X-Elastic-Product", "Elasticsearch");
+                exchange.sendResponseHeaders(indexCreated ? 200 : 404, -1);
+            }
+            case "PUT" -> {
+                indexCreated = true;
+                respond(exchange, 200, "{\"acknowledged\":true,\"shards_acknowledged\":true,\"index\":\"" + index + "\"}");
+            }
+            default -> notFound(exchange);
+        }
+    }
+
+    private void document(HttpExchange exchange, String index, String id, String method) throws IOException {
+        if ("DELETE".equals(method)) {
+            boolean found = documents.remove(id) != null;
+            respond(exchange, 200, writeResult(index, id, found ? "deleted" : "not_found"));
+        } else if ("PUT".equals(method) || "POST".equals(method)) {
+            boolean created = documents.put(id, (ObjectNode) readJson(exchange)) == null;
+            respond(exchange, created ? 201 : 200, writeResult(index, id, created ? "created" : "updated"));
+        } else {
+            notFound(exchange);
+        }
+    }
+
+    private String bulk(HttpExchange exchange) throws IOException {
+        ArrayNode items = objectMapper.createArrayNode();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                Map.Entry<String, JsonNode> action = objectMapper.readTree(line).fields().next();
+                String operation = action.getKey();
+                String index = action.getValue().path("_index").asText();
+                String id = action.getValue().path("_id").asText();
+
+                ObjectNode item = items.addObject().putObject(operation);
+                item.put("_index", index).put("_id", id);
+                if ("delete".equals(operation)) {
+                    boolean found = documents.remove(id) != null;
+                    item.put("status", found ? 200 : 404).put("result", found ? "deleted" : "not_found");
+                } else {
+                    JsonNode source = objectMapper.readTree(reader.readLine());
+                    if ("update".equals(operation)) {
+                        source = source.path("doc");
+                    }
+                    boolean created = documents.put(id, (ObjectNode) source) == null;
+                    item.put("status", created ? 201 : 200).put("result", created ? "created" : "updated");
+                }
+            }
+        }
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("took", 1).put("errors", false).set("items", items);
+        return objectMapper.writeValueAsString(response);
+    }
+
+    private String search(JsonNode request) throws IOException {
+        NavigableMap<String, ObjectNode> matches = matching(request.path("query"));
+        JsonNode searchAfter = request.path("search_after");
+        if (searchAfter.isArray() && !searchAfter.isEmpty()) {
+            matches = matches.tailMap(searchAfter.get(0).asText(), false);
+        }
+        int size = request.path("size").asInt(10);
+        boolean withoutContent = request.path("_source").path("excludes").toString().contains("\"content\"");
+
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("took", 1).put("timed_out", false);
+        response.set("_shards", objectMapper.readTree(SHARDS));
+        if (request.has("pit")) {
+            response.put("pit_id", request.path("pit").path("id").asText());
+        }
+
+        ObjectNode hits = response.putObject("hits");
+        hits.putObject("total").put("value", matches.size()).put("relation", "eq");
+        ArrayNode hitArray = hits.putArray("hits");
+        for (Map.Entry<String, ObjectNode> document : matches.entrySet()) {
+            if (hitArray.size() >= size) {
+                break;
+            }
+            ObjectNode source = document.getValue();
+            if (withoutContent) {
+                source = source.deepCopy();
+                source.remove("content");
+            }
+            ObjectNode hit = hitArray.addObject();
+            hit.put("_index", "tika_metadata").put("_id", document.getKey());
+            hit.set("_source", source);
+            hit.putArray("sort").add(document.getKey());
+        }
+
+        if (request.path("aggregations").has("fileTypes")) {
+            // The client asks for typed keys, hence "sterms#"
+            Map<String, Long> counts = new HashMap<>();
+            for (ObjectNode document : matches.values()) {
+                counts.merge(document.path("contentType").asText("unknown"), 1L, Long::sum);
+            }
+            ArrayNode buckets = response.putObject("aggregations").putObject("sterms#fileTypes")
+                    .put("doc_count_error_upper_bound", 0)
+                    .put("sum_other_doc_count", 0)
+                    .putArray("buckets");
+            counts.forEach((type, count) -> buckets.addObject().put("key", type).put("doc_count", count));
+        }
+        return objectMapper.writeValueAsString(response);
+    }
+
+    private String deleteByQuery(JsonNode request) {
+        NavigableMap<String, ObjectNode> matches = matching(request.path("query"));
+        int deleted = matches.size();
+        matches.clear();
+        return "{\"took\":1,\"timed_out\":false,\"total\":" + deleted + ",\"deleted\":" + deleted
+                + ",\"batches\":1,\"version_conflicts\":0,\"noops\":0,\"retries\":{\"bulk\":0,\"search\":0},"
+                + "\"throttled_millis\":0,\"requests_per_second\":-1.0,\"throttled_until_millis\":0,\"failures\":[]}";
+    }
+
+    /**
+     * The documents matching the folder queries of ElasticsearchService, or all documents for any other query.
+     */
+    private NavigableMap<String, ObjectNode> matching(JsonNode query) {
+        String prefix = null;
+        JsonNode tree = query.path("term").path("filePath.tree");
+        if (!tree.isMissingNode()) {
+            prefix = (tree.isObject() ? tree.path("value").asText() : tree.asText()) + "/";
+        }
+        JsonNode filePath = query.path("prefix").path("filePath");
+        if (!filePath.isMissingNode()) {
+            prefix = filePath.isObject() ? filePath.path("value").asText() : filePath.asText();
+        }
+        if (prefix == null) {
+            return documents;
+        }
+        // Every key starting with the prefix sorts before prefix + U+FFFF
+        return documents.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private static String writeResult(String index, String id, String result) {
+        return "{\"_index\":\"" + index + "\",\"_id\":" + quote(id) + ",\"_version\":1,\"result\":\"" + result
+                + "\",\"_shards\":" + SHARDS + ",\"_seq_no\":0,\"_primary_term\":1}";
+    }
+
+    private static String info() {
+        return "{\"name\":\"stub\",\"cluster_name\":\"stub\",\"cluster_uuid\":\"stub\",\"version\":{\"number\":\"8.15.0\","
+                + "\"build_flavor\":\"default\",\"build_type\":\"stub\",\"build_hash\":\"stub\",\"build_date\":\"2024-01-01T00:00:00Z\","
+                + "\"build_snapshot\":false,\"lucene_version\":\"9.11.1\",\"minimum_wire_compatibility_version\":\"7.17.0\","
+                + "\"minimum_index_compatibility_version\":\"7.0.0\"},\"tagline\":\"You Know, for Search\"}";
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private JsonNode readJson(HttpExchange exchange) throws IOException {
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        return body.length == 0 ? objectMapper.createObjectNode() : objectMapper.readTree(body);
+    }
+
+    private static void notFound(HttpExchange exchange) throws IOException {
+        respond(exchange, 404, "{\"error\":{\"type\":\"resource_not_found_exception\",\"reason\":\"Not supported by the stub: "
+                + exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath().replace("\"", "'") + "\"},\"status\":404}");
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        // The Java client refuses responses without this header
+        exchange.getResponseHeaders().set("X-Elastic-Product", "Elasticsearch");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
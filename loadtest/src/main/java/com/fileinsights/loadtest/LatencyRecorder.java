@@ -0,0 +1,95 @@
+package com.fileinsights.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects request latencies per endpoint and summarizes them as throughput and latency percentiles.
+ * Every latency is kept (8 bytes per request), so percentiles are exact.
+ */
+public class LatencyRecorder {
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * Records a request.
+     *
+     * @param endpoint   The endpoint, e.g. "GET /api/jobs".
+     * @param startNanos {@link System#nanoTime()} when the request was sent.
+     * @param success    Whether the response had the expected status.
+     */
+    public void record(String endpoint, long startNanos, boolean success) {
+        endpoints.computeIfAbsent(endpoint, name -> new Endpoint()).record(startNanos, System.nanoTime(), success);
+    }
+
+    /**
+     * Summarizes every endpoint: request and error counts, requests per second over the time between
+     * its first request and its last response, and p50/p95/p99/max latency in milliseconds.
+     *
+     * @return The summaries, by endpoint name.
+     */
+    public Map<String, Map<String, Object>> summarize() {
+        Map<String, Map<String, Object>> summaries = new LinkedHashMap<>();
+        endpoints.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> summaries.put(entry.getKey(), entry.getValue().summarize()));
+        return summaries;
+    }
+
+    private static final class Endpoint {
+        private long[] latencies = new long[1024];
+        private int count;
+        private long errors;
+        private long firstStart = Long.MAX_VALUE;
+        private long lastEnd;
+
+        private synchronized void record(long start, long end, boolean success) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = end - start;
+            if (!success) {
+                errors++;
+            }
+            firstStart = Math.min(firstStart, start);
+            lastEnd = Math.max(lastEnd, end);
+        }
+
+        private synchronized Map<String, Object> summarize() {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            double seconds = (lastEnd - firstStart) / 1e9;
+
+            Map<String, Object> latency = new LinkedHashMap<>();
+            latency.put("p50", millis(percentile(sorted, 50)));
+            latency.put("p95", millis(percentile(sorted, 95)));
+            latency.put("p99", millis(percentile(sorted, 99)));
+            latency.put("max", millis(count > 0 ? sorted[count - 1] : 0));
+
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("requests", count);
+            summary.put("errors", errors);
+            summary.put("requestsPerSecond", seconds > 0 ? Math.round(count / seconds * 10) / 10.0 : 0);
+            summary.put("latencyMs", latency);
+            return summary;
+        }
+
+        /**
+         * Nearest-rank percentile.
+         */
+        private static long percentile(long[] sorted, int percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+
+        private static double millis(long nanos) {
+            return Math.round(nanos / (double) TimeUnit.MILLISECONDS.toNanos(1) * 100) / 100.0;
+        }
+    }
+}
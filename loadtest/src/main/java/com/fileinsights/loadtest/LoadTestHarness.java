@@ -0,0 +1,370 @@
+package com.fileinsights.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fileinsights.FileInsightsApiApplication;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end load test: starts FileInsightsAPI on an in-memory H2 database (MySQL mode) and an
+ * {@link ElasticsearchStub}, writes a {@link SyntheticTree}, and ingests it with one
+ * {@code POST /api/files/process} job per top-level folder while upload and query clients run
+ * concurrently against {@code /upload} and the query endpoints. When the last job finishes, a JSON
+ * report with ingestion throughput and per-endpoint throughput and p50/p95/p99 latency is printed.
+ *
+ * Options, as {@code --name=value}:
+ * <ul>
+ *   <li>{@code load.files} (10000), {@code load.top-folders} (4), {@code load.max-file-kb} (256),
+ *       {@code load.seed} (42): the tree to ingest.</li>
+ *   <li>{@code load.dir}: where to write it; a temporary folder by default, deleted afterwards unless
+ *       {@code load.keep-files=true}.</li>
+ *   <li>{@code load.upload-threads} (4), {@code load.upload-kb} (64): concurrent uploaders and upload size.</li>
+ *   <li>{@code load.query-threads} (8): concurrent query clients; {@code load.query-paths} adds
+ *       comma-separated paths to the query mix.</li>
+ *   <li>{@code load.es-delay-ms} (0): delay the stub adds to every Elasticsearch request.</li>
+ *   <li>{@code load.report}: also write the report to this file.</li>
+ * </ul>
+ * Every other option is passed on to the application. With {@code spring.datasource.url} set, the H2
+ * defaults are left out, e.g. to measure against a real MySQL; endpoints with MySQL-only SQL (size
+ * histogram, growth, folder totals, duplicates) are not in the default mix and can then be added with
+ * {@code load.query-paths}.
+ */
+public class LoadTestHarness {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTestHarness.class);
+
+    private static final String OPTION_PREFIX = "load.";
+    private static final long POLL_INTERVAL_MS = 250;
+    private static final int UPLOAD_PAYLOADS = 32;
+    private static final String[] UPLOAD_TYPES = {"txt", "html", "csv", "bin"};
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LatencyRecorder recorder = new LatencyRecorder();
+    private final String baseUrl;
+
+    private LoadTestHarness(int port) {
+        this.baseUrl = "http://localhost:" + port;
+    }
+
+    /**
+     * A query endpoint in the mix.
+     *
+     * @param name How the endpoint is reported.
+     * @param path Path and query string.
+     */
+    private record Query(String name, String path) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int files = intOption(options, "files", 10000);
+        int topFolders = intOption(options, "top-folders", 4);
+        int maxFileKb = intOption(options, "max-file-kb", 256);
+        long seed = Long.parseLong(options.getOrDefault(OPTION_PREFIX + "seed", "42"));
+        int uploadThreads = intOption(options, "upload-threads", 4);
+        int uploadKb = intOption(options, "upload-kb", 64);
+        int queryThreads = intOption(options, "query-threads", 8);
+        long esDelayMs = intOption(options, "es-delay-ms", 0);
+        boolean keepFiles = Boolean.parseBoolean(options.getOrDefault(OPTION_PREFIX + "keep-files", "false"));
+        String reportFile = options.get(OPTION_PREFIX + "report");
+
+        Path root = options.containsKey(OPTION_PREFIX + "dir")
+                ? Files.createDirectories(Path.of(options.get(OPTION_PREFIX + "dir")))
+                : Files.createTempDirectory("fileinsights-load-");
+        Map<String, Object> report = new LinkedHashMap<>();
+        try (ElasticsearchStub stub = new ElasticsearchStub(16, esDelayMs)) {
+            long generateStart = System.nanoTime();
+            List<Path> tops = SyntheticTree.generate(root, files, topFolders, maxFileKb, seed);
+            logger.info("Wrote {} files in {} ms to {}", files, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - generateStart), root);
+
+            applyDefaults(options, stub.getUri());
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(FileInsightsApiApplication.class)
+                    .run(toArgs(options));
+            try {
+                int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+                LoadTestHarness harness = new LoadTestHarness(port);
+
+                Map<String, Object> config = new LinkedHashMap<>();
+                config.put("files", files);
+                config.put("topFolders", topFolders);
+                config.put("maxFileKb", maxFileKb);
+                config.put("seed", seed);
+                config.put("uploadThreads", uploadThreads);
+                config.put("uploadKb", uploadKb);
+                config.put("queryThreads", queryThreads);
+                config.put("esDelayMs", esDelayMs);
+                config.put("database", context.getEnvironment().getProperty("spring.datasource.url"));
+                report.put("config", config);
+
+                List<Query> queries = queries(root, tops, options.get(OPTION_PREFIX + "query-paths"));
+                report.put("ingestion", harness.run(tops, queries, uploadThreads, uploadKb, queryThreads, seed));
+                report.put("endpoints", harness.recorder.summarize());
+                report.put("elasticsearchDocuments", stub.getDocumentCount());
+            } finally {
+                context.close();
+            }
+        } finally {
+            if (!keepFiles) {
+                delete(root);
+            }
+        }
+
+        String json = new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(report);
+        System.out.println(json);
+        if (reportFile != null) {
+            Files.writeString(Path.of(reportFile), json);
+        }
+        // Nothing of the stopped application may keep the JVM alive
+        System.exit(0);
+    }
+
+    /**
+     * Ingests the tree while the upload and query clients run, and summarizes the ingestion jobs.
+     */
+    private Map<String, Object> run(List<Path> tops, List<Query> queries, int uploadThreads, int uploadKb,
+                                    int queryThreads, long seed) throws Exception {
+        List<byte[]> payloads = new ArrayList<>(UPLOAD_PAYLOADS);
+        SplittableRandom payloadRandom = new SplittableRandom(seed);
+        for (int i = 0; i < UPLOAD_PAYLOADS; i++) {
+            payloads.add(SyntheticTree.content(payloadRandom, UPLOAD_TYPES[i % UPLOAD_TYPES.length], uploadKb * 1024));
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong uploads = new AtomicLong();
+        ExecutorService clients = Executors.newFixedThreadPool(Math.max(1, uploadThreads + queryThreads));
+        for (int i = 0; i < uploadThreads; i++) {
+            clients.submit(() -> {
+                while (running.get()) {
+                    long n = uploads.getAndIncrement();
+                    int payload = (int) (n % UPLOAD_PAYLOADS);
+                    upload("upload-" + n + "." + UPLOAD_TYPES[payload % UPLOAD_TYPES.length], payloads.get(payload));
+                }
+                return null;
+            });
+        }
+        for (int i = 0; i < queryThreads; i++) {
+            SplittableRandom random = new SplittableRandom(seed + i);
+            clients.submit(() -> {
+                while (running.get()) {
+                    Query query = queries.get(random.nextInt(queries.size()));
+                    long start = System.nanoTime();
+                    int status = send(HttpRequest.newBuilder(uri(query.path())).GET());
+                    // 404 is the answer for folders that are not ingested yet
+                    recorder.record(query.name(), start, status == 200 || status == 404);
+                }
+                return null;
+            });
+        }
+
+        long start = System.nanoTime();
+        List<String> jobIds = new ArrayList<>(tops.size());
+        for (Path top : tops) {
+            long submitStart = System.nanoTime();
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri("/api/files/process?folderPath=" + encode(top.toString())))
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            recorder.record("POST /api/files/process", submitStart, response.statusCode() == 202);
+            if (response.statusCode() != 202) {
+                throw new IllegalStateException("Could not start ingestion of " + top + ": " + response.body());
+            }
+            jobIds.add(objectMapper.readTree(response.body()).path("id").asText());
+        }
+
+        List<JsonNode> jobs = new ArrayList<>(jobIds.size());
+        for (String jobId : jobIds) {
+            JsonNode job;
+            while (!(job = objectMapper.readTree(get("/api/jobs/" + jobId))).path("done").asBoolean()) {
+                Thread.sleep(POLL_INTERVAL_MS);
+            }
+            jobs.add(job);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        running.set(false);
+        clients.shutdown();
+        clients.awaitTermination(1, TimeUnit.MINUTES);
+
+        long processed = 0;
+        long failed = 0;
+        long bytes = 0;
+        List<Map<String, Object>> jobSummaries = new ArrayList<>();
+        for (JsonNode job : jobs) {
+            processed += job.path("filesProcessed").asLong();
+            failed += job.path("filesFailed").asLong();
+            bytes += job.path("bytesProcessed").asLong();
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("folderPath", job.path("folderPath").asText());
+            summary.put("status", job.path("status").asText());
+            summary.put("filesProcessed", job.path("filesProcessed").asLong());
+            summary.put("filesFailed", job.path("filesFailed").asLong());
+            summary.put("filesIndexFailed", job.path("filesIndexFailed").asLong());
+            summary.put("elapsedMillis", job.path("elapsedMillis").asLong());
+            jobSummaries.add(summary);
+        }
+
+        Map<String, Object> ingestion = new LinkedHashMap<>();
+        ingestion.put("seconds", Math.round(seconds * 100) / 100.0);
+        ingestion.put("filesProcessed", processed);
+        ingestion.put("filesFailed", failed);
+        ingestion.put("bytesProcessed", bytes);
+        ingestion.put("filesPerSecond", Math.round(processed / seconds * 10) / 10.0);
+        ingestion.put("megabytesPerSecond", Math.round(bytes / seconds / (1024 * 1024) * 100) / 100.0);
+        ingestion.put("jobs", jobSummaries);
+        return ingestion;
+    }
+
+    private void upload(String fileName, byte[] content) throws IOException, InterruptedException {
+        String boundary = "load-" + Long.toHexString(System.nanoTime());
+        ByteArrayOutputStream body = new ByteArrayOutputStream(content.length + 256);
+        body.write(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + fileName + "\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.write(content);
+        body.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        long start = System.nanoTime();
+        int status = send(HttpRequest.newBuilder(uri("/upload"))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray())));
+        recorder.record("POST /upload", start, status == 200);
+    }
+
+    private String get(String path) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri(path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+        recorder.record("GET /api/jobs/{id}", start, response.statusCode() == 200);
+        return response.body();
+    }
+
+    /**
+     * Sends a request and discards the response body, so large responses do not skew client-side memory.
+     *
+     * @return The status code, or -1 if the request failed.
+     */
+    private int send(HttpRequest.Builder request) {
+        try {
+            return client.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            logger.debug("Request failed", e);
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    /**
+     * The default query mix: rollup analytics, basic metadata of a folder from the database, advanced
+     * metadata from Elasticsearch, and the job list.
+     */
+    private static List<Query> queries(Path root, List<Path> tops, String extraPaths) {
+        String folder = encode(tops.get(0).resolve("d0").toString());
+        List<Query> queries = new ArrayList<>(List.of(
+                new Query("GET /api/analytics/by-type", "/api/analytics/by-type"),
+                new Query("GET /api/analytics/by-age", "/api/analytics/by-age"),
+                new Query("GET /api/analytics/bytes-by-type", "/api/analytics/bytes-by-type?folderPath=" + encode(root.toString())),
+                new Query("GET /api/files/metadata?type=basic", "/api/files/metadata?folderPath=" + folder + "&size=100"),
+                new Query("GET /api/files/metadata?type=advanced", "/api/files/metadata?folderPath=" + folder + "&type=advanced&includeContent=false"),
+                new Query("GET /api/jobs", "/api/jobs")
+        ));
+        if (extraPaths != null && !extraPaths.isBlank()) {
+            for (String path : extraPaths.split(",")) {
+                queries.add(new Query("GET " + path.trim(), path.trim()));
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Points the application at H2 and the stub unless configured otherwise, and turns off what would
+     * distort the measurement (folder watching, per-file logging).
+     */
+    private static void applyDefaults(Map<String, String> options, String elasticsearchUri) {
+        if (!options.containsKey("spring.datasource.url")) {
+            options.put("spring.datasource.url", "jdbc:h2:mem:fileinsights;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+            options.put("spring.datasource.driver-class-name", "org.h2.Driver");
+            options.put("spring.datasource.username", "sa");
+            options.put("spring.datasource.password", "");
+            options.put("spring.jpa.database-platform", "org.hibernate.dialect.H2Dialect");
+            options.put("spring.jpa.properties.hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+            options.putIfAbsent("spring.jpa.hibernate.ddl-auto", "create");
+        }
+        options.putIfAbsent("spring.elasticsearch.uris", elasticsearchUri);
+        options.putIfAbsent("server.port", "0");
+        options.putIfAbsent("watch.enabled", "false");
+        options.putIfAbsent("spring.devtools.restart.enabled", "false");
+        options.putIfAbsent("logging.level.com.fileinsights", "WARN");
+        options.putIfAbsent("logging.level.com.fileinsights.loadtest", "INFO");
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Options must be given as --name=value: " + arg);
+            }
+            int equals = arg.indexOf('=');
+            options.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        return options;
+    }
+
+    private static String[] toArgs(Map<String, String> options) {
+        return options.entrySet().stream()
+                .filter(option -> !option.getKey().startsWith(OPTION_PREFIX))
+                .map(option -> "--" + option.getKey() + "=" + option.getValue())
+                .toArray(String[]::new);
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(OPTION_PREFIX + name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    private URI uri(String path) {
+        return URI.create(baseUrl + path);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static void delete(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.fileinsights.loadtest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Writes a reproducible folder tree of text, HTML, CSV and binary files.
+ *
+ * Layout: {@code <root>/t<i>/d<j>/f<k>.<ext>} with {@value #FILES_PER_FOLDER} files per folder, spread over
+ * the requested number of top-level folders. File sizes are log-uniform between 1 KB and a maximum, so
+ * most files are small and a few are large, as on a typical file share. The same seed, file count and
+ * maximum size always produce the same tree.
+ */
+public final class SyntheticTree {
+
+    public static final int FILES_PER_FOLDER = 100;
+
+    private static final String[] TYPES = {"txt", "html", "csv", "bin"};
+
+    private static final String[] WORDS = {
+            "file", "insight", "metadata", "storage", "archive", "report", "invoice", "quarter", "budget",
+            "network", "share", "folder", "document", "analysis", "capacity", "growth", "retention", "backup",
+            "policy", "customer", "project", "summary", "draft", "final", "review", "index", "search", "cluster"
+    };
+
+    private SyntheticTree() {
+    }
+
+    /**
+     * Writes the tree.
+     *
+     * @param root       The root folder (created if missing).
+     * @param files      Total number of files.
+     * @param topFolders Number of top-level folders, e.g. one per ingestion job.
+     * @param maxKb      Maximum file size in KB.
+     * @param seed       Seed for names, sizes and contents.
+     * @return The top-level folders.
+     * @throws IOException If a file cannot be written.
+     */
+    public static List<Path> generate(Path root, int files, int topFolders, int maxKb, long seed) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Path> tops = new ArrayList<>(topFolders);
+        for (int t = 0; t < topFolders; t++) {
+            tops.add(Files.createDirectories(root.resolve("t" + t)));
+        }
+        for (int i = 0; i < files; i++) {
+            int folder = i / FILES_PER_FOLDER;
+            Path dir = tops.get(folder % topFolders).resolve("d" + folder / topFolders);
+            if (i % FILES_PER_FOLDER == 0) {
+                Files.createDirectories(dir);
+            }
+            String type = TYPES[random.nextInt(TYPES.length)];
+            int size = (int) Math.round(1024 * Math.pow(maxKb, random.nextDouble()));
+            Files.write(dir.resolve("f" + i % FILES_PER_FOLDER + "." + type), content(random, type, size));
+        }
+        return tops;
+    }
+
+    /**
+     * Content of roughly {@code size} bytes in the given format.
+     *
+     * @param random The random source.
+     * @param type   One of txt, html, csv or bin.
+     * @param size   Approximate size in bytes.
+     * @return The file content.
+     */
+    public static byte[] content(SplittableRandom random, String type, int size) {
+        if ("bin".equals(type)) {
+            byte[] bytes = new byte[size];
+            random.nextBytes(bytes);
+            return bytes;
+        }
+        StringBuilder text = new StringBuilder(size + 64);
+        if ("html".equals(type)) {
+            text.append("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>Report</title></head><body>\n");
+        }
+        while (text.length() < size) {
+            switch (type) {
+                case "html" -> text.append("<p>").append(line(random, ' ')).append("</p>\n");
+                case "csv" -> text.append(random.nextInt(100_000)).append(',').append(line(random, ',')).append('\n');
+                default -> text.append(line(random, ' ')).append('\n');
+            }
+        }
+        if ("html".equals(type)) {
+            text.append("</body></html>\n");
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String line(SplittableRandom random, char separator) {
+        StringBuilder line = new StringBuilder();
+        int words = 8 + random.nextInt(8);
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                line.append(separator);
+            }
+            line.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return line.toString();
+    }
+}
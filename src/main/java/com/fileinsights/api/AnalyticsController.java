@@ -1,17 +1,28 @@
 package com.fileinsights.api;
 
 import com.fileinsights.service.AnalyticsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.LocalDate;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/api/analytics")
 public class AnalyticsController {
 
+    private static final Logger logger = LoggerFactory.getLogger(AnalyticsController.class);
+
+    private static final int MAX_LIMIT = 1000;
+
     @Autowired
     private AnalyticsService analyticsService;
 
@@ -34,4 +45,152 @@ public class AnalyticsController {
     public Map<String, Long> getFileDataByType() {
         return analyticsService.getFileDataByType();
     }
+
+    /**
+     * Retrieves a histogram of file sizes in power-of-two buckets.
+     *
+     * @param folderPath Only files below this folder.
+     * @param from       Only files modified on or after this day (yyyy-MM-dd).
+     * @param to         Only files modified on or before this day (yyyy-MM-dd).
+     * @return ResponseEntity with the size buckets.
+     */
+    @GetMapping("/size-histogram")
+    public ResponseEntity<?> getSizeHistogram(@RequestParam(required = false) String folderPath,
+                                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            return ResponseEntity.ok(analyticsService.getSizeHistogram(folderPath, from, to));
+        } catch (Exception e) {
+            logger.error("Error computing size histogram for folder: {}", folderPath, e);
+            return ResponseEntity.status(500).body("Error computing size histogram: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Retrieves the largest files.
+     *
+     * @param folderPath Only files below this folder.
+     * @param from       Only files modified on or after this day (yyyy-MM-dd).
+     * @param to         Only files modified on or before this day (yyyy-MM-dd).
+     * @param limit      Number of files (at most 1000).
+     * @return ResponseEntity with the largest files' metadata.
+     */
+    @GetMapping("/largest")
+    public ResponseEntity<?> getLargestFiles(@RequestParam(required = false) String folderPath,
+                                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                             @RequestParam(defaultValue = "20") int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            return ResponseEntity.badRequest().body("limit must be between 1 and " + MAX_LIMIT + ".");
+        }
+        try {
+            return ResponseEntity.ok(analyticsService.getLargestFiles(folderPath, from, to, limit));
+        } catch (Exception e) {
+            logger.error("Error retrieving largest files for folder: {}", folderPath, e);
+            return ResponseEntity.status(500).body("Error retrieving largest files: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Retrieves the folders whose files have gone longest without being accessed.
+     *
+     * @param folderPath     Only folders below this folder.
+     * @param accessedBefore Only folders with no access after this day (yyyy-MM-dd).
+     * @param limit          Number of folders (at most 1000).
+     * @return ResponseEntity with the stalest folders.
+     */
+    @GetMapping("/stalest-folders")
+    public ResponseEntity<?> getStalestFolders(@RequestParam(required = false) String folderPath,
+                                               @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate accessedBefore,
+                                               @RequestParam(defaultValue = "20") int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            return ResponseEntity.badRequest().body("limit must be between 1 and " + MAX_LIMIT + ".");
+        }
+        try {
+            return ResponseEntity.ok(analyticsService.getStalestFolders(folderPath, accessedBefore, limit));
+        } catch (Exception e) {
+            logger.error("Error retrieving stalest folders for folder: {}", folderPath, e);
+            return ResponseEntity.status(500).body("Error retrieving stalest folders: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Retrieves the total size of files per content type.
+     *
+     * @param folderPath Only files below this folder.
+     * @param from       Only files last accessed on or after this day (yyyy-MM-dd).
+     * @param to         Only files last accessed on or before this day (yyyy-MM-dd).
+     * @return ResponseEntity with a map of content types to bytes.
+     */
+    @GetMapping("/bytes-by-type")
+    public ResponseEntity<?> getBytesByType(@RequestParam(required = false) String folderPath,
+                                            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            return ResponseEntity.ok(analyticsService.getBytesByType(folderPath, from, to));
+        } catch (Exception e) {
+            logger.error("Error computing bytes by type for folder: {}", folderPath, e);
+            return ResponseEntity.status(500).body("Error computing bytes by type: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Retrieves file count and size totals for each subfolder of a folder.
+     *
+     * @param folderPath The folder whose subfolders to total; the top-level folders when omitted.
+     * @param from       Only files last accessed on or after this day (yyyy-MM-dd).
+     * @param to         Only files last accessed on or before this day (yyyy-MM-dd).
+     * @param limit      Number of subfolders (at most 1000).
+     * @return ResponseEntity with the subfolder totals, largest first.
+     */
+    @GetMapping("/folder-totals")
+    public ResponseEntity<?> getFolderTotals(@RequestParam(required = false) String folderPath,
+                                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                             @RequestParam(defaultValue = "100") int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            return ResponseEntity.badRequest().body("limit must be between 1 and " + MAX_LIMIT + ".");
+        }
+        try {
+            return ResponseEntity.ok(analyticsService.getFolderTotals(folderPath, from, to, limit));
+        } catch (Exception e) {
+            logger.error("Error computing folder totals for folder: {}", folderPath, e);
+            return ResponseEntity.status(500).body("Error computing folder totals: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Retrieves the number and size of files created per period.
+     *
+     * @param folderPath Only files below this folder.
+     * @param interval   "day", "month" or "year".
+     * @param from       Only files created on or after this day (yyyy-MM-dd).
+     * @param to         Only files created on or before this day (yyyy-MM-dd).
+     * @return ResponseEntity with one entry per period, oldest first.
+     */
+    @GetMapping("/growth")
+    public ResponseEntity<?> getGrowth(@RequestParam(required = false) String folderPath,
+                                       @RequestParam(defaultValue = "month") String interval,
+                                       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            return ResponseEntity.ok(analyticsService.getGrowth(folderPath, interval, from, to));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            logger.error("Error computing growth for folder: {}", folderPath, e);
+            return ResponseEntity.status(500).body("Error computing growth: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Recomputes the analytics rollup from the stored file metadata.
+     * Only needed once after the rollup table is created, or to repair it.
+     *
+     * @return The number of rollup rows.
+     */
+    @PostMapping("/rollup/rebuild")
+    public Map<String, Integer> rebuildRollup() {
+        return Map.of("rows", analyticsService.rebuildRollup());
+    }
 }
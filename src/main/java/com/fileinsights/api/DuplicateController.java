@@ -0,0 +1,107 @@
+package com.fileinsights.api;
+
+import com.fileinsights.model.IngestionJob;
+import com.fileinsights.service.DuplicateService;
+import com.fileinsights.service.IngestionJobService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.File;
+import java.net.URI;
+
+@RestController
+@RequestMapping("/api/duplicates")
+public class DuplicateController {
+
+    private static final Logger logger = LoggerFactory.getLogger(DuplicateController.class);
+
+    private static final int MAX_LIMIT = 1000;
+
+    @Autowired
+    private DuplicateService duplicateService;
+
+    @Autowired
+    private IngestionJobService ingestionJobService;
+
+    /**
+     * Endpoint to hash the files below a folder that could have duplicates.
+     * Scanning runs in the background; progress can be followed at /api/jobs/{id}.
+     *
+     * @param folderPath Path to the folder to scan.
+     * @return ResponseEntity with the queued scan job.
+     */
+    @PostMapping("/scan")
+    public ResponseEntity<?> scan(@RequestParam String folderPath) {
+        try {
+            IngestionJob job = ingestionJobService.submitDuplicateScan(new File(folderPath).getAbsolutePath());
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/jobs/" + job.getId()))
+                    .body(job);
+        } catch (Exception e) {
+            logger.error("Error starting duplicate scan for folder: {}", folderPath, e);
+            return ResponseEntity.status(500).body("Error starting duplicate scan: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Endpoint to list groups of identical files, most reclaimable bytes first.
+     * Only files hashed by a scan or during ingestion are compared.
+     *
+     * @param folderPath Only files below this folder.
+     * @param limit      Number of groups (at most 1000).
+     * @return ResponseEntity with the duplicate groups.
+     */
+    @GetMapping
+    public ResponseEntity<?> getDuplicateGroups(@RequestParam(required = false) String folderPath,
+                                                @RequestParam(defaultValue = "100") int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            return ResponseEntity.badRequest().body("limit must be between 1 and " + MAX_LIMIT + ".");
+        }
+        try {
+            return ResponseEntity.ok(duplicateService.getDuplicateGroups(folderPath, limit));
+        } catch (Exception e) {
+            logger.error("Error retrieving duplicates for folder: {}", folderPath, e);
+            return ResponseEntity.status(500).body("Error retrieving duplicates: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Endpoint to list the folders holding the most redundant copies.
+     *
+     * @param folderPath Only files below this folder.
+     * @param limit      Number of folders (at most 1000).
+     * @return ResponseEntity with reclaimable bytes per folder.
+     */
+    @GetMapping("/folders")
+    public ResponseEntity<?> getReclaimableByFolder(@RequestParam(required = false) String folderPath,
+                                                    @RequestParam(defaultValue = "100") int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            return ResponseEntity.badRequest().body("limit must be between 1 and " + MAX_LIMIT + ".");
+        }
+        try {
+            return ResponseEntity.ok(duplicateService.getReclaimableByFolder(folderPath, limit));
+        } catch (Exception e) {
+            logger.error("Error retrieving reclaimable bytes for folder: {}", folderPath, e);
+            return ResponseEntity.status(500).body("Error retrieving reclaimable bytes: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Endpoint to get the total number of redundant copies and the bytes they take up.
+     *
+     * @param folderPath Only files below this folder.
+     * @return ResponseEntity with "redundantFiles" and "reclaimableBytes".
+     */
+    @GetMapping("/summary")
+    public ResponseEntity<?> getSummary(@RequestParam(required = false) String folderPath) {
+        try {
+            return ResponseEntity.ok(duplicateService.getSummary(folderPath));
+        } catch (Exception e) {
+            logger.error("Error summarizing duplicates for folder: {}", folderPath, e);
+            return ResponseEntity.status(500).body("Error summarizing duplicates: " + e.getMessage());
+        }
+    }
+}
@@ -1,17 +1,24 @@
 package com.fileinsights.api;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fileinsights.entity.FileMetadata;
 import com.fileinsights.entity.TikaMetadata;
+import com.fileinsights.model.IngestionJob;
+import com.fileinsights.service.ElasticsearchService;
 import com.fileinsights.service.FileMetadataService;
 import com.fileinsights.service.FileService;
-import com.fileinsights.service.ElasticsearchService;
+import com.fileinsights.util.KeysetPages;
+import com.fileinsights.util.NdjsonWriter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.net.URI;
 import java.util.List;
 
 @RestController
@@ -29,20 +36,28 @@ public class FileController {
     @Autowired
     private ElasticsearchService elasticsearchService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     /**
      * Endpoint to process a folder and extract metadata.
+     * Processing runs in the background; progress can be followed at /api/jobs/{id}.
      *
-     * @param folderPath Path to the folder to process.
-     * @return ResponseEntity with a success message.
+     * @param folderPath  Path to the folder to process.
+     * @param incremental Only re-extract new or changed files and remove metadata of deleted files.
+     * @return ResponseEntity with the queued ingestion job.
      */
     @PostMapping("/process")
-    public ResponseEntity<String> processFolder(@RequestParam String folderPath) {
+    public ResponseEntity<?> processFolder(@RequestParam String folderPath,
+                                           @RequestParam(defaultValue = "false") boolean incremental) {
         File folder = new File(folderPath);
 
         if (folder.exists() && folder.isDirectory()) {
             try {
-                fileService.processFolder(folder); // Process and store metadata
-                return ResponseEntity.ok("Folder processed successfully.");
+                IngestionJob job = fileService.processFolder(folder, incremental); // Process and store metadata asynchronously
+                return ResponseEntity.accepted()
+                        .location(URI.create("/api/jobs/" + job.getId()))
+                        .body(job);
             } catch (Exception e) {
                 logger.error("Error processing folder: {}", folderPath, e);
                 return ResponseEntity.status(500).body("Error processing folder: " + e.getMessage());
@@ -55,18 +70,26 @@ public class FileController {
 
     /**
      * Endpoint to get metadata (Basic or Advanced) of all files in a folder.
+     * Basic metadata is paged by keyset: pass the X-Next-Cursor header of a response as {@code after}
+     * to get the next page; the header is absent on the last page.
      *
      * @param folderPath Path to the folder whose metadata to retrieve.
      * @param type       Metadata type: "basic" (MySQL) or "advanced" (Elasticsearch).
+     * @param size           Page size for basic metadata, at most {@value KeysetPages#MAX_PAGE_SIZE}.
+     * @param after          The cursor of the previous page of basic metadata.
+     * @param includeContent Whether advanced metadata includes the extracted text content.
      * @return ResponseEntity with the metadata.
      */
     @GetMapping("/metadata")
     public ResponseEntity<?> getFolderMetadata(@RequestParam String folderPath,
-                                               @RequestParam(defaultValue = "basic") String type) {
+                                               @RequestParam(defaultValue = "basic") String type,
+                                               @RequestParam(defaultValue = "1000") int size,
+                                               @RequestParam(required = false) String after,
+                                               @RequestParam(defaultValue = "true") boolean includeContent) {
         try {
             if ("advanced".equalsIgnoreCase(type)) {
                 logger.info("Fetching advanced metadata for folder: {}", folderPath);
-                List<TikaMetadata> advancedMetadata = fileService.getAdvancedMetadata(folderPath);
+                List<TikaMetadata> advancedMetadata = fileService.getAdvancedMetadata(folderPath, includeContent);
                 if (advancedMetadata != null && !advancedMetadata.isEmpty()) {
                     return ResponseEntity.ok(advancedMetadata);
                 } else {
@@ -75,9 +98,17 @@ public class FileController {
                 }
             } else {
                 logger.info("Fetching basic metadata for folder: {}", folderPath);
-                List<FileMetadata> basicMetadata = fileMetadataService.getMetadataForFolder(folderPath);
-                if (basicMetadata != null && !basicMetadata.isEmpty()) {
-                    return ResponseEntity.ok(basicMetadata);
+                int pageSize;
+                KeysetPages.FolderCursor cursor;
+                try {
+                    pageSize = KeysetPages.pageSize(size);
+                    cursor = after != null ? KeysetPages.FolderCursor.parse(after) : null;
+                } catch (IllegalArgumentException e) {
+                    return ResponseEntity.badRequest().body(e.getMessage());
+                }
+                List<FileMetadata> basicMetadata = fileMetadataService.getMetadataForFolder(folderPath, cursor, pageSize);
+                if (!basicMetadata.isEmpty() || after != null) {
+                    return KeysetPages.okFolder(basicMetadata, pageSize);
                 } else {
                     logger.info("No basic metadata found for folder: {}", folderPath);
                     return ResponseEntity.notFound().build();
@@ -89,24 +120,49 @@ public class FileController {
         }
     }
 
+    /**
+     * Endpoint to export the metadata of all files in a folder as newline-delimited JSON, streamed
+     * in constant memory: basic metadata straight from the database, advanced metadata page by page
+     * from an Elasticsearch point-in-time.
+     *
+     * @param folderPath     Path to the folder whose metadata to export.
+     * @param type           Metadata type: "basic" (MySQL) or "advanced" (Elasticsearch).
+     * @param includeContent Whether advanced metadata includes the extracted text content.
+     * @return Streaming response with one metadata record per line.
+     */
+    @GetMapping(value = "/metadata/export", produces = NdjsonWriter.MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> exportFolderMetadata(@RequestParam String folderPath,
+                                                                      @RequestParam(defaultValue = "basic") String type,
+                                                                      @RequestParam(defaultValue = "false") boolean includeContent) {
+        logger.info("Exporting {} metadata for folder: {}", type, folderPath);
+        boolean advanced = "advanced".equalsIgnoreCase(type);
+        StreamingResponseBody body = out -> {
+            NdjsonWriter writer = new NdjsonWriter(objectMapper, out);
+            if (advanced) {
+                elasticsearchService.scrollMetadataByFolderPath(folderPath, includeContent, writer::write);
+            } else {
+                fileMetadataService.streamMetadata(folderPath, writer::write);
+            }
+            writer.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NdjsonWriter.MEDIA_TYPE)).body(body);
+    }
+
     /**
      * Endpoint to reset the index for a folder path.
+     * Metadata is removed by path prefix in the background; progress can be followed at /api/jobs/{id}.
      *
      * @param folderPath Path to the folder whose metadata needs to be cleared.
-     * @return ResponseEntity with a success or error message.
+     * @return ResponseEntity with the queued reset job.
      */
     @DeleteMapping("/reset-index")
-    public ResponseEntity<String> resetIndex(@RequestParam String folderPath) {
+    public ResponseEntity<?> resetIndex(@RequestParam String folderPath) {
         try {
-            // Delete from MySQL
-            logger.info("Resetting MySQL metadata for folder: {}", folderPath);
-            fileMetadataService.deleteMetadataForFolder(folderPath);
-
-            // Delete from Elasticsearch
-            logger.info("Resetting Elasticsearch metadata for folder: {}", folderPath);
-            elasticsearchService.deleteByPath(folderPath);
-
-            return ResponseEntity.ok("Index reset successfully for folder: " + folderPath);
+            logger.info("Resetting metadata for folder: {}", folderPath);
+            IngestionJob job = fileService.deleteMetadataForFolder(folderPath);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/jobs/" + job.getId()))
+                    .body(job);
         } catch (Exception e) {
             logger.error("Error resetting index for folder: {}", folderPath, e);
             return ResponseEntity.status(500).body("Error resetting index: " + e.getMessage());
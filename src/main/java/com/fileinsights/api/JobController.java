@@ -0,0 +1,51 @@
+package com.fileinsights.api;
+
+import com.fileinsights.model.IngestionJob;
+import com.fileinsights.service.IngestionJobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/jobs")
+public class JobController {
+
+    @Autowired
+    private IngestionJobService ingestionJobService;
+
+    /**
+     * Lists all known ingestion jobs, newest first.
+     *
+     * @return List of ingestion jobs.
+     */
+    @GetMapping
+    public List<IngestionJob> getJobs() {
+        return ingestionJobService.getJobs();
+    }
+
+    /**
+     * Retrieves the progress of an ingestion job.
+     *
+     * @param id The job ID.
+     * @return ResponseEntity with the job, or 404 if not found.
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<IngestionJob> getJob(@PathVariable String id) {
+        IngestionJob job = ingestionJobService.getJob(id);
+        return job != null ? ResponseEntity.ok(job) : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Cancels an ingestion job.
+     *
+     * @param id The job ID.
+     * @return ResponseEntity with the job, or 404 if not found.
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<IngestionJob> cancelJob(@PathVariable String id) {
+        IngestionJob job = ingestionJobService.cancel(id);
+        return job != null ? ResponseEntity.ok(job) : ResponseEntity.notFound().build();
+    }
+}
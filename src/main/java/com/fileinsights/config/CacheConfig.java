@@ -0,0 +1,55 @@
+package com.fileinsights.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String ANALYTICS = "analytics";
+    public static final String METADATA_BY_ID = "metadataById";
+    public static final String METADATA_BY_PATH = "metadataByPath";
+
+    @Value("${cache.analytics.max-size:1000}")
+    private long analyticsMaxSize;
+
+    @Value("${cache.analytics.ttl-seconds:60}")
+    private long analyticsTtlSeconds;
+
+    @Value("${cache.metadata.max-size:100000}")
+    private long metadataMaxSize;
+
+    @Value("${cache.metadata.ttl-seconds:600}")
+    private long metadataTtlSeconds;
+
+    /**
+     * Caffeine caches with size and TTL eviction and statistics for the cache metrics.
+     * The manager is transaction-aware: evictions issued inside a transaction take effect after
+     * commit, so a concurrent reader cannot re-cache the data that is being replaced.
+     */
+    @Bean
+    public CacheManager cacheManager() {
+        CaffeineCacheManager caffeine = new CaffeineCacheManager();
+        caffeine.registerCustomCache(ANALYTICS, cache(analyticsMaxSize, analyticsTtlSeconds));
+        caffeine.registerCustomCache(METADATA_BY_ID, cache(metadataMaxSize, metadataTtlSeconds));
+        caffeine.registerCustomCache(METADATA_BY_PATH, cache(metadataMaxSize, metadataTtlSeconds));
+        return new TransactionAwareCacheManagerProxy(caffeine);
+    }
+
+    private static com.github.benmanes.caffeine.cache.Cache<Object, Object> cache(long maxSize, long ttlSeconds) {
+        return Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+    }
+}
@@ -13,6 +13,7 @@ public class WebConfig implements WebMvcConfigurer {
         registry.addMapping("/api/**")  // This applies to all /api endpoints
                 .allowedOrigins("http://localhost:3000")  // Frontend URL (React)
                 .allowedMethods("GET", "POST", "PUT", "DELETE")
-                .allowedHeaders("*");  // Allow all headers
+                .allowedHeaders("*")  // Allow all headers
+                .exposedHeaders("Location", "X-Next-Cursor");  // Job links and keyset pagination cursors
     }
 }
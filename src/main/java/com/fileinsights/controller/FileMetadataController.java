@@ -1,10 +1,15 @@
 package com.fileinsights.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fileinsights.entity.FileMetadata;
 import com.fileinsights.service.FileMetadataService;
+import com.fileinsights.util.KeysetPages;
+import com.fileinsights.util.NdjsonWriter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import jakarta.validation.Valid;
 
 //import javax.validation.Valid;
@@ -22,6 +27,9 @@ public class FileMetadataController {
     @Autowired
     private FileMetadataService fileMetadataService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     /**
      * Endpoint to save file metadata.
      *
@@ -65,16 +73,35 @@ public class FileMetadataController {
 
     /**
      * Endpoint to retrieve all file metadata with pagination.
+     * With {@code after}, pages are read by keyset: pass the X-Next-Cursor header of a response as
+     * {@code after} to get the next page; the header is absent on the last page.
+     * Without it, the offset-based {@code page} parameter is used.
      *
-     * @param page The page number (default is 0).
-     * @param size The size of the page (default is 10).
+     * @param page  The page number (default is 0), for offset pagination.
+     * @param size  The size of the page (default is 10, at most {@value KeysetPages#MAX_PAGE_SIZE}).
+     * @param after The cursor (last ID) of the previous page, for keyset pagination.
      * @return List of file metadata.
      */
     @GetMapping
     public ResponseEntity<?> getAllMetadata(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size) {
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) Long after) {
+        if (page < 0) {
+            return ResponseEntity.badRequest().body("Page number must not be negative.");
+        }
         try {
+            size = KeysetPages.pageSize(size);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        try {
+            if (after != null) {
+                List<FileMetadata> metadataList = fileMetadataService.getMetadataAfter(after, size);
+                logger.info("Retrieved {} metadata records after ID {}", metadataList.size(), after);
+                return KeysetPages.ok(metadataList, size);
+            }
+
             List<FileMetadata> metadataList = fileMetadataService.getAllMetadata(page, size);
             if (!metadataList.isEmpty()) {
                 logger.info("Retrieved {} metadata records for page {} with size {}", metadataList.size(), page, size);
@@ -88,4 +115,20 @@ public class FileMetadataController {
             return ResponseEntity.status(500).body("Error retrieving metadata: " + e.getMessage());
         }
     }
+
+    /**
+     * Endpoint to export all file metadata as newline-delimited JSON.
+     * Rows are streamed from the database as they are written, so exports of any size use constant memory.
+     *
+     * @return Streaming response with one metadata record per line.
+     */
+    @GetMapping(value = "/export", produces = NdjsonWriter.MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> exportMetadata() {
+        StreamingResponseBody body = out -> {
+            NdjsonWriter writer = new NdjsonWriter(objectMapper, out);
+            fileMetadataService.streamMetadata(null, writer::write);
+            writer.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NdjsonWriter.MEDIA_TYPE)).body(body);
+    }
 }
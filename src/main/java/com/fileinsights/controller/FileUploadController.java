@@ -1,14 +1,21 @@
 package com.fileinsights.controller;
 
+import com.fileinsights.model.IngestionJob;
+import com.fileinsights.model.UploadManifest;
 import com.fileinsights.service.FileMetadataService;
+import com.fileinsights.service.IngestionJobService;
+import com.fileinsights.service.UploadBatchService;
+import com.fileinsights.util.MultipartReader;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.multipart.MultipartFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.PushbackInputStream;
+import java.net.URI;
 
 @RestController
 @RequestMapping("/upload")
@@ -17,49 +24,114 @@ public class FileUploadController {
     @Autowired
     private FileMetadataService fileMetadataService;
 
+    @Autowired
+    private IngestionJobService ingestionJobService;
+
+    @Autowired
+    private UploadBatchService uploadBatchService;
+
     private static final Logger logger = LoggerFactory.getLogger(FileUploadController.class);
 
     /**
      * Endpoint to handle single file uploads.
+     * The multipart/form-data body is read as it arrives: the "file" part is parsed and hashed from the
+     * request stream, so uploads of any size are processed with constant memory and are not written to
+     * disk first. Other parts are skipped.
      * 
-     * @param file MultipartFile uploaded by the user.
+     * @param request The multipart/form-data request with a "file" part.
      * @return ResponseEntity with success or error message.
      */
     @PostMapping
-    public ResponseEntity<String> uploadFile(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<String> uploadFile(HttpServletRequest request) {
         try {
-            // Check if the file is empty
-            if (file.isEmpty()) {
-                return ResponseEntity.status(400).body("File is empty");
+            String boundary = MultipartReader.boundary(request.getContentType());
+            if (boundary == null) {
+                return ResponseEntity.status(400).body("Expected a multipart/form-data request");
             }
 
-            // Extract the original file name
-            String originalFileName = file.getOriginalFilename();
-            if (originalFileName == null || originalFileName.isEmpty()) {
-                return ResponseEntity.status(400).body("Invalid file name.");
-            }
+            MultipartReader reader = new MultipartReader(request.getInputStream(), boundary);
+            MultipartReader.Part part;
+            while ((part = reader.next()) != null) {
+                if (!"file".equals(part.getName())) {
+                    continue;
+                }
 
-            // Process the file and extract metadata
-            fileMetadataService.processFile(file, originalFileName);
+                // Extract the original file name
+                String originalFileName = part.getFileName();
+                if (originalFileName == null || originalFileName.isEmpty()) {
+                    return ResponseEntity.status(400).body("Invalid file name.");
+                }
 
-            return ResponseEntity.ok("File uploaded and metadata extracted successfully");
+                // Check if the file is empty
+                PushbackInputStream content = new PushbackInputStream(part.getInputStream());
+                int first = content.read();
+                if (first < 0) {
+                    return ResponseEntity.status(400).body("File is empty");
+                }
+                content.unread(first);
+
+                // Process the file and extract metadata
+                fileMetadataService.processUpload(content, originalFileName);
+
+                return ResponseEntity.ok("File uploaded and metadata extracted successfully");
+            }
+            return ResponseEntity.status(400).body("Missing file part");
         } catch (Exception e) {
             // Log the error details
             logger.error("Error processing file upload", e);
 
-            // Catch general Exception since processFile may throw Exception
+            // Catch general Exception since processUpload may throw Exception
             return ResponseEntity.status(500).body("Failed to process file: " + e.getMessage());
         }
     }
 
+    /**
+     * Endpoint to upload many files in one request: a multipart/form-data body with any number of file
+     * parts, or a zip or tar archive sent as the body (Content-Type application/zip, application/x-tar or
+     * application/gzip). Files are parsed concurrently and saved in batches; the response lists the
+     * outcome of every file in the order received.
+     *
+     * @param request        The request.
+     * @param expandArchives Whether file parts named like a zip or tar archive are expanded into their entries.
+     * @return ResponseEntity with the upload manifest, or an error message.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<?> uploadBatch(HttpServletRequest request,
+                                         @RequestParam(value = "expandArchives", defaultValue = "true") boolean expandArchives) {
+        try {
+            UploadManifest manifest;
+            String boundary = MultipartReader.boundary(request.getContentType());
+            if (boundary != null) {
+                manifest = uploadBatchService.uploadParts(new MultipartReader(request.getInputStream(), boundary), expandArchives);
+            } else {
+                UploadBatchService.ArchiveFormat format = UploadBatchService.ArchiveFormat.ofContentType(request.getContentType());
+                if (format == null) {
+                    return ResponseEntity.status(400).body("Expected a multipart/form-data request or a zip or tar archive");
+                }
+                manifest = uploadBatchService.uploadArchive(request.getInputStream(), format);
+            }
+
+            // The files received before the body broke off are still listed
+            return manifest.error() != null ? ResponseEntity.status(400).body(manifest) : ResponseEntity.ok(manifest);
+        } catch (Exception e) {
+            // Log the error details
+            logger.error("Error processing batch upload", e);
+
+            return ResponseEntity.status(500).body("Failed to process batch upload: " + e.getMessage());
+        }
+    }
+
     /**
      * New endpoint to handle folder path uploads.
+     * The folder is processed in the background; progress can be followed at /api/jobs/{id}.
      * 
      * @param folderPath Path of the folder to process.
-     * @return ResponseEntity with success or error message.
+     * @param incremental Only re-extract new or changed files and remove metadata of deleted files.
+     * @return ResponseEntity with the queued ingestion job or an error message.
      */
     @PostMapping("/folder")
-    public ResponseEntity<String> uploadFolder(@RequestParam("folderPath") String folderPath) {
+    public ResponseEntity<?> uploadFolder(@RequestParam("folderPath") String folderPath,
+                                          @RequestParam(value = "incremental", defaultValue = "false") boolean incremental) {
         try {
             // Validate the folder path
             File folder = new File(folderPath);
@@ -67,15 +139,17 @@ public class FileUploadController {
                 return ResponseEntity.status(400).body("Invalid folder path.");
             }
 
-            // Process the folder and extract metadata for all files inside the folder
-            fileMetadataService.processFolder(folder);
+            // Queue the folder for metadata extraction of all files inside the folder
+            IngestionJob job = ingestionJobService.submit(folder, incremental);
 
-            return ResponseEntity.ok("Folder processed and metadata extracted successfully.");
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/jobs/" + job.getId()))
+                    .body(job);
         } catch (Exception e) {
             // Log the error details
             logger.error("Error processing folder upload", e);
 
-            // Catch general Exception since processFolder may throw Exception
+            // Catch general Exception since submit may throw Exception
             return ResponseEntity.status(500).body("Failed to process folder: " + e.getMessage());
         }
     }
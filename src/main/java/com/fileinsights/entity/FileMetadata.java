@@ -1,5 +1,7 @@
 package com.fileinsights.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fileinsights.util.PathKeys;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
@@ -8,12 +10,21 @@ import java.util.Objects;
 
 @Entity
 @Table(name = "file_metadata", uniqueConstraints = {
-    @UniqueConstraint(columnNames = {"path", "name"})
+    @UniqueConstraint(name = "uk_file_metadata_path_hash", columnNames = {"path_hash"})
+}, indexes = {
+    @Index(name = "idx_file_metadata_parent_key_id", columnList = "parent_key, id"),
+    @Index(name = "idx_file_metadata_size_content_hash", columnList = "size, content_hash"),
+    @Index(name = "idx_file_metadata_mtime_size", columnList = "mtime, size"),
+    @Index(name = "idx_file_metadata_ctime_size", columnList = "ctime, size")
 })
 public class FileMetadata {
 
+    // Pooled table-based IDs: IDENTITY would force Hibernate to issue every INSERT on its own
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "file_metadata_id")
+    @TableGenerator(name = "file_metadata_id", table = "id_generator",
+            pkColumnName = "sequence_name", valueColumnName = "next_val",
+            pkColumnValue = "file_metadata", allocationSize = 100)
     private Long id;
 
     @Column(nullable = false, length = 1024)
@@ -21,6 +32,18 @@ public class FileMetadata {
     @Size(max = 1024)
     private String path; // Full file path
 
+    // Derived from path (see PathKeys): SHA-256 for point lookups, parent directory for folder ranges
+    @Column(name = "path_hash", nullable = false, columnDefinition = "BINARY(32)")
+    private byte[] pathHash;
+
+    // Indexed by idx_file_metadata_parent_path (parent_path(255)), a prefix index declared in db/mysql-migration.sql
+    @Column(name = "parent_path", nullable = false, length = 1024)
+    private String parentPath;
+
+    // parent_path cut to PathKeys.PARENT_KEY_LENGTH, indexed whole with the ID for keyset pages of a folder
+    @Column(name = "parent_key", nullable = false, length = PathKeys.PARENT_KEY_LENGTH)
+    private String parentKey;
+
     @Column(nullable = false, length = 255)
     @NotBlank
     @Size(max = 255)
@@ -29,6 +52,16 @@ public class FileMetadata {
     @Column(nullable = false)
     private long size; // File size in bytes
 
+    @Column(name = "content_type", length = 255)
+    private String contentType; // MIME type detected by Tika, null if parsing failed
+
+    // xxHash fingerprints (see ContentHasher), null until the file has been hashed
+    @Column(name = "partial_hash", length = 16)
+    private String partialHash;
+
+    @Column(name = "content_hash", length = 32)
+    private String contentHash;
+
     @Temporal(TemporalType.TIMESTAMP)
     private Date ctime; // File creation time
 
@@ -53,6 +86,23 @@ public class FileMetadata {
 
     public void setPath(String path) {
         this.path = path;
+        this.pathHash = path != null ? PathKeys.hash(path) : null;
+        this.parentPath = path != null ? PathKeys.parent(path) : null;
+        this.parentKey = parentPath != null ? PathKeys.parentKey(parentPath) : null;
+    }
+
+    @JsonIgnore
+    public byte[] getPathHash() {
+        return pathHash;
+    }
+
+    public String getParentPath() {
+        return parentPath;
+    }
+
+    @JsonIgnore
+    public String getParentKey() {
+        return parentKey;
     }
 
     public String getName() {
@@ -74,6 +124,30 @@ public class FileMetadata {
         this.size = size;
     }
 
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType != null && contentType.length() > 255 ? contentType.substring(0, 255) : contentType;
+    }
+
+    public String getPartialHash() {
+        return partialHash;
+    }
+
+    public void setPartialHash(String partialHash) {
+        this.partialHash = partialHash;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
     public Date getCtime() {
         return ctime;
     }
@@ -106,6 +180,8 @@ public class FileMetadata {
                 ", path='" + path + '\'' +
                 ", name='" + name + '\'' +
                 ", size=" + size +
+                ", contentType='" + contentType + '\'' +
+                ", contentHash='" + contentHash + '\'' +
                 ", ctime=" + ctime +
                 ", mtime=" + mtime +
                 ", atime=" + atime +
@@ -0,0 +1,67 @@
+package com.fileinsights.entity;
+
+import jakarta.persistence.*;
+import java.util.Date;
+
+/**
+ * Pre-aggregated file counts and sizes per folder, access day and content type.
+ *
+ * Rows are maintained incrementally as metadata is saved and deleted (see {@code FileRollupService}),
+ * so analytics read a few rollup rows instead of scanning file_metadata. Files are counted in their
+ * parent directory only; subtree totals are a range over {@code folder}.
+ */
+@Entity
+@Table(name = "file_rollup", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_file_rollup_key", columnNames = {"folder_hash", "access_day", "content_type"})
+})
+public class FileRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "folder_hash", nullable = false, columnDefinition = "BINARY(32)")
+    private byte[] folderHash; // SHA-256 of folder, for the unique key
+
+    // Indexed by idx_file_rollup_folder (folder(255)), a prefix index declared in db/mysql-migration.sql
+    @Column(nullable = false, length = 1024)
+    private String folder; // Parent directory, ending with a separator
+
+    @Temporal(TemporalType.DATE)
+    @Column(name = "access_day", nullable = false)
+    private Date accessDay; // Day of the files' access time (epoch day 0 when unknown)
+
+    @Column(name = "content_type", nullable = false, length = 255)
+    private String contentType; // Empty when unknown
+
+    @Column(name = "file_count", nullable = false)
+    private long fileCount;
+
+    @Column(name = "total_bytes", nullable = false)
+    private long totalBytes;
+
+    // Getters
+    public Long getId() {
+        return id;
+    }
+
+    public String getFolder() {
+        return folder;
+    }
+
+    public Date getAccessDay() {
+        return accessDay;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+}
@@ -3,10 +3,12 @@ package com.fileinsights.entity;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.elasticsearch.annotations.Document;
 
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
-@Document(indexName = "tika_metadata")
+// The index and its mappings are managed by ElasticsearchService from an index template
+@Document(indexName = "tika_metadata", createIndex = false)
 public class TikaMetadata {
 
     @Id
@@ -14,7 +16,19 @@ public class TikaMetadata {
 
     private String fileName;
     private String content;
-    
+
+    // Common Tika keys as typed fields, so they can be sorted, ranged and aggregated on
+    private String contentType;
+    private String author;
+    private Date created;
+    private Date modified;
+    private Integer pageCount;
+
+    // Extraction limits hit while parsing; content is partial or empty when any of these is set
+    private boolean contentTruncated;
+    private boolean parseTimedOut;
+    private boolean contentSkipped;
+
     // A map to store any additional metadata fields
     private Map<String, String> metadataMap = new HashMap<>();
 
@@ -56,6 +70,72 @@ public class TikaMetadata {
         this.content = content;
     }
 
+    // Getters and setters for the typed metadata fields
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(String author) {
+        this.author = author;
+    }
+
+    public Date getCreated() {
+        return created;
+    }
+
+    public void setCreated(Date created) {
+        this.created = created;
+    }
+
+    public Date getModified() {
+        return modified;
+    }
+
+    public void setModified(Date modified) {
+        this.modified = modified;
+    }
+
+    public Integer getPageCount() {
+        return pageCount;
+    }
+
+    public void setPageCount(Integer pageCount) {
+        this.pageCount = pageCount;
+    }
+
+    // Getters and setters for the extraction flags
+    public boolean isContentTruncated() {
+        return contentTruncated;
+    }
+
+    public void setContentTruncated(boolean contentTruncated) {
+        this.contentTruncated = contentTruncated;
+    }
+
+    public boolean isParseTimedOut() {
+        return parseTimedOut;
+    }
+
+    public void setParseTimedOut(boolean parseTimedOut) {
+        this.parseTimedOut = parseTimedOut;
+    }
+
+    public boolean isContentSkipped() {
+        return contentSkipped;
+    }
+
+    public void setContentSkipped(boolean contentSkipped) {
+        this.contentSkipped = contentSkipped;
+    }
+
     // Getter and setter for metadataMap
     public Map<String, String> getMetadataMap() {
         return metadataMap;
@@ -0,0 +1,14 @@
+package com.fileinsights.model;
+
+import java.util.List;
+
+/**
+ * Files with identical content.
+ *
+ * @param contentHash      The shared content hash.
+ * @param size             The size of each copy.
+ * @param paths            The paths of all copies.
+ * @param reclaimableBytes Bytes freed by keeping a single copy.
+ */
+public record DuplicateGroup(String contentHash, long size, List<String> paths, long reclaimableBytes) {
+}
@@ -0,0 +1,14 @@
+package com.fileinsights.model;
+
+import com.fileinsights.entity.TikaMetadata;
+import com.fileinsights.util.ContentHasher;
+
+/**
+ * Everything extracted from a single read of a file.
+ *
+ * @param tikaMetadata The advanced metadata parsed by Tika.
+ * @param hashes       The content hashes, or null if hashing was not requested or the parse of a file timed out.
+ * @param bytesRead    Bytes read from the file or stream.
+ */
+public record FileExtraction(TikaMetadata tikaMetadata, ContentHasher.Hashes hashes, long bytesRead) {
+}
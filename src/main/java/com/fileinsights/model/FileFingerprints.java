@@ -0,0 +1,112 @@
+package com.fileinsights.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Known (path, size, mtime) tuples of a folder, used by incremental scans to skip unchanged files
+ * and to find files that were deleted since the last scan.
+ *
+ * Only the path keys are objects; ids, sizes, mtimes and the seen flags live in primitive arrays
+ * indexed by the slot stored in the map. Loading is single-threaded; afterwards the ingestion stages
+ * read the arrays and set seen flags concurrently. Each slot's flag is written by at most one file,
+ * and the final read happens after all stages have drained, so plain array writes are sufficient.
+ */
+public class FileFingerprints {
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    private String[] paths = new String[1024];
+    private long[] ids = new long[1024];
+    private long[] sizes = new long[1024];
+    private long[] mtimeSeconds = new long[1024];
+    private byte[] seen = new byte[1024];
+    private int count;
+
+    /**
+     * Adds a stored file. Only called while loading, before the scan starts.
+     */
+    public void add(long id, String path, long size, long mtimeMillis) {
+        if (count == paths.length) {
+            int capacity = count * 2;
+            paths = Arrays.copyOf(paths, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            mtimeSeconds = Arrays.copyOf(mtimeSeconds, capacity);
+            seen = Arrays.copyOf(seen, capacity);
+        }
+        paths[count] = path;
+        ids[count] = id;
+        sizes[count] = size;
+        mtimeSeconds[count] = mtimeMillis / 1000;
+        slots.put(path, count);
+        count++;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Marks a path as still present on disk.
+     */
+    public void markSeen(String path) {
+        Integer slot = slots.get(path);
+        if (slot != null) {
+            seen[slot] = 1;
+        }
+    }
+
+    /**
+     * Checks whether a file is stored with the same size and modification time.
+     * Modification times are compared at second precision, which is what the database column keeps.
+     */
+    public boolean isUnchanged(String path, long size, long mtimeMillis) {
+        Integer slot = slots.get(path);
+        return slot != null && sizes[slot] == size && mtimeSeconds[slot] == mtimeMillis / 1000;
+    }
+
+    /**
+     * Stored files that were not seen during the scan, excluding those below folders that could not be read.
+     *
+     * @param unreadablePrefixes Folder prefixes whose contents are unknown.
+     * @return The IDs and paths of the deleted files.
+     */
+    public Deleted unseen(List<String> unreadablePrefixes) {
+        Deleted deleted = new Deleted();
+        for (int slot = 0; slot < count; slot++) {
+            if (seen[slot] == 0 && !startsWithAny(paths[slot], unreadablePrefixes)) {
+                deleted.ids.add(ids[slot]);
+                deleted.paths.add(paths[slot]);
+            }
+        }
+        return deleted;
+    }
+
+    private static boolean startsWithAny(String path, List<String> prefixes) {
+        for (String prefix : prefixes) {
+            if (path.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Files found to be deleted by a scan.
+     */
+    public static class Deleted {
+        private final List<Long> ids = new ArrayList<>();
+        private final List<String> paths = new ArrayList<>();
+
+        public List<Long> getIds() {
+            return ids;
+        }
+
+        public List<String> getPaths() {
+            return paths;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.fileinsights.model;
+
+/**
+ * Fingerprints computed for a stored file.
+ *
+ * @param id          The FileMetadata ID.
+ * @param size        The size the file had when it was hashed.
+ * @param partialHash The partial hash, or null if not computed.
+ * @param contentHash The full content hash, or null if not computed.
+ */
+public record FileHashes(long id, long size, String partialHash, String contentHash) {
+}
@@ -0,0 +1,14 @@
+package com.fileinsights.model;
+
+import java.time.LocalDate;
+
+/**
+ * File count, size and most recent access of a folder.
+ *
+ * @param folder        The folder, ending with a separator.
+ * @param fileCount     Number of files.
+ * @param totalBytes    Sum of their sizes.
+ * @param lastAccessDay Day of the most recent access (1970-01-01 when no file has an access time).
+ */
+public record FolderStats(String folder, long fileCount, long totalBytes, LocalDate lastAccessDay) {
+}
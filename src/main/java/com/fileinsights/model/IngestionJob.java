@@ -0,0 +1,255 @@
+package com.fileinsights.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of an asynchronous folder ingestion or folder reset.
+ * Counters are updated concurrently by the ingestion stages and read by the job-status API.
+ */
+public class IngestionJob {
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+    }
+
+    public enum Type {
+        INGEST, RESET, DUPLICATE_SCAN
+    }
+
+    private final String id = UUID.randomUUID().toString();
+    private final Type type;
+    private final String folderPath;
+    private final boolean incremental;
+    private final Date createdAt = new Date();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile Date startedAt;
+    private volatile Date finishedAt;
+    private volatile boolean walkComplete;
+    private volatile boolean cancelRequested;
+    private volatile String error;
+
+    private final AtomicLong filesDiscovered = new AtomicLong();
+    private final AtomicLong filesProcessed = new AtomicLong();
+    private final AtomicLong filesFailed = new AtomicLong();
+    private final AtomicLong filesIndexFailed = new AtomicLong();
+    private final AtomicLong filesUnchanged = new AtomicLong();
+    private final AtomicLong filesDeleted = new AtomicLong();
+    private final AtomicLong bytesProcessed = new AtomicLong();
+
+    @JsonIgnore
+    private volatile Future<?> future;
+
+    public IngestionJob(String folderPath, boolean incremental) {
+        this(Type.INGEST, folderPath, incremental);
+    }
+
+    public IngestionJob(Type type, String folderPath, boolean incremental) {
+        this.type = type;
+        this.folderPath = folderPath;
+        this.incremental = incremental;
+    }
+
+    // Lifecycle
+    public void markRunning() {
+        this.startedAt = new Date();
+        this.status = Status.RUNNING;
+    }
+
+    public void markFinished(Status status, String error) {
+        this.finishedAt = new Date();
+        this.error = error;
+        this.status = status;
+    }
+
+    public void markWalkComplete() {
+        this.walkComplete = true;
+    }
+
+    public void requestCancel() {
+        this.cancelRequested = true;
+    }
+
+    // Progress updates
+    public void fileDiscovered() {
+        filesDiscovered.incrementAndGet();
+    }
+
+    /**
+     * Records several files found at once, e.g. the duplicate candidates of one file size.
+     */
+    public void filesDiscovered(long count) {
+        filesDiscovered.addAndGet(count);
+    }
+
+    public void fileProcessed(long bytes) {
+        filesProcessed.incrementAndGet();
+        bytesProcessed.addAndGet(bytes);
+    }
+
+    public void fileFailed() {
+        filesFailed.incrementAndGet();
+    }
+
+    /**
+     * Records a document that Elasticsearch rejected after its basic metadata was already saved.
+     */
+    public void fileIndexFailed() {
+        filesIndexFailed.incrementAndGet();
+    }
+
+    /**
+     * Records a file skipped by an incremental scan because its size and mtime did not change.
+     */
+    public void fileUnchanged() {
+        filesUnchanged.incrementAndGet();
+    }
+
+    /**
+     * Records stored files removed because they no longer exist on disk, or because their folder was reset.
+     */
+    public void filesDeleted(long count) {
+        filesDeleted.addAndGet(count);
+    }
+
+    // Getters
+    public String getId() {
+        return id;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getFolderPath() {
+        return folderPath;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public Date getStartedAt() {
+        return startedAt;
+    }
+
+    public Date getFinishedAt() {
+        return finishedAt;
+    }
+
+    public boolean isWalkComplete() {
+        return walkComplete;
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public long getFilesDiscovered() {
+        return filesDiscovered.get();
+    }
+
+    public long getFilesProcessed() {
+        return filesProcessed.get();
+    }
+
+    public long getFilesFailed() {
+        return filesFailed.get();
+    }
+
+    public long getFilesIndexFailed() {
+        return filesIndexFailed.get();
+    }
+
+    public long getFilesUnchanged() {
+        return filesUnchanged.get();
+    }
+
+    public long getFilesDeleted() {
+        return filesDeleted.get();
+    }
+
+    public long getBytesProcessed() {
+        return bytesProcessed.get();
+    }
+
+    public boolean isDone() {
+        return status == Status.COMPLETED || status == Status.FAILED || status == Status.CANCELLED;
+    }
+
+    /**
+     * Average throughput since the job started.
+     *
+     * @return Bytes processed per second, or 0 if the job has not started.
+     */
+    public long getBytesPerSecond() {
+        long elapsed = getElapsedMillis();
+        return elapsed > 0 ? bytesProcessed.get() * 1000 / elapsed : 0;
+    }
+
+    /**
+     * Estimated time to completion, based on the file rate so far.
+     * Until the walk has finished the number of files is still growing, so the estimate is a lower bound.
+     *
+     * @return Remaining seconds, or null if no estimate is possible yet.
+     */
+    public Long getEtaSeconds() {
+        if (isDone()) {
+            return 0L;
+        }
+        long elapsed = getElapsedMillis();
+        long done = filesProcessed.get() + filesFailed.get() + filesUnchanged.get();
+        if (elapsed <= 0 || done == 0) {
+            return null;
+        }
+        long remaining = Math.max(0, filesDiscovered.get() - done);
+        return remaining * elapsed / done / 1000;
+    }
+
+    public long getElapsedMillis() {
+        if (startedAt == null) {
+            return 0;
+        }
+        long end = finishedAt != null ? finishedAt.getTime() : System.currentTimeMillis();
+        return end - startedAt.getTime();
+    }
+
+    public Future<?> getFuture() {
+        return future;
+    }
+
+    public void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    @Override
+    public String toString() {
+        return "IngestionJob{" +
+                "id='" + id + '\'' +
+                ", type=" + type +
+                ", folderPath='" + folderPath + '\'' +
+                ", status=" + status +
+                ", filesDiscovered=" + filesDiscovered +
+                ", filesProcessed=" + filesProcessed +
+                ", filesFailed=" + filesFailed +
+                ", filesDeleted=" + filesDeleted +
+                '}';
+    }
+}
@@ -0,0 +1,12 @@
+package com.fileinsights.model;
+
+/**
+ * Files created in a period, for growth over time.
+ *
+ * @param period          The period, e.g. "2024-05" for a month.
+ * @param fileCount       Files created in the period.
+ * @param totalBytes      Their total size.
+ * @param cumulativeBytes Total size of the files created up to and including this period, within the queried window.
+ */
+public record PeriodStats(String period, long fileCount, long totalBytes, long cumulativeBytes) {
+}
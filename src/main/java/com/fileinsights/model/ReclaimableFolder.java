@@ -0,0 +1,11 @@
+package com.fileinsights.model;
+
+/**
+ * Redundant copies of duplicate files held by a folder.
+ *
+ * @param folder           The folder, ending with a separator.
+ * @param redundantFiles   Copies in this folder beyond the one copy kept per duplicate group.
+ * @param reclaimableBytes Their total size.
+ */
+public record ReclaimableFolder(String folder, long redundantFiles, long reclaimableBytes) {
+}
@@ -0,0 +1,84 @@
+package com.fileinsights.model;
+
+import com.fileinsights.entity.FileMetadata;
+import com.fileinsights.util.PathKeys;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Changes to the analytics rollup collected while saving or deleting a batch of metadata rows.
+ * Files sharing a rollup key collapse into one entry, so a batch touches each rollup row once.
+ * Access days are UTC days, the same as DATE(atime) over the UTC timestamps in file_metadata.
+ */
+public class RollupDelta {
+
+    private final Map<Key, long[]> changes = new HashMap<>();
+
+    /**
+     * Counts a stored file.
+     */
+    public void add(FileMetadata fileMetadata) {
+        add(fileMetadata.getParentPath(), fileMetadata.getAtime(), fileMetadata.getContentType(), fileMetadata.getSize(), 1);
+    }
+
+    /**
+     * Uncounts a file that is about to be deleted or overwritten.
+     */
+    public void remove(FileMetadata fileMetadata) {
+        add(fileMetadata.getParentPath(), fileMetadata.getAtime(), fileMetadata.getContentType(), fileMetadata.getSize(), -1);
+    }
+
+    /**
+     * Adds a file by its rollup fields.
+     *
+     * @param parentPath  The parent directory of the file.
+     * @param atime       The access time, or null.
+     * @param contentType The content type, or null.
+     * @param size        The file size.
+     * @param sign        1 to count the file, -1 to uncount it.
+     */
+    public void add(String parentPath, Date atime, String contentType, long size, int sign) {
+        Key key = new Key(parentPath, accessDay(atime), contentType != null ? contentType : "");
+        long[] change = changes.computeIfAbsent(key, k -> new long[2]);
+        change[0] += sign;
+        change[1] += sign * size;
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * Non-zero changes in a stable key order, so concurrent transactions lock rollup rows in the same order.
+     */
+    public List<Change> changes() {
+        List<Change> result = new ArrayList<>();
+        changes.forEach((key, change) -> {
+            if (change[0] != 0 || change[1] != 0) {
+                result.add(new Change(key.folder, PathKeys.hash(key.folder), key.accessDay, key.contentType, change[0], change[1]));
+            }
+        });
+        result.sort(Comparator.comparing(Change::folder).thenComparing(Change::accessDay).thenComparing(Change::contentType));
+        return result;
+    }
+
+    private static LocalDate accessDay(Date atime) {
+        return atime != null ? atime.toInstant().atZone(ZoneOffset.UTC).toLocalDate() : LocalDate.EPOCH;
+    }
+
+    private record Key(String folder, LocalDate accessDay, String contentType) {
+    }
+
+    /**
+     * The change to one rollup row.
+     */
+    public record Change(String folder, byte[] folderHash, LocalDate accessDay, String contentType, long fileCount, long totalBytes) {
+    }
+}
@@ -0,0 +1,12 @@
+package com.fileinsights.model;
+
+/**
+ * Files whose size falls in [minBytes, maxBytes), for the size histogram.
+ *
+ * @param minBytes   Smallest size in the bucket.
+ * @param maxBytes   Size upper bound (exclusive).
+ * @param fileCount  Number of files.
+ * @param totalBytes Sum of their sizes.
+ */
+public record SizeBucket(long minBytes, long maxBytes, long fileCount, long totalBytes) {
+}
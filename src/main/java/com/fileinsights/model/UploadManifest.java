@@ -0,0 +1,19 @@
+package com.fileinsights.model;
+
+import java.util.List;
+
+/**
+ * Result of a batch upload, with one entry per received file in the order the files arrived.
+ *
+ * @param files       Files received.
+ * @param stored      Files whose metadata was saved to MySQL and Elasticsearch.
+ * @param failed      Files that failed.
+ * @param storedBytes Total size of the stored files.
+ * @param elapsedMs   Time from the start of the request until the last write.
+ * @param error       Why the request body could not be read to its end, or null. Files received
+ *                    before that point are still processed and listed.
+ * @param results     The outcome of each file.
+ */
+public record UploadManifest(int files, int stored, int failed, long storedBytes, long elapsedMs, String error,
+                             List<UploadResult> results) {
+}
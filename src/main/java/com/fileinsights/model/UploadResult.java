@@ -0,0 +1,31 @@
+package com.fileinsights.model;
+
+import com.fileinsights.entity.FileMetadata;
+
+/**
+ * Outcome of one file of a batch upload.
+ *
+ * @param name        The file name as uploaded, including its folders inside an archive.
+ * @param path        The path the metadata is stored under, or null if the file failed before it was parsed.
+ * @param size        The size in bytes, or null if the file failed before it was parsed.
+ * @param contentType The detected content type, or null.
+ * @param contentHash The full content hash, or null.
+ * @param stored      Whether the metadata was saved to MySQL and Elasticsearch.
+ * @param error       Why the file failed, or null.
+ */
+public record UploadResult(String name, String path, Long size, String contentType, String contentHash,
+                           boolean stored, String error) {
+
+    public static UploadResult stored(String name, FileMetadata metadata) {
+        return new UploadResult(name, metadata.getPath(), metadata.getSize(), metadata.getContentType(),
+                metadata.getContentHash(), true, null);
+    }
+
+    public static UploadResult failed(String name, FileMetadata metadata, String error) {
+        if (metadata == null) {
+            return new UploadResult(name, null, null, null, null, false, error);
+        }
+        return new UploadResult(name, metadata.getPath(), metadata.getSize(), metadata.getContentType(),
+                metadata.getContentHash(), false, error);
+    }
+}
@@ -1,70 +1,308 @@
 package com.fileinsights.repository;
 
 import com.fileinsights.entity.FileMetadata;
+import com.fileinsights.util.PathKeys;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface FileMetadataRepository extends JpaRepository<FileMetadata, Long> {
 
     /**
-     * Find metadata for multiple file paths.
+     * Find metadata for multiple path hashes.
+     *
+     * @param pathHashes List of path hashes (see {@link PathKeys#hash}) to query.
+     * @return List of FileMetadata for the specified hashes.
+     */
+    List<FileMetadata> findByPathHashIn(List<byte[]> pathHashes);
+
+    /**
+     * Find metadata by a single path hash.
+     *
+     * @param pathHash The path hash to query.
+     * @return FileMetadata for the specified hash, or null if not found.
+     */
+    FileMetadata findByPathHash(byte[] pathHash);
+
+    /**
+     * Find metadata for multiple file paths, through the unique path hash index.
      *
      * @param paths List of file paths to query.
      * @return List of FileMetadata for the specified file paths.
      */
-    List<FileMetadata> findByPathIn(List<String> paths);
+    default List<FileMetadata> findByPathIn(List<String> paths) {
+        List<byte[]> hashes = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            hashes.add(PathKeys.hash(path));
+        }
+        return findByPathHashIn(hashes);
+    }
 
     /**
-     * Find metadata by a single file path.
+     * Find metadata by a single file path, through the unique path hash index.
      *
      * @param path The file path to query.
      * @return FileMetadata for the specified path, or null if not found.
      */
-    FileMetadata findByPath(String path);
+    default FileMetadata findByPath(String path) {
+        return findByPathHash(PathKeys.hash(path));
+    }
+
+    /**
+     * Delete metadata by path hash.
+     *
+     * @param pathHash The path hash for which metadata is to be deleted.
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM FileMetadata f WHERE f.pathHash = :pathHash")
+    int deleteByPathHash(@Param("pathHash") byte[] pathHash);
 
     /**
      * Delete metadata by file path.
      *
      * @param path The file path for which metadata is to be deleted.
      */
-    void deleteByPath(String path);
+    default void deleteByPath(String path) {
+        deleteByPathHash(PathKeys.hash(path));
+    }
+
+    /**
+     * Keyset page over all metadata: the rows following a given ID, in ID order.
+     * Each page is a primary key range read, however deep the client has paged.
+     *
+     * @param afterId The last ID of the previous page (0 for the first page).
+     * @param limit   The page size.
+     * @return The next page of FileMetadata.
+     */
+    List<FileMetadata> findByIdGreaterThanOrderByIdAsc(Long afterId, Limit limit);
+
+    /**
+     * Keyset page over the files below a folder, in (parent key, ID) order: the rows following a given
+     * position of the (parent_key, id) index. Each page seeks to its position and reads the index in order,
+     * however deep the client has paged. The parent_path condition only filters anything when the folder
+     * prefix is longer than the parent key.
+     *
+     * @param keyPattern    LIKE pattern on the parent key, with '\' escaping wildcards in the literal part.
+     * @param parentPattern LIKE pattern on the parent directory, with '\' escaping wildcards in the literal part.
+     * @param afterKey      The parent key of the last row of the previous page (empty for the first page).
+     * @param afterId       The ID of the last row of the previous page (0 for the first page).
+     * @param limit         The page size.
+     * @return The next page of FileMetadata.
+     */
+    @Query("SELECT f FROM FileMetadata f WHERE f.parentKey LIKE :keyPattern ESCAPE '\\' " +
+            "AND f.parentPath LIKE :parentPattern ESCAPE '\\' " +
+            "AND (f.parentKey > :afterKey OR (f.parentKey = :afterKey AND f.id > :afterId)) " +
+            "ORDER BY f.parentKey, f.id")
+    List<FileMetadata> findFolderPage(@Param("keyPattern") String keyPattern,
+                                      @Param("parentPattern") String parentPattern,
+                                      @Param("afterKey") String afterKey,
+                                      @Param("afterId") long afterId,
+                                      Limit limit);
+
+    /**
+     * Stream every row in ID order, for exports. MySQL streams the rows instead of buffering the result;
+     * the stream must be consumed and closed inside a transaction.
+     *
+     * @return Stream of all FileMetadata.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "-2147483648"))
+    @Query("SELECT f FROM FileMetadata f ORDER BY f.id")
+    Stream<FileMetadata> streamAll();
+
+    /**
+     * Stream the rows whose parent directory matches a pattern, for exports.
+     *
+     * @param parentPattern LIKE pattern on the parent directory, with '\' escaping wildcards in the literal part.
+     * @return Stream of matching FileMetadata.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "-2147483648"))
+    @Query("SELECT f FROM FileMetadata f WHERE f.parentPath LIKE :parentPattern ESCAPE '\\'")
+    Stream<FileMetadata> streamByParentPathLike(@Param("parentPattern") String parentPattern);
+
+    /**
+     * Stream the fingerprint (id, path, size, mtime) of every file whose parent directory matches a pattern.
+     * Only scalar columns are selected and MySQL streams the rows (fetch size Integer.MIN_VALUE),
+     * so memory stays flat; the stream must be consumed and closed inside a transaction.
+     *
+     * @param parentPattern LIKE pattern on the parent directory, with '\' escaping wildcards in the literal part.
+     * @return Stream of [id, path, size, mtime] rows.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "-2147483648"))
+    @Query("SELECT f.id, f.path, f.size, f.mtime FROM FileMetadata f WHERE f.parentPath LIKE :parentPattern ESCAPE '\\'")
+    Stream<Object[]> streamFingerprintsByParentPathLike(@Param("parentPattern") String parentPattern);
 
     /**
-     * Delete metadata for multiple file paths.
+     * Delete up to {@code limit} rows whose parent directory matches a pattern, in a transaction of its own.
+     * Callers repeat until fewer than {@code limit} rows are deleted, which keeps row locks and
+     * undo log small however many rows match.
      *
-     * @param paths List of file paths to delete metadata for.
+     * @param parentPattern LIKE pattern on the parent directory, with '\' escaping wildcards in the literal part.
+     * @param limit       Maximum number of rows to delete.
+     * @return Number of rows deleted.
      */
-    void deleteByPathIn(List<String> paths);
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM file_metadata WHERE parent_path LIKE :parentPattern ESCAPE '\\\\' LIMIT :limit", nativeQuery = true)
+    int deleteChunkByParentPathLike(@Param("parentPattern") String parentPattern, @Param("limit") int limit);
 
     /**
-     * Find metadata by file path that starts with a specific string.
+     * Fetch the path and the fields the analytics rollup is keyed on, for rows about to be deleted.
      *
-     * @param pathPrefix The prefix of the file path.
-     * @return List of FileMetadata for the paths that start with the specified prefix.
+     * @param ids The row IDs.
+     * @return List of [id, path, parentPath, atime, contentType, size].
      */
-    List<FileMetadata> findByPathStartingWith(String pathPrefix);
+    @Query("SELECT f.id, f.path, f.parentPath, f.atime, f.contentType, f.size FROM FileMetadata f WHERE f.id IN :ids")
+    List<Object[]> findRollupFieldsByIdIn(@Param("ids") List<Long> ids);
 
     /**
-     * Count files grouped by age (access time).
-     * Groups:
-     * - Last 30 Days
-     * - Last Year
-     * - Older
+     * Count files and bytes per power-of-two size class, in one aggregate query.
+     * Class {@code n} holds sizes in [2^n, 2^(n+1)); empty files are class -1.
+     * Without a folder filter this reads only the (mtime, size) index, and only the time window's range of it.
      *
-     * @return List of age groups and their respective file counts.
+     * @param parentPattern LIKE pattern on the parent directory, with '\' escaping wildcards in the literal part,
+     *                      or null for all files.
+     * @param from          Earliest modification time, or null.
+     * @param to            Modification time upper bound (exclusive), or null.
+     * @return List of [sizeClass, fileCount, totalBytes], smallest class first.
      */
-    @Query("SELECT " +
-            "CASE " +
-            "WHEN TIMESTAMPDIFF(DAY, f.atime, CURRENT_DATE) <= 30 THEN 'Last 30 Days' " +
-            "WHEN TIMESTAMPDIFF(DAY, f.atime, CURRENT_DATE) <= 365 THEN 'Last Year' " +
-            "ELSE 'Older' END AS ageGroup, " +
-            "COUNT(f) " +
-            "FROM FileMetadata f " +
-            "GROUP BY ageGroup")
-    List<Object[]> countFilesByAge();
+    @Query(value = "SELECT CASE WHEN size = 0 THEN -1 ELSE FLOOR(LOG2(size)) END AS size_class, COUNT(*), SUM(size) " +
+            "FROM file_metadata WHERE (:parentPattern IS NULL OR parent_path LIKE :parentPattern ESCAPE '\\\\') " +
+            "AND (:from IS NULL OR mtime >= :from) AND (:to IS NULL OR mtime < :to) " +
+            "GROUP BY size_class ORDER BY size_class", nativeQuery = true)
+    List<Object[]> sizeHistogram(@Param("parentPattern") String parentPattern,
+                                 @Param("from") Date from,
+                                 @Param("to") Date to);
 
+    /**
+     * The largest files, biggest first. Without a folder filter this reads the size index backwards
+     * and stops after {@code limit} rows.
+     *
+     * @param parentPattern LIKE pattern on the parent directory, with '\' escaping wildcards in the literal part.
+     * @param from          Earliest modification time, or null.
+     * @param to            Modification time upper bound (exclusive), or null.
+     * @param limit         Number of files.
+     * @return The largest FileMetadata.
+     */
+    @Query("SELECT f FROM FileMetadata f WHERE f.parentPath LIKE :parentPattern ESCAPE '\\' " +
+            "AND (:from IS NULL OR f.mtime >= :from) AND (:to IS NULL OR f.mtime < :to) " +
+            "ORDER BY f.size DESC")
+    List<FileMetadata> findLargest(@Param("parentPattern") String parentPattern,
+                                   @Param("from") Date from,
+                                   @Param("to") Date to,
+                                   Limit limit);
+
+    /**
+     * Count files and bytes by creation period, in one aggregate query.
+     * Without a folder filter this reads only the (ctime, size) index, and only the time window's range of it.
+     *
+     * @param parentPattern LIKE pattern on the parent directory, with '\' escaping wildcards in the literal part,
+     *                      or null for all files.
+     * @param periodFormat  MySQL DATE_FORMAT pattern naming the period, e.g. '%Y-%m' for months.
+     * @param from          Earliest creation time, or null.
+     * @param to            Creation time upper bound (exclusive), or null.
+     * @return List of [period, fileCount, totalBytes], oldest period first.
+     */
+    @Query(value = "SELECT DATE_FORMAT(ctime, :periodFormat) AS period, COUNT(*), SUM(size) " +
+            "FROM file_metadata WHERE (:parentPattern IS NULL OR parent_path LIKE :parentPattern ESCAPE '\\\\') " +
+            "AND ctime IS NOT NULL " +
+            "AND (:from IS NULL OR ctime >= :from) AND (:to IS NULL OR ctime < :to) " +
+            "GROUP BY period ORDER BY period", nativeQuery = true)
+    List<Object[]> sumByCreationPeriod(@Param("parentPattern") String parentPattern,
+                                       @Param("periodFormat") String periodFormat,
+                                       @Param("from") Date from,
+                                       @Param("to") Date to);
+
+    /**
+     * Page through the file sizes shared by more than one file, smallest first. Only files of these
+     * sizes can have duplicates. Without a folder filter this is an ordered scan of the size index.
+     *
+     * @param parentPattern LIKE pattern on the parent directory, with '\' escaping wildcards in the literal part.
+     * @param afterSize     The last size of the previous page (minimum size - 1 for the first page).
+     * @param limit         The page size.
+     * @return The next page of sizes.
+     */
+    @Query("SELECT f.size FROM FileMetadata f WHERE f.parentPath LIKE :parentPattern ESCAPE '\\' AND f.size > :afterSize " +
+            "GROUP BY f.size HAVING COUNT(f) > 1 ORDER BY f.size")
+    List<Long> findSharedSizes(@Param("parentPattern") String parentPattern,
+                               @Param("afterSize") long afterSize,
+                               Limit limit);
+
+    /**
+     * Fetch the fields the duplicate scan needs for every file of the given sizes.
+     *
+     * @param parentPattern LIKE pattern on the parent directory, with '\' escaping wildcards in the literal part.
+     * @param sizes         The file sizes.
+     * @return List of [id, path, size, partialHash, contentHash].
+     */
+    @Query("SELECT f.id, f.path, f.size, f.partialHash, f.contentHash FROM FileMetadata f " +
+            "WHERE f.parentPath LIKE :parentPattern ESCAPE '\\' AND f.size IN :sizes")
+    List<Object[]> findHashFieldsBySizeIn(@Param("parentPattern") String parentPattern,
+                                          @Param("sizes") List<Long> sizes);
+
+    /**
+     * The groups of identical files with the most reclaimable bytes.
+     *
+     * @param parentPattern LIKE pattern on the parent directory, with '\' escaping wildcards in the literal part.
+     * @param limit         Number of groups.
+     * @return List of [size, contentHash, copies], most reclaimable bytes first.
+     */
+    @Query("SELECT f.size, f.contentHash, COUNT(f) FROM FileMetadata f " +
+            "WHERE f.parentPath LIKE :parentPattern ESCAPE '\\' AND f.contentHash IS NOT NULL " +
+            "GROUP BY f.size, f.contentHash HAVING COUNT(f) > 1 ORDER BY (COUNT(f) - 1) * f.size DESC")
+    List<Object[]> findDuplicateGroups(@Param("parentPattern") String parentPattern, Limit limit);
+
+    /**
+     * Fetch the paths of files with the given sizes and content hashes, through the (size, content_hash) index.
+     *
+     * @param parentPattern LIKE pattern on the parent directory, with '\' escaping wildcards in the literal part.
+     * @param sizes         The file sizes.
+     * @param contentHashes The content hashes.
+     * @return List of [size, contentHash, path].
+     */
+    @Query("SELECT f.size, f.contentHash, f.path FROM FileMetadata f " +
+            "WHERE f.parentPath LIKE :parentPattern ESCAPE '\\' AND f.size IN :sizes AND f.contentHash IN :contentHashes " +
+            "ORDER BY f.path")
+    List<Object[]> findPathsBySizeAndContentHash(@Param("parentPattern") String parentPattern,
+                                                 @Param("sizes") List<Long> sizes,
+                                                 @Param("contentHashes") List<String> contentHashes);
+
+    /**
+     * Sum the redundant copies per folder: within each group of identical files every copy but the
+     * one with the lowest ID counts as reclaimable, in the folder that holds it.
+     *
+     * @param parentPattern LIKE pattern on the parent directory, with '\' escaping wildcards in the literal part.
+     * @param limit         Number of folders.
+     * @return List of [folder, redundantFiles, reclaimableBytes], most reclaimable bytes first.
+     */
+    @Query(value = "SELECT parent_path, COUNT(*), SUM(size) FROM (" +
+            "SELECT parent_path, size, ROW_NUMBER() OVER (PARTITION BY size, content_hash ORDER BY id) AS copy " +
+            "FROM file_metadata WHERE parent_path LIKE :parentPattern ESCAPE '\\\\' AND content_hash IS NOT NULL) d " +
+            "WHERE copy > 1 GROUP BY parent_path ORDER BY SUM(size) DESC LIMIT :limit", nativeQuery = true)
+    List<Object[]> sumReclaimableByFolder(@Param("parentPattern") String parentPattern, @Param("limit") int limit);
+
+    /**
+     * Count the redundant copies of identical files and their bytes.
+     *
+     * @param parentPattern LIKE pattern on the parent directory, with '\' escaping wildcards in the literal part.
+     * @return A single [redundantFiles, reclaimableBytes] row.
+     */
+    @Query(value = "SELECT COUNT(*), COALESCE(SUM(size), 0) FROM (" +
+            "SELECT size, ROW_NUMBER() OVER (PARTITION BY size, content_hash ORDER BY id) AS copy " +
+            "FROM file_metadata WHERE parent_path LIKE :parentPattern ESCAPE '\\\\' AND content_hash IS NOT NULL) d " +
+            "WHERE copy > 1", nativeQuery = true)
+    List<Object[]> sumReclaimable(@Param("parentPattern") String parentPattern);
 }
@@ -0,0 +1,183 @@
+package com.fileinsights.repository;
+
+import com.fileinsights.entity.FileRollup;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface FileRollupRepository extends JpaRepository<FileRollup, Long> {
+
+    /**
+     * Add to the counts of a rollup row, creating it if missing.
+     *
+     * @param folderHash  SHA-256 of the folder.
+     * @param folder      The folder.
+     * @param accessDay   The access day.
+     * @param contentType The content type, empty when unknown.
+     * @param fileCount   Files to add (negative to subtract).
+     * @param totalBytes  Bytes to add (negative to subtract).
+     */
+    @Modifying
+    @Query(value = "INSERT INTO file_rollup (folder_hash, folder, access_day, content_type, file_count, total_bytes) " +
+            "VALUES (:folderHash, :folder, :accessDay, :contentType, :fileCount, :totalBytes) " +
+            "ON DUPLICATE KEY UPDATE file_count = file_count + VALUES(file_count), total_bytes = total_bytes + VALUES(total_bytes)",
+            nativeQuery = true)
+    void upsert(@Param("folderHash") byte[] folderHash,
+                @Param("folder") String folder,
+                @Param("accessDay") LocalDate accessDay,
+                @Param("contentType") String contentType,
+                @Param("fileCount") long fileCount,
+                @Param("totalBytes") long totalBytes);
+
+    /**
+     * Remove a rollup row once all of its files have been deleted.
+     *
+     * @param folderHash  SHA-256 of the folder.
+     * @param accessDay   The access day.
+     * @param contentType The content type.
+     */
+    @Modifying
+    @Query(value = "DELETE FROM file_rollup WHERE folder_hash = :folderHash AND access_day = :accessDay " +
+            "AND content_type = :contentType AND file_count <= 0", nativeQuery = true)
+    void deleteIfEmpty(@Param("folderHash") byte[] folderHash,
+                       @Param("accessDay") LocalDate accessDay,
+                       @Param("contentType") String contentType);
+
+    /**
+     * Remove the rows of every folder matching a pattern.
+     *
+     * @param folderPattern LIKE pattern, with '\' escaping wildcards in the literal part.
+     * @return Number of rows deleted.
+     */
+    @Modifying
+    @Query("DELETE FROM FileRollup r WHERE r.folder LIKE :folderPattern ESCAPE '\\'")
+    int deleteByFolderLike(@Param("folderPattern") String folderPattern);
+
+    /**
+     * Remove all rows, before a rebuild.
+     */
+    @Modifying
+    @Query(value = "DELETE FROM file_rollup", nativeQuery = true)
+    int deleteAllRows();
+
+    /**
+     * Recompute every row from file_metadata in one pass. Timestamps are stored as UTC
+     * (hibernate.jdbc.time_zone), so DATE(atime) is the UTC day, as in {@link com.fileinsights.model.RollupDelta}.
+     *
+     * @return Number of rows created.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO file_rollup (folder_hash, folder, access_day, content_type, file_count, total_bytes) " +
+            "SELECT UNHEX(SHA2(parent_path, 256)), parent_path, COALESCE(DATE(atime), '1970-01-01'), COALESCE(content_type, ''), " +
+            "COUNT(*), SUM(size) FROM file_metadata " +
+            "GROUP BY parent_path, COALESCE(DATE(atime), '1970-01-01'), COALESCE(content_type, '')",
+            nativeQuery = true)
+    int rebuildFromMetadata();
+
+    /**
+     * Recompute the rows of every folder matching a pattern from file_metadata, after they were removed.
+     *
+     * @param folderPattern LIKE pattern on the folder, with '\' escaping wildcards in the literal part.
+     * @return Number of rows created.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO file_rollup (folder_hash, folder, access_day, content_type, file_count, total_bytes) " +
+            "SELECT UNHEX(SHA2(parent_path, 256)), parent_path, COALESCE(DATE(atime), '1970-01-01'), COALESCE(content_type, ''), " +
+            "COUNT(*), SUM(size) FROM file_metadata WHERE parent_path LIKE :folderPattern ESCAPE '\\\\' " +
+            "GROUP BY parent_path, COALESCE(DATE(atime), '1970-01-01'), COALESCE(content_type, '')",
+            nativeQuery = true)
+    int rebuildFromMetadata(@Param("folderPattern") String folderPattern);
+
+    /**
+     * Sum files and bytes per access-age bucket.
+     *
+     * @param last30Days First day counted as "Last 30 Days".
+     * @param lastYear   First day counted as "Last Year".
+     * @return List of [ageGroup, fileCount, totalBytes].
+     */
+    @Query("SELECT " +
+            "CASE " +
+            "WHEN r.accessDay >= :last30Days THEN 'Last 30 Days' " +
+            "WHEN r.accessDay >= :lastYear THEN 'Last Year' " +
+            "ELSE 'Older' END AS ageGroup, " +
+            "SUM(r.fileCount), SUM(r.totalBytes) " +
+            "FROM FileRollup r " +
+            "GROUP BY ageGroup")
+    List<Object[]> sumByAge(@Param("last30Days") Date last30Days, @Param("lastYear") Date lastYear);
+
+    /**
+     * Sum files and bytes per content type; files of unknown type are left out.
+     *
+     * @return List of [contentType, fileCount, totalBytes].
+     */
+    @Query("SELECT r.contentType, SUM(r.fileCount), SUM(r.totalBytes) FROM FileRollup r " +
+            "WHERE r.contentType <> '' GROUP BY r.contentType")
+    List<Object[]> sumByContentType();
+
+    /**
+     * Sum files and bytes per content type for a folder subtree and access-day window, largest first.
+     * Files of unknown type are grouped under the empty string.
+     *
+     * @param folderPattern LIKE pattern on the folder, with '\' escaping wildcards in the literal part.
+     * @param from          First access day, or null.
+     * @param to            Access day upper bound (exclusive), or null.
+     * @return List of [contentType, fileCount, totalBytes].
+     */
+    @Query("SELECT r.contentType, SUM(r.fileCount), SUM(r.totalBytes) FROM FileRollup r " +
+            "WHERE r.folder LIKE :folderPattern ESCAPE '\\' " +
+            "AND (:from IS NULL OR r.accessDay >= :from) AND (:to IS NULL OR r.accessDay < :to) " +
+            "GROUP BY r.contentType ORDER BY SUM(r.totalBytes) DESC")
+    List<Object[]> sumByContentType(@Param("folderPattern") String folderPattern,
+                                    @Param("from") Date from,
+                                    @Param("to") Date to);
+
+    /**
+     * The folders whose most recently accessed file is oldest, counting only the files directly in each folder.
+     *
+     * @param folderPattern  LIKE pattern on the folder, with '\' escaping wildcards in the literal part.
+     * @param accessedBefore Only folders with no access on or after this day, or null.
+     * @param limit          Number of folders.
+     * @return List of [folder, lastAccessDay, fileCount, totalBytes], stalest first.
+     */
+    @Query("SELECT r.folder, MAX(r.accessDay), SUM(r.fileCount), SUM(r.totalBytes) FROM FileRollup r " +
+            "WHERE r.folder LIKE :folderPattern ESCAPE '\\' " +
+            "GROUP BY r.folder " +
+            "HAVING :accessedBefore IS NULL OR MAX(r.accessDay) < :accessedBefore " +
+            "ORDER BY MAX(r.accessDay), SUM(r.totalBytes) DESC")
+    List<Object[]> findStalestFolders(@Param("folderPattern") String folderPattern,
+                                      @Param("accessedBefore") Date accessedBefore,
+                                      Limit limit);
+
+    /**
+     * Sum files and bytes for each immediate subfolder of a folder, over that subfolder's whole subtree.
+     * Rows are grouped by the folder cut after the first separator past the parent folder, so files
+     * directly in the parent folder are grouped under the empty string.
+     *
+     * @param folderPattern LIKE pattern on the folder, with '\' escaping wildcards in the literal part.
+     * @param separator     The path separator.
+     * @param childStart    Position (1-based, in characters) of the first character after the parent folder.
+     * @param from          First access day, or null.
+     * @param to            Access day upper bound (exclusive), or null.
+     * @param limit         Number of subfolders.
+     * @return List of [subfolder, fileCount, totalBytes, lastAccessDay], largest first.
+     */
+    @Query(value = "SELECT SUBSTRING(folder, 1, LOCATE(:separator, folder, :childStart)) AS child, " +
+            "SUM(file_count), SUM(total_bytes), MAX(access_day) FROM file_rollup " +
+            "WHERE folder LIKE :folderPattern ESCAPE '\\\\' " +
+            "AND (:from IS NULL OR access_day >= :from) AND (:to IS NULL OR access_day < :to) " +
+            "GROUP BY child ORDER BY SUM(total_bytes) DESC LIMIT :limit", nativeQuery = true)
+    List<Object[]> sumBySubfolder(@Param("folderPattern") String folderPattern,
+                                  @Param("separator") String separator,
+                                  @Param("childStart") int childStart,
+                                  @Param("from") Date from,
+                                  @Param("to") Date to,
+                                  @Param("limit") int limit);
+}
@@ -1,47 +1,254 @@
 package com.fileinsights.service;
 
+import com.fileinsights.config.CacheConfig;
+import com.fileinsights.entity.FileMetadata;
+import com.fileinsights.model.FolderStats;
+import com.fileinsights.model.PeriodStats;
+import com.fileinsights.model.SizeBucket;
 import com.fileinsights.repository.FileMetadataRepository;
+import com.fileinsights.repository.FileRollupRepository;
+import com.fileinsights.util.PathKeys;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
+import java.io.File;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Dashboard analytics, answered from the file_rollup table maintained by {@link FileRollupService}
+ * rather than by scanning file_metadata or aggregating over Elasticsearch. Breakdowns the rollup
+ * cannot answer (file sizes, creation times, single files) run as one aggregate query on file_metadata,
+ * so only the result rows leave the database. Results are cached until the rollup changes or the
+ * cache entry expires.
+ *
+ * Folder filters cover the folder's whole subtree. Time windows are whole days, both ends inclusive.
+ */
 @Service
 public class AnalyticsService {
 
+    // The file system root every stored path starts with ("/", or the drive on Windows), for top-level folders
+    private static final String ROOT = File.listRoots()[0].getPath();
+
+    private static final Map<String, String> PERIOD_FORMATS = Map.of(
+            "day", "%Y-%m-%d",
+            "month", "%Y-%m",
+            "year", "%Y");
+
     @Autowired
-    private FileMetadataRepository fileMetadataRepository;
+    private FileRollupRepository fileRollupRepository;
+
+    @Autowired
+    private FileRollupService fileRollupService;
 
     @Autowired
-    private ElasticsearchService elasticsearchService;
+    private FileMetadataRepository fileMetadataRepository;
 
     /**
      * Retrieves file data split by age (atime).
      * @return A map of age categories to file counts.
      */
+    @Cacheable(cacheNames = CacheConfig.ANALYTICS, key = "'byAge'")
     public Map<String, Long> getFileDataByAge() {
-        List<Object[]> results = fileMetadataRepository.countFilesByAge();
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        List<Object[]> results = fileRollupRepository.sumByAge(toDate(today.minusDays(30)), toDate(today.minusDays(365)));
         Map<String, Long> data = new HashMap<>();
         for (Object[] result : results) {
-            data.put((String) result[0], (Long) result[1]);
+            data.put((String) result[0], ((Number) result[1]).longValue());
         }
         return data;
     }
 
     /**
-     * Retrieves file data split by type from Elasticsearch.
+     * Retrieves file data split by content type.
      * @return A map of file types to file counts.
      */
+    @Cacheable(cacheNames = CacheConfig.ANALYTICS, key = "'byType'")
     public Map<String, Long> getFileDataByType() {
         Map<String, Long> data = new HashMap<>();
-        try {
-            data = elasticsearchService.countFilesByType();
-        } catch (Exception e) {
-            e.printStackTrace();
-            // Log and handle errors appropriately
+        for (Object[] result : fileRollupRepository.sumByContentType()) {
+            data.put((String) result[0], ((Number) result[1]).longValue());
         }
         return data;
     }
+
+    /**
+     * Retrieves the number and size of files per power-of-two size class.
+     *
+     * @param folderPath Only files below this folder, or null for all files.
+     * @param from       Only files modified on or after this day, or null.
+     * @param to         Only files modified on or before this day, or null.
+     * @return Non-empty size buckets, smallest first.
+     */
+    @Cacheable(cacheNames = CacheConfig.ANALYTICS, key = "{#root.methodName, #folderPath, #from, #to}")
+    public List<SizeBucket> getSizeHistogram(String folderPath, LocalDate from, LocalDate to) {
+        List<SizeBucket> buckets = new ArrayList<>();
+        for (Object[] result : fileMetadataRepository.sizeHistogram(folderFilter(folderPath), startOf(from), endOf(to))) {
+            int sizeClass = ((Number) result[0]).intValue();
+            long minBytes = sizeClass < 0 ? 0 : 1L << sizeClass;
+            long maxBytes = sizeClass < 0 ? 1 : sizeClass >= 62 ? Long.MAX_VALUE : 1L << (sizeClass + 1);
+            buckets.add(new SizeBucket(minBytes, maxBytes, ((Number) result[1]).longValue(), ((Number) result[2]).longValue()));
+        }
+        return buckets;
+    }
+
+    /**
+     * Retrieves the largest files.
+     *
+     * @param folderPath Only files below this folder, or null for all files.
+     * @param from       Only files modified on or after this day, or null.
+     * @param to         Only files modified on or before this day, or null.
+     * @param limit      Number of files.
+     * @return The largest files, biggest first.
+     */
+    @Cacheable(cacheNames = CacheConfig.ANALYTICS, key = "{#root.methodName, #folderPath, #from, #to, #limit}")
+    public List<FileMetadata> getLargestFiles(String folderPath, LocalDate from, LocalDate to, int limit) {
+        return fileMetadataRepository.findLargest(folderPattern(folderPath), startOf(from), endOf(to), Limit.of(limit));
+    }
+
+    /**
+     * Retrieves the folders that have gone longest without any file being accessed.
+     * Each folder counts only the files directly in it.
+     *
+     * @param folderPath     Only folders below this folder, or null for all folders.
+     * @param accessedBefore Only folders with no access after this day, or null.
+     * @param limit          Number of folders.
+     * @return The stalest folders, least recently accessed first.
+     */
+    @Cacheable(cacheNames = CacheConfig.ANALYTICS, key = "{#root.methodName, #folderPath, #accessedBefore, #limit}")
+    public List<FolderStats> getStalestFolders(String folderPath, LocalDate accessedBefore, int limit) {
+        List<FolderStats> folders = new ArrayList<>();
+        for (Object[] result : fileRollupRepository.findStalestFolders(folderPattern(folderPath), endOf(accessedBefore), Limit.of(limit))) {
+            folders.add(new FolderStats((String) result[0], ((Number) result[2]).longValue(),
+                    ((Number) result[3]).longValue(), toLocalDate(result[1])));
+        }
+        return folders;
+    }
+
+    /**
+     * Retrieves the total size of files per content type.
+     *
+     * @param folderPath Only files below this folder, or null for all files.
+     * @param from       Only files last accessed on or after this day, or null.
+     * @param to         Only files last accessed on or before this day, or null.
+     * @return A map of content types to bytes, largest first; files of unknown type are under "unknown".
+     */
+    @Cacheable(cacheNames = CacheConfig.ANALYTICS, key = "{#root.methodName, #folderPath, #from, #to}")
+    public Map<String, Long> getBytesByType(String folderPath, LocalDate from, LocalDate to) {
+        Map<String, Long> data = new LinkedHashMap<>();
+        for (Object[] result : fileRollupRepository.sumByContentType(folderPattern(folderPath), startOf(from), endOf(to))) {
+            String contentType = (String) result[0];
+            data.put(contentType.isEmpty() ? "unknown" : contentType, ((Number) result[2]).longValue());
+        }
+        return data;
+    }
+
+    /**
+     * Retrieves the file count and size of each immediate subfolder of a folder, including everything below it.
+     * Files directly in the folder are reported under the folder itself.
+     *
+     * @param folderPath The folder, or null for the top-level folders.
+     * @param from       Only files last accessed on or after this day, or null.
+     * @param to         Only files last accessed on or before this day, or null.
+     * @param limit      Number of subfolders.
+     * @return Subfolder totals, largest first.
+     */
+    @Cacheable(cacheNames = CacheConfig.ANALYTICS, key = "{#root.methodName, #folderPath, #from, #to, #limit}")
+    public List<FolderStats> getFolderTotals(String folderPath, LocalDate from, LocalDate to, int limit) {
+        // Without a folder the children are those of the root; searching from after its separator keeps
+        // every path from being cut at the leading "/"
+        String prefix = isBlank(folderPath) ? ROOT : PathKeys.folderPrefix(folderPath);
+        String pattern = isBlank(folderPath) ? "%" : PathKeys.likePrefix(prefix);
+        List<Object[]> results = fileRollupRepository.sumBySubfolder(pattern, File.separator,
+                prefix.codePointCount(0, prefix.length()) + 1, startOf(from), endOf(to), limit);
+        List<FolderStats> folders = new ArrayList<>();
+        for (Object[] result : results) {
+            String child = (String) result[0];
+            folders.add(new FolderStats(child.isEmpty() ? prefix : child, ((Number) result[1]).longValue(),
+                    ((Number) result[2]).longValue(), toLocalDate(result[3])));
+        }
+        return folders;
+    }
+
+    /**
+     * Retrieves how many files, and how many bytes, were created per day, month or year.
+     *
+     * @param folderPath Only files below this folder, or null for all files.
+     * @param interval   "day", "month" or "year".
+     * @param from       Only files created on or after this day, or null.
+     * @param to         Only files created on or before this day, or null.
+     * @return One entry per period with files, oldest first.
+     * @throws IllegalArgumentException If the interval is unknown.
+     */
+    @Cacheable(cacheNames = CacheConfig.ANALYTICS, key = "{#root.methodName, #folderPath, #interval, #from, #to}")
+    public List<PeriodStats> getGrowth(String folderPath, String interval, LocalDate from, LocalDate to) {
+        String periodFormat = PERIOD_FORMATS.get(interval.toLowerCase());
+        if (periodFormat == null) {
+            throw new IllegalArgumentException("Unknown interval: " + interval + " (expected day, month or year)");
+        }
+        List<PeriodStats> periods = new ArrayList<>();
+        long cumulativeBytes = 0;
+        for (Object[] result : fileMetadataRepository.sumByCreationPeriod(folderFilter(folderPath), periodFormat, startOf(from), endOf(to))) {
+            long totalBytes = ((Number) result[2]).longValue();
+            cumulativeBytes += totalBytes;
+            periods.add(new PeriodStats((String) result[0], ((Number) result[1]).longValue(), totalBytes, cumulativeBytes));
+        }
+        return periods;
+    }
+
+    /**
+     * Recomputes the analytics rollup from the stored metadata.
+     * @return The number of rollup rows.
+     */
+    public int rebuildRollup() {
+        return fileRollupService.rebuild();
+    }
+
+    private static Date toDate(LocalDate day) {
+        return Date.from(day.atStartOfDay(ZoneOffset.UTC).toInstant()); // Rollup access days are UTC days
+    }
+
+    private static Date startOf(LocalDate day) {
+        return day != null ? toDate(day) : null;
+    }
+
+    /**
+     * The exclusive upper bound for an inclusive last day.
+     */
+    private static Date endOf(LocalDate day) {
+        return day != null ? toDate(day.plusDays(1)) : null;
+    }
+
+    private static LocalDate toLocalDate(Object day) {
+        if (day instanceof LocalDate localDate) {
+            return localDate;
+        }
+        if (day instanceof java.sql.Date sqlDate) {
+            return sqlDate.toLocalDate();
+        }
+        return day != null ? ((Date) day).toInstant().atZone(ZoneOffset.UTC).toLocalDate() : null;
+    }
+
+    private static String folderPattern(String folderPath) {
+        return isBlank(folderPath) ? "%" : PathKeys.likePrefix(PathKeys.folderPrefix(folderPath));
+    }
+
+    /**
+     * Like {@link #folderPattern}, but null for all files, so that queries need not read parent_path at all.
+     */
+    private static String folderFilter(String folderPath) {
+        return isBlank(folderPath) ? null : folderPattern(folderPath);
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
 }
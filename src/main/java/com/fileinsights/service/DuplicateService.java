@@ -0,0 +1,288 @@
+package com.fileinsights.service;
+
+import com.fileinsights.model.DuplicateGroup;
+import com.fileinsights.model.FileHashes;
+import com.fileinsights.model.IngestionJob;
+import com.fileinsights.model.ReclaimableFolder;
+import com.fileinsights.repository.FileMetadataRepository;
+import com.fileinsights.util.ContentHasher;
+import com.fileinsights.util.PathKeys;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Duplicate file detection.
+ *
+ * A scan narrows the candidates in three steps so that most files are never read: only files whose size
+ * is shared with another file are considered, of those only files whose partial hash (first and last
+ * 64 KB) is shared are hashed in full, and files already hashed, e.g. during ingestion, are not read again.
+ * The reports are aggregate queries over the stored content hashes.
+ */
+@Service
+public class DuplicateService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DuplicateService.class);
+
+    private static final int SIZE_PAGE = 1000;
+    private static final int SAVE_BATCH_SIZE = 500;
+
+    @Autowired
+    private FileMetadataRepository fileMetadataRepository;
+
+    @Autowired
+    private FileMetadataService fileMetadataService;
+
+    @Value("${duplicates.min-size:1}")
+    private long minSize;
+
+    @Value("${duplicates.hash.threads:4}")
+    private int hashThreads;
+
+    private ExecutorService hashExecutor;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger counter = new AtomicInteger();
+        hashExecutor = Executors.newFixedThreadPool(hashThreads, runnable -> {
+            Thread thread = new Thread(runnable, "hash-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hashExecutor.shutdownNow();
+    }
+
+    /**
+     * Hashes every file below a folder that could have a duplicate and stores the hashes.
+     * Progress is reported to the job: candidates as discovered files, every file read as a processed file.
+     *
+     * @param folderPath The folder to scan.
+     * @param job        The job tracking this scan.
+     * @throws InterruptedException If the calling thread is interrupted while waiting for the hash threads.
+     */
+    public void hashCandidates(String folderPath, IngestionJob job) throws InterruptedException {
+        String pattern = PathKeys.likePrefix(PathKeys.folderPrefix(folderPath));
+        long afterSize = minSize - 1;
+        while (!job.isCancelRequested()) {
+            List<Long> sizes = fileMetadataRepository.findSharedSizes(pattern, afterSize, Limit.of(SIZE_PAGE));
+            if (sizes.isEmpty()) {
+                break;
+            }
+            hashSizes(pattern, sizes, job);
+            afterSize = sizes.get(sizes.size() - 1);
+            if (sizes.size() < SIZE_PAGE) {
+                break;
+            }
+        }
+        logger.info("Duplicate scan of {}: {} candidates, {} files read, {} failed",
+                folderPath, job.getFilesDiscovered(), job.getFilesProcessed(), job.getFilesFailed());
+    }
+
+    /**
+     * Retrieves the groups of identical files with the most reclaimable bytes.
+     *
+     * @param folderPath Only files below this folder, or null for all files.
+     * @param limit      Number of groups.
+     * @return Duplicate groups, most reclaimable bytes first.
+     */
+    public List<DuplicateGroup> getDuplicateGroups(String folderPath, int limit) {
+        String pattern = folderPattern(folderPath);
+        List<Object[]> groups = fileMetadataRepository.findDuplicateGroups(pattern, Limit.of(limit));
+        if (groups.isEmpty()) {
+            return List.of();
+        }
+
+        List<Long> sizes = new ArrayList<>(groups.size());
+        List<String> contentHashes = new ArrayList<>(groups.size());
+        for (Object[] group : groups) {
+            sizes.add((Long) group[0]);
+            contentHashes.add((String) group[1]);
+        }
+        Map<String, List<String>> paths = new HashMap<>();
+        for (Object[] row : fileMetadataRepository.findPathsBySizeAndContentHash(pattern, sizes, contentHashes)) {
+            paths.computeIfAbsent(row[0] + ":" + row[1], key -> new ArrayList<>()).add((String) row[2]);
+        }
+
+        List<DuplicateGroup> result = new ArrayList<>(groups.size());
+        for (Object[] group : groups) {
+            long size = (Long) group[0];
+            long copies = ((Number) group[2]).longValue();
+            result.add(new DuplicateGroup((String) group[1], size,
+                    paths.getOrDefault(size + ":" + group[1], List.of()), (copies - 1) * size));
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves the folders holding the most redundant copies, by reclaimable bytes.
+     * In every group of identical files one copy is kept; the others count against their folder.
+     *
+     * @param folderPath Only files below this folder, or null for all files.
+     * @param limit      Number of folders.
+     * @return Folders, most reclaimable bytes first.
+     */
+    public List<ReclaimableFolder> getReclaimableByFolder(String folderPath, int limit) {
+        List<ReclaimableFolder> folders = new ArrayList<>();
+        for (Object[] row : fileMetadataRepository.sumReclaimableByFolder(folderPattern(folderPath), limit)) {
+            folders.add(new ReclaimableFolder((String) row[0], ((Number) row[1]).longValue(), ((Number) row[2]).longValue()));
+        }
+        return folders;
+    }
+
+    /**
+     * Retrieves the total number of redundant copies and the bytes they take up.
+     *
+     * @param folderPath Only files below this folder, or null for all files.
+     * @return A map with "redundantFiles" and "reclaimableBytes".
+     */
+    public Map<String, Long> getSummary(String folderPath) {
+        Object[] row = fileMetadataRepository.sumReclaimable(folderPattern(folderPath)).get(0);
+        Map<String, Long> summary = new LinkedHashMap<>();
+        summary.put("redundantFiles", ((Number) row[0]).longValue());
+        summary.put("reclaimableBytes", ((Number) row[1]).longValue());
+        return summary;
+    }
+
+    /**
+     * Hashes the candidates among the files of one page of shared sizes: partial hashes for files of a
+     * shared size, then full hashes for files of a shared size and partial hash.
+     */
+    private void hashSizes(String pattern, List<Long> sizes, IngestionJob job) throws InterruptedException {
+        Map<Long, List<Candidate>> bySize = new HashMap<>();
+        for (Object[] row : fileMetadataRepository.findHashFieldsBySizeIn(pattern, sizes)) {
+            Candidate candidate = new Candidate((Long) row[0], (String) row[1], (Long) row[2], (String) row[3], (String) row[4]);
+            bySize.computeIfAbsent(candidate.size, size -> new ArrayList<>()).add(candidate);
+        }
+
+        List<Candidate> unhashed = new ArrayList<>();
+        for (List<Candidate> group : bySize.values()) {
+            if (group.size() > 1) {
+                job.filesDiscovered(group.size());
+                for (Candidate candidate : group) {
+                    if (candidate.partialHash == null) {
+                        unhashed.add(candidate);
+                    }
+                }
+            }
+        }
+        hashAll(unhashed, false, job);
+
+        Map<String, List<Candidate>> byPartialHash = new HashMap<>();
+        for (List<Candidate> group : bySize.values()) {
+            for (Candidate candidate : group) {
+                if (group.size() > 1 && candidate.partialHash != null) {
+                    byPartialHash.computeIfAbsent(candidate.size + ":" + candidate.partialHash, key -> new ArrayList<>()).add(candidate);
+                }
+            }
+        }
+        List<Candidate> partiallyHashed = new ArrayList<>();
+        for (List<Candidate> group : byPartialHash.values()) {
+            if (group.size() > 1) {
+                for (Candidate candidate : group) {
+                    if (candidate.contentHash == null) {
+                        partiallyHashed.add(candidate);
+                    }
+                }
+            }
+        }
+        hashAll(partiallyHashed, true, job);
+    }
+
+    /**
+     * Hashes files on the hash threads and stores the results in batches.
+     * Files no larger than two partial blocks are hashed in full right away, since the partial hash reads them whole anyway.
+     */
+    private void hashAll(List<Candidate> candidates, boolean full, IngestionJob job) throws InterruptedException {
+        for (int start = 0; start < candidates.size() && !job.isCancelRequested(); start += SAVE_BATCH_SIZE) {
+            List<Candidate> chunk = candidates.subList(start, Math.min(start + SAVE_BATCH_SIZE, candidates.size()));
+            List<Callable<FileHashes>> tasks = new ArrayList<>(chunk.size());
+            for (Candidate candidate : chunk) {
+                tasks.add(() -> hash(candidate, full || candidate.size <= 2L * ContentHasher.PARTIAL_BYTES, job));
+            }
+
+            List<FileHashes> hashes = new ArrayList<>(chunk.size());
+            for (Future<FileHashes> future : hashExecutor.invokeAll(tasks)) {
+                try {
+                    FileHashes fileHashes = future.get();
+                    if (fileHashes != null) {
+                        hashes.add(fileHashes);
+                    }
+                } catch (ExecutionException e) {
+                    job.fileFailed();
+                    logger.error("Error hashing file", e.getCause());
+                }
+            }
+            fileMetadataService.saveHashes(hashes);
+        }
+    }
+
+    private FileHashes hash(Candidate candidate, boolean full, IngestionJob job) {
+        if (job.isCancelRequested()) {
+            return null;
+        }
+        try {
+            Path path = Path.of(candidate.path);
+            if (full) {
+                ContentHasher.Hashes hashes = ContentHasher.hashFile(path);
+                candidate.partialHash = hashes.partialHash();
+                candidate.contentHash = hashes.contentHash();
+                job.fileProcessed(candidate.size);
+            } else {
+                candidate.partialHash = ContentHasher.partialHash(path, candidate.size);
+                job.fileProcessed(Math.min(candidate.size, 2L * ContentHasher.PARTIAL_BYTES));
+            }
+            return new FileHashes(candidate.id, candidate.size, candidate.partialHash, candidate.contentHash);
+        } catch (IOException e) {
+            // Typically a file deleted or changed since it was ingested; the next incremental scan will catch up
+            job.fileFailed();
+            logger.warn("Could not hash file: {}", candidate.path, e);
+            return null;
+        }
+    }
+
+    private static String folderPattern(String folderPath) {
+        return folderPath == null || folderPath.isBlank() ? "%" : PathKeys.likePrefix(PathKeys.folderPrefix(folderPath));
+    }
+
+    /**
+     * A file that may have a duplicate, with whatever hashes are known so far.
+     */
+    private static final class Candidate {
+        private final long id;
+        private final String path;
+        private final long size;
+        private String partialHash;
+        private String contentHash;
+
+        private Candidate(long id, String path, long size, String partialHash, String contentHash) {
+            this.id = id;
+            this.path = path;
+            this.size = size;
+            this.partialHash = partialHash;
+            this.contentHash = contentHash;
+        }
+    }
+}
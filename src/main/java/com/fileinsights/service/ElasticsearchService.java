@@ -1,71 +1,535 @@
 package com.fileinsights.service;
 
 import com.fileinsights.entity.TikaMetadata;
+import com.fileinsights.model.IngestionJob;
+import com.fileinsights.util.PathKeys;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._helpers.bulk.BulkIngester;
+import co.elastic.clients.elasticsearch._helpers.bulk.BulkListener;
 import co.elastic.clients.elasticsearch._types.Conflicts;
-import co.elastic.clients.elasticsearch._types.aggregations.Aggregation;
-import co.elastic.clients.elasticsearch._types.aggregations.StringTermsAggregate;
-import co.elastic.clients.elasticsearch._types.aggregations.StringTermsBucket;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.SlicesCalculation;
+import co.elastic.clients.elasticsearch._types.SortOrder;
 import co.elastic.clients.elasticsearch.core.*;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
 import co.elastic.clients.elasticsearch.core.search.Hit;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 @Service
 public class ElasticsearchService {
 
     private static final Logger logger = LoggerFactory.getLogger(ElasticsearchService.class);
     private static final String INDEX_NAME = "tika_metadata";
+    private static final String SEARCH_KEEP_ALIVE = "1m";
+    private static final String TEMPLATE_NAME = "tika_metadata_template";
+    private static final String TEMPLATE_RESOURCE = "elasticsearch/tika_metadata-template.json";
 
     @Autowired
     private ElasticsearchClient elasticsearchClient;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${elasticsearch.bulk.max-operations:1000}")
+    private int bulkMaxOperations;
+
+    @Value("${elasticsearch.bulk.max-size-bytes:5242880}")
+    private long bulkMaxSizeBytes;
+
+    @Value("${elasticsearch.bulk.flush-interval-ms:1000}")
+    private long bulkFlushIntervalMs;
+
+    @Value("${elasticsearch.bulk.max-concurrent-requests:2}")
+    private int bulkMaxConcurrentRequests;
+
+    @Value("${elasticsearch.bulk.max-retries:5}")
+    private int bulkMaxRetries;
+
+    @Value("${elasticsearch.bulk.initial-backoff-ms:200}")
+    private long bulkInitialBackoffMs;
+
+    @Value("${elasticsearch.search.page-size:1000}")
+    private int searchPageSize;
+
+    @Value("${elasticsearch.index.refresh-interval:1s}")
+    private String indexRefreshInterval;
+
+    @Value("${elasticsearch.index.replicas:1}")
+    private int indexReplicas;
+
+    // Applied while ingestion jobs run: no periodic refreshes, no replica writes
+    @Value("${elasticsearch.bulk-load.tune-settings:true}")
+    private boolean bulkLoadTuneSettings;
+
+    @Value("${elasticsearch.bulk-load.refresh-interval:-1}")
+    private String bulkLoadRefreshInterval;
+
+    @Value("${elasticsearch.bulk-load.replicas:0}")
+    private int bulkLoadReplicas;
+
+    private final AtomicInteger activeBulkLoads = new AtomicInteger();
+
+    // Index operations of each job that are buffered, in flight or waiting for a retry; see awaitIndexed
+    private final Map<IngestionJob, AtomicLong> pendingByJob = new ConcurrentHashMap<>();
+    private final Object indexedSignal = new Object();
+
+    // The index predates the template: filePath is dynamically mapped text with a .keyword sub-field and no .tree
+    private volatile boolean legacyMapping;
+
+    private BulkIngester<IndexContext> bulkIngester;
+    private ScheduledExecutorService retryScheduler;
+
+    @PostConstruct
+    public void init() {
+        installIndexTemplate();
+        startBulkIngester();
+    }
+
+    /**
+     * Installs the index template with the explicit tika_metadata mappings and creates the index if missing.
+     * An index created before the template keeps its dynamic mapping until it is reindexed; folder queries
+     * then fall back to prefix queries on filePath.keyword.
+     */
+    private void installIndexTemplate() {
+        try (InputStream template = new ClassPathResource(TEMPLATE_RESOURCE).getInputStream()) {
+            elasticsearchClient.indices().putIndexTemplate(t -> t.name(TEMPLATE_NAME).withJson(template));
+
+            if (!elasticsearchClient.indices().exists(e -> e.index(INDEX_NAME)).value()) {
+                elasticsearchClient.indices().create(c -> c.index(INDEX_NAME));
+                logger.info("Created index {} from template {}", INDEX_NAME, TEMPLATE_NAME);
+            } else {
+                var mapping = elasticsearchClient.indices().getMapping(m -> m.index(INDEX_NAME)).get(INDEX_NAME);
+                var filePath = mapping != null ? mapping.mappings().properties().get("filePath") : null;
+                legacyMapping = filePath == null || !filePath.isKeyword() || !filePath.keyword().fields().containsKey("tree");
+                if (legacyMapping) {
+                    logger.warn("Index {} predates template {}; folder queries use filePath.keyword until it is reindexed",
+                            INDEX_NAME, TEMPLATE_NAME);
+                }
+            }
+            applyIndexSettings(indexRefreshInterval, indexReplicas);
+        } catch (Exception e) {
+            logger.error("Error installing Elasticsearch index template {}", TEMPLATE_NAME, e);
+        }
+    }
+
+    private void startBulkIngester() {
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "es-bulk-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        bulkIngester = BulkIngester.of(b -> b
+                .client(elasticsearchClient)
+                .maxOperations(bulkMaxOperations)
+                .maxSize(bulkMaxSizeBytes)
+                .flushInterval(bulkFlushIntervalMs, TimeUnit.MILLISECONDS)
+                .maxConcurrentRequests(bulkMaxConcurrentRequests)
+                .listener(new RetryingBulkListener())
+        );
+    }
+
+    @PreDestroy
+    public void closeBulkIngester() {
+        bulkIngester.close(); // Flushes pending operations and waits for in-flight requests
+        retryScheduler.shutdownNow();
+    }
+
+    /**
+     * Marks the start of a bulk load (an ingestion job). While any bulk load runs, the index is not
+     * refreshed periodically and has no replicas, which makes indexing considerably cheaper.
+     */
+    public void beginBulkLoad() {
+        if (bulkLoadTuneSettings && activeBulkLoads.getAndIncrement() == 0) {
+            applyIndexSettings(bulkLoadRefreshInterval, bulkLoadReplicas);
+        }
+    }
+
+    /**
+     * Marks the end of a bulk load. When the last one ends, pending documents are flushed, the regular
+     * refresh interval and replica count are restored and the index is refreshed.
+     */
+    public void endBulkLoad() {
+        if (bulkLoadTuneSettings && activeBulkLoads.decrementAndGet() == 0) {
+            bulkIngester.flush();
+            applyIndexSettings(indexRefreshInterval, indexReplicas);
+            try {
+                elasticsearchClient.indices().refresh(r -> r.index(INDEX_NAME));
+            } catch (IOException e) {
+                logger.warn("Error refreshing index {} after bulk load", INDEX_NAME, e);
+            }
+        }
+    }
+
+    private void applyIndexSettings(String refreshInterval, int replicas) {
+        try {
+            elasticsearchClient.indices().putSettings(p -> p
+                    .index(INDEX_NAME)
+                    .settings(st -> st
+                            .refreshInterval(t -> t.time(refreshInterval))
+                            .numberOfReplicas(String.valueOf(replicas))
+                    )
+            );
+            logger.info("Set index {} refresh_interval={} number_of_replicas={}", INDEX_NAME, refreshInterval, replicas);
+        } catch (Exception e) {
+            logger.warn("Error updating settings of index {}", INDEX_NAME, e);
+        }
+    }
+
     /**
      * Save Tika metadata to Elasticsearch.
      */
     public void saveTikaMetadata(TikaMetadata tikaMetadata) throws Exception {
-        if (tikaMetadata.getFilePath() == null || tikaMetadata.getFilePath().isEmpty()) {
-            throw new IllegalArgumentException("File path must not be null or empty for Elasticsearch indexing.");
-        }
+        validateForIndexing(tikaMetadata);
 
         elasticsearchClient.index(i -> i
                 .index(INDEX_NAME)
                 .id(tikaMetadata.getFilePath())
                 .document(tikaMetadata)
         );
-        logger.info("Successfully saved metadata for file: {}", tikaMetadata.getFilePath());
+        logger.debug("Successfully saved metadata for file: {}", tikaMetadata.getFilePath());
     }
 
     /**
-     * Retrieve metadata by folder path.
+     * Queue Tika metadata for bulk indexing. Documents are sent once the bulk buffer reaches its
+     * operation count or byte size, or when the flush interval elapses. Items rejected with 429
+     * are retried with exponential backoff; other item failures are reported to the job.
+     * {@link #awaitIndexed} waits until every document queued for a job has been indexed or has failed.
+     *
+     * @param tikaMetadata The metadata to index.
+     * @param job          The ingestion job to report failures to, or null.
      */
-    public List<TikaMetadata> getMetadataByFolderPath(String folderPath) throws IOException {
-        var query = co.elastic.clients.elasticsearch._types.query_dsl.Query.of(q -> q
-                .wildcard(w -> w
-                        .field("filePath.keyword")
-                        .value(folderPath + "*")
+    public void indexTikaMetadata(TikaMetadata tikaMetadata, IngestionJob job) {
+        validateForIndexing(tikaMetadata);
+        if (job != null) {
+            pendingByJob.computeIfAbsent(job, j -> new AtomicLong()).incrementAndGet();
+        }
+
+        BulkOperation operation = BulkOperation.of(o -> o
+                .index(i -> i
+                        .index(INDEX_NAME)
+                        .id(tikaMetadata.getFilePath())
+                        .document(tikaMetadata)
                 )
         );
+        IndexContext context = new IndexContext(job, 0);
+        try {
+            bulkIngester.add(operation, context);
+        } catch (RuntimeException e) {
+            operationDone(context);
+            throw e;
+        }
+    }
 
-        var searchRequest = new SearchRequest.Builder()
-                .index(INDEX_NAME)
-                .query(query)
-                .build();
+    /**
+     * Index a batch of Tika metadata in a single bulk request and wait for the response. Unlike
+     * {@link #indexTikaMetadata}, failed documents are not retried but returned, so the caller can
+     * report the outcome of each one. Documents that cannot be indexed are left out of the request
+     * and returned as failed; the rest of the batch is still sent.
+     *
+     * @param documents The metadata to index.
+     * @return The failure reason of each document that was not indexed, by its position in {@code documents}.
+     * @throws IOException If the bulk request fails as a whole.
+     */
+    public Map<Integer, String> bulkIndexTikaMetadata(List<TikaMetadata> documents) throws IOException {
+        Map<Integer, String> failures = new HashMap<>();
+        List<BulkOperation> operations = new ArrayList<>(documents.size());
+        // Position in documents of each operation; the response items come in request order
+        int[] positions = new int[documents.size()];
+        for (int position = 0; position < documents.size(); position++) {
+            TikaMetadata tikaMetadata = documents.get(position);
+            String invalid = invalidForIndexing(tikaMetadata);
+            if (invalid != null) {
+                failures.put(position, invalid);
+                continue;
+            }
+            positions[operations.size()] = position;
+            operations.add(BulkOperation.of(o -> o
+                    .index(i -> i
+                            .index(INDEX_NAME)
+                            .id(tikaMetadata.getFilePath())
+                            .document(tikaMetadata)
+                    )
+            ));
+        }
+
+        if (operations.isEmpty()) {
+            return failures;
+        }
+
+        BulkResponse response = elasticsearchClient.bulk(b -> b.operations(operations));
+        List<BulkResponseItem> items = response.items();
+        for (int i = 0; i < items.size(); i++) {
+            BulkResponseItem item = items.get(i);
+            if (item.error() != null) {
+                failures.put(positions[i], item.error().reason());
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Send any buffered bulk operations now instead of waiting for the flush interval.
+     */
+    public void flushBulk() {
+        bulkIngester.flush();
+    }
+
+    /**
+     * Sends the job's buffered documents and waits until every document queued for it has been indexed
+     * or has failed, including documents waiting for a retry. Failures are counted on the job before
+     * this returns, so it can be marked finished afterwards.
+     *
+     * @param job The ingestion job.
+     * @throws InterruptedException If the calling thread is interrupted while waiting.
+     */
+    public void awaitIndexed(IngestionJob job) throws InterruptedException {
+        AtomicLong pending = pendingByJob.get(job);
+        try {
+            while (pending != null && pending.get() > 0) {
+                bulkIngester.flush();
+                synchronized (indexedSignal) {
+                    if (pending.get() > 0) {
+                        // Retries are re-queued in the ingester, so flush again after a while
+                        indexedSignal.wait(Math.max(100, bulkFlushIntervalMs));
+                    }
+                }
+            }
+        } finally {
+            pendingByJob.remove(job);
+        }
+    }
 
-        var response = elasticsearchClient.search(searchRequest, TikaMetadata.class);
-        logger.info("Retrieved {} metadata records for folder path: {}", response.hits().hits().size(), folderPath);
+    /**
+     * Marks an index operation as settled: indexed, or failed for good.
+     */
+    private void operationDone(IndexContext context) {
+        if (context == null || context.job == null) {
+            return;
+        }
+        AtomicLong pending = pendingByJob.get(context.job);
+        if (pending != null && pending.decrementAndGet() == 0) {
+            synchronized (indexedSignal) {
+                indexedSignal.notifyAll();
+            }
+        }
+    }
 
-        return response.hits().hits().stream()
-                .map(Hit::source)
-                .collect(Collectors.toList());
+    private void validateForIndexing(TikaMetadata tikaMetadata) {
+        String invalid = invalidForIndexing(tikaMetadata);
+        if (invalid != null) {
+            throw new IllegalArgumentException(invalid);
+        }
+    }
+
+    /**
+     * Why a document cannot be indexed, or null if it can.
+     */
+    private static String invalidForIndexing(TikaMetadata tikaMetadata) {
+        if (tikaMetadata.getFilePath() == null || tikaMetadata.getFilePath().isEmpty()) {
+            return "File path must not be null or empty for Elasticsearch indexing.";
+        }
+        return null;
+    }
+
+    /**
+     * Re-queue an operation after an exponential backoff, or report it as failed once retries are exhausted.
+     */
+    private void retryOrFail(BulkOperation operation, IndexContext context, String reason) {
+        int attempt = context != null ? context.attempt : 0;
+        IngestionJob job = context != null ? context.job : null;
+
+        if (attempt >= bulkMaxRetries) {
+            logger.error("Giving up indexing document {} after {} retries: {}", documentId(operation), attempt, reason);
+            if (job != null) {
+                job.fileIndexFailed();
+            }
+            operationDone(context);
+            return;
+        }
+
+        long delay = bulkInitialBackoffMs << attempt;
+        logger.warn("Retrying document {} in {} ms (attempt {}): {}", documentId(operation), delay, attempt + 1, reason);
+        IndexContext retry = new IndexContext(job, attempt + 1);
+        try {
+            retryScheduler.schedule(() -> {
+                try {
+                    bulkIngester.add(operation, retry);
+                } catch (RuntimeException e) {
+                    // The ingester was closed while the retry waited
+                    logger.error("Could not retry document {}", documentId(operation), e);
+                    operationDone(retry);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            logger.error("Could not schedule a retry of document {}", documentId(operation), e);
+            operationDone(retry);
+        }
+    }
+
+    private static String documentId(BulkOperation operation) {
+        if (operation.isIndex()) {
+            return operation.index().id();
+        }
+        return operation.isDelete() ? operation.delete().id() : null;
+    }
+
+    /**
+     * Per-operation context carried through the bulk ingester.
+     */
+    private static final class IndexContext {
+        private final IngestionJob job;
+        private final int attempt;
+
+        private IndexContext(IngestionJob job, int attempt) {
+            this.job = job;
+            this.attempt = attempt;
+        }
+    }
+
+    /**
+     * Inspects bulk responses item by item: 429s are retried, other errors are reported to the job.
+     */
+    private class RetryingBulkListener implements BulkListener<IndexContext> {
+
+        // Start of each bulk request in flight, for elasticsearch.bulk.duration
+        private final Map<Long, Long> startNanos = new ConcurrentHashMap<>();
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request, List<IndexContext> contexts) {
+            logger.debug("Sending bulk request {} with {} operations", executionId, request.operations().size());
+            startNanos.put(executionId, System.nanoTime());
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, List<IndexContext> contexts, BulkResponse response) {
+            recordDuration(executionId, "success");
+            List<BulkResponseItem> items = response.items();
+            for (int i = 0; i < items.size(); i++) {
+                BulkResponseItem item = items.get(i);
+                IndexContext context = contexts.get(i);
+                if (item.error() == null) {
+                    operationDone(context);
+                } else if (item.status() == 429) {
+                    retryOrFail(request.operations().get(i), context, "rejected with 429");
+                } else {
+                    logger.error("Failed to index document {}: {}", item.id(), item.error().reason());
+                    if (context != null && context.job != null) {
+                        context.job.fileIndexFailed();
+                    }
+                    operationDone(context);
+                }
+            }
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, List<IndexContext> contexts, Throwable failure) {
+            // The whole request failed (e.g. 429 at request level or a transport error): retry every operation
+            recordDuration(executionId, "failure");
+            logger.warn("Bulk request {} with {} operations failed", executionId, request.operations().size(), failure);
+            for (int i = 0; i < request.operations().size(); i++) {
+                retryOrFail(request.operations().get(i), contexts.get(i), String.valueOf(failure.getMessage()));
+            }
+        }
+
+        private void recordDuration(long executionId, String outcome) {
+            Long start = startNanos.remove(executionId);
+            if (start != null) {
+                Timer.builder("elasticsearch.bulk.duration")
+                        .description("Round trip of a bulk indexing request")
+                        .tag("outcome", outcome)
+                        .register(meterRegistry)
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Retrieve the metadata of every document below a folder path.
+     *
+     * @param folderPath     The folder path.
+     * @param includeContent Whether to return the extracted text, by far the largest field.
+     * @return All matching documents, ordered by file path.
+     */
+    public List<TikaMetadata> getMetadataByFolderPath(String folderPath, boolean includeContent) throws IOException {
+        List<TikaMetadata> results = new ArrayList<>();
+        scrollMetadataByFolderPath(folderPath, includeContent, results::add);
+        logger.info("Retrieved {} metadata records for folder path: {}", results.size(), folderPath);
+        return results;
+    }
+
+    /**
+     * Hand every document below a folder path to a consumer, page by page.
+     *
+     * Pages are read from a point-in-time with search_after on the file path, so the listing is complete
+     * and consistent however large the folder is and however it changes meanwhile, without the deep-paging
+     * cost of from/size. Matching is a single term lookup on the path hierarchy field.
+     *
+     * @param folderPath     The folder path.
+     * @param includeContent Whether to return the extracted text.
+     * @param consumer       Receives every document.
+     */
+    public void scrollMetadataByFolderPath(String folderPath, boolean includeContent, Consumer<TikaMetadata> consumer)
+            throws IOException {
+        var query = folderQuery(folderPath);
+
+        String pitId = elasticsearchClient.openPointInTime(o -> o
+                .index(INDEX_NAME)
+                .keepAlive(k -> k.time(SEARCH_KEEP_ALIVE))
+        ).id();
+        try {
+            List<FieldValue> searchAfter = null;
+            while (true) {
+                var searchRequest = new SearchRequest.Builder()
+                        .pit(p -> p.id(pitId).keepAlive(k -> k.time(SEARCH_KEEP_ALIVE)))
+                        .query(query)
+                        .size(searchPageSize)
+                        .sort(so -> so.field(f -> f.field(pathKeywordField()).order(SortOrder.Asc)))
+                        .trackTotalHits(t -> t.enabled(false));
+                if (!includeContent) {
+                    searchRequest.source(src -> src.filter(f -> f.excludes("content")));
+                }
+                if (searchAfter != null) {
+                    searchRequest.searchAfter(searchAfter);
+                }
+
+                List<Hit<TikaMetadata>> hits = elasticsearchClient.search(searchRequest.build(), TikaMetadata.class).hits().hits();
+                for (Hit<TikaMetadata> hit : hits) {
+                    consumer.accept(hit.source());
+                }
+                if (hits.size() < searchPageSize) {
+                    break;
+                }
+                searchAfter = hits.get(hits.size() - 1).sort();
+            }
+        } finally {
+            elasticsearchClient.closePointInTime(c -> c.id(pitId));
+        }
     }
 
     /**
@@ -82,74 +546,81 @@ public class ElasticsearchService {
         if ("not_found".equalsIgnoreCase(deleteResponse.result().jsonValue())) {
             logger.warn("No document found for file path: {}", filePath);
         } else {
-            logger.info("Metadata deleted successfully for file path: {}", filePath);
+            logger.debug("Metadata deleted successfully for file path: {}", filePath);
         }
     }
 
     /**
-     * Bulk delete metadata by file paths.
+     * Bulk delete metadata by file paths. Deletes go through the bulk ingester together with
+     * index operations, so they are batched and retried the same way.
      */
     public void deleteMetadataByFilePaths(List<String> filePaths) {
         for (String filePath : filePaths) {
-            try {
-                deleteMetadataByFilePath(filePath);
-            } catch (IOException e) {
-                logger.error("Error deleting metadata for file path: {}", filePath, e);
-            }
+            BulkOperation operation = BulkOperation.of(o -> o
+                    .delete(d -> d
+                            .index(INDEX_NAME)
+                            .id(filePath)
+                    )
+            );
+            bulkIngester.add(operation, new IndexContext(null, 0));
         }
+        logger.debug("Queued {} documents for bulk deletion", filePaths.size());
     }
 
     /**
-     * Delete metadata by folder path.
+     * Delete metadata of every document below a folder path with a single delete-by-query.
+     * The folder path is treated as a directory, so "/data/a" does not match "/data/ab/file".
+     *
+     * @return The number of documents deleted.
      */
-    public void deleteByPath(String folderPath) throws IOException {
-        var query = co.elastic.clients.elasticsearch._types.query_dsl.Query.of(q -> q
-                .wildcard(w -> w
-                        .field("filePath.keyword")
-                        .value(folderPath + "*")
-                )
-        );
+    public long deleteByPath(String folderPath) throws IOException {
+        var query = folderQuery(folderPath);
 
         var deleteRequest = new DeleteByQueryRequest.Builder()
                 .index(INDEX_NAME)
                 .query(query)
                 .conflicts(Conflicts.Proceed)
+                .slices(s -> s.computed(SlicesCalculation.Auto))
                 .build();
 
         var response = elasticsearchClient.deleteByQuery(deleteRequest);
         logger.info("Deleted {} documents for folder path: {}", response.deleted(), folderPath);
 
-        if (response.versionConflicts() > 0) {
+        if (response.versionConflicts() != null && response.versionConflicts() > 0) {
             logger.warn("Version conflicts encountered during deleteByQuery for folder: {}. Conflicts: {}",
                     folderPath, response.versionConflicts());
         }
+        return response.deleted() != null ? response.deleted() : 0;
     }
 
     /**
-     * Count files by type using metadataMap.Content-Type.keyword field.
+     * Matches every document below a folder. filePath.tree holds each ancestor directory of a path
+     * (path_hierarchy), so this is one term lookup; the prefix query covers the file system root and
+     * paths that do not use '/' as separator, and indices that predate the template.
      */
-    public Map<String, Long> countFilesByType() throws IOException {
-        var request = new SearchRequest.Builder()
-                .index(INDEX_NAME)
-                .size(0) // Only aggregation, no hits
-                .aggregations("fileTypes", Aggregation.of(a -> a.terms(t -> t.field("metadataMap.Content-Type.keyword").size(1000))))
-                .build();
-
-        var response = elasticsearchClient.search(request, Void.class);
-
-        Map<String, Long> fileTypeCounts = new HashMap<>();
-
-        StringTermsAggregate fileTypeAggregation = response.aggregations()
-                .get("fileTypes")
-                .sterms();
-
-        if (fileTypeAggregation != null && fileTypeAggregation.buckets() != null) {
-            for (StringTermsBucket bucket : fileTypeAggregation.buckets().array()) {
-                fileTypeCounts.put(bucket.key().stringValue(), bucket.docCount());
-            }
+    private co.elastic.clients.elasticsearch._types.query_dsl.Query folderQuery(String folderPath) {
+        String prefix = PathKeys.folderPrefix(folderPath);
+        String folder = prefix.substring(0, prefix.length() - 1);
+        if (File.separatorChar == '/' && !folder.isEmpty() && !legacyMapping) {
+            return co.elastic.clients.elasticsearch._types.query_dsl.Query.of(q -> q
+                    .term(t -> t
+                            .field("filePath.tree")
+                            .value(folder)
+                    )
+            );
         }
+        return co.elastic.clients.elasticsearch._types.query_dsl.Query.of(q -> q
+                .prefix(p -> p
+                        .field(pathKeywordField())
+                        .value(prefix)
+                )
+        );
+    }
 
-        logger.info("File type aggregation result: {}", fileTypeCounts);
-        return fileTypeCounts;
+    /**
+     * The keyword field holding the whole file path, for prefix queries and sorting.
+     */
+    private String pathKeywordField() {
+        return legacyMapping ? "filePath.keyword" : "filePath";
     }
 }
@@ -1,112 +1,145 @@
 package com.fileinsights.service;
 
+import com.fileinsights.config.CacheConfig;
 import com.fileinsights.entity.FileMetadata;
+import com.fileinsights.model.FileExtraction;
+import com.fileinsights.model.FileFingerprints;
+import com.fileinsights.model.FileHashes;
+import com.fileinsights.model.IngestionJob;
+import com.fileinsights.model.RollupDelta;
 import com.fileinsights.repository.FileMetadataRepository;
-import com.fileinsights.util.TikaUtils;
+import com.fileinsights.util.KeysetPages;
+import com.fileinsights.util.PathKeys;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.transaction.annotation.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 public class FileMetadataService {
 
     private static final Logger logger = LoggerFactory.getLogger(FileMetadataService.class);
 
+    private static final int DELETE_CHUNK_SIZE = 1000;
+    private static final int FOLDER_DELETE_CHUNK_SIZE = 10000;
+
     @Autowired
     private FileMetadataRepository fileMetadataRepository;
 
+    @PersistenceContext
+    private EntityManager entityManager;
+
     @Autowired
     private ElasticsearchService elasticsearchService;
 
+    @Autowired
+    private TikaService tikaService;
+
+    @Autowired
+    private FileRollupService fileRollupService;
+
+    // This bean's proxy, for calls from methods that must not run in a transaction themselves
+    @Autowired
+    @Lazy
+    private FileMetadataService self;
+
+    @Autowired
+    private CacheManager cacheManager;
+
     /**
-     * Processes the uploaded file, extracts metadata, and saves it to MySQL and Elasticsearch.
+     * Processes an uploaded file while it is being received: Tika parses it and the content hashes are
+     * computed from the same read of the request body, and its metadata is saved to MySQL and Elasticsearch.
+     * The upload is not copied to a temporary file; Tika only spools it to disk for formats it cannot
+     * parse without random access.
      *
-     * @param file             The uploaded file.
+     * @param content          The uploaded content; read to its end but not closed.
      * @param originalFileName The original file name.
+     * @return The saved file metadata.
      * @throws Exception If file processing fails.
      */
-    public void processFile(MultipartFile file, String originalFileName) throws Exception {
-        Path tempFile = saveTempFile(file);
-
+    public FileMetadata processUpload(InputStream content, String originalFileName) throws Exception {
+        String path = uploadPath(originalFileName);
         try {
-            processAndSaveFile(tempFile.toFile(), originalFileName);
-        } finally {
-            Files.deleteIfExists(tempFile); // Clean up temporary file
+            FileExtraction extraction = tikaService.extract(content, path, originalFileName);
+            FileMetadata fileMetadata = toUploadMetadata(path, originalFileName, extraction);
+
+            self.saveFileMetadata(fileMetadata); // Save to MySQL, in a transaction that does not span the parse
+            elasticsearchService.saveTikaMetadata(extraction.tikaMetadata()); // Save to Elasticsearch
+            return fileMetadata;
+        } catch (Exception e) {
+            logger.error("Error processing upload: {}", path, e);
+            throw e;
         }
     }
 
     /**
-     * Processes a folder and extracts metadata for all files inside it.
+     * Builds the metadata of an upload from its extraction. There is no file to take attributes from;
+     * the upload is created, modified and read now.
      *
-     * @param folder The folder to process.
-     * @throws Exception If an error occurs during processing.
+     * @param path             The path recorded for the upload, see {@link #uploadPath}.
+     * @param originalFileName The original file name.
+     * @param extraction       The extraction of the uploaded content.
+     * @return The file metadata, not yet saved.
      */
-    public void processFolder(File folder) throws Exception {
-        if (folder.exists() && folder.isDirectory()) {
-            File[] files = folder.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile()) {
-                        try {
-                            processAndSaveFile(file, file.getName()); // Process each file
-                        } catch (Exception e) {
-                            logger.error("Error processing file: {}", file.getAbsolutePath(), e);
-                        }
-                    } else if (file.isDirectory()) {
-                        processFolder(file); // Recursively process subfolders
-                    }
-                }
-            }
-        } else {
-            throw new IllegalArgumentException("Invalid folder path: " + folder.getAbsolutePath());
-        }
+    public FileMetadata toUploadMetadata(String path, String originalFileName, FileExtraction extraction) {
+        Date now = new Date();
+        FileMetadata fileMetadata = new FileMetadata();
+        fileMetadata.setName(uploadFileName(originalFileName));
+        fileMetadata.setSize(extraction.bytesRead());
+        fileMetadata.setCtime(now);
+        fileMetadata.setMtime(now);
+        fileMetadata.setAtime(now);
+        fileMetadata.setPath(path);
+        fileMetadata.setContentType(extraction.tikaMetadata().getContentType());
+        fileMetadata.setPartialHash(extraction.hashes().partialHash());
+        fileMetadata.setContentHash(extraction.hashes().contentHash());
+        return fileMetadata;
     }
 
     /**
-     * Processes and saves a file's metadata to both MySQL and Elasticsearch.
+     * The path recorded for an upload: a unique name in the temporary directory, as uploads were
+     * previously stored there while being processed.
      *
-     * @param file             The file to process.
      * @param originalFileName The original file name.
-     * @throws Exception If an error occurs.
+     * @return The absolute path.
      */
-    private void processAndSaveFile(File file, String originalFileName) throws Exception {
-        try {
-            // Extract basic metadata
-            FileMetadata fileMetadata = extractMetadata(file, originalFileName);
-            saveFileMetadata(fileMetadata); // Save to MySQL
-
-            // Extract advanced metadata with Tika
-            var tikaMetadata = TikaUtils.extractTikaMetadata(file, originalFileName);
-            elasticsearchService.saveTikaMetadata(tikaMetadata); // Save to Elasticsearch
-        } catch (Exception e) {
-            logger.error("Error processing file: {}", file.getAbsolutePath(), e);
-            throw e;
-        }
+    public static String uploadPath(String originalFileName) {
+        String name = "upload-" + UUID.randomUUID() + "-" + uploadFileName(originalFileName);
+        return new File(System.getProperty("java.io.tmpdir"), name).getAbsolutePath();
     }
 
     /**
-     * Saves the uploaded file temporarily for processing.
-     *
-     * @param file The uploaded file.
-     * @return The path to the temporary file.
-     * @throws IOException If saving the file fails.
+     * The file name of an upload without any folders in the name sent by the client or in an archive.
      */
-    private Path saveTempFile(MultipartFile file) throws IOException {
-        Path tempFilePath = Files.createTempFile("upload-", file.getOriginalFilename());
-        file.transferTo(tempFilePath.toFile());
-        return tempFilePath;
+    private static String uploadFileName(String originalFileName) {
+        int separator = Math.max(originalFileName.lastIndexOf('/'), originalFileName.lastIndexOf('\\'));
+        return originalFileName.substring(separator + 1);
     }
 
     /**
@@ -117,13 +150,23 @@ public class FileMetadataService {
      * @return Extracted file metadata.
      */
     public FileMetadata extractMetadata(File file, String originalFileName) throws IOException {
-        FileMetadata metadata = new FileMetadata();
-        metadata.setName(originalFileName);
-        metadata.setSize(file.length());
-
-        // Convert long to Date for ctime, mtime, and atime
         Path filePath = Path.of(file.getAbsolutePath());
         BasicFileAttributes attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
+        return extractMetadata(filePath, originalFileName, attrs);
+    }
+
+    /**
+     * Builds file metadata from attributes that were already read, e.g. during a directory walk.
+     *
+     * @param filePath         The file path.
+     * @param originalFileName The original file name.
+     * @param attrs            The file attributes.
+     * @return Extracted file metadata.
+     */
+    public FileMetadata extractMetadata(Path filePath, String originalFileName, BasicFileAttributes attrs) {
+        FileMetadata metadata = new FileMetadata();
+        metadata.setName(originalFileName);
+        metadata.setSize(attrs.size());
 
         // Set the times from the file attributes
         metadata.setCtime(new Date(attrs.creationTime().toMillis())); // File creation time
@@ -131,18 +174,154 @@ public class FileMetadataService {
         metadata.setAtime(new Date(attrs.lastAccessTime().toMillis())); // File access time
 
         // Set the path
-        metadata.setPath(file.getAbsolutePath());
+        metadata.setPath(filePath.toAbsolutePath().toString());
 
         return metadata;
     }
 
     /**
-     * Saves file metadata to the repository (MySQL).
+     * Saves file metadata to the repository (MySQL), updating the stored row of the same path if there is one.
      *
      * @param fileMetadata The file metadata to save.
      */
+    @Transactional
     public void saveFileMetadata(FileMetadata fileMetadata) {
-        fileMetadataRepository.save(fileMetadata);
+        saveFileMetadataBatch(List.of(fileMetadata));
+    }
+
+    /**
+     * Saves a chunk of file metadata to MySQL in a single transaction.
+     * Rows whose path is already stored are updated in place, new rows are inserted;
+     * with hibernate.jdbc.batch_size set, both are sent as JDBC batches. The analytics rollup is
+     * updated in the same transaction.
+     *
+     * @param batch The file metadata to save.
+     */
+    @Transactional
+    public void saveFileMetadataBatch(List<FileMetadata> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<String> paths = new ArrayList<>(batch.size());
+        for (FileMetadata fileMetadata : batch) {
+            paths.add(fileMetadata.getPath());
+        }
+
+        Map<String, FileMetadata> existing = new HashMap<>();
+        for (FileMetadata stored : fileMetadataRepository.findByPathIn(paths)) {
+            existing.put(stored.getPath(), stored);
+        }
+
+        List<FileMetadata> inserts = new ArrayList<>();
+        RollupDelta rollup = new RollupDelta();
+        for (FileMetadata fileMetadata : batch) {
+            FileMetadata stored = existing.get(fileMetadata.getPath());
+            if (stored != null) {
+                evictCached(stored.getId(), stored.getPath());
+                // Managed entity: changes are flushed as a batched UPDATE on commit
+                rollup.remove(stored);
+                stored.setName(fileMetadata.getName());
+                stored.setSize(fileMetadata.getSize());
+                stored.setContentType(fileMetadata.getContentType());
+                // Hashes of the previous content no longer apply unless the file was hashed again
+                stored.setPartialHash(fileMetadata.getPartialHash());
+                stored.setContentHash(fileMetadata.getContentHash());
+                stored.setCtime(fileMetadata.getCtime());
+                stored.setMtime(fileMetadata.getMtime());
+                stored.setAtime(fileMetadata.getAtime());
+                rollup.add(stored);
+            } else {
+                inserts.add(fileMetadata);
+                rollup.add(fileMetadata);
+            }
+        }
+        fileMetadataRepository.saveAll(inserts);
+        fileRollupService.apply(rollup);
+    }
+
+    /**
+     * Stores content fingerprints computed for existing rows, as one batch of updates.
+     * A row whose size changed since it was hashed is left alone.
+     *
+     * @param hashes The computed hashes.
+     */
+    @Transactional
+    public void saveHashes(List<FileHashes> hashes) {
+        if (hashes.isEmpty()) {
+            return;
+        }
+
+        Map<Long, FileHashes> byId = new HashMap<>();
+        for (FileHashes fileHashes : hashes) {
+            byId.put(fileHashes.id(), fileHashes);
+        }
+        for (FileMetadata stored : fileMetadataRepository.findAllById(byId.keySet())) {
+            FileHashes fileHashes = byId.get(stored.getId());
+            if (stored.getSize() != fileHashes.size()) {
+                continue;
+            }
+            evictCached(stored.getId(), stored.getPath());
+            if (fileHashes.partialHash() != null) {
+                stored.setPartialHash(fileHashes.partialHash());
+            }
+            if (fileHashes.contentHash() != null) {
+                stored.setContentHash(fileHashes.contentHash());
+            }
+        }
+    }
+
+    /**
+     * Loads the stored fingerprints (id, path, size, mtime) of all files below a folder.
+     *
+     * @param folderPath The folder path.
+     * @return The fingerprints of the stored files.
+     */
+    @Transactional(readOnly = true)
+    public FileFingerprints loadFingerprints(String folderPath) {
+        FileFingerprints fingerprints = new FileFingerprints();
+        try (Stream<Object[]> rows = fileMetadataRepository.streamFingerprintsByParentPathLike(PathKeys.likePrefix(PathKeys.folderPrefix(folderPath)))) {
+            rows.forEach(row -> {
+                Date mtime = (Date) row[3];
+                fingerprints.add((Long) row[0], (String) row[1], (Long) row[2], mtime != null ? mtime.getTime() : 0L);
+            });
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Loads the stored fingerprints of the given files, with a single query.
+     *
+     * @param filePaths The file paths.
+     * @return The fingerprints of those files that are stored.
+     */
+    @Transactional(readOnly = true)
+    public FileFingerprints loadFingerprints(List<String> filePaths) {
+        FileFingerprints fingerprints = new FileFingerprints();
+        for (FileMetadata stored : fileMetadataRepository.findByPathIn(filePaths)) {
+            Date mtime = stored.getMtime();
+            fingerprints.add(stored.getId(), stored.getPath(), stored.getSize(), mtime != null ? mtime.getTime() : 0L);
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Deletes metadata rows from MySQL by ID, in chunks of batched deletes.
+     *
+     * @param ids The IDs of the rows to delete.
+     */
+    @Transactional
+    public void deleteMetadataByIds(List<Long> ids) {
+        RollupDelta rollup = new RollupDelta();
+        for (int from = 0; from < ids.size(); from += DELETE_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + DELETE_CHUNK_SIZE));
+            for (Object[] row : fileMetadataRepository.findRollupFieldsByIdIn(chunk)) {
+                evictCached((Long) row[0], (String) row[1]);
+                rollup.add((String) row[2], (Date) row[3], (String) row[4], (Long) row[5], -1);
+            }
+            fileMetadataRepository.deleteAllByIdInBatch(chunk);
+        }
+        fileRollupService.apply(rollup);
     }
 
     /**
@@ -151,6 +330,7 @@ public class FileMetadataService {
      * @param id The ID of the metadata to retrieve.
      * @return The file metadata with the specified ID, or null if not found.
      */
+    @Cacheable(cacheNames = CacheConfig.METADATA_BY_ID, unless = "#result == null")
     public FileMetadata getMetadata(Long id) {
         return fileMetadataRepository.findById(id).orElse(null);
     }
@@ -161,23 +341,26 @@ public class FileMetadataService {
      * @param filePath The file path to search for.
      * @return FileMetadata object or null if not found.
      */
+    @Cacheable(cacheNames = CacheConfig.METADATA_BY_PATH, unless = "#result == null")
     public FileMetadata getMetadataByPath(String filePath) {
         return fileMetadataRepository.findByPath(filePath);
     }
 
     /**
-     * Deletes metadata from both MySQL and Elasticsearch by ID.
+     * Deletes metadata from both MySQL and Elasticsearch by ID. The MySQL delete and its rollup change
+     * are rolled back if the Elasticsearch delete fails.
      *
      * @param id The ID of the metadata to delete.
      * @throws Exception If deletion fails.
      */
+    @Transactional(rollbackFor = Exception.class)
     public void deleteMetadata(Long id) throws Exception {
         FileMetadata fileMetadata = fileMetadataRepository.findById(id).orElse(null);
 
         if (fileMetadata != null) {
             try {
                 // Delete from MySQL
-                fileMetadataRepository.deleteById(id);
+                deleteMetadataByIds(List.of(id));
                 logger.info("Deleted metadata from MySQL with ID: {}", id);
 
                 // Delete from Elasticsearch
@@ -193,41 +376,83 @@ public class FileMetadataService {
     }
 
     /**
-     * Deletes all metadata associated with files in a specific folder.
+     * Deletes the MySQL metadata of every file stored below a folder, whether or not the files still exist.
+     * Rows are deleted by path prefix in chunks, each in its own short transaction. The analytics rollup of
+     * the subtree is dropped once all rows are gone, or recounted from the remaining rows after a cancel.
      *
      * @param folderPath The folder path to delete metadata from.
-     * @throws Exception If deletion fails.
+     * @param job        Job to report progress to and to check for cancellation, or null.
+     * @return The number of rows deleted.
      */
-    public void deleteMetadataForFolder(String folderPath) throws Exception {
-        File folder = new File(folderPath);
-
-        if (folder.exists() && folder.isDirectory()) {
-            File[] files = folder.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile()) {
-                        FileMetadata metadata = getMetadataByPath(file.getAbsolutePath());
-                        if (metadata != null) {
-                            deleteMetadata(metadata.getId());
-                        }
-                    } else if (file.isDirectory()) {
-                        deleteMetadataForFolder(file.getAbsolutePath()); // Recursive deletion for subfolders
-                    }
-                }
+    @CacheEvict(cacheNames = {CacheConfig.METADATA_BY_ID, CacheConfig.METADATA_BY_PATH}, allEntries = true)
+    public long deleteMetadataForFolder(String folderPath, IngestionJob job) {
+        String pattern = PathKeys.likePrefix(PathKeys.folderPrefix(folderPath));
+        long total = 0;
+        int deleted;
+        do {
+            deleted = fileMetadataRepository.deleteChunkByParentPathLike(pattern, FOLDER_DELETE_CHUNK_SIZE);
+            total += deleted;
+            if (job != null) {
+                job.filesDeleted(deleted);
             }
+        } while (deleted == FOLDER_DELETE_CHUNK_SIZE && (job == null || !job.isCancelRequested()));
+
+        if (deleted < FOLDER_DELETE_CHUNK_SIZE) {
+            // Every file below the folder is gone, and with it every rollup row of the subtree
+            fileRollupService.deleteFolders(pattern);
         } else {
-            throw new IllegalArgumentException("Provided path is not a valid directory: " + folderPath);
+            // Cancelled part way: the chunks deleted so far are still counted, so recount what is left
+            fileRollupService.rebuildFolders(pattern);
         }
+
+        logger.info("Deleted {} metadata rows from MySQL for folder: {}", total, folderPath);
+        return total;
     }
 
     /**
-     * Retrieves metadata for files in a folder.
+     * Retrieves a page of metadata for files in a folder, continuing after a cursor.
      *
      * @param folderPath The path of the folder.
-     * @return List of FileMetadata objects.
+     * @param after      The position after the last row of the previous page, or null for the first page.
+     * @param size       The size of the page.
+     * @return List of FileMetadata objects, in (parent key, ID) order.
+     */
+    public List<FileMetadata> getMetadataForFolder(String folderPath, KeysetPages.FolderCursor after, int size) {
+        String prefix = PathKeys.folderPrefix(folderPath);
+        KeysetPages.FolderCursor from = after != null ? after : KeysetPages.FolderCursor.FIRST;
+        return fileMetadataRepository.findFolderPage(PathKeys.likePrefix(PathKeys.parentKey(prefix)),
+                PathKeys.likePrefix(prefix), from.parentKey(), from.id(), Limit.of(size));
+    }
+
+    /**
+     * Retrieves a page of file metadata, continuing after a cursor (keyset pagination).
+     * Unlike offset paging, the cost of a page does not grow with its depth.
+     *
+     * @param afterId The last ID of the previous page, or null for the first page.
+     * @param size    The size of the page.
+     * @return List of FileMetadata objects, in ID order.
      */
-    public List<FileMetadata> getMetadataForFolder(String folderPath) {
-        return fileMetadataRepository.findByPathStartingWith(folderPath);
+    public List<FileMetadata> getMetadataAfter(Long afterId, int size) {
+        return fileMetadataRepository.findByIdGreaterThanOrderByIdAsc(afterId != null ? afterId : 0L, Limit.of(size));
+    }
+
+    /**
+     * Streams file metadata row by row, for exports of any size. Rows are detached once consumed,
+     * so memory use does not grow with the number of rows.
+     *
+     * @param folderPath The folder whose files to stream, or null for all files.
+     * @param consumer   Receives every row.
+     */
+    @Transactional(readOnly = true)
+    public void streamMetadata(String folderPath, Consumer<FileMetadata> consumer) {
+        try (Stream<FileMetadata> rows = folderPath != null
+                ? fileMetadataRepository.streamByParentPathLike(PathKeys.likePrefix(PathKeys.folderPrefix(folderPath)))
+                : fileMetadataRepository.streamAll()) {
+            rows.forEach(row -> {
+                consumer.accept(row);
+                entityManager.detach(row);
+            });
+        }
     }
 
     /**
@@ -247,4 +472,18 @@ public class FileMetadataService {
             throw new RuntimeException("Error retrieving metadata with pagination: " + e.getMessage());
         }
     }
+
+    /**
+     * Drops a row from the lookup caches; inside a transaction this happens once it commits.
+     */
+    private void evictCached(Long id, String path) {
+        Cache byId = cacheManager.getCache(CacheConfig.METADATA_BY_ID);
+        Cache byPath = cacheManager.getCache(CacheConfig.METADATA_BY_PATH);
+        if (byId != null && id != null) {
+            byId.evict(id);
+        }
+        if (byPath != null && path != null) {
+            byPath.evict(path);
+        }
+    }
 }
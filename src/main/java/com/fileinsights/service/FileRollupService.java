@@ -0,0 +1,90 @@
+package com.fileinsights.service;
+
+import com.fileinsights.config.CacheConfig;
+import com.fileinsights.model.RollupDelta;
+import com.fileinsights.repository.FileRollupRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Maintains the file_rollup analytics table.
+ *
+ * Writers collect a {@link RollupDelta} for the rows they save or delete and apply it in the same
+ * transaction, so the rollup always matches file_metadata. Each touched rollup row costs one upsert,
+ * applied in key order to keep concurrent persist batches from deadlocking each other.
+ * Every change clears the cached analytics once its transaction commits.
+ */
+@Service
+public class FileRollupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileRollupService.class);
+
+    @Autowired
+    private FileRollupRepository fileRollupRepository;
+
+    /**
+     * Applies collected changes to the rollup, joining the caller's transaction if there is one.
+     *
+     * @param delta The changes to apply.
+     */
+    @Transactional
+    @CacheEvict(cacheNames = CacheConfig.ANALYTICS, allEntries = true)
+    public void apply(RollupDelta delta) {
+        if (delta.isEmpty()) {
+            return;
+        }
+        for (RollupDelta.Change change : delta.changes()) {
+            fileRollupRepository.upsert(change.folderHash(), change.folder(), change.accessDay(),
+                    change.contentType(), change.fileCount(), change.totalBytes());
+            if (change.fileCount() < 0) {
+                fileRollupRepository.deleteIfEmpty(change.folderHash(), change.accessDay(), change.contentType());
+            }
+        }
+    }
+
+    /**
+     * Removes the rollup rows of a folder and everything below it.
+     *
+     * @param folderPattern LIKE pattern matching the folders, with '\' escaping wildcards.
+     */
+    @Transactional
+    @CacheEvict(cacheNames = CacheConfig.ANALYTICS, allEntries = true)
+    public void deleteFolders(String folderPattern) {
+        int deleted = fileRollupRepository.deleteByFolderLike(folderPattern);
+        logger.debug("Deleted {} rollup rows for folders matching {}", deleted, folderPattern);
+    }
+
+    /**
+     * Recomputes the rollup rows of a folder and everything below it from file_metadata, e.g. after a
+     * folder delete stopped part way.
+     *
+     * @param folderPattern LIKE pattern matching the folders, with '\' escaping wildcards.
+     * @return The number of rollup rows.
+     */
+    @Transactional
+    @CacheEvict(cacheNames = CacheConfig.ANALYTICS, allEntries = true)
+    public int rebuildFolders(String folderPattern) {
+        fileRollupRepository.deleteByFolderLike(folderPattern);
+        int rows = fileRollupRepository.rebuildFromMetadata(folderPattern);
+        logger.debug("Rebuilt {} rollup rows for folders matching {}", rows, folderPattern);
+        return rows;
+    }
+
+    /**
+     * Recomputes the whole rollup from file_metadata, e.g. after the table was first created.
+     *
+     * @return The number of rollup rows.
+     */
+    @Transactional
+    @CacheEvict(cacheNames = CacheConfig.ANALYTICS, allEntries = true)
+    public int rebuild() {
+        fileRollupRepository.deleteAllRows();
+        int rows = fileRollupRepository.rebuildFromMetadata();
+        logger.info("Rebuilt analytics rollup: {} rows", rows);
+        return rows;
+    }
+}
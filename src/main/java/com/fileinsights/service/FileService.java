@@ -2,7 +2,7 @@ package com.fileinsights.service;
 
 import com.fileinsights.entity.FileMetadata;
 import com.fileinsights.entity.TikaMetadata;
-import com.fileinsights.util.TikaUtils;
+import com.fileinsights.model.IngestionJob;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
@@ -23,49 +23,19 @@ public class FileService {
     @Autowired
     private ElasticsearchService elasticsearchService;
 
-    /**
-     * Processes the given folder and extracts metadata for each file.
-     *
-     * @param folder The folder to process.
-     */
-    public void processFolder(File folder) {
-        if (folder.isDirectory()) {
-            File[] files = folder.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile()) {
-                        processFile(file); // Process individual files
-                    } else if (file.isDirectory()) {
-                        processFolder(file); // Recursively process subfolders
-                    }
-                }
-            } else {
-                logger.warn("The folder is empty or could not be accessed: {}", folder.getAbsolutePath());
-            }
-        } else {
-            logger.error("Provided path is not a valid directory: {}", folder.getAbsolutePath());
-        }
-    }
+    @Autowired
+    private IngestionJobService ingestionJobService;
 
     /**
-     * Processes a single file by extracting and saving its metadata.
+     * Queues the given folder for metadata extraction.
+     * The work runs in the background on the parallel {@link IngestionService}.
      *
-     * @param file The file to process.
+     * @param folder      The folder to process.
+     * @param incremental Whether to skip unchanged files and remove metadata of deleted ones.
+     * @return The ingestion job tracking the folder.
      */
-    private void processFile(File file) {
-        try {
-            // Step 1: Extract basic file metadata and save to MySQL
-            FileMetadata fileMetadata = fileMetadataService.extractMetadata(file, file.getName());
-            fileMetadataService.saveFileMetadata(fileMetadata);
-
-            // Step 2: Extract advanced metadata using Tika and save to Elasticsearch
-            TikaMetadata tikaMetadata = TikaUtils.extractTikaMetadata(file, file.getName());
-            elasticsearchService.saveTikaMetadata(tikaMetadata);
-
-            logger.info("Successfully processed and stored metadata for file: {}", file.getAbsolutePath());
-        } catch (Exception e) {
-            logger.error("Error processing file: {}", file.getAbsolutePath(), e);
-        }
+    public IngestionJob processFolder(File folder, boolean incremental) {
+        return ingestionJobService.submit(folder, incremental);
     }
 
     /**
@@ -79,14 +49,14 @@ public class FileService {
             FileMetadata fileMetadata = fileMetadataService.getMetadataByPath(filePath);
             if (fileMetadata != null) {
                 fileMetadataService.deleteMetadata(fileMetadata.getId());
-                logger.info("Deleted metadata from MySQL for file: {}", filePath);
+                logger.debug("Deleted metadata from MySQL for file: {}", filePath);
             } else {
                 logger.warn("No MySQL metadata found for file: {}", filePath);
             }
 
             // Delete metadata from Elasticsearch
             elasticsearchService.deleteMetadataByFilePath(filePath);
-            logger.info("Deleted metadata from Elasticsearch for file: {}", filePath);
+            logger.debug("Deleted metadata from Elasticsearch for file: {}", filePath);
 
         } catch (Exception e) {
             logger.error("Error deleting metadata for file: {}", filePath, e);
@@ -94,41 +64,27 @@ public class FileService {
     }
 
     /**
-     * Deletes metadata for all files in a specified folder.
+     * Queues the deletion of metadata for all files stored below a specified folder,
+     * including files that no longer exist on disk.
      *
      * @param folderPath The folder path for which metadata is to be deleted.
+     * @return The job tracking the deletion.
      */
-    public void deleteMetadataForFolder(String folderPath) {
-        File folder = new File(folderPath);
-
-        if (folder.exists() && folder.isDirectory()) {
-            File[] files = folder.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile()) {
-                        deleteMetadata(file.getAbsolutePath());
-                    } else if (file.isDirectory()) {
-                        deleteMetadataForFolder(file.getAbsolutePath()); // Recursively delete subfolders
-                    }
-                }
-            } else {
-                logger.warn("The folder is empty or could not be accessed: {}", folderPath);
-            }
-        } else {
-            logger.error("Invalid folder path: {}", folderPath);
-        }
+    public IngestionJob deleteMetadataForFolder(String folderPath) {
+        return ingestionJobService.submitReset(new File(folderPath).getAbsolutePath());
     }
 
     /**
      * Fetches advanced metadata for a given folder from Elasticsearch.
      *
-     * @param folderPath The folder path to query for advanced metadata.
+     * @param folderPath     The folder path to query for advanced metadata.
+     * @param includeContent Whether to include the extracted text content.
      * @return List of TikaMetadata objects.
      */
-    public List<TikaMetadata> getAdvancedMetadata(String folderPath) {
+    public List<TikaMetadata> getAdvancedMetadata(String folderPath, boolean includeContent) {
         try {
             logger.info("Fetching advanced metadata for folder: {}", folderPath);
-            List<TikaMetadata> metadataList = elasticsearchService.getMetadataByFolderPath(folderPath);
+            List<TikaMetadata> metadataList = elasticsearchService.getMetadataByFolderPath(folderPath, includeContent);
             if (metadataList != null && !metadataList.isEmpty()) {
                 logger.info("Fetched {} records from Elasticsearch.", metadataList.size());
             } else {
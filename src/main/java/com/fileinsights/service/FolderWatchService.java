@@ -0,0 +1,417 @@
+package com.fileinsights.service;
+
+import com.fileinsights.entity.FileMetadata;
+import com.fileinsights.entity.TikaMetadata;
+import com.fileinsights.model.FileExtraction;
+import com.fileinsights.model.FileFingerprints;
+import com.fileinsights.util.FileTreeWalker;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps MySQL and Elasticsearch up to date with configured root folders without full rescans.
+ *
+ * Roots in {@code watch.roots} are watched with the NIO {@link WatchService}. Every directory below a root that
+ * a scan would walk ({@code ingestion.walk.*}) is registered, and files a scan would skip are ignored. Events are coalesced per path: a path is processed once it has been quiet for
+ * {@code watch.debounce-ms}, as an update if it still exists and as a removal otherwise. When the event queue
+ * overflows, or a root cannot be watched natively, an incremental scan of the root is queued instead.
+ *
+ * Roots in {@code watch.polling-roots} (e.g. network mounts that do not deliver change events) are polled
+ * with an incremental scan every {@code watch.poll-interval-ms}.
+ */
+@Service
+public class FolderWatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FolderWatchService.class);
+
+    @Autowired
+    private FileMetadataService fileMetadataService;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private TikaService tikaService;
+
+    @Autowired
+    private IngestionJobService ingestionJobService;
+
+    @Value("${watch.enabled:false}")
+    private boolean enabled;
+
+    @Value("${watch.roots:}")
+    private List<String> roots;
+
+    @Value("${watch.polling-roots:}")
+    private List<String> pollingRoots;
+
+    @Value("${watch.debounce-ms:2000}")
+    private long debounceMs;
+
+    @Value("${watch.poll-interval-ms:300000}")
+    private long pollIntervalMs;
+
+    @Value("${ingestion.hash-content:false}")
+    private boolean hashContent;
+
+    @Value("${duplicates.min-size:1}")
+    private long hashMinSize;
+
+    @Value("${ingestion.persist.batch-size:500}")
+    private int persistBatchSize;
+
+    // The ingestion walk settings, so that watching picks up the same files as a scan
+    @Value("${ingestion.walk.include:}")
+    private List<String> includeGlobs;
+
+    @Value("${ingestion.walk.exclude:}")
+    private List<String> excludeGlobs;
+
+    @Value("${ingestion.walk.max-depth:-1}")
+    private int maxDepth;
+
+    @Value("${ingestion.walk.follow-links:true}")
+    private boolean followLinks;
+
+    // Last event per changed path; whether it still exists is checked on the file system on flush
+    private final Map<Path, PendingChange> pendingChanges = new ConcurrentHashMap<>();
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    private final Map<String, String> pollingJobs = new ConcurrentHashMap<>();
+    // Natively watched roots; only written during start
+    private final List<Path> watchedRoots = new ArrayList<>();
+
+    private FileTreeWalker walker;
+    private WatchService watchService;
+    private ScheduledExecutorService scheduler;
+    private Thread watchThread;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        walker = new FileTreeWalker(includeGlobs, excludeGlobs, maxDepth, followLinks);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "folder-watch-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        List<String> nativeRoots = roots.stream().filter(root -> !root.isBlank()).toList();
+        List<String> polled = new ArrayList<>(pollingRoots.stream().filter(root -> !root.isBlank()).toList());
+
+        if (!nativeRoots.isEmpty()) {
+            watchService = FileSystems.getDefault().newWatchService();
+            for (String root : nativeRoots) {
+                try {
+                    Path rootPath = Path.of(root).toAbsolutePath();
+                    registerTree(rootPath, rootPath);
+                    watchedRoots.add(rootPath);
+                    logger.info("Watching folder: {}", root);
+                } catch (IOException e) {
+                    // Typically the inotify watch limit; polling still keeps the root current
+                    logger.warn("Cannot watch folder {}, falling back to polling", root, e);
+                    polled.add(root);
+                }
+            }
+            watchThread = new Thread(this::watchLoop, "folder-watch");
+            watchThread.setDaemon(true);
+            watchThread.start();
+            scheduler.scheduleWithFixedDelay(this::flushQuietChanges, debounceMs, debounceMs, TimeUnit.MILLISECONDS);
+        }
+
+        for (String root : polled) {
+            logger.info("Polling folder every {} ms: {}", pollIntervalMs, root);
+            scheduler.scheduleWithFixedDelay(() -> pollRoot(root), pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (watchService != null) {
+            watchService.close(); // Ends the watch loop
+        }
+    }
+
+    /**
+     * Registers a directory and all directories below it that a scan of the root would walk.
+     */
+    private void registerTree(Path root, Path directory) throws IOException {
+        walker.walk(root, directory, new FileTreeWalker.Visitor() {
+            @Override
+            public void visitFile(Path file, BasicFileAttributes attrs) {
+            }
+
+            @Override
+            public void visitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = dir.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+                watchedDirectories.put(key, dir);
+            }
+
+            @Override
+            public void visitFailed(Path path, IOException e) {
+                logger.warn("Cannot watch: {}", path, e);
+            }
+        });
+    }
+
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path directory = watchedDirectories.get(key);
+            if (directory != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    handleEvent(directory, event);
+                }
+            }
+
+            if (!key.reset()) {
+                watchedDirectories.remove(key); // Directory was deleted or became inaccessible
+            }
+        }
+    }
+
+    private void handleEvent(Path directory, WatchEvent<?> event) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            // Events were lost, possibly for any directory of the root; only a scan can tell what changed
+            Path root = rootOf(directory);
+            logger.warn("Watch events overflowed for {}, queueing an incremental scan of {}", directory, root);
+            pollRoot(root.toString());
+            return;
+        }
+
+        Path changed = directory.resolve((Path) event.context());
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed)) {
+            try {
+                registerTree(rootOf(directory), changed);
+            } catch (IOException e) {
+                logger.warn("Cannot watch new folder: {}", changed, e);
+            }
+        }
+        boolean created = event.kind() == StandardWatchEventKinds.ENTRY_CREATE;
+        pendingChanges.merge(changed, new PendingChange(System.currentTimeMillis(), created),
+                (previous, next) -> new PendingChange(next.at(), previous.created() || next.created()));
+    }
+
+    /**
+     * The registered root a watched path belongs to; the innermost one if roots are nested.
+     */
+    private Path rootOf(Path directory) {
+        Path root = directory;
+        int rootDepth = -1;
+        for (Path candidate : watchedRoots) {
+            if (directory.startsWith(candidate) && candidate.getNameCount() > rootDepth) {
+                root = candidate;
+                rootDepth = candidate.getNameCount();
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Processes every path whose last event is older than the debounce interval. A file reported both
+     * by its own event and by its new parent directory is updated once; updates are written in chunks
+     * of {@code ingestion.persist.batch-size} so that a failed chunk does not hold back the others.
+     */
+    private void flushQuietChanges() {
+        long quietSince = System.currentTimeMillis() - debounceMs;
+        Set<Path> updated = new LinkedHashSet<>();
+        Set<Path> removed = new LinkedHashSet<>();
+
+        Iterator<Map.Entry<Path, PendingChange>> it = pendingChanges.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, PendingChange> entry = it.next();
+            PendingChange change = entry.getValue();
+            if (change.at() > quietSince) {
+                continue;
+            }
+            // remove(key, value) keeps entries that received a new event meanwhile
+            if (pendingChanges.remove(entry.getKey(), change)) {
+                Path path = entry.getKey();
+                if (Files.isRegularFile(path)) {
+                    if (walker.includes(rootOf(path), path)) {
+                        updated.add(path);
+                    }
+                } else if (Files.isDirectory(path)) {
+                    // A modified directory only had entries added or removed, which have events of their own
+                    if (change.created()) {
+                        addFilesBelow(rootOf(path), path, updated);
+                    }
+                } else {
+                    removed.add(path);
+                }
+            }
+        }
+
+        List<Path> files = new ArrayList<>(updated);
+        int chunkSize = Math.max(1, persistBatchSize);
+        for (int from = 0; from < files.size(); from += chunkSize) {
+            List<Path> chunk = files.subList(from, Math.min(from + chunkSize, files.size()));
+            try {
+                update(chunk);
+            } catch (Exception e) {
+                logger.error("Error applying {} watched changes", chunk.size(), e);
+            }
+        }
+        if (!removed.isEmpty()) {
+            try {
+                remove(new ArrayList<>(removed));
+            } catch (Exception e) {
+                logger.error("Error applying {} watched removals", removed.size(), e);
+            }
+        }
+    }
+
+    /**
+     * A directory created or moved into a watched tree brings files that produced no events of their own.
+     */
+    private void addFilesBelow(Path root, Path directory, Set<Path> files) {
+        try {
+            walker.walk(root, directory, (file, attrs) -> files.add(file));
+        } catch (IOException e) {
+            logger.warn("Cannot list new folder: {}", directory, e);
+        }
+    }
+
+    /**
+     * Re-extracts changed files. Files stored with the same size and modification time, such as those only
+     * touched or reported twice, are skipped. Each file is read once for its Tika metadata and, when enabled,
+     * its content hashes; the documents are queued on the bulk ingester rather than indexed one request at a time.
+     */
+    private void update(List<Path> files) {
+        List<String> paths = new ArrayList<>(files.size());
+        for (Path path : files) {
+            paths.add(path.toAbsolutePath().toString());
+        }
+        FileFingerprints stored = fileMetadataService.loadFingerprints(paths);
+
+        List<FileMetadata> rows = new ArrayList<>(files.size());
+        List<TikaMetadata> documents = new ArrayList<>(files.size());
+        for (Path path : files) {
+            File file = path.toFile();
+            FileMetadata fileMetadata;
+            try {
+                fileMetadata = fileMetadataService.extractMetadata(file, file.getName());
+            } catch (IOException e) {
+                logger.warn("Cannot read changed file: {}", path, e);
+                continue;
+            }
+            if (stored.isUnchanged(fileMetadata.getPath(), fileMetadata.getSize(), fileMetadata.getMtime().getTime())) {
+                continue;
+            }
+            rows.add(fileMetadata);
+
+            boolean hash = hashContent && fileMetadata.getSize() >= hashMinSize;
+            try {
+                FileExtraction extraction = tikaService.extract(file, file.getName(), fileMetadata.getSize(), hash);
+                fileMetadata.setContentType(extraction.tikaMetadata().getContentType());
+                if (extraction.hashes() != null) {
+                    fileMetadata.setPartialHash(extraction.hashes().partialHash());
+                    fileMetadata.setContentHash(extraction.hashes().contentHash());
+                }
+                documents.add(extraction.tikaMetadata());
+            } catch (Exception e) {
+                logger.error("Error updating metadata for changed file: {}", path, e);
+            }
+        }
+
+        fileMetadataService.saveFileMetadataBatch(rows);
+        for (TikaMetadata tikaMetadata : documents) {
+            try {
+                elasticsearchService.indexTikaMetadata(tikaMetadata, null);
+            } catch (Exception e) {
+                logger.error("Error queueing changed file for indexing: {}", tikaMetadata.getFilePath(), e);
+            }
+        }
+        logger.debug("Updated metadata for {} changed files", rows.size());
+    }
+
+    /**
+     * Removes stored metadata of deleted paths. A deleted path may have been a directory,
+     * so everything stored below it is removed as well.
+     */
+    private void remove(List<Path> paths) throws IOException {
+        List<Long> ids = new ArrayList<>();
+        List<String> filePaths = new ArrayList<>();
+        for (Path path : paths) {
+            FileMetadata stored = fileMetadataService.getMetadataByPath(path.toString());
+            if (stored != null) {
+                ids.add(stored.getId());
+                filePaths.add(stored.getPath());
+            }
+            FileFingerprints.Deleted below = fileMetadataService.loadFingerprints(path.toString()).unseen(List.of());
+            ids.addAll(below.getIds());
+            filePaths.addAll(below.getPaths());
+        }
+
+        if (!ids.isEmpty()) {
+            fileMetadataService.deleteMetadataByIds(ids);
+            elasticsearchService.deleteMetadataByFilePaths(filePaths);
+            logger.debug("Removed metadata for {} deleted files", ids.size());
+        }
+    }
+
+    /**
+     * Queues an incremental scan of a root unless the previous one is still running.
+     */
+    private void pollRoot(String root) {
+        String previousJob = pollingJobs.get(root);
+        if (previousJob != null) {
+            var job = ingestionJobService.getJob(previousJob);
+            if (job != null && !job.isDone()) {
+                return;
+            }
+        }
+        try {
+            pollingJobs.put(root, ingestionJobService.submit(new File(root), true).getId());
+        } catch (Exception e) {
+            logger.error("Error queueing incremental scan of folder: {}", root, e);
+        }
+    }
+
+    /**
+     * The last event time of a changed path, and whether it was created since it was last processed.
+     */
+    private record PendingChange(long at, boolean created) {
+    }
+}
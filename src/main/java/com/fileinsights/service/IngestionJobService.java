@@ -0,0 +1,209 @@
+package com.fileinsights.service;
+
+import com.fileinsights.model.IngestionJob;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs folder ingestions, folder resets and duplicate scans as background jobs so HTTP requests return immediately.
+ */
+@Service
+public class IngestionJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionJobService.class);
+
+    @Autowired
+    private IngestionService ingestionService;
+
+    @Autowired
+    private FileMetadataService fileMetadataService;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private DuplicateService duplicateService;
+
+    @Value("${ingestion.jobs.max-concurrent:2}")
+    private int maxConcurrentJobs;
+
+    @Value("${ingestion.jobs.retained:100}")
+    private int retainedJobs;
+
+    private final Map<String, IngestionJob> jobs = new ConcurrentHashMap<>();
+
+    private ExecutorService jobExecutor;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger counter = new AtomicInteger();
+        jobExecutor = Executors.newFixedThreadPool(maxConcurrentJobs, runnable -> {
+            Thread thread = new Thread(runnable, "ingest-job-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+    }
+
+    /**
+     * Queues a folder for ingestion.
+     *
+     * @param folder      The folder to process.
+     * @param incremental Whether to only process new or changed files and remove deleted ones.
+     * @return The queued job.
+     */
+    public IngestionJob submit(File folder, boolean incremental) {
+        if (!folder.exists() || !folder.isDirectory()) {
+            throw new IllegalArgumentException("Invalid folder path: " + folder.getAbsolutePath());
+        }
+
+        evictFinishedJobs();
+        IngestionJob job = new IngestionJob(folder.getAbsolutePath(), incremental);
+        jobs.put(job.getId(), job);
+        job.setFuture(jobExecutor.submit(() -> run(job, () -> ingestionService.ingest(folder, job))));
+        logger.info("Queued ingestion job {} for folder: {}", job.getId(), job.getFolderPath());
+        return job;
+    }
+
+    /**
+     * Queues the removal of all stored metadata below a folder from MySQL and Elasticsearch.
+     * The folder does not need to exist any more; progress is reported as deleted files.
+     *
+     * @param folderPath The folder whose metadata to remove.
+     * @return The queued job.
+     */
+    public IngestionJob submitReset(String folderPath) {
+        evictFinishedJobs();
+        IngestionJob job = new IngestionJob(IngestionJob.Type.RESET, folderPath, false);
+        jobs.put(job.getId(), job);
+        job.setFuture(jobExecutor.submit(() -> run(job, () -> reset(job))));
+        logger.info("Queued reset job {} for folder: {}", job.getId(), folderPath);
+        return job;
+    }
+
+    /**
+     * Queues a duplicate scan: the stored files below a folder that could have duplicates are hashed,
+     * after which the duplicate reports cover them.
+     *
+     * @param folderPath The folder to scan.
+     * @return The queued job.
+     */
+    public IngestionJob submitDuplicateScan(String folderPath) {
+        evictFinishedJobs();
+        IngestionJob job = new IngestionJob(IngestionJob.Type.DUPLICATE_SCAN, folderPath, false);
+        jobs.put(job.getId(), job);
+        job.setFuture(jobExecutor.submit(() -> run(job, () -> duplicateService.hashCandidates(folderPath, job))));
+        logger.info("Queued duplicate scan job {} for folder: {}", job.getId(), folderPath);
+        return job;
+    }
+
+    /**
+     * Retrieves a job by its ID.
+     *
+     * @param id The job ID.
+     * @return The job, or null if not found.
+     */
+    public IngestionJob getJob(String id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Lists all known jobs, newest first.
+     *
+     * @return List of jobs.
+     */
+    public List<IngestionJob> getJobs() {
+        List<IngestionJob> result = new ArrayList<>(jobs.values());
+        result.sort(Comparator.comparing(IngestionJob::getCreatedAt).reversed());
+        return result;
+    }
+
+    /**
+     * Requests cancellation of a job. Queued jobs never start; running jobs stop
+     * picking up new files and finish once in-flight files have drained.
+     *
+     * @param id The job ID.
+     * @return The job, or null if not found.
+     */
+    public IngestionJob cancel(String id) {
+        IngestionJob job = jobs.get(id);
+        if (job != null && !job.isDone()) {
+            job.requestCancel();
+            if (job.getStatus() == IngestionJob.Status.QUEUED && job.getFuture() != null && job.getFuture().cancel(false)) {
+                job.markFinished(IngestionJob.Status.CANCELLED, null);
+            }
+            logger.info("Cancellation requested for ingestion job {}", id);
+        }
+        return job;
+    }
+
+    private void run(IngestionJob job, JobBody body) {
+        if (job.isCancelRequested()) {
+            job.markFinished(IngestionJob.Status.CANCELLED, null);
+            return;
+        }
+
+        job.markRunning();
+        try {
+            body.run();
+            job.markFinished(job.isCancelRequested() ? IngestionJob.Status.CANCELLED : IngestionJob.Status.COMPLETED, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.markFinished(IngestionJob.Status.CANCELLED, "Interrupted");
+        } catch (Exception e) {
+            logger.error("Job {} failed for folder: {}", job.getId(), job.getFolderPath(), e);
+            job.markFinished(IngestionJob.Status.FAILED, e.getMessage());
+        }
+        logger.info("Job finished: {}", job);
+    }
+
+    private void reset(IngestionJob job) throws Exception {
+        fileMetadataService.deleteMetadataForFolder(job.getFolderPath(), job);
+        if (!job.isCancelRequested()) {
+            elasticsearchService.deleteByPath(job.getFolderPath());
+        }
+    }
+
+    @FunctionalInterface
+    private interface JobBody {
+        void run() throws Exception;
+    }
+
+    /**
+     * Keeps the job registry bounded by dropping the oldest finished jobs.
+     */
+    private void evictFinishedJobs() {
+        List<IngestionJob> finished = new ArrayList<>();
+        for (IngestionJob job : jobs.values()) {
+            if (job.isDone()) {
+                finished.add(job);
+            }
+        }
+        if (finished.size() < retainedJobs) {
+            return;
+        }
+        finished.sort(Comparator.comparing(IngestionJob::getCreatedAt));
+        for (int i = 0; i <= finished.size() - retainedJobs; i++) {
+            jobs.remove(finished.get(i).getId());
+        }
+    }
+}
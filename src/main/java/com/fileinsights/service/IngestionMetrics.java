@@ -0,0 +1,137 @@
+package com.fileinsights.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Meters of the ingestion pipeline, published through Actuator (/actuator/metrics, /actuator/prometheus).
+ *
+ * <ul>
+ *   <li>{@code ingestion.stage.duration{stage}}: walk (one directory), stat (one file's attributes),
+ *       detect and parse (Tika, one file), mysql.write (one batch), index (queueing one document for
+ *       Elasticsearch, including back-pressure from the bulk ingester), index.bulk (one synchronous bulk
+ *       request of an upload batch).</li>
+ *   <li>{@code ingestion.files{result, mime_type}}: files processed or failed, by detected base MIME type;
+ *       {@code ingestion.files{result=unchanged|deleted}} for incremental scans.</li>
+ *   <li>{@code ingestion.bytes.processed}: size of the files processed; {@code ingestion.file.bytes.read}:
+ *       bytes actually read from disk per file.</li>
+ *   <li>{@code ingestion.stage.queued{stage}} and {@code ingestion.stage.active{stage}}: files waiting
+ *       for and being worked on by each stage; {@code ingestion.files.in.flight} is their sum over the
+ *       parse and persist stages.</li>
+ * </ul>
+ *
+ * Stage durations come with histogram buckets (see management.metrics.distribution in application.properties),
+ * so percentiles can be aggregated across instances in Prometheus.
+ */
+@Component
+public class IngestionMetrics {
+
+    public static final String STAGE_DURATION = "ingestion.stage.duration";
+    public static final String UNKNOWN_TYPE = "unknown";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * The timer of a pipeline stage.
+     *
+     * @param registry The registry to register the timer with.
+     * @param stage    The stage name.
+     * @return The timer.
+     */
+    public static Timer stageTimer(MeterRegistry registry, String stage) {
+        return Timer.builder(STAGE_DURATION)
+                .description("Time spent per unit of work in an ingestion stage")
+                .tag("stage", stage)
+                .register(registry);
+    }
+
+    public Timer stageTimer(String stage) {
+        return stageTimer(meterRegistry, stage);
+    }
+
+    /**
+     * Publishes the queue depth and busy threads of a stage's executor.
+     *
+     * @param stage    The stage name.
+     * @param executor The stage's executor.
+     */
+    public void registerStage(String stage, ThreadPoolExecutor executor) {
+        Gauge.builder("ingestion.stage.queued", executor, e -> e.getQueue().size())
+                .description("Tasks waiting for an ingestion stage")
+                .tag("stage", stage)
+                .register(meterRegistry);
+        Gauge.builder("ingestion.stage.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Tasks being executed by an ingestion stage")
+                .tag("stage", stage)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Publishes the number of files between discovery and the MySQL write.
+     *
+     * @param parse   The parse stage.
+     * @param persist The persist stage.
+     */
+    public void registerInFlight(ThreadPoolExecutor parse, ThreadPoolExecutor persist) {
+        Gauge.builder("ingestion.files.in.flight", () -> parse.getQueue().size() + parse.getActiveCount()
+                        + persist.getQueue().size() + persist.getActiveCount())
+                .description("Files queued or being processed in the parse and persist stages")
+                .register(meterRegistry);
+    }
+
+    public void fileProcessed(String contentType, long bytes) {
+        files("processed", contentType).increment();
+        Counter.builder("ingestion.bytes.processed")
+                .description("Size of the files ingested")
+                .baseUnit("bytes")
+                .register(meterRegistry)
+                .increment(bytes);
+    }
+
+    public void fileRead(long bytes) {
+        DistributionSummary.builder("ingestion.file.bytes.read")
+                .description("Bytes read from disk per ingested file")
+                .baseUnit("bytes")
+                .register(meterRegistry)
+                .record(bytes);
+    }
+
+    public void fileFailed(String contentType) {
+        files("failed", contentType).increment();
+    }
+
+    public void fileUnchanged() {
+        files("unchanged", null).increment();
+    }
+
+    public void filesDeleted(long count) {
+        files("deleted", null).increment(count);
+    }
+
+    private Counter files(String result, String contentType) {
+        return Counter.builder("ingestion.files")
+                .description("Files handled by ingestion, by result and MIME type")
+                .tag("result", result)
+                .tag("mime_type", baseType(contentType))
+                .register(meterRegistry);
+    }
+
+    /**
+     * The MIME type without parameters, so that e.g. charsets do not multiply the tag values.
+     */
+    private static String baseType(String contentType) {
+        if (contentType == null || contentType.isBlank()) {
+            return UNKNOWN_TYPE;
+        }
+        int parameters = contentType.indexOf(';');
+        return (parameters >= 0 ? contentType.substring(0, parameters) : contentType).trim().toLowerCase();
+    }
+}
@@ -0,0 +1,508 @@
+package com.fileinsights.service;
+
+import com.fileinsights.entity.FileMetadata;
+import com.fileinsights.entity.TikaMetadata;
+import com.fileinsights.model.FileExtraction;
+import com.fileinsights.model.FileFingerprints;
+import com.fileinsights.model.IngestionJob;
+import com.fileinsights.util.BatchBuffer;
+import com.fileinsights.util.ContentHasher;
+import com.fileinsights.util.FileTreeWalker;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parallel folder ingestion engine.
+ *
+ * A folder is processed as a pipeline of three stages, each backed by its own fixed-size pool:
+ * walk (list directories and read file attributes), parse (Tika and optional hashing, from a single read
+ * of each file) and persist (MySQL and Elasticsearch).
+ * Directories are listed one task each with the shared {@link FileTreeWalker}, so large trees are walked
+ * in parallel and without recursion. The parse and persist stages have bounded queues; when a stage is
+ * full the submitting thread blocks until capacity frees up, so a fast walker cannot flood the heap
+ * with pending files.
+ */
+@Service
+public class IngestionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionService.class);
+
+    /**
+     * Blocks the submitting thread until the stage queue has room instead of rejecting the task.
+     */
+    private static final RejectedExecutionHandler BLOCK_CALLER = (task, executor) -> {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Ingestion stage has been shut down.");
+        }
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for ingestion stage capacity.", e);
+        }
+    };
+
+    @Autowired
+    private FileMetadataService fileMetadataService;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private TikaService tikaService;
+
+    @Autowired
+    private IngestionMetrics metrics;
+
+    @Value("${ingestion.walk.threads:4}")
+    private int walkThreads;
+
+    // Globs matched against the path relative to the folder or the file name
+    @Value("${ingestion.walk.include:}")
+    private List<String> includeGlobs;
+
+    @Value("${ingestion.walk.exclude:}")
+    private List<String> excludeGlobs;
+
+    @Value("${ingestion.walk.max-depth:-1}")
+    private int maxDepth;
+
+    @Value("${ingestion.walk.follow-links:true}")
+    private boolean followLinks;
+
+    @Value("${ingestion.parse.threads:0}")
+    private int parseThreads;
+
+    @Value("${ingestion.persist.threads:4}")
+    private int persistThreads;
+
+    @Value("${ingestion.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${ingestion.persist.batch-size:500}")
+    private int persistBatchSize;
+
+    // Hash every file while ingesting instead of only the duplicate candidates of a later scan
+    @Value("${ingestion.hash-content:false}")
+    private boolean hashContent;
+
+    @Value("${duplicates.min-size:1}")
+    private long hashMinSize;
+
+    private FileTreeWalker walker;
+    private ThreadPoolExecutor walkExecutor;
+    private ThreadPoolExecutor parseExecutor;
+    private ThreadPoolExecutor persistExecutor;
+    private Timer walkTimer;
+    private Timer writeTimer;
+    private Timer indexTimer;
+
+    @PostConstruct
+    public void start() {
+        int parsers = parseThreads > 0 ? parseThreads : Runtime.getRuntime().availableProcessors();
+        walker = new FileTreeWalker(includeGlobs, excludeGlobs, maxDepth, followLinks);
+        walker.setStatTimer(metrics.stageTimer("stat"));
+
+        // Directories are few compared to files, so the walk queue is unbounded; this also guarantees
+        // that walk threads never block on their own queue while handing out subdirectories.
+        walkExecutor = newStage("walk", walkThreads, new LinkedBlockingQueue<>());
+        parseExecutor = newStage("parse", parsers, new ArrayBlockingQueue<>(queueCapacity));
+        persistExecutor = newStage("persist", persistThreads, new ArrayBlockingQueue<>(queueCapacity));
+
+        walkTimer = metrics.stageTimer("walk");
+        writeTimer = metrics.stageTimer("mysql.write");
+        indexTimer = metrics.stageTimer("index");
+        metrics.registerStage("walk", walkExecutor);
+        metrics.registerStage("parse", parseExecutor);
+        metrics.registerStage("persist", persistExecutor);
+        metrics.registerInFlight(parseExecutor, persistExecutor);
+
+        logger.info("Ingestion engine started (walk={}, parse={}, persist={}, queueCapacity={})",
+                walkThreads, parsers, persistThreads, queueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        walkExecutor.shutdownNow();
+        parseExecutor.shutdownNow();
+        persistExecutor.shutdownNow();
+    }
+
+    /**
+     * Ingests every file below the given folder and waits until all of them have been persisted.
+     * Progress is reported to the job; once cancellation is requested, files that have not yet
+     * been picked up by a stage are skipped.
+     *
+     * For incremental jobs the stored fingerprints of the folder are loaded first: files whose size and
+     * mtime match are not parsed again, and stored files not found by the walk are deleted afterwards.
+     *
+     * @param folder The folder to process.
+     * @param job    The job tracking this ingestion.
+     * @throws InterruptedException If the calling thread is interrupted while waiting.
+     */
+    public void ingest(File folder, IngestionJob job) throws InterruptedException {
+        if (!folder.exists() || !folder.isDirectory()) {
+            throw new IllegalArgumentException("Invalid folder path: " + folder.getAbsolutePath());
+        }
+
+        Run run = new Run(job, persistBatchSize);
+        if (job.isIncremental()) {
+            run.fingerprints = fileMetadataService.loadFingerprints(folder.getAbsolutePath());
+            logger.info("Loaded {} stored fingerprints for incremental scan of {}", run.fingerprints.size(), folder.getAbsolutePath());
+        }
+
+        Path root = folder.toPath().toAbsolutePath();
+        try {
+            run.enterDirectory(Files.readAttributes(root, BasicFileAttributes.class));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Folder could not be accessed: " + root, e);
+        }
+        elasticsearchService.beginBulkLoad();
+        try {
+            submitWalk(run, root, root, 0);
+            run.done.await();
+            writeBatch(run, run.batch.drain());
+            // Bulk requests and retries still in flight must settle before the index settings are
+            // restored and before the job is reported as finished
+            elasticsearchService.awaitIndexed(job);
+
+            if (run.fingerprints != null && !job.isCancelRequested()) {
+                removeDeletedFiles(run);
+            }
+        } finally {
+            elasticsearchService.endBulkLoad();
+        }
+
+        logger.info("Ingested folder {}: {} files processed, {} failed in {} ms",
+                folder.getAbsolutePath(), job.getFilesProcessed(), job.getFilesFailed(), job.getElapsedMillis());
+    }
+
+    /**
+     * Walk stage: lists a single directory, reads the attributes of its entries and fans them out:
+     * subdirectories back to the walk stage, files to the parse stage.
+     */
+    private void walk(Run run, Path root, Path directory, int depth) {
+        long start = System.nanoTime();
+        try {
+            walker.list(root, directory, depth, new FileTreeWalker.Visitor() {
+                @Override
+                public void visitFile(Path file, BasicFileAttributes attrs) {
+                    discover(run, file, attrs);
+                }
+
+                @Override
+                public void visitFailed(Path path, IOException e) {
+                    // Whatever is stored for this entry must not be mistaken for a deleted file
+                    run.unreadablePrefixes.add(path.toString());
+                    logger.warn("Could not read attributes of: {}", path, e);
+                }
+
+                @Override
+                public void visitSkipped(Path path, BasicFileAttributes attrs) {
+                    // Left out by the walk settings, not deleted: keep whatever is stored for it
+                    keepStored(run, path, attrs.isRegularFile());
+                }
+            }, (subdirectory, attrs) -> {
+                if (run.enterDirectory(attrs)) {
+                    submitWalk(run, root, subdirectory, depth + 1);
+                } else {
+                    // Its files are reached through the other path; rows stored under this one stay
+                    keepStored(run, subdirectory, false);
+                    logger.warn("Skipping directory already visited through a link: {}", subdirectory);
+                }
+            });
+        } catch (IOException e) {
+            run.unreadablePrefixes.add(directory + File.separator);
+            logger.warn("The folder could not be accessed: {}", directory, e);
+        } finally {
+            walkTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Keeps the stored rows of an entry the walk did not descend into out of the deleted files of an
+     * incremental scan; for anything but a regular file that includes every row below it.
+     */
+    private static void keepStored(Run run, Path path, boolean regularFile) {
+        if (run.fingerprints == null) {
+            return;
+        }
+        run.fingerprints.markSeen(path.toString());
+        if (!regularFile) {
+            run.unreadablePrefixes.add(path + File.separator);
+        }
+    }
+
+    /**
+     * Builds the basic metadata of a discovered file from the walk's attributes and hands it to the parse stage,
+     * unless an incremental scan finds it unchanged.
+     */
+    private void discover(Run run, Path path, BasicFileAttributes attrs) {
+        run.job.fileDiscovered();
+        FileMetadata fileMetadata = fileMetadataService.extractMetadata(path, path.getFileName().toString(), attrs);
+
+        if (run.fingerprints != null) {
+            run.fingerprints.markSeen(fileMetadata.getPath());
+            if (run.fingerprints.isUnchanged(fileMetadata.getPath(), fileMetadata.getSize(), fileMetadata.getMtime().getTime())) {
+                run.job.fileUnchanged();
+                metrics.fileUnchanged();
+                return;
+            }
+        }
+
+        File file = path.toFile();
+        submit(parseExecutor, run, () -> parse(run, file, fileMetadata));
+    }
+
+    /**
+     * Submits a directory to the walk stage and flags the job once the last directory has been listed.
+     */
+    private void submitWalk(Run run, Path root, Path directory, int depth) {
+        run.pendingWalks.incrementAndGet();
+        submit(walkExecutor, run, () -> {
+            try {
+                walk(run, root, directory, depth);
+            } finally {
+                if (run.pendingWalks.decrementAndGet() == 0) {
+                    run.job.markWalkComplete();
+                }
+            }
+        });
+    }
+
+    /**
+     * Parse stage: extracts advanced metadata with Tika and, when enabled, the content hashes, from one read
+     * of the file. Basic metadata is still persisted when parsing fails.
+     */
+    private void parse(Run run, File file, FileMetadata fileMetadata) {
+        boolean hash = hashContent && fileMetadata.getSize() >= hashMinSize;
+        TikaMetadata tikaMetadata = null;
+        try {
+            FileExtraction extraction = tikaService.extract(file, file.getName(), fileMetadata.getSize(), hash);
+            tikaMetadata = extraction.tikaMetadata();
+            metrics.fileRead(extraction.bytesRead());
+            if (extraction.hashes() != null) {
+                setHashes(fileMetadata, extraction.hashes());
+            }
+        } catch (Exception e) {
+            run.job.fileFailed();
+            metrics.fileFailed(tikaService.guessContentType(file.getName()));
+            logger.error("Error extracting Tika metadata from file: {}", file.getAbsolutePath(), e);
+        }
+
+        if (hash && fileMetadata.getContentHash() == null) {
+            // The parse failed or timed out before the whole file was read; hash it on its own
+            try {
+                setHashes(fileMetadata, ContentHasher.hashFile(file.toPath()));
+                metrics.fileRead(fileMetadata.getSize());
+            } catch (IOException e) {
+                logger.warn("Could not hash file: {}", file.getAbsolutePath(), e);
+            }
+        }
+
+        TikaMetadata parsed = tikaMetadata;
+        submit(persistExecutor, run, () -> persist(run, fileMetadata, parsed));
+    }
+
+    private static void setHashes(FileMetadata fileMetadata, ContentHasher.Hashes hashes) {
+        fileMetadata.setPartialHash(hashes.partialHash());
+        fileMetadata.setContentHash(hashes.contentHash());
+    }
+
+    /**
+     * Persist stage: queues advanced metadata for bulk indexing in Elasticsearch and buffers basic
+     * metadata for a batched MySQL write. The thread that fills the buffer writes the chunk.
+     * Indexing failures reported asynchronously by the bulk ingester are counted on the job separately.
+     */
+    private void persist(Run run, FileMetadata fileMetadata, TikaMetadata tikaMetadata) {
+        boolean parsed = tikaMetadata != null;
+        if (parsed) {
+            fileMetadata.setContentType(tikaMetadata.getContentType());
+            long start = System.nanoTime();
+            try {
+                elasticsearchService.indexTikaMetadata(tikaMetadata, run.job);
+            } catch (Exception e) {
+                parsed = false;
+                run.job.fileFailed();
+                metrics.fileFailed(fileMetadata.getContentType());
+                logger.error("Error indexing metadata for file: {}", fileMetadata.getPath(), e);
+            } finally {
+                indexTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        List<PendingRow> chunk = run.batch.add(new PendingRow(fileMetadata, parsed));
+        if (chunk != null) {
+            writeBatch(run, chunk);
+        }
+    }
+
+    /**
+     * Writes a chunk of basic metadata to MySQL and updates the job counters.
+     * Files that already failed an earlier stage are saved but not counted again.
+     */
+    private void writeBatch(Run run, List<PendingRow> chunk) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        List<FileMetadata> rows = new ArrayList<>(chunk.size());
+        for (PendingRow row : chunk) {
+            rows.add(row.metadata);
+        }
+
+        long start = System.nanoTime();
+        try {
+            fileMetadataService.saveFileMetadataBatch(rows);
+            writeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            for (PendingRow row : chunk) {
+                if (row.ok) {
+                    run.job.fileProcessed(row.metadata.getSize());
+                    metrics.fileProcessed(row.metadata.getContentType(), row.metadata.getSize());
+                }
+            }
+        } catch (Exception e) {
+            for (PendingRow row : chunk) {
+                if (row.ok) {
+                    run.job.fileFailed();
+                    metrics.fileFailed(row.metadata.getContentType());
+                }
+            }
+            logger.error("Error saving a batch of {} metadata rows to MySQL", rows.size(), e);
+        }
+    }
+
+    /**
+     * Removes metadata of stored files that the incremental walk did not find on disk.
+     */
+    private void removeDeletedFiles(Run run) {
+        FileFingerprints.Deleted deleted = run.fingerprints.unseen(run.unreadablePrefixes);
+        if (deleted.getIds().isEmpty()) {
+            return;
+        }
+
+        try {
+            fileMetadataService.deleteMetadataByIds(deleted.getIds());
+            elasticsearchService.deleteMetadataByFilePaths(deleted.getPaths());
+            run.job.filesDeleted(deleted.getIds().size());
+            metrics.filesDeleted(deleted.getIds().size());
+            logger.info("Removed metadata of {} deleted files", deleted.getIds().size());
+        } catch (Exception e) {
+            logger.error("Error removing metadata of {} deleted files", deleted.getIds().size(), e);
+        }
+    }
+
+    /**
+     * Submits a task to a stage, tracking it against the run so completion can be detected.
+     * The pending counter is incremented before the parent task finishes, so it only reaches
+     * zero once the whole tree has drained through every stage.
+     * Tasks of a cancelled job are drained without doing any work.
+     */
+    private void submit(ThreadPoolExecutor stage, Run run, Runnable task) {
+        run.pending.incrementAndGet();
+        try {
+            stage.execute(() -> {
+                try {
+                    if (!run.job.isCancelRequested()) {
+                        task.run();
+                    }
+                } finally {
+                    run.taskDone();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            run.job.fileFailed();
+            run.taskDone();
+            logger.error("Ingestion task rejected", e);
+        }
+    }
+
+    private static ThreadPoolExecutor newStage(String name, int threads, BlockingQueue<Runnable> queue) {
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, queue,
+                namedThreads(name), BLOCK_CALLER);
+    }
+
+    private static ThreadFactory namedThreads(String stage) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "ingest-" + stage + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Book-keeping for a single ingestion of a folder.
+     */
+    private static final class Run {
+        private final IngestionJob job;
+        private final BatchBuffer<PendingRow> batch;
+        private final List<String> unreadablePrefixes = Collections.synchronizedList(new ArrayList<>());
+        private final Set<Object> visitedDirectories = ConcurrentHashMap.newKeySet();
+        private FileFingerprints fingerprints; // Only set for incremental scans
+        private final AtomicLong pending = new AtomicLong();
+        private final AtomicLong pendingWalks = new AtomicLong();
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private Run(IngestionJob job, int batchSize) {
+            this.job = job;
+            this.batch = new BatchBuffer<>(batchSize);
+        }
+
+        /**
+         * Registers a directory by its file key so that links pointing back up the tree are only walked once.
+         * File systems without file keys cannot be checked and are always entered.
+         */
+        private boolean enterDirectory(BasicFileAttributes attrs) {
+            Object key = attrs.fileKey();
+            return key == null || visitedDirectories.add(key);
+        }
+
+        private void taskDone() {
+            if (pending.decrementAndGet() == 0) {
+                done.countDown();
+            }
+        }
+    }
+
+    /**
+     * A basic metadata row waiting for the next MySQL batch, and whether the earlier stages succeeded.
+     */
+    private static final class PendingRow {
+        private final FileMetadata metadata;
+        private final boolean ok;
+
+        private PendingRow(FileMetadata metadata, boolean ok) {
+            this.metadata = metadata;
+            this.ok = ok;
+        }
+    }
+}
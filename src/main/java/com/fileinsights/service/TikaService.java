@@ -0,0 +1,452 @@
+package com.fileinsights.service;
+
+import com.fileinsights.entity.TikaMetadata;
+import com.fileinsights.model.FileExtraction;
+import com.fileinsights.util.ContentHasher;
+import com.fileinsights.util.SingleReadInputStream;
+import com.fileinsights.util.TikaUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.detect.Detector;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.exception.WriteLimitReachedException;
+import org.apache.tika.fork.ForkParser;
+import org.apache.tika.fork.ParserFactoryFactory;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.WriteOutContentHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tika extraction with a single, shared parser.
+ *
+ * Building an {@link AutoDetectParser} loads the full Tika configuration and scans the classpath for
+ * parsers and detectors, so it is done once at startup. The parser is thread-safe; the parse context
+ * and the content buffer are kept per thread and reused between files.
+ *
+ * Extraction is bounded: content stops at {@code tika.max-content-chars}, a parse that runs longer than
+ * {@code tika.parse-timeout-ms} is abandoned, and content of the MIME types in {@code tika.skip-content-types}
+ * is not extracted at all. The resulting document records which of these limits applied.
+ *
+ * Each file is read once, sequentially and through a {@code tika.read-buffer-bytes} buffer; the same read
+ * can also feed the content hasher, so hashing does not cost a second pass over the file. Uploads are
+ * extracted the same way straight from the request body, without being written to a file first.
+ *
+ * With {@code tika.fork.enabled=true} parsing is handed to a pool of forked worker JVMs instead
+ * ({@link ForkParser}). A crashing, leaking or looping parser then only takes down its worker, which is
+ * replaced on the next parse; workers are also recycled after {@code tika.fork.max-files-per-worker} files.
+ */
+@Service
+public class TikaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TikaService.class);
+
+    // Per-thread content buffers that grew beyond this are dropped instead of being pinned in memory
+    private static final int MAX_RETAINED_BUFFER_CHARS = 1024 * 1024;
+
+    // Defaults below apply when the service is created outside Spring (e.g. benchmarks): no limits
+    @Value("${tika.max-content-chars:1000000}")
+    private int maxContentChars = -1;
+
+    @Value("${tika.parse-timeout-ms:60000}")
+    private long parseTimeoutMs = 0;
+
+    // Timed-out parses that may keep running before further parses are refused; 0 = number of processors
+    @Value("${tika.max-abandoned-parses:0}")
+    private int maxAbandonedParses = 0;
+
+    @Value("${tika.read-buffer-bytes:1048576}")
+    private int readBufferBytes = 1024 * 1024;
+
+    // Exact types ("application/zip") or whole top-level types ("video/*")
+    @Value("${tika.skip-content-types:}")
+    private List<String> skipContentTypes = List.of();
+
+    @Value("${tika.fork.enabled:false}")
+    private boolean forkEnabled = false;
+
+    @Value("${tika.fork.pool-size:4}")
+    private int forkPoolSize;
+
+    @Value("${tika.fork.max-files-per-worker:1000}")
+    private int forkMaxFilesPerWorker;
+
+    @Value("${tika.fork.java-command:java -Xmx512m}")
+    private String forkJavaCommand;
+
+    // Directory with the tika-app/tika-server jars; empty serializes the in-process parser to the workers
+    @Value("${tika.fork.tika-bin:}")
+    private String forkTikaBin;
+
+    // Absent outside Spring; the timers then go to the (empty) global registry
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private final ThreadLocal<ParseContext> parseContexts = ThreadLocal.withInitial(ParseContext::new);
+    private final ThreadLocal<StringWriter> contentBuffers = ThreadLocal.withInitial(StringWriter::new);
+
+    private TikaConfig tikaConfig;
+    private Detector detector;
+    private Parser parser;
+    private ThreadPoolExecutor timedParseExecutor;
+    // Timed-out parses whose thread has not returned yet
+    private final AtomicInteger abandonedParses = new AtomicInteger();
+    private ForkParser forkParser;
+    private Timer detectTimer;
+    private Timer parseTimer;
+
+    @PostConstruct
+    public void init() {
+        tikaConfig = TikaConfig.getDefaultConfig();
+        detector = tikaConfig.getDetector();
+        parser = new AutoDetectParser(tikaConfig);
+
+        MeterRegistry registry = meterRegistry != null ? meterRegistry : Metrics.globalRegistry;
+        detectTimer = IngestionMetrics.stageTimer(registry, "detect");
+        parseTimer = IngestionMetrics.stageTimer(registry, "parse");
+
+        // Timed parses run here so the caller can give up on them. Every caller waits for its own parse, so
+        // the callers' pools already bound the live parses and each gets a thread at once. A parse that
+        // ignores the interrupt keeps its thread after its caller gave up; only those are limited (see parse)
+        if (maxAbandonedParses <= 0) {
+            maxAbandonedParses = Runtime.getRuntime().availableProcessors();
+        }
+        AtomicInteger counter = new AtomicInteger();
+        timedParseExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "tika-parse-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        if (forkEnabled) {
+            forkParser = createForkParser();
+        }
+
+        logger.info("Initialized shared Tika parser (maxContentChars={}, parseTimeoutMs={}, skipContentTypes={}, maxAbandonedParses={}, forkWorkers={})",
+                maxContentChars, parseTimeoutMs, skipContentTypes, maxAbandonedParses, forkEnabled ? forkPoolSize : 0);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timedParseExecutor.shutdownNow();
+        if (forkParser != null) {
+            forkParser.close(); // Stops the worker JVMs
+        }
+    }
+
+    private ForkParser createForkParser() {
+        ForkParser fork = forkTikaBin.isBlank()
+                ? new ForkParser(TikaService.class.getClassLoader(), parser)
+                : new ForkParser(Path.of(forkTikaBin),
+                        new ParserFactoryFactory("org.apache.tika.parser.AutoDetectParserFactory", Map.of()));
+        fork.setPoolSize(forkPoolSize);
+        fork.setMaxFilesProcessedPerServer(forkMaxFilesPerWorker);
+        fork.setJavaCommand(Arrays.asList(forkJavaCommand.trim().split("\\s+")));
+        if (parseTimeoutMs > 0) {
+            // The worker enforces the timeout itself and is killed and replaced when it hits it
+            fork.setServerParseTimeoutMillis(parseTimeoutMs);
+        }
+        return fork;
+    }
+
+    /**
+     * Extracts metadata and text content from the given file, within the configured limits.
+     *
+     * @param file             The file from which to extract metadata.
+     * @param originalFileName The original file name.
+     * @return The extracted Tika metadata.
+     * @throws Exception If there is an error parsing the file.
+     */
+    public TikaMetadata extractTikaMetadata(File file, String originalFileName) throws Exception {
+        return extract(file, originalFileName, file.length(), false).tikaMetadata();
+    }
+
+    /**
+     * Extracts metadata and text content, and optionally the content hashes, from a single read of the file.
+     * When hashing, whatever the parser leaves unread is read afterwards so the hash covers the whole file.
+     * Formats that Tika can only parse with random access are spooled by Tika to a local temporary file,
+     * from the same read.
+     *
+     * @param file             The file from which to extract metadata.
+     * @param originalFileName The original file name.
+     * @param size             The file size, as already known from its attributes.
+     * @param hash             Whether to compute the content hashes.
+     * @return The extracted Tika metadata, the hashes and the number of bytes read.
+     * @throws Exception If there is an error reading or parsing the file.
+     */
+    public FileExtraction extract(File file, String originalFileName, long size, boolean hash) throws Exception {
+        ContentHasher.Streaming hasher = hash ? ContentHasher.streaming(size) : null;
+        SingleReadInputStream source = SingleReadInputStream.open(file.toPath(), hasher);
+        return extract(source, hasher, file.getAbsolutePath(), file.getName(), originalFileName, size);
+    }
+
+    /**
+     * Extracts metadata, text content and the content hashes from a stream of unknown length, such as an
+     * upload while it is being received. The stream is read to its end, also when the parser stops early
+     * or times out, but it is not closed. Formats that Tika can only parse with random access are spooled
+     * by Tika to a local temporary file; nothing else touches the disk.
+     *
+     * @param content          The content.
+     * @param filePath         The path to record for the content.
+     * @param originalFileName The original file name.
+     * @return The extracted Tika metadata, the hashes and the length of the stream.
+     * @throws Exception If there is an error reading or parsing the content.
+     */
+    public FileExtraction extract(InputStream content, String filePath, String originalFileName) throws Exception {
+        ContentHasher.Streaming hasher = ContentHasher.streaming(ContentHasher.PARTIAL_BYTES);
+        SingleReadInputStream source = new SingleReadInputStream(content, hasher, false);
+        return extract(source, hasher, filePath, originalFileName, originalFileName, -1);
+    }
+
+    private FileExtraction extract(SingleReadInputStream source, ContentHasher.Streaming hasher, String filePath,
+                                   String resourceName, String originalFileName, long size) throws Exception {
+        Metadata metadata = new Metadata();
+        metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, resourceName);
+        if (size >= 0) {
+            metadata.set(Metadata.CONTENT_LENGTH, Long.toString(size));
+        }
+        StringWriter buffer = contentBuffers.get();
+        buffer.getBuffer().setLength(0);
+        ParseContext context = parseContexts.get();
+
+        boolean skipped = false;
+        boolean truncated = false;
+        boolean timedOut = false;
+        MediaType detectedType = null;
+        ContentHasher.Hashes hashes = null;
+
+        try (TikaInputStream inputStream = TikaInputStream.get(new BufferedInputStream(source, readBufferBytes))) {
+            if (!skipContentTypes.isEmpty()) {
+                long start = System.nanoTime();
+                detectedType = detector.detect(inputStream, metadata);
+                detectTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                skipped = isContentSkipped(detectedType);
+            }
+
+            ContentHandler handler = skipped
+                    ? new DefaultHandler() // Metadata only, text is discarded
+                    : new BodyContentHandler(new WriteOutContentHandler(buffer, maxContentChars));
+            long start = System.nanoTime();
+            try {
+                parse(inputStream, handler, metadata, context);
+            } catch (TimeoutException e) {
+                timedOut = true;
+                // The abandoned parse may still be running and touching these; never hand them to the next file
+                contentBuffers.remove();
+                parseContexts.remove();
+                logger.warn("Parsing timed out after {} ms for file: {}", parseTimeoutMs, filePath);
+            } catch (Exception e) {
+                if (!WriteLimitReachedException.isWriteLimitReached(e)) {
+                    throw e;
+                }
+                truncated = true;
+            } finally {
+                parseTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+
+            if (hasher != null && !timedOut) {
+                source.drain();
+                hashes = hasher.finish();
+            }
+        }
+
+        if (timedOut && hasher != null && !source.closesSource()) {
+            // The abandoned parse lost access when its input was closed; read the rest for the caller
+            source.drain();
+            hashes = hasher.finish();
+        }
+
+        if (timedOut) {
+            // Metadata is not thread-safe and the abandoned parse may still write to it
+            metadata = new Metadata();
+            if (detectedType != null) {
+                metadata.set(Metadata.CONTENT_TYPE, detectedType.toString());
+            }
+        }
+
+        String content = skipped ? null : buffer.toString();
+        if (buffer.getBuffer().capacity() > MAX_RETAINED_BUFFER_CHARS) {
+            contentBuffers.remove();
+        }
+
+        TikaMetadata tikaMetadata = TikaUtils.toTikaMetadata(filePath, originalFileName, metadata, content);
+        tikaMetadata.setContentSkipped(skipped);
+        tikaMetadata.setContentTruncated(truncated);
+        tikaMetadata.setParseTimedOut(timedOut);
+        return new FileExtraction(tikaMetadata, hashes, source.getBytesRead());
+    }
+
+    /**
+     * Runs the parser: in a forked worker when enabled, otherwise in-process, on a separate thread when a
+     * timeout is configured. On timeout the in-process parse is interrupted and its input closed, which
+     * stops most parsers blocked on I/O. A parse that ignores this keeps running on its thread; once
+     * {@code tika.max-abandoned-parses} such parses are still running, further files fail right away
+     * instead of piling up threads. Enable {@code tika.fork.enabled} to kill such parsers instead.
+     */
+    private void parse(TikaInputStream inputStream, ContentHandler handler, Metadata metadata, ParseContext context)
+            throws Exception {
+        if (forkParser != null) {
+            // Blocks while all workers are busy, which throttles the parse stage to the worker pool size
+            forkParser.parse(inputStream, handler, metadata, context);
+            return;
+        }
+        if (parseTimeoutMs <= 0) {
+            parser.parse(inputStream, handler, metadata, context);
+            return;
+        }
+
+        int abandoned = abandonedParses.get();
+        if (abandoned >= maxAbandonedParses) {
+            logger.warn("{} parses that ignored their timeout are still running; refusing further parses", abandoned);
+            throw new TikaException("No parser thread available: " + abandoned + " timed-out parses are still running");
+        }
+
+        TimedParse parse = new TimedParse(() -> parser.parse(inputStream, handler, metadata, context));
+        Future<?> future = timedParseExecutor.submit(parse);
+        try {
+            future.get(parseTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            parse.abandon();
+            closeQuietly(inputStream);
+            throw e;
+        } catch (InterruptedException e) {
+            parse.abandon();
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw new TikaException("Unexpected error while parsing", e.getCause());
+        }
+    }
+
+    /**
+     * The body of an in-process parse.
+     */
+    private interface ParseBody {
+        void run() throws Exception;
+    }
+
+    /**
+     * A parse on the timed-parse pool that its caller can abandon. The task itself is never cancelled, so it
+     * always runs to its end and releases its count of {@link #abandonedParses}; abandoning interrupts its
+     * thread only while that thread is still inside this parse.
+     */
+    private final class TimedParse implements Callable<Void> {
+        private final ParseBody body;
+        private Thread runner;
+        private boolean finished;
+        private boolean abandoned;
+
+        private TimedParse(ParseBody body) {
+            this.body = body;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            synchronized (this) {
+                if (abandoned) {
+                    // Given up before a thread picked it up
+                    abandonedParses.decrementAndGet();
+                    return null;
+                }
+                runner = Thread.currentThread();
+            }
+            try {
+                body.run();
+                return null;
+            } finally {
+                synchronized (this) {
+                    finished = true;
+                    if (abandoned) {
+                        abandonedParses.decrementAndGet();
+                        Thread.interrupted(); // The interrupt was meant for this parse, not the thread's next task
+                    }
+                }
+            }
+        }
+
+        private synchronized void abandon() {
+            if (finished || abandoned) {
+                return;
+            }
+            abandoned = true;
+            abandonedParses.incrementAndGet();
+            if (runner != null) {
+                runner.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Guesses a file's MIME type from its name alone, e.g. to attribute a failed parse.
+     *
+     * @param fileName The file name.
+     * @return The MIME type, or null if unknown.
+     */
+    public String guessContentType(String fileName) {
+        Metadata metadata = new Metadata();
+        metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, fileName);
+        try {
+            MediaType type = tikaConfig.getMimeRepository().detect(null, metadata);
+            return MediaType.OCTET_STREAM.equals(type) ? null : type.toString();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private boolean isContentSkipped(MediaType type) {
+        for (String skip : skipContentTypes) {
+            String pattern = skip.trim();
+            if (pattern.endsWith("/*")
+                    ? type.getType().equalsIgnoreCase(pattern.substring(0, pattern.length() - 2))
+                    : type.getBaseType().toString().equalsIgnoreCase(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void closeQuietly(TikaInputStream inputStream) {
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            logger.debug("Error closing input of a timed-out parse", e);
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package com.fileinsights.service;
+
+import com.fileinsights.entity.FileMetadata;
+import com.fileinsights.entity.TikaMetadata;
+import com.fileinsights.model.FileExtraction;
+import com.fileinsights.model.UploadManifest;
+import com.fileinsights.model.UploadResult;
+import com.fileinsights.util.BatchBuffer;
+import com.fileinsights.util.MultipartReader;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Processes many uploaded files from one request: the parts of a multipart body, or the entries of a zip
+ * or tar archive streamed in as the body or as one of those parts.
+ *
+ * The body can only be read in order, so the request thread reads it and hands each file off. Files up
+ * to {@code upload.batch.buffer-bytes} are read into memory and parsed concurrently on a shared pool; all
+ * requests together buffer at most {@code upload.batch.max-buffered-bytes}, and reading pauses while that
+ * budget is used up. Larger files are parsed by the request thread as they stream in, as on {@code /upload}.
+ *
+ * Parsed files are saved in chunks of {@code ingestion.persist.batch-size}: one MySQL transaction and one
+ * Elasticsearch bulk request per chunk, whose per-document results go into the manifest.
+ */
+@Service
+public class UploadBatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadBatchService.class);
+
+    private static final int ARCHIVE_BUFFER_SIZE = 64 * 1024;
+
+    @Autowired
+    private FileMetadataService fileMetadataService;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private TikaService tikaService;
+
+    @Autowired
+    private IngestionMetrics metrics;
+
+    @Value("${upload.batch.threads:0}")
+    private int parseThreads;
+
+    @Value("${upload.batch.buffer-bytes:8388608}")
+    private int bufferBytes;
+
+    @Value("${upload.batch.max-buffered-bytes:268435456}")
+    private int maxBufferedBytes;
+
+    @Value("${ingestion.persist.batch-size:500}")
+    private int persistBatchSize;
+
+    private ThreadPoolExecutor parseExecutor;
+    private Semaphore bufferBudget;
+    private Timer writeTimer;
+    private Timer bulkIndexTimer;
+
+    /**
+     * Archive formats that are expanded instead of being stored as a single file.
+     */
+    public enum ArchiveFormat {
+        ZIP, TAR, TAR_GZ;
+
+        /**
+         * @param fileName A file name.
+         * @return The archive format of the name's extension, or null if it is not an archive.
+         */
+        public static ArchiveFormat ofFileName(String fileName) {
+            String name = fileName.toLowerCase(Locale.ROOT);
+            if (name.endsWith(".zip")) {
+                return ZIP;
+            }
+            if (name.endsWith(".tar")) {
+                return TAR;
+            }
+            return name.endsWith(".tar.gz") || name.endsWith(".tgz") ? TAR_GZ : null;
+        }
+
+        /**
+         * @param contentType A request content type.
+         * @return The archive format of the content type, or null if it is not an archive.
+         */
+        public static ArchiveFormat ofContentType(String contentType) {
+            if (contentType == null) {
+                return null;
+            }
+            int parameters = contentType.indexOf(';');
+            String type = (parameters < 0 ? contentType : contentType.substring(0, parameters)).trim().toLowerCase(Locale.ROOT);
+            return switch (type) {
+                case "application/zip", "application/x-zip-compressed" -> ZIP;
+                case "application/x-tar" -> TAR;
+                case "application/gzip", "application/x-gzip", "application/x-gtar", "application/x-compressed-tar" -> TAR_GZ;
+                default -> null;
+            };
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        int parsers = parseThreads > 0 ? parseThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        // Unbounded queue: what is queued is bounded by the buffer budget
+        parseExecutor = new ThreadPoolExecutor(parsers, parsers, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "upload-parse-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        bufferBudget = new Semaphore(Math.max(maxBufferedBytes, bufferBytes));
+
+        writeTimer = metrics.stageTimer("mysql.write");
+        bulkIndexTimer = metrics.stageTimer("index.bulk");
+        metrics.registerStage("upload.parse", parseExecutor);
+
+        logger.info("Batch upload processing started (parse={}, bufferBytes={}, maxBufferedBytes={})",
+                parsers, bufferBytes, maxBufferedBytes);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        parseExecutor.shutdownNow();
+    }
+
+    /**
+     * Processes every file part of a multipart body; other parts are skipped.
+     *
+     * @param reader         The multipart body.
+     * @param expandArchives Whether parts named like a zip or tar archive are expanded into their entries.
+     * @return The manifest, once every received file has been saved or has failed.
+     * @throws InterruptedException If the calling thread is interrupted while waiting.
+     */
+    public UploadManifest uploadParts(MultipartReader reader, boolean expandArchives) throws InterruptedException {
+        Batch batch = new Batch(persistBatchSize);
+        try {
+            MultipartReader.Part part;
+            while ((part = reader.next()) != null) {
+                // Form fields, and file inputs left empty (sent with an empty file name)
+                if (part.getFileName() == null || part.getFileName().isEmpty()) {
+                    continue;
+                }
+                ArchiveFormat format = expandArchives ? ArchiveFormat.ofFileName(part.getFileName()) : null;
+                if (format != null) {
+                    receiveArchive(batch, part.getInputStream(), format);
+                } else {
+                    receive(batch, part.getFileName(), part.getInputStream());
+                }
+            }
+        } catch (IOException e) {
+            batch.error = "Error reading the request body: " + e.getMessage();
+            logger.warn("Batch upload body could not be read to its end", e);
+        }
+        return finish(batch);
+    }
+
+    /**
+     * Processes every file entry of an archive streamed in as the request body.
+     *
+     * @param body   The request body.
+     * @param format The archive format.
+     * @return The manifest, once every received file has been saved or has failed.
+     * @throws InterruptedException If the calling thread is interrupted while waiting.
+     */
+    public UploadManifest uploadArchive(InputStream body, ArchiveFormat format) throws InterruptedException {
+        Batch batch = new Batch(persistBatchSize);
+        try {
+            receiveArchive(batch, body, format);
+        } catch (IOException e) {
+            batch.error = "Error reading the archive: " + e.getMessage();
+            logger.warn("Batch upload archive could not be read to its end", e);
+        }
+        return finish(batch);
+    }
+
+    /**
+     * Hands off each file entry of an archive. The archive is not closed; closing it would close the body.
+     */
+    private void receiveArchive(Batch batch, InputStream in, ArchiveFormat format) throws IOException, InterruptedException {
+        ArchiveInputStream archive = switch (format) {
+            // Also accept stored entries with a data descriptor, as written by streaming zip tools
+            case ZIP -> new ZipArchiveInputStream(in, "UTF-8", true, true);
+            case TAR -> new TarArchiveInputStream(in);
+            case TAR_GZ -> new TarArchiveInputStream(new GZIPInputStream(in, ARCHIVE_BUFFER_SIZE));
+        };
+        ArchiveEntry entry;
+        while ((entry = archive.getNextEntry()) != null) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            if (!archive.canReadEntryData(entry)) {
+                batch.complete(batch.reserve(), UploadResult.failed(entry.getName(), null,
+                        "Archive entry is encrypted or uses an unsupported compression method"));
+                continue;
+            }
+            receive(batch, entry.getName(), archive);
+        }
+    }
+
+    /**
+     * Hands off one file: a small file is read into memory and parsed on the pool, a larger one is parsed
+     * on this thread while it is read. Either way the file's content has been consumed on return.
+     */
+    private void receive(Batch batch, String name, InputStream content) throws IOException, InterruptedException {
+        int index = batch.reserve();
+        bufferBudget.acquire(bufferBytes);
+        byte[] head;
+        try {
+            head = content.readNBytes(bufferBytes + 1);
+        } catch (IOException e) {
+            bufferBudget.release(bufferBytes);
+            batch.complete(index, UploadResult.failed(name, null, "Error reading the file: " + e.getMessage()));
+            throw e;
+        }
+
+        if (head.length == 0) {
+            bufferBudget.release(bufferBytes);
+            batch.complete(index, UploadResult.failed(name, null, "File is empty"));
+            return;
+        }
+
+        if (head.length > bufferBytes) {
+            // Too large to buffer: parse it from what was read so far followed by the rest of the stream.
+            // SequenceInputStream closes each stream it has read to its end; an archive must stay open for its next entry
+            InputStream rest = new FilterInputStream(content) {
+                @Override
+                public void close() {
+                }
+            };
+            try {
+                parse(batch, index, name, new SequenceInputStream(new ByteArrayInputStream(head), rest));
+            } finally {
+                bufferBudget.release(bufferBytes);
+            }
+            return;
+        }
+
+        // Keep only what the buffered file actually holds against the budget
+        bufferBudget.release(bufferBytes - head.length);
+        batch.pending.incrementAndGet();
+        try {
+            parseExecutor.execute(() -> {
+                try {
+                    parse(batch, index, name, new ByteArrayInputStream(head));
+                } finally {
+                    bufferBudget.release(head.length);
+                    batch.taskDone();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            bufferBudget.release(head.length);
+            batch.taskDone();
+            batch.complete(index, UploadResult.failed(name, null, "Upload processing has been shut down."));
+        }
+    }
+
+    /**
+     * Extracts the metadata and hashes of one file and buffers it for the next batched write. The thread
+     * that fills the buffer writes the chunk.
+     */
+    private void parse(Batch batch, int index, String name, InputStream content) {
+        String path = FileMetadataService.uploadPath(name);
+        FileExtraction extraction;
+        try {
+            extraction = tikaService.extract(content, path, name);
+        } catch (Exception e) {
+            metrics.fileFailed(tikaService.guessContentType(name));
+            logger.error("Error extracting Tika metadata from upload: {}", name, e);
+            batch.complete(index, UploadResult.failed(name, null, "Parsing failed: " + e.getMessage()));
+            return;
+        }
+        metrics.fileRead(extraction.bytesRead());
+
+        FileMetadata fileMetadata = fileMetadataService.toUploadMetadata(path, name, extraction);
+        List<PendingUpload> chunk = batch.rows.add(new PendingUpload(index, name, fileMetadata, extraction.tikaMetadata()));
+        if (chunk != null) {
+            writeBatch(batch, chunk);
+        }
+    }
+
+    /**
+     * Saves a chunk to MySQL in one transaction, then indexes it in Elasticsearch in one bulk request,
+     * and records the outcome of each file.
+     */
+    private void writeBatch(Batch batch, List<PendingUpload> chunk) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        List<FileMetadata> rows = new ArrayList<>(chunk.size());
+        List<TikaMetadata> documents = new ArrayList<>(chunk.size());
+        for (PendingUpload upload : chunk) {
+            rows.add(upload.metadata);
+            documents.add(upload.tikaMetadata);
+        }
+
+        long start = System.nanoTime();
+        try {
+            fileMetadataService.saveFileMetadataBatch(rows);
+            writeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } catch (Exception e) {
+            logger.error("Error saving a batch of {} uploaded files to MySQL", rows.size(), e);
+            for (PendingUpload upload : chunk) {
+                metrics.fileFailed(upload.metadata.getContentType());
+                batch.complete(upload.index, UploadResult.failed(upload.name, upload.metadata,
+                        "Saving to MySQL failed: " + e.getMessage()));
+            }
+            return;
+        }
+
+        Map<Integer, String> indexFailures;
+        start = System.nanoTime();
+        try {
+            indexFailures = elasticsearchService.bulkIndexTikaMetadata(documents);
+        } catch (Exception e) {
+            logger.error("Error indexing a batch of {} uploaded files", documents.size(), e);
+            indexFailures = null;
+            for (PendingUpload upload : chunk) {
+                metrics.fileFailed(upload.metadata.getContentType());
+                batch.complete(upload.index, UploadResult.failed(upload.name, upload.metadata,
+                        "Indexing failed: " + e.getMessage()));
+            }
+        } finally {
+            bulkIndexTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        if (indexFailures == null) {
+            return;
+        }
+
+        for (int position = 0; position < chunk.size(); position++) {
+            PendingUpload upload = chunk.get(position);
+            String failure = indexFailures.get(position);
+            if (failure != null) {
+                metrics.fileFailed(upload.metadata.getContentType());
+                batch.complete(upload.index, UploadResult.failed(upload.name, upload.metadata, "Indexing failed: " + failure));
+            } else {
+                metrics.fileProcessed(upload.metadata.getContentType(), upload.metadata.getSize());
+                batch.complete(upload.index, UploadResult.stored(upload.name, upload.metadata));
+            }
+        }
+    }
+
+    /**
+     * Waits for the files handed off to the pool, writes the last chunk and builds the manifest.
+     */
+    private UploadManifest finish(Batch batch) throws InterruptedException {
+        batch.taskDone(); // The request thread has read the whole body
+        batch.done.await();
+        writeBatch(batch, batch.rows.drain());
+
+        List<UploadResult> results = batch.results();
+        int stored = 0;
+        long storedBytes = 0;
+        for (UploadResult result : results) {
+            if (result.stored()) {
+                stored++;
+                storedBytes += result.size();
+            }
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - batch.startNanos);
+        logger.info("Batch upload of {} files done in {} ms: {} stored, {} failed",
+                results.size(), elapsedMs, stored, results.size() - stored);
+        return new UploadManifest(results.size(), stored, results.size() - stored, storedBytes, elapsedMs,
+                batch.error, results);
+    }
+
+    /**
+     * Book-keeping for a single batch upload.
+     */
+    private static final class Batch {
+        private final long startNanos = System.nanoTime();
+        private final BatchBuffer<PendingUpload> rows;
+        private final List<UploadResult> results = new ArrayList<>();
+        // The request thread counts as pending until it has read the whole body
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile String error;
+
+        private Batch(int batchSize) {
+            this.rows = new BatchBuffer<>(batchSize);
+        }
+
+        /**
+         * Reserves the manifest entry of the next received file.
+         */
+        private synchronized int reserve() {
+            results.add(null);
+            return results.size() - 1;
+        }
+
+        private synchronized void complete(int index, UploadResult result) {
+            results.set(index, result);
+        }
+
+        private synchronized List<UploadResult> results() {
+            return new ArrayList<>(results);
+        }
+
+        private void taskDone() {
+            if (pending.decrementAndGet() == 0) {
+                done.countDown();
+            }
+        }
+    }
+
+    /**
+     * A parsed upload waiting for the next batched write, and its position in the manifest.
+     */
+    private static final class PendingUpload {
+        private final int index;
+        private final String name;
+        private final FileMetadata metadata;
+        private final TikaMetadata tikaMetadata;
+
+        private PendingUpload(int index, String name, FileMetadata metadata, TikaMetadata tikaMetadata) {
+            this.index = index;
+            this.name = name;
+            this.metadata = metadata;
+            this.tikaMetadata = tikaMetadata;
+        }
+    }
+}
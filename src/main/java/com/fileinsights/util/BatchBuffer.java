@@ -0,0 +1,53 @@
+package com.fileinsights.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Thread-safe buffer that collects items into fixed-size chunks.
+ * The thread whose {@link #add} fills the buffer receives the full chunk and is responsible for writing it.
+ *
+ * @param <T> The type of buffered item.
+ */
+public class BatchBuffer<T> {
+
+    private final int batchSize;
+    private List<T> items;
+
+    public BatchBuffer(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1.");
+        }
+        this.batchSize = batchSize;
+        this.items = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * Adds an item to the buffer.
+     *
+     * @param item The item to add.
+     * @return The full chunk if this item completed it, otherwise null.
+     */
+    public synchronized List<T> add(T item) {
+        items.add(item);
+        if (items.size() < batchSize) {
+            return null;
+        }
+        return drainLocked();
+    }
+
+    /**
+     * Removes and returns everything currently buffered.
+     *
+     * @return The buffered items, possibly empty.
+     */
+    public synchronized List<T> drain() {
+        return drainLocked();
+    }
+
+    private List<T> drainLocked() {
+        List<T> chunk = items;
+        items = new ArrayList<>(batchSize);
+        return chunk;
+    }
+}
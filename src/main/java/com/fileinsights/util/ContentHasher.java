@@ -0,0 +1,270 @@
+package com.fileinsights.util;
+
+import net.jpountz.xxhash.StreamingXXHash64;
+import net.jpountz.xxhash.XXHash64;
+import net.jpountz.xxhash.XXHashFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Content fingerprints for duplicate detection, built on xxHash64.
+ *
+ * The partial hash covers the first and last {@value #PARTIAL_BYTES} bytes of a file and costs two small
+ * reads; files of equal size and partial hash are the only ones worth hashing in full. The content hash is
+ * 128 bits: the file is split into {@value #BLOCK_SIZE}-byte blocks, each block is hashed with two seeds,
+ * and the two sequences of block hashes are hashed again. Blocks are hashed straight from memory-mapped
+ * windows of the file, so large files are neither copied onto the heap nor read through a stream.
+ * Hashes are only comparable between files hashed with the same block size. {@link Streaming} computes the
+ * same hashes from bytes that are being read for another purpose, such as parsing.
+ */
+public final class ContentHasher {
+
+    public static final int PARTIAL_BYTES = 64 * 1024;
+    public static final int BLOCK_SIZE = 1024 * 1024;
+
+    private static final long MAP_WINDOW = 64L * BLOCK_SIZE;
+    private static final long SEED_A = 0x9E3779B97F4A7C15L;
+    private static final long SEED_B = 0xC2B2AE3D27D4EB4FL;
+
+    private static final XXHashFactory FACTORY = XXHashFactory.fastestInstance();
+    private static final XXHash64 XXH64 = FACTORY.hash64();
+
+    private static final ThreadLocal<ByteBuffer> BUFFERS =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BLOCK_SIZE));
+
+    private ContentHasher() {
+    }
+
+    /**
+     * Both fingerprints of a file.
+     *
+     * @param partialHash 16 hex digits, see {@link #partialHash}.
+     * @param contentHash 32 hex digits, see {@link #hashFile}.
+     */
+    public record Hashes(String partialHash, String contentHash) {
+    }
+
+    /**
+     * Hashes the first and last {@value #PARTIAL_BYTES} bytes of a file.
+     *
+     * @param file The file.
+     * @param size The file size.
+     * @return 16 hex digits.
+     * @throws IOException If the file cannot be read or is shorter than {@code size}.
+     */
+    public static String partialHash(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = BUFFERS.get();
+            int headLength = (int) Math.min(size, PARTIAL_BYTES);
+            long head = XXH64.hash(read(channel, buffer, 0, headLength), 0, headLength, SEED_A);
+            int tailLength = (int) Math.min(size - headLength, PARTIAL_BYTES);
+            long tail = tailLength > 0
+                    ? XXH64.hash(read(channel, buffer, size - tailLength, tailLength), 0, tailLength, SEED_A)
+                    : 0;
+            return partial(head, tail);
+        }
+    }
+
+    /**
+     * Hashes a whole file. Files up to one block are read into a buffer; larger files are mapped.
+     * The partial hash is taken from the same bytes at no extra I/O.
+     *
+     * @param file The file.
+     * @return The partial and full content hash.
+     * @throws IOException If the file cannot be read.
+     */
+    public static Hashes hashFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            Blocks blocks = new Blocks();
+            if (size <= BLOCK_SIZE) {
+                ByteBuffer buffer = read(channel, BUFFERS.get(), 0, (int) size);
+                blocks.add(buffer, 0, (int) size);
+                return new Hashes(partialOf(buffer, (int) size), blocks.digest());
+            }
+
+            long head = 0;
+            for (long position = 0; position < size; position += MAP_WINDOW) {
+                int windowLength = (int) Math.min(MAP_WINDOW, size - position);
+                ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowLength);
+                for (int offset = 0; offset < windowLength; offset += BLOCK_SIZE) {
+                    blocks.add(window, offset, Math.min(BLOCK_SIZE, windowLength - offset));
+                }
+                if (position == 0) {
+                    head = XXH64.hash(window, 0, PARTIAL_BYTES, SEED_A);
+                }
+            }
+            // Files larger than one block always have a full, separate head and tail
+            ByteBuffer tail = read(channel, BUFFERS.get(), size - PARTIAL_BYTES, PARTIAL_BYTES);
+            return new Hashes(partial(head, XXH64.hash(tail, 0, PARTIAL_BYTES, SEED_A)), blocks.digest());
+        }
+    }
+
+    /**
+     * Starts hashing a file from its bytes as they are read elsewhere.
+     *
+     * @param expectedSize The file size, used to size the buffers of small files.
+     * @return A hasher to feed the file's bytes to, in order.
+     */
+    public static Streaming streaming(long expectedSize) {
+        return new Streaming(expectedSize);
+    }
+
+    /**
+     * Reads a range of a file into the start of a buffer.
+     */
+    private static ByteBuffer read(FileChannel channel, ByteBuffer buffer, long position, int length) throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("File is shorter than expected");
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * The partial hash of a file held in a buffer; a file of at most {@value #PARTIAL_BYTES} bytes has no tail.
+     */
+    private static String partialOf(ByteBuffer buffer, int size) {
+        int headLength = Math.min(size, PARTIAL_BYTES);
+        long head = XXH64.hash(buffer, 0, headLength, SEED_A);
+        int tailLength = Math.min(size - headLength, PARTIAL_BYTES);
+        long tail = tailLength > 0 ? XXH64.hash(buffer, size - tailLength, tailLength, SEED_A) : 0;
+        return partial(head, tail);
+    }
+
+    /**
+     * The partial hash of a file held in an array, same as {@link #partialOf(ByteBuffer, int)}.
+     */
+    private static String partialOf(byte[] buffer, int size) {
+        int headLength = Math.min(size, PARTIAL_BYTES);
+        long head = XXH64.hash(buffer, 0, headLength, SEED_A);
+        int tailLength = Math.min(size - headLength, PARTIAL_BYTES);
+        long tail = tailLength > 0 ? XXH64.hash(buffer, size - tailLength, tailLength, SEED_A) : 0;
+        return partial(head, tail);
+    }
+
+    private static String partial(long head, long tail) {
+        return hex(head ^ Long.rotateLeft(tail, 31));
+    }
+
+    private static String hex(long value) {
+        String digits = Long.toHexString(value);
+        return "0".repeat(16 - digits.length()) + digits;
+    }
+
+    /**
+     * Running state of a content hash: the block hashes are streamed into two outer hashes.
+     */
+    private static final class Blocks {
+        private final StreamingXXHash64 outerA = FACTORY.newStreamingHash64(SEED_A);
+        private final StreamingXXHash64 outerB = FACTORY.newStreamingHash64(SEED_B);
+        private final ByteBuffer blockHash = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        private void add(ByteBuffer buffer, int offset, int length) {
+            update(outerA, XXH64.hash(buffer, offset, length, SEED_A));
+            update(outerB, XXH64.hash(buffer, offset, length, SEED_B));
+        }
+
+        private void add(byte[] buffer, int offset, int length) {
+            update(outerA, XXH64.hash(buffer, offset, length, SEED_A));
+            update(outerB, XXH64.hash(buffer, offset, length, SEED_B));
+        }
+
+        private void update(StreamingXXHash64 outer, long value) {
+            blockHash.putLong(0, value);
+            outer.update(blockHash.array(), 0, Long.BYTES);
+        }
+
+        private String digest() {
+            String digest = hex(outerA.getValue()) + hex(outerB.getValue());
+            outerA.close();
+            outerB.close();
+            return digest;
+        }
+    }
+
+    /**
+     * Computes the hashes of {@link #hashFile} from a file's bytes fed in order and in any chunk sizes.
+     * Blocks are collected in one of two buffers; the previous block is kept while the next one fills,
+     * because the tail of the partial hash can reach back into it. Not thread-safe.
+     */
+    public static final class Streaming {
+        private final Blocks blocks = new Blocks();
+        private byte[] block;
+        private byte[] previous;
+        private int filled;
+        private long total;
+        private long head;
+
+        private Streaming(long expectedSize) {
+            block = new byte[(int) Math.max(1, Math.min(expectedSize, BLOCK_SIZE))];
+        }
+
+        /**
+         * Feeds the next bytes of the file.
+         */
+        public void update(byte[] bytes, int offset, int length) {
+            while (length > 0) {
+                // A full block is only hashed once more bytes follow, so the last block is always in hand at the end
+                if (filled == BLOCK_SIZE) {
+                    completeBlock();
+                } else if (filled == block.length) {
+                    // The file is larger than expected
+                    block = Arrays.copyOf(block, (int) Math.min(2L * block.length, BLOCK_SIZE));
+                }
+                int count = Math.min(length, block.length - filled);
+                System.arraycopy(bytes, offset, block, filled, count);
+                filled += count;
+                total += count;
+                offset += count;
+                length -= count;
+            }
+        }
+
+        /**
+         * The number of bytes fed so far.
+         */
+        public long getTotal() {
+            return total;
+        }
+
+        /**
+         * Completes the hashes after the last byte of the file was fed.
+         *
+         * @return The partial and full content hash.
+         */
+        public Hashes finish() {
+            blocks.add(block, 0, filled);
+            if (previous == null) {
+                return new Hashes(partialOf(block, filled), blocks.digest());
+            }
+            // The last PARTIAL_BYTES bytes, partly from the previous block if the current one holds fewer
+            byte[] tail = new byte[PARTIAL_BYTES];
+            int fromCurrent = Math.min(filled, PARTIAL_BYTES);
+            int fromPrevious = PARTIAL_BYTES - fromCurrent;
+            System.arraycopy(previous, BLOCK_SIZE - fromPrevious, tail, 0, fromPrevious);
+            System.arraycopy(block, filled - fromCurrent, tail, fromPrevious, fromCurrent);
+            return new Hashes(partial(head, XXH64.hash(tail, 0, PARTIAL_BYTES, SEED_A)), blocks.digest());
+        }
+
+        private void completeBlock() {
+            if (previous == null) {
+                head = XXH64.hash(block, 0, PARTIAL_BYTES, SEED_A);
+            }
+            blocks.add(block, 0, BLOCK_SIZE);
+            byte[] next = previous != null ? previous : new byte[BLOCK_SIZE];
+            previous = block;
+            block = next;
+            filled = 0;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.fileinsights.util;
+
+import io.micrometer.core.instrument.Timer;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Streaming directory walker shared by ingestion and folder watching.
+ *
+ * Entries are handed to the visitor one at a time together with the attributes read during the walk,
+ * so callers never hold a whole directory listing in memory and never stat a file twice. Recursion
+ * uses an explicit stack ({@link Files#walkFileTree}) or caller-managed tasks ({@link #list}), never
+ * the Java call stack.
+ *
+ * Filtering: include globs select files, exclude globs prune files and whole directories. A glob matches
+ * when it matches either the path relative to the walk root or the bare file name, so both
+ * {@code *.pdf} and {@code archive/**} work. Symbolic links are followed or skipped as configured;
+ * when followed, directory loops are detected and skipped.
+ */
+public class FileTreeWalker {
+
+    /**
+     * Receives the files found by a walk.
+     */
+    public interface Visitor {
+
+        void visitFile(Path file, BasicFileAttributes attrs);
+
+        /**
+         * Called for entries or directories that could not be read.
+         */
+        default void visitFailed(Path path, IOException e) {
+        }
+
+        /**
+         * Called for entries the walk leaves out: files rejected by the globs, excluded directories,
+         * directories beyond the depth limit, unfollowed links and other non-regular files. Nothing below
+         * a skipped directory is visited.
+         */
+        default void visitSkipped(Path path, BasicFileAttributes attrs) {
+        }
+
+        /**
+         * Called by {@link #walk} for every directory it enters, before its entries.
+         */
+        default void visitDirectory(Path directory, BasicFileAttributes attrs) throws IOException {
+        }
+    }
+
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+    private final int maxDepth;
+    private final boolean followLinks;
+    private Timer statTimer;
+
+    /**
+     * @param includeGlobs Globs a file must match to be visited; empty to visit all files.
+     * @param excludeGlobs Globs for files and directories to skip.
+     * @param maxDepth     Maximum depth below the root (files directly in the root are at depth 1).
+     * @param followLinks  Whether to follow symbolic links; unfollowed links are skipped.
+     */
+    public FileTreeWalker(List<String> includeGlobs, List<String> excludeGlobs, int maxDepth, boolean followLinks) {
+        this.includes = matchers(includeGlobs);
+        this.excludes = matchers(excludeGlobs);
+        this.maxDepth = maxDepth > 0 ? maxDepth : Integer.MAX_VALUE;
+        this.followLinks = followLinks;
+    }
+
+    /**
+     * Walks the whole tree below the root on the calling thread.
+     *
+     * @param root    The folder to walk.
+     * @param visitor Receives every matching file.
+     * @throws IOException If the root itself cannot be read.
+     */
+    public void walk(Path root, Visitor visitor) throws IOException {
+        walk(root, root, visitor);
+    }
+
+    /**
+     * Walks the tree below a directory of a larger tree on the calling thread, with the globs and depth
+     * limit applied relative to the root of that tree.
+     *
+     * @param root    The root of the tree.
+     * @param start   The directory to walk, at or below the root.
+     * @param visitor Receives every matching file.
+     * @throws IOException If the start directory cannot be read, or the visitor fails on a directory.
+     */
+    public void walk(Path root, Path start, Visitor visitor) throws IOException {
+        Set<FileVisitOption> options = followLinks ? EnumSet.of(FileVisitOption.FOLLOW_LINKS) : EnumSet.noneOf(FileVisitOption.class);
+        int depth = maxDepth == Integer.MAX_VALUE ? maxDepth : Math.max(0, maxDepth - depth(root, start));
+        Files.walkFileTree(start, options, depth, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (dir.equals(root) || !isExcluded(root, dir)) {
+                    visitor.visitDirectory(dir, attrs);
+                    return FileVisitResult.CONTINUE;
+                }
+                visitor.visitSkipped(dir, attrs);
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                // At maxDepth directories are reported here too; only regular files are of interest
+                if (attrs.isRegularFile() && accepts(root, file)) {
+                    visitor.visitFile(file, attrs);
+                } else {
+                    visitor.visitSkipped(file, attrs);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                visitor.visitFailed(file, e);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Lists a single directory, for callers that spread the walk over several threads.
+     * Matching files go to the visitor; subdirectories to descend into go to the consumer.
+     *
+     * @param root           The root of the walk, for relative glob matching.
+     * @param directory      The directory to list.
+     * @param depth          Depth of the directory below the root (0 for the root).
+     * @param visitor        Receives every matching file.
+     * @param subdirectories Receives every subdirectory within the depth limit, with its attributes
+     *                       (whose {@code fileKey()} lets callers detect link loops).
+     * @throws IOException If the directory cannot be opened.
+     */
+    public void list(Path root, Path directory, int depth, Visitor visitor, BiConsumer<Path, BasicFileAttributes> subdirectories) throws IOException {
+        LinkOption[] linkOptions = followLinks ? new LinkOption[0] : new LinkOption[]{LinkOption.NOFOLLOW_LINKS};
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                BasicFileAttributes attrs;
+                long start = System.nanoTime();
+                try {
+                    attrs = Files.readAttributes(entry, BasicFileAttributes.class, linkOptions);
+                } catch (IOException e) {
+                    visitor.visitFailed(entry, e);
+                    continue;
+                } finally {
+                    if (statTimer != null) {
+                        statTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                }
+
+                if (attrs.isDirectory() && depth + 1 < maxDepth && !isExcluded(root, entry)) {
+                    subdirectories.accept(entry, attrs);
+                } else if (attrs.isRegularFile() && accepts(root, entry)) {
+                    visitor.visitFile(entry, attrs);
+                } else {
+                    visitor.visitSkipped(entry, attrs);
+                }
+            }
+        }
+    }
+
+    /**
+     * Times every attribute read of {@link #list}; set once, before the walker is used.
+     *
+     * @param statTimer The timer, or null.
+     */
+    public void setStatTimer(Timer statTimer) {
+        this.statTimer = statTimer;
+    }
+
+    /**
+     * Whether a walk from the root would visit a regular file, for callers that learn of single files
+     * some other way, such as change events. Exclusions of the file's parent directories are not checked.
+     *
+     * @param root The root of the walk.
+     * @param file A regular file in a directory the walk enters.
+     */
+    public boolean includes(Path root, Path file) {
+        return depth(root, file) <= maxDepth && accepts(root, file);
+    }
+
+    private static int depth(Path root, Path path) {
+        return path.getNameCount() - root.getNameCount();
+    }
+
+    private boolean accepts(Path root, Path file) {
+        if (isExcluded(root, file)) {
+            return false;
+        }
+        return includes.isEmpty() || matchesAny(includes, root, file);
+    }
+
+    private boolean isExcluded(Path root, Path path) {
+        return !excludes.isEmpty() && matchesAny(excludes, root, path);
+    }
+
+    private static boolean matchesAny(List<PathMatcher> matchers, Path root, Path path) {
+        Path relative = root.relativize(path);
+        Path name = path.getFileName();
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(relative) || (name != null && matcher.matches(name))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<PathMatcher> matchers(List<String> globs) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        for (String glob : globs) {
+            if (!glob.isBlank()) {
+                matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob.trim()));
+            }
+        }
+        return matchers;
+    }
+}
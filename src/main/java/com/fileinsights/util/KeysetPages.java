@@ -0,0 +1,116 @@
+package com.fileinsights.util;
+
+import com.fileinsights.entity.FileMetadata;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Response helpers for keyset (cursor) pagination.
+ */
+public final class KeysetPages {
+
+    /**
+     * Response header carrying the cursor to pass as {@code after} for the next page.
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    /**
+     * Largest page size served; larger requests get pages of this size.
+     */
+    public static final int MAX_PAGE_SIZE = 10000;
+
+    private KeysetPages() {
+    }
+
+    /**
+     * Checks a requested page size and caps it at {@link #MAX_PAGE_SIZE}.
+     *
+     * @param size The requested page size.
+     * @return The page size to use.
+     * @throws IllegalArgumentException If the size is less than 1.
+     */
+    public static int pageSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1.");
+        }
+        return Math.min(size, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * Returns a keyset page, with the cursor of the next page if this one is full.
+     * The header is absent on the last page.
+     *
+     * @param page The rows of the page, in ID order.
+     * @param size The requested page size.
+     * @return ResponseEntity with the rows.
+     */
+    public static ResponseEntity<List<FileMetadata>> ok(List<FileMetadata> page, int size) {
+        return ok(page, size, last -> String.valueOf(last.getId()));
+    }
+
+    /**
+     * Returns a keyset page of a folder listing, whose cursor is a {@link FolderCursor}.
+     *
+     * @param page The rows of the page, in (parent key, ID) order.
+     * @param size The requested page size.
+     * @return ResponseEntity with the rows.
+     */
+    public static ResponseEntity<List<FileMetadata>> okFolder(List<FileMetadata> page, int size) {
+        return ok(page, size, last -> new FolderCursor(last.getParentKey(), last.getId()).toString());
+    }
+
+    private static ResponseEntity<List<FileMetadata>> ok(List<FileMetadata> page, int size,
+                                                         Function<FileMetadata, String> cursor) {
+        if (page.size() < size) {
+            return ResponseEntity.ok(page);
+        }
+        return ResponseEntity.ok()
+                .header(NEXT_CURSOR_HEADER, cursor.apply(page.get(page.size() - 1)))
+                .body(page);
+    }
+
+    /**
+     * Position in a folder listing: the parent key and ID of the last row of a page. Written as
+     * {@code <id>.<base64url parent key>}, which is safe in headers and query strings.
+     *
+     * @param parentKey The parent key of the row.
+     * @param id        The ID of the row.
+     */
+    public record FolderCursor(String parentKey, long id) {
+
+        /**
+         * The position before the first row.
+         */
+        public static final FolderCursor FIRST = new FolderCursor("", 0);
+
+        /**
+         * Parses a cursor written by {@link #toString()}.
+         *
+         * @param cursor The cursor.
+         * @return The position.
+         * @throws IllegalArgumentException If the cursor is malformed.
+         */
+        public static FolderCursor parse(String cursor) {
+            int dot = cursor.indexOf('.');
+            if (dot <= 0) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            try {
+                long id = Long.parseLong(cursor.substring(0, dot));
+                String parentKey = new String(Base64.getUrlDecoder().decode(cursor.substring(dot + 1)), StandardCharsets.UTF_8);
+                return new FolderCursor(parentKey, id);
+            } catch (IllegalArgumentException e) { // Also NumberFormatException
+                throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return id + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(parentKey.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.fileinsights.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads a multipart/form-data request body part by part, as it arrives.
+ *
+ * Each part's content is an {@link InputStream} that ends at the next boundary, so a file part can be
+ * handed straight to a parser; nothing is buffered beyond a fixed-size window, whatever the size of the
+ * part. Moving on to the next part skips whatever the consumer left unread. Not thread-safe.
+ */
+public class MultipartReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+
+    private final InputStream in;
+    private final byte[] delimiter;
+    private final byte[] buffer;
+    private int head;
+    private int tail;
+    // Delimiter search state kept between reads, so each byte is compared once however small the reads:
+    // no delimiter starts before scanFrom, and one starts at foundAt unless it is below head
+    private int scanFrom;
+    private int foundAt = -1;
+    private PartInputStream current;
+    private boolean finished;
+
+    /**
+     * @param in       The request body.
+     * @param boundary The boundary from the request's content type.
+     */
+    public MultipartReader(InputStream in, String boundary) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.buffer = new byte[Math.max(BUFFER_SIZE, 2 * delimiter.length)];
+        // The first boundary is not preceded by a line break; pretend it is, so every boundary is a delimiter
+        buffer[0] = '\r';
+        buffer[1] = '\n';
+        tail = 2;
+        current = new PartInputStream();
+    }
+
+    /**
+     * The boundary of a multipart/form-data content type.
+     *
+     * @param contentType The request's content type.
+     * @return The boundary, or null if the content type is not multipart/form-data with a boundary.
+     */
+    public static String boundary(String contentType) {
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/form-data")) {
+            return null;
+        }
+        String boundary = parameters(contentType).get("boundary");
+        return boundary == null || boundary.isEmpty() ? null : boundary;
+    }
+
+    /**
+     * Moves to the next part, skipping the rest of the current one.
+     *
+     * @return The next part, or null after the last one.
+     * @throws IOException If the body cannot be read or is not valid multipart content.
+     */
+    public Part next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        current.skipToEnd();
+
+        // A delimiter is followed by "--" after the last part, otherwise by optional padding, a line break
+        // and the part's headers
+        while (tail - head < 2) {
+            if (!fill()) {
+                throw new EOFException("Multipart body ended before the closing boundary");
+            }
+        }
+        if (buffer[head] == '-' && buffer[head + 1] == '-') {
+            finished = true;
+            return null;
+        }
+        if (!readLine().isBlank()) {
+            throw new IOException("Malformed multipart boundary line");
+        }
+        String line;
+        Map<String, String> headers = new HashMap<>();
+        int headerBytes = 0;
+        while (!(line = readLine()).isEmpty()) {
+            headerBytes += line.length();
+            if (headerBytes > MAX_HEADER_BYTES) {
+                throw new IOException("Multipart headers exceed " + MAX_HEADER_BYTES + " bytes");
+            }
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+        }
+
+        Map<String, String> disposition = parameters(headers.getOrDefault("content-disposition", ""));
+        current = new PartInputStream();
+        return new Part(disposition.get("name"), disposition.get("filename"), headers.get("content-type"), current);
+    }
+
+    /**
+     * One part of the body.
+     */
+    public static final class Part {
+        private final String name;
+        private final String fileName;
+        private final String contentType;
+        private final InputStream inputStream;
+
+        private Part(String name, String fileName, String contentType, InputStream inputStream) {
+            this.name = name;
+            this.fileName = fileName;
+            this.contentType = contentType;
+            this.inputStream = inputStream;
+        }
+
+        /**
+         * The form field name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * The file name sent by the client, or null if the part is not a file.
+         */
+        public String getFileName() {
+            return fileName;
+        }
+
+        /**
+         * The content type sent by the client, or null.
+         */
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * The part's content, up to the next boundary. Closing it does not close the request body.
+         */
+        public InputStream getInputStream() {
+            return inputStream;
+        }
+    }
+
+    /**
+     * Content of one part: the bytes before the next delimiter. Bytes that could be the start of a
+     * delimiter are only handed out once enough follow to rule it out.
+     */
+    private final class PartInputStream extends InputStream {
+        private boolean done;
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) > 0 ? single[0] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (!done) {
+                int found = indexOfDelimiter();
+                int available = found >= 0 ? found - head : tail - head - (delimiter.length - 1);
+                if (available > 0) {
+                    int count = Math.min(len, available);
+                    System.arraycopy(buffer, head, b, off, count);
+                    head += count;
+                    return count;
+                }
+                if (found == head) {
+                    head += delimiter.length;
+                    done = true;
+                } else if (!fill()) {
+                    throw new EOFException("Multipart body ended before the closing boundary");
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int available() {
+            if (done) {
+                return 0;
+            }
+            int found = indexOfDelimiter();
+            return Math.max(0, found >= 0 ? found - head : tail - head - (delimiter.length - 1));
+        }
+
+        private void skipToEnd() throws IOException {
+            while (!done) {
+                int found = indexOfDelimiter();
+                if (found >= 0) {
+                    head = found + delimiter.length;
+                    done = true;
+                } else {
+                    head = Math.max(head, tail - (delimiter.length - 1));
+                    if (!fill()) {
+                        throw new EOFException("Multipart body ended before the closing boundary");
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            // The rest of the part is skipped by next(); the request body stays open
+        }
+    }
+
+    private int indexOfDelimiter() {
+        if (foundAt >= head) {
+            return foundAt;
+        }
+        int last = tail - delimiter.length;
+        int i = Math.max(head, scanFrom);
+        outer:
+        for (; i <= last; i++) {
+            for (int j = 0; j < delimiter.length; j++) {
+                if (buffer[i + j] != delimiter[j]) {
+                    continue outer;
+                }
+            }
+            scanFrom = i;
+            foundAt = i;
+            return i;
+        }
+        scanFrom = i;
+        return -1;
+    }
+
+    /**
+     * Moves the unread bytes to the start of the buffer and reads more after them.
+     *
+     * @return False at the end of the body.
+     */
+    private boolean fill() throws IOException {
+        if (head > 0) {
+            System.arraycopy(buffer, head, buffer, 0, tail - head);
+            tail -= head;
+            scanFrom = Math.max(0, scanFrom - head);
+            foundAt -= head;
+            head = 0;
+        }
+        int count = in.read(buffer, tail, buffer.length - tail);
+        if (count < 0) {
+            return false;
+        }
+        tail += count;
+        return true;
+    }
+
+    /**
+     * Reads a header line, or what remains of the delimiter line, without its line break.
+     */
+    private String readLine() throws IOException {
+        // Bytes after head already known not to start a line break; fill() moves head but not this offset
+        int scanned = 0;
+        while (true) {
+            for (int i = head + scanned; i < tail - 1; i++) {
+                if (buffer[i] == '\r' && buffer[i + 1] == '\n') {
+                    String line = new String(buffer, head, i - head, StandardCharsets.UTF_8);
+                    head = i + 2;
+                    return line;
+                }
+            }
+            if (tail - head > MAX_HEADER_BYTES) {
+                throw new IOException("Multipart header line exceeds " + MAX_HEADER_BYTES + " bytes");
+            }
+            scanned = Math.max(0, tail - head - 1);
+            if (!fill()) {
+                throw new EOFException("Multipart body ended inside the part headers");
+            }
+        }
+    }
+
+    /**
+     * Parameters of a header value such as {@code form-data; name="file"; filename="a; b.txt"}, with
+     * lower-cased names and quotes removed.
+     */
+    private static Map<String, String> parameters(String value) {
+        Map<String, String> parameters = new HashMap<>();
+        int i = value.indexOf(';');
+        while (i >= 0 && i < value.length()) {
+            int equals = value.indexOf('=', i + 1);
+            if (equals < 0) {
+                break;
+            }
+            String name = value.substring(i + 1, equals).trim().toLowerCase(Locale.ROOT);
+            StringBuilder parameter = new StringBuilder();
+            int j = equals + 1;
+            while (j < value.length() && value.charAt(j) == ' ') {
+                j++;
+            }
+            if (j < value.length() && value.charAt(j) == '"') {
+                for (j++; j < value.length() && value.charAt(j) != '"'; j++) {
+                    char c = value.charAt(j);
+                    // Browsers do not escape backslashes in file names, so only an escaped quote is unescaped
+                    if (c == '\\' && j + 1 < value.length() && value.charAt(j + 1) == '"') {
+                        c = value.charAt(++j);
+                    }
+                    parameter.append(c);
+                }
+                j = value.indexOf(';', j);
+            } else {
+                int end = value.indexOf(';', j);
+                parameter.append(value, j, end < 0 ? value.length() : end);
+                j = end;
+            }
+            parameters.putIfAbsent(name, parameter.toString().trim());
+            i = j;
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,44 @@
+package com.fileinsights.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes objects as newline-delimited JSON (one document per line) to a response stream.
+ */
+public class NdjsonWriter {
+
+    public static final String MEDIA_TYPE = "application/x-ndjson";
+
+    private final ObjectWriter writer;
+    private final OutputStream out;
+
+    public NdjsonWriter(ObjectMapper objectMapper, OutputStream out) {
+        this.writer = objectMapper.writer();
+        this.out = new BufferedOutputStream(out, 64 * 1024);
+    }
+
+    /**
+     * Writes one document followed by a newline.
+     *
+     * @param value The object to serialize.
+     * @throws UncheckedIOException If the client went away, so callers can use this as a {@code Consumer}.
+     */
+    public void write(Object value) {
+        try {
+            out.write(writer.writeValueAsBytes(value));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+}
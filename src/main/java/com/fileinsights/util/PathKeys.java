@@ -0,0 +1,90 @@
+package com.fileinsights.util;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Derived, indexable keys for file paths.
+ *
+ * Paths can be up to 1024 characters, more than MySQL can put into an index key. Point lookups use
+ * the fixed-width SHA-256 of the path instead; folder listings use the parent directory, normalized
+ * to end with a separator so that a folder's whole subtree is a single LIKE 'folder/%' range.
+ * The parent key, the parent directory cut to {@link #PARENT_KEY_LENGTH} characters, is short enough
+ * to be indexed whole together with the ID, so folder pages can seek and sort on the index.
+ */
+public final class PathKeys {
+
+    public static final int HASH_LENGTH = 32;
+
+    public static final int PARENT_KEY_LENGTH = 255;
+
+    private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    private PathKeys() {
+    }
+
+    /**
+     * The SHA-256 of a path's UTF-8 bytes.
+     *
+     * @param path The full file path.
+     * @return 32-byte hash.
+     */
+    public static byte[] hash(String path) {
+        return DIGESTS.get().digest(path.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The parent directory of a path, ending with a separator ("/data/a/b.txt" gives "/data/a/").
+     *
+     * @param path The full file path.
+     * @return Parent directory prefix, or the empty string for a path without a parent.
+     */
+    public static String parent(String path) {
+        int end = path.lastIndexOf(File.separatorChar);
+        return end >= 0 ? path.substring(0, end + 1) : "";
+    }
+
+    /**
+     * The parent directory cut to {@link #PARENT_KEY_LENGTH} characters.
+     *
+     * @param parent The parent directory, or a folder prefix.
+     * @return The parent key.
+     */
+    public static String parentKey(String parent) {
+        if (parent.length() <= PARENT_KEY_LENGTH) {
+            return parent;
+        }
+        // Never split a surrogate pair
+        int end = Character.isHighSurrogate(parent.charAt(PARENT_KEY_LENGTH - 1)) ? PARENT_KEY_LENGTH - 1 : PARENT_KEY_LENGTH;
+        return parent.substring(0, end);
+    }
+
+    /**
+     * Normalizes a folder path to a prefix that only matches files inside that folder.
+     *
+     * @param folderPath The folder path.
+     * @return The folder path ending with a separator.
+     */
+    public static String folderPrefix(String folderPath) {
+        return folderPath.endsWith(File.separator) ? folderPath : folderPath + File.separator;
+    }
+
+    /**
+     * Builds a LIKE pattern matching everything that starts with the given literal prefix,
+     * with '\' escaping the wildcards in the prefix.
+     *
+     * @param prefix The literal prefix.
+     * @return LIKE pattern for the prefix.
+     */
+    public static String likePrefix(String prefix) {
+        return prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+}
@@ -0,0 +1,157 @@
+package com.fileinsights.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a file once, sequentially, and hands every byte to an optional content hasher as it is read.
+ *
+ * Consumers read through a large {@link java.io.BufferedInputStream} on top of this stream, so the file
+ * is fetched in big chunks and mark/reset by the consumer (such as Tika's detection) is served from that
+ * buffer; no byte is fetched or hashed twice, and {@link #getBytesRead()} is the actual I/O.
+ * After the consumer is done, {@link #drain()} reads whatever it left unread, so the hash covers the whole file.
+ *
+ * Reads and {@link #close()} are synchronized: once close returns, a consumer that is still running on
+ * another thread (an abandoned parse) can no longer read, so a stream that is not closed with this one
+ * can safely be drained by the caller.
+ */
+public class SingleReadInputStream extends FilterInputStream {
+
+    private static final int DRAIN_BUFFER_SIZE = 64 * 1024;
+
+    private final ContentHasher.Streaming hasher;
+    private final boolean closeSource;
+    private final byte[] single = new byte[1];
+    private long bytesRead;
+    private boolean closed;
+
+    /**
+     * @param in     The stream to read from; closed with this stream.
+     * @param hasher The hasher to feed, or null to only count bytes.
+     */
+    public SingleReadInputStream(InputStream in, ContentHasher.Streaming hasher) {
+        this(in, hasher, true);
+    }
+
+    /**
+     * @param in          The stream to read from.
+     * @param hasher      The hasher to feed, or null to only count bytes.
+     * @param closeSource Whether closing this stream closes {@code in}. If not, {@link #drain()} still
+     *                    reads the rest of {@code in} after this stream was closed.
+     */
+    public SingleReadInputStream(InputStream in, ContentHasher.Streaming hasher, boolean closeSource) {
+        super(in);
+        this.hasher = hasher;
+        this.closeSource = closeSource;
+    }
+
+    /**
+     * Opens a file for a single sequential read.
+     *
+     * @param file   The file.
+     * @param hasher The hasher to feed, or null to only count bytes.
+     * @return The stream.
+     * @throws IOException If the file cannot be opened.
+     */
+    public static SingleReadInputStream open(Path file, ContentHasher.Streaming hasher) throws IOException {
+        return new SingleReadInputStream(Channels.newInputStream(FileChannel.open(file, StandardOpenOption.READ)), hasher);
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) > 0 ? single[0] & 0xFF : -1;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        return readThrough(b, off, len);
+    }
+
+    private int readThrough(byte[] b, int off, int len) throws IOException {
+        int count = in.read(b, off, len);
+        if (count > 0) {
+            bytesRead += count;
+            if (hasher != null) {
+                hasher.update(b, off, count);
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        if (hasher == null) {
+            return in.skip(n);
+        }
+        // Skipped bytes are read so that they are hashed
+        byte[] buffer = new byte[(int) Math.min(n, DRAIN_BUFFER_SIZE)];
+        long skipped = 0;
+        while (skipped < n) {
+            int count = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (count < 0) {
+                break;
+            }
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Reads the rest of the file, e.g. after a parser stopped early, so the hasher sees every byte.
+     *
+     * @throws IOException If reading fails.
+     */
+    public synchronized void drain() throws IOException {
+        byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+        while (readThrough(buffer, 0, buffer.length) >= 0) {
+            // Bytes are passed to the hasher by readThrough
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (closeSource) {
+            in.close();
+        }
+    }
+
+    /**
+     * Whether closing this stream also closed the stream it reads from.
+     */
+    public boolean closesSource() {
+        return closeSource;
+    }
+
+    /**
+     * The number of bytes read from the file so far.
+     */
+    public synchronized long getBytesRead() {
+        return bytesRead;
+    }
+}
@@ -2,6 +2,8 @@ package com.fileinsights.util;
 
 import com.fileinsights.entity.TikaMetadata;
 import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.PagedText;
+import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.parser.AutoDetectParser;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.sax.BodyContentHandler;
@@ -15,6 +17,8 @@ public class TikaUtils {
 
     /**
      * Extracts metadata from the given file using Apache Tika.
+     * This builds a new parser (and Tika configuration) on every call; the application uses the
+     * shared parser in {@code TikaService} instead. Kept as the baseline for the extraction benchmarks.
      * 
      * @param file The file from which to extract metadata.
      * @param originalFileName The original file name.
@@ -32,6 +36,32 @@ public class TikaUtils {
             parser.parse(inputStream, handler, metadata, context);
         }
 
+        return toTikaMetadata(file, originalFileName, metadata, handler.toString());
+    }
+
+    /**
+     * Builds the Elasticsearch document from parsed Tika metadata.
+     *
+     * @param file The parsed file.
+     * @param originalFileName The original file name.
+     * @param metadata The metadata produced by the parser.
+     * @param content The extracted text content.
+     * @return The Tika metadata document.
+     */
+    public static TikaMetadata toTikaMetadata(File file, String originalFileName, Metadata metadata, String content) {
+        return toTikaMetadata(file.getAbsolutePath(), originalFileName, metadata, content);
+    }
+
+    /**
+     * Builds the Elasticsearch document from parsed Tika metadata, for content that was not read from a file.
+     *
+     * @param filePath The path recorded for the content.
+     * @param originalFileName The original file name.
+     * @param metadata The metadata produced by the parser.
+     * @param content The extracted text content.
+     * @return The Tika metadata document.
+     */
+    public static TikaMetadata toTikaMetadata(String filePath, String originalFileName, Metadata metadata, String content) {
         // Convert Tika metadata to a map for easier storage in Elasticsearch
         Map<String, String> metadataMap = new HashMap<>();
         for (String name : metadata.names()) {
@@ -40,10 +70,17 @@ public class TikaUtils {
 
         // Create a TikaMetadata object and populate it
         TikaMetadata tikaMetadata = new TikaMetadata();
-        tikaMetadata.setFilePath(file.getAbsolutePath()); // Set the full path of the file
+        tikaMetadata.setFilePath(filePath); // Set the full path of the file
         tikaMetadata.setFileName(originalFileName); // Use the original file name
         tikaMetadata.setMetadataMap(metadataMap); // Set all metadata extracted by Tika
-        tikaMetadata.setContent(handler.toString()); // Set the file content extracted by Tika (if any)
+        tikaMetadata.setContent(content); // Set the file content extracted by Tika (if any)
+
+        // Typed copies of common keys; unparseable values are left out rather than failing the document
+        tikaMetadata.setContentType(metadata.get(Metadata.CONTENT_TYPE));
+        tikaMetadata.setAuthor(metadata.get(TikaCoreProperties.CREATOR));
+        tikaMetadata.setCreated(metadata.getDate(TikaCoreProperties.CREATED));
+        tikaMetadata.setModified(metadata.getDate(TikaCoreProperties.MODIFIED));
+        tikaMetadata.setPageCount(metadata.getInt(PagedText.N_PAGES));
 
         return tikaMetadata;
     }
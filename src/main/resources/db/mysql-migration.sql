@@ -0,0 +1,69 @@
+-- Schema changes of file_metadata and its companion tables, from the original schema to the current entities.
+--
+-- Hibernate runs with ddl-auto=validate and never changes the schema, so apply the steps below in order,
+-- once, before deploying the matching version. Indexes on the VARCHAR(1024) path columns are prefix indexes:
+-- the full columns exceed MySQL's 3072-byte key limit in utf8mb4, so the entities do not declare them.
+
+-- 1. Pooled table-based IDs for batched inserts of file_metadata rows
+CREATE TABLE id_generator (
+    sequence_name VARCHAR(255) NOT NULL PRIMARY KEY,
+    next_val BIGINT
+);
+INSERT INTO id_generator SELECT 'file_metadata', COALESCE(MAX(id), 0) + 1 FROM file_metadata;
+
+-- 2. Lookups by path hash and folder listings by parent directory
+ALTER TABLE file_metadata
+    ADD COLUMN path_hash BINARY(32) NULL,
+    ADD COLUMN parent_path VARCHAR(1024) NULL;
+UPDATE file_metadata SET path_hash = UNHEX(SHA2(path, 256)),
+    parent_path = SUBSTRING(path, 1, CHAR_LENGTH(path) - CHAR_LENGTH(SUBSTRING_INDEX(path, '/', -1)));
+
+-- The old (path, name) unique key has a generated name, and may be missing where it was too long to create
+SET @old_key = (SELECT INDEX_NAME FROM information_schema.STATISTICS
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'file_metadata'
+                  AND NON_UNIQUE = 0 AND INDEX_NAME <> 'PRIMARY' AND COLUMN_NAME = 'name'
+                LIMIT 1);
+SET @drop_old_key = IF(@old_key IS NULL, 'DO 0', CONCAT('ALTER TABLE file_metadata DROP INDEX `', @old_key, '`'));
+PREPARE drop_old_key FROM @drop_old_key;
+EXECUTE drop_old_key;
+DEALLOCATE PREPARE drop_old_key;
+
+ALTER TABLE file_metadata
+    MODIFY path_hash BINARY(32) NOT NULL,
+    MODIFY parent_path VARCHAR(1024) NOT NULL,
+    ADD UNIQUE KEY uk_file_metadata_path_hash (path_hash),
+    ADD KEY idx_file_metadata_parent_path (parent_path(255));
+
+-- 3. Keyset pages of a folder on a full-width (parent_key, id) index
+ALTER TABLE file_metadata ADD COLUMN parent_key VARCHAR(255) NULL;
+UPDATE file_metadata SET parent_key = LEFT(parent_path, 255);
+ALTER TABLE file_metadata
+    MODIFY parent_key VARCHAR(255) NOT NULL,
+    ADD KEY idx_file_metadata_parent_key_id (parent_key, id);
+
+-- 4. Content types and the analytics rollup; call POST /api/analytics/rollup/rebuild once afterwards
+ALTER TABLE file_metadata ADD COLUMN content_type VARCHAR(255) NULL;
+CREATE TABLE file_rollup (
+    id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    folder_hash BINARY(32) NOT NULL,
+    folder VARCHAR(1024) NOT NULL,
+    access_day DATE NOT NULL,
+    content_type VARCHAR(255) NOT NULL,
+    file_count BIGINT NOT NULL,
+    total_bytes BIGINT NOT NULL,
+    UNIQUE KEY uk_file_rollup_key (folder_hash, access_day, content_type),
+    KEY idx_file_rollup_folder (folder(255))
+);
+
+-- 5. Size and time indexes for the size histogram, top-N and growth analytics
+CREATE INDEX idx_file_metadata_size ON file_metadata (size);
+ALTER TABLE file_metadata
+    ADD KEY idx_file_metadata_mtime_size (mtime, size),
+    ADD KEY idx_file_metadata_ctime_size (ctime, size);
+
+-- 6. Content fingerprints for duplicate detection; the size index gains the content hash
+ALTER TABLE file_metadata
+    ADD COLUMN partial_hash VARCHAR(16) NULL,
+    ADD COLUMN content_hash VARCHAR(32) NULL,
+    DROP INDEX idx_file_metadata_size,
+    ADD INDEX idx_file_metadata_size_content_hash (size, content_hash);
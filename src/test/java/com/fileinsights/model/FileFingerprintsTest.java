@@ -0,0 +1,65 @@
+package com.fileinsights.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileFingerprintsTest {
+
+    @Test
+    void unchangedComparesSizeAndMtimeAtSecondPrecision() {
+        FileFingerprints fingerprints = new FileFingerprints();
+        fingerprints.add(1, "/data/a.txt", 100, 1_700_000_000_123L);
+
+        assertTrue(fingerprints.isUnchanged("/data/a.txt", 100, 1_700_000_000_999L));
+        assertFalse(fingerprints.isUnchanged("/data/a.txt", 101, 1_700_000_000_123L));
+        assertFalse(fingerprints.isUnchanged("/data/a.txt", 100, 1_700_000_001_000L));
+        assertFalse(fingerprints.isUnchanged("/data/b.txt", 100, 1_700_000_000_123L));
+    }
+
+    @Test
+    void unseenListsStoredFilesNotMarkedDuringTheScan() {
+        FileFingerprints fingerprints = new FileFingerprints();
+        fingerprints.add(1, "/data/a.txt", 1, 0);
+        fingerprints.add(2, "/data/b.txt", 1, 0);
+        fingerprints.add(3, "/data/c.txt", 1, 0);
+
+        fingerprints.markSeen("/data/b.txt");
+        fingerprints.markSeen("/data/unknown.txt");
+
+        FileFingerprints.Deleted deleted = fingerprints.unseen(List.of());
+        assertEquals(List.of(1L, 3L), deleted.getIds());
+        assertEquals(List.of("/data/a.txt", "/data/c.txt"), deleted.getPaths());
+    }
+
+    @Test
+    void filesBelowUnreadableFoldersAreNotReportedDeleted() {
+        FileFingerprints fingerprints = new FileFingerprints();
+        fingerprints.add(1, "/data/locked/a.txt", 1, 0);
+        fingerprints.add(2, "/data/open/b.txt", 1, 0);
+
+        FileFingerprints.Deleted deleted = fingerprints.unseen(List.of("/data/locked/"));
+        assertEquals(List.of(2L), deleted.getIds());
+    }
+
+    @Test
+    void growsBeyondTheInitialCapacity() {
+        FileFingerprints fingerprints = new FileFingerprints();
+        int files = 5000;
+        for (int i = 0; i < files; i++) {
+            fingerprints.add(i, "/data/f" + i, i, i * 1000L);
+        }
+
+        assertEquals(files, fingerprints.size());
+        assertTrue(fingerprints.isUnchanged("/data/f0", 0, 0));
+        assertTrue(fingerprints.isUnchanged("/data/f4999", 4999, 4_999_000L));
+        for (int i = 1; i < files; i++) {
+            fingerprints.markSeen("/data/f" + i);
+        }
+        assertEquals(List.of(0L), fingerprints.unseen(List.of()).getIds());
+    }
+}
@@ -0,0 +1,91 @@
+package com.fileinsights.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IngestionJobTest {
+
+    @Test
+    void startsQueuedAndMovesThroughItsLifecycle() {
+        IngestionJob job = new IngestionJob("/data", true);
+        assertEquals(IngestionJob.Status.QUEUED, job.getStatus());
+        assertEquals(IngestionJob.Type.INGEST, job.getType());
+        assertTrue(job.isIncremental());
+        assertFalse(job.isDone());
+        assertEquals(0, job.getElapsedMillis());
+        assertNull(job.getStartedAt());
+
+        job.markRunning();
+        assertEquals(IngestionJob.Status.RUNNING, job.getStatus());
+        assertNotNull(job.getStartedAt());
+        assertFalse(job.isDone());
+
+        job.markFinished(IngestionJob.Status.FAILED, "disk gone");
+        assertTrue(job.isDone());
+        assertEquals("disk gone", job.getError());
+        assertNotNull(job.getFinishedAt());
+        assertEquals(0L, job.getEtaSeconds());
+    }
+
+    @Test
+    void countsProgress() {
+        IngestionJob job = new IngestionJob(IngestionJob.Type.RESET, "/data", false);
+        job.fileDiscovered();
+        job.filesDiscovered(4);
+        job.fileProcessed(100);
+        job.fileProcessed(50);
+        job.fileFailed();
+        job.fileIndexFailed();
+        job.fileUnchanged();
+        job.filesDeleted(7);
+
+        assertEquals(5, job.getFilesDiscovered());
+        assertEquals(2, job.getFilesProcessed());
+        assertEquals(150, job.getBytesProcessed());
+        assertEquals(1, job.getFilesFailed());
+        assertEquals(1, job.getFilesIndexFailed());
+        assertEquals(1, job.getFilesUnchanged());
+        assertEquals(7, job.getFilesDeleted());
+    }
+
+    @Test
+    void etaIsUnknownUntilAFileIsDone() {
+        IngestionJob job = new IngestionJob("/data", false);
+        job.filesDiscovered(10);
+        assertNull(job.getEtaSeconds());
+
+        job.markRunning();
+        assertNull(job.getEtaSeconds());
+    }
+
+    @Test
+    void countersAreSafeUnderConcurrentUpdates() throws InterruptedException {
+        IngestionJob job = new IngestionJob("/data", false);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    job.fileDiscovered();
+                    job.fileProcessed(2);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(80_000, job.getFilesDiscovered());
+        assertEquals(80_000, job.getFilesProcessed());
+        assertEquals(160_000, job.getBytesProcessed());
+    }
+}
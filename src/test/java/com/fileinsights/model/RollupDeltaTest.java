@@ -0,0 +1,104 @@
+package com.fileinsights.model;
+
+import com.fileinsights.entity.FileMetadata;
+import com.fileinsights.util.PathKeys;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RollupDeltaTest {
+
+    private static final Date DAY_ONE = Date.from(Instant.parse("2026-03-01T10:00:00Z"));
+    private static final Date DAY_TWO = Date.from(Instant.parse("2026-03-02T10:00:00Z"));
+
+    @Test
+    void filesSharingAKeyCollapseIntoOneChange() {
+        RollupDelta delta = new RollupDelta();
+        delta.add("/data/", DAY_ONE, "text/plain", 10, 1);
+        delta.add("/data/", DAY_ONE, "text/plain", 5, 1);
+        delta.add("/data/", DAY_ONE, "text/plain", 3, -1);
+
+        List<RollupDelta.Change> changes = delta.changes();
+        assertEquals(1, changes.size());
+        RollupDelta.Change change = changes.get(0);
+        assertEquals("/data/", change.folder());
+        assertArrayEquals(PathKeys.hash("/data/"), change.folderHash());
+        assertEquals(LocalDate.of(2026, 3, 1), change.accessDay());
+        assertEquals(1, change.fileCount());
+        assertEquals(12, change.totalBytes());
+    }
+
+    @Test
+    void changesThatCancelOutAreDropped() {
+        RollupDelta delta = new RollupDelta();
+        delta.add("/data/", DAY_ONE, null, 10, 1);
+        delta.add("/data/", DAY_ONE, null, 10, -1);
+
+        assertTrue(delta.changes().isEmpty());
+    }
+
+    @Test
+    void changesAreSortedByFolderDayAndType() {
+        RollupDelta delta = new RollupDelta();
+        delta.add("/data/b/", DAY_ONE, "text/plain", 1, 1);
+        delta.add("/data/a/", DAY_TWO, "text/plain", 1, 1);
+        delta.add("/data/a/", DAY_ONE, "text/plain", 1, 1);
+        delta.add("/data/a/", DAY_ONE, null, 1, 1);
+
+        List<String> keys = delta.changes().stream()
+                .map(change -> change.folder() + " " + change.accessDay() + " " + change.contentType())
+                .toList();
+        assertEquals(List.of("/data/a/ 2026-03-01 ", "/data/a/ 2026-03-01 text/plain",
+                "/data/a/ 2026-03-02 text/plain", "/data/b/ 2026-03-01 text/plain"), keys);
+    }
+
+    @Test
+    void entityRowsAreCountedAndUncountedByTheirRollupFields() {
+        FileMetadata stored = new FileMetadata();
+        stored.setPath("/data/a/file.txt");
+        stored.setAtime(DAY_ONE);
+        stored.setContentType("text/plain");
+        stored.setSize(100);
+        FileMetadata updated = new FileMetadata();
+        updated.setPath("/data/a/file.txt");
+        updated.setAtime(DAY_TWO);
+        updated.setContentType("text/plain");
+        updated.setSize(120);
+
+        RollupDelta delta = new RollupDelta();
+        delta.remove(stored);
+        delta.add(updated);
+
+        List<RollupDelta.Change> changes = delta.changes();
+        assertEquals(2, changes.size());
+        assertEquals(-1, changes.get(0).fileCount());
+        assertEquals(-100, changes.get(0).totalBytes());
+        assertEquals(1, changes.get(1).fileCount());
+        assertEquals(120, changes.get(1).totalBytes());
+    }
+
+    @Test
+    void accessDaysAreUtcDaysWhateverTheDefaultTimeZone() {
+        TimeZone defaultZone = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("Pacific/Kiritimati")); // UTC+14
+            RollupDelta delta = new RollupDelta();
+            delta.add("/data/", Date.from(Instant.parse("2026-03-01T23:30:00Z")), null, 1, 1);
+            delta.add("/data/", null, null, 1, 1);
+
+            List<RollupDelta.Change> changes = delta.changes();
+            assertEquals(LocalDate.EPOCH, changes.get(0).accessDay());
+            assertEquals(LocalDate.of(2026, 3, 1), changes.get(1).accessDay());
+        } finally {
+            TimeZone.setDefault(defaultZone);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.fileinsights.repository;
+
+import com.fileinsights.entity.FileMetadata;
+import com.fileinsights.util.KeysetPages;
+import com.fileinsights.util.PathKeys;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class FileMetadataRepositoryTest {
+
+    private static final String LONG_FOLDER = "/data/" + "x".repeat(300);
+
+    @Autowired
+    private FileMetadataRepository fileMetadataRepository;
+
+    @Test
+    void folderPagesVisitEveryFileBelowTheFolderOnce() {
+        List<String> expected = new ArrayList<>();
+        for (String folder : List.of("/data/b", "/data/a/deep", "/data/a", LONG_FOLDER + "/one", LONG_FOLDER + "/two")) {
+            for (int i = 0; i < 3; i++) {
+                expected.add(save(folder + "/f" + i).getPath());
+            }
+        }
+        save("/database/f0"); // Shares the "/data" prefix, but not the folder
+        save("/other/f0");
+
+        assertEquals(sorted(expected), sorted(readAllPages("/data", 4)));
+    }
+
+    @Test
+    void foldersLongerThanTheParentKeyAreFilteredOnTheFullPath() {
+        List<String> expected = List.of(save(LONG_FOLDER + "/one/f0").getPath(), save(LONG_FOLDER + "/one/f1").getPath());
+        save(LONG_FOLDER + "/two/f0");
+
+        assertEquals(expected, sorted(readAllPages(LONG_FOLDER + "/one", 1)));
+    }
+
+    private List<String> readAllPages(String folderPath, int size) {
+        String prefix = local(PathKeys.folderPrefix(folderPath));
+        List<String> paths = new ArrayList<>();
+        KeysetPages.FolderCursor cursor = KeysetPages.FolderCursor.FIRST;
+        List<FileMetadata> page;
+        do {
+            page = fileMetadataRepository.findFolderPage(PathKeys.likePrefix(PathKeys.parentKey(prefix)),
+                    PathKeys.likePrefix(prefix), cursor.parentKey(), cursor.id(), Limit.of(size));
+            assertTrue(page.size() <= size);
+            for (FileMetadata row : page) {
+                paths.add(row.getPath());
+            }
+            if (!page.isEmpty()) {
+                FileMetadata last = page.get(page.size() - 1);
+                // Round trip through the cursor the client would send back
+                cursor = KeysetPages.FolderCursor.parse(new KeysetPages.FolderCursor(last.getParentKey(), last.getId()).toString());
+            }
+        } while (page.size() == size);
+        return paths;
+    }
+
+    private FileMetadata save(String path) {
+        FileMetadata fileMetadata = new FileMetadata();
+        fileMetadata.setPath(local(path));
+        fileMetadata.setName(path.substring(path.lastIndexOf('/') + 1));
+        fileMetadata.setSize(1);
+        fileMetadata.setCtime(new Date());
+        fileMetadata.setMtime(new Date());
+        fileMetadata.setAtime(new Date());
+        return fileMetadataRepository.save(fileMetadata);
+    }
+
+    private static String local(String path) {
+        return path.replace('/', File.separatorChar);
+    }
+
+    private static List<String> sorted(List<String> paths) {
+        return paths.stream().sorted().toList();
+    }
+}
@@ -0,0 +1,57 @@
+package com.fileinsights.service;
+
+import com.fileinsights.model.FolderStats;
+import com.fileinsights.repository.FileRollupRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@EnabledOnOs({OS.LINUX, OS.MAC})
+class AnalyticsServiceTest {
+
+    private static final Date DAY = Date.valueOf(LocalDate.of(2026, 3, 1));
+
+    @Mock
+    private FileRollupRepository fileRollupRepository;
+
+    @InjectMocks
+    private AnalyticsService analyticsService;
+
+    @Test
+    void topLevelFoldersAreCutAfterTheRootSeparator() {
+        // "/data/a/" cut at the first '/' from position 2 is "/data/"; files directly in "/" give ""
+        when(fileRollupRepository.sumBySubfolder(eq("%"), eq("/"), eq(2), isNull(), isNull(), eq(10)))
+                .thenReturn(List.of(new Object[]{"/data/", 3L, 300L, DAY}, new Object[]{"", 1L, 10L, DAY}));
+
+        List<FolderStats> folders = analyticsService.getFolderTotals(null, null, null, 10);
+
+        assertEquals(List.of(new FolderStats("/data/", 3, 300, DAY.toLocalDate()),
+                new FolderStats("/", 1, 10, DAY.toLocalDate())), folders);
+    }
+
+    @Test
+    void subfoldersAreCutAfterTheFolderPrefix() {
+        when(fileRollupRepository.sumBySubfolder(eq("/data/%"), eq("/"), eq(7), any(), any(), anyInt()))
+                .thenReturn(List.<Object[]>of(new Object[]{"/data/a/", 2L, 20L, DAY}));
+
+        List<FolderStats> folders = analyticsService.getFolderTotals("/data", null, null, 10);
+
+        assertEquals(List.of(new FolderStats("/data/a/", 2, 20, DAY.toLocalDate())), folders);
+    }
+}
@@ -0,0 +1,179 @@
+package com.fileinsights.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fileinsights.entity.TikaMetadata;
+import com.fileinsights.model.IngestionJob;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Bulk indexing against a local HTTP server that answers like Elasticsearch: the first bulk request is
+ * rejected item by item with 429, documents named "bad" are always rejected with 400.
+ */
+class ElasticsearchServiceBulkTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final AtomicInteger bulkRequests = new AtomicInteger();
+    private final Set<String> indexed = ConcurrentHashMap.newKeySet();
+    private HttpServer server;
+    private RestClient restClient;
+    private ElasticsearchService service;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+
+        restClient = RestClient.builder(new HttpHost("127.0.0.1", server.getAddress().getPort(), "http")).build();
+        service = new ElasticsearchService();
+        ReflectionTestUtils.setField(service, "elasticsearchClient",
+                new ElasticsearchClient(new RestClientTransport(restClient, new JacksonJsonpMapper())));
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "bulkMaxOperations", 1000);
+        ReflectionTestUtils.setField(service, "bulkMaxSizeBytes", 5L * 1024 * 1024);
+        ReflectionTestUtils.setField(service, "bulkFlushIntervalMs", 50L);
+        ReflectionTestUtils.setField(service, "bulkMaxConcurrentRequests", 1);
+        ReflectionTestUtils.setField(service, "bulkMaxRetries", 3);
+        ReflectionTestUtils.setField(service, "bulkInitialBackoffMs", 10L);
+        ReflectionTestUtils.setField(service, "indexRefreshInterval", "1s");
+        service.init();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        service.closeBulkIngester();
+        restClient.close();
+        server.stop(0);
+    }
+
+    @Test
+    void awaitIndexedWaitsForRetriedDocuments() throws InterruptedException {
+        IngestionJob job = new IngestionJob("/data", false);
+        for (int i = 0; i < 3; i++) {
+            service.indexTikaMetadata(document("/data/f" + i), job);
+        }
+
+        service.awaitIndexed(job);
+
+        assertEquals(Set.of("/data/f0", "/data/f1", "/data/f2"), indexed);
+        assertTrue(bulkRequests.get() >= 2, "the rejected documents were sent again");
+        assertEquals(0, job.getFilesIndexFailed());
+    }
+
+    @Test
+    void rejectedDocumentsAreCountedBeforeAwaitIndexedReturns() throws InterruptedException {
+        IngestionJob job = new IngestionJob("/data", false);
+        service.indexTikaMetadata(document("/data/ok"), job);
+        service.indexTikaMetadata(document("/data/bad"), job);
+
+        service.awaitIndexed(job);
+
+        assertEquals(Set.of("/data/ok"), indexed);
+        assertEquals(1, job.getFilesIndexFailed());
+    }
+
+    @Test
+    void awaitIndexedReturnsAtOnceWithoutDocuments() throws InterruptedException {
+        service.awaitIndexed(new IngestionJob("/data", false));
+        assertEquals(0, bulkRequests.get());
+    }
+
+    @Test
+    void invalidDocumentsFailAloneInABulkBatch() throws IOException {
+        bulkRequests.set(1); // Past the request rejected with 429
+
+        Map<Integer, String> failures = service.bulkIndexTikaMetadata(List.of(
+                document("/data/a"), document(""), document("/data/bad"), document("/data/b")));
+
+        assertEquals(Set.of("/data/a", "/data/b"), indexed);
+        assertEquals(Set.of(1, 2), failures.keySet());
+        assertEquals("rejected", failures.get(2));
+        assertTrue(failures.get(1).contains("File path"), failures.get(1));
+    }
+
+    @Test
+    void batchOfOnlyInvalidDocumentsSendsNoRequest() throws IOException {
+        // Documents without a path have no key of their own; each is still reported at its position
+        Map<Integer, String> failures = service.bulkIndexTikaMetadata(List.of(new TikaMetadata(), document(""), new TikaMetadata()));
+
+        assertEquals(Set.of(0, 1, 2), failures.keySet());
+        assertEquals(0, bulkRequests.get());
+        assertEquals(Map.of(), service.bulkIndexTikaMetadata(List.of()));
+    }
+
+    private static TikaMetadata document(String path) {
+        TikaMetadata tikaMetadata = new TikaMetadata();
+        tikaMetadata.setFilePath(path);
+        tikaMetadata.setFileName(path.substring(path.lastIndexOf('/') + 1));
+        return tikaMetadata;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            if (!exchange.getRequestURI().getPath().endsWith("/_bulk")) {
+                // Template and settings calls during init: a minimal error the client can parse
+                respond(exchange, 404, "{\"error\":{\"type\":\"not_found\",\"reason\":\"stub\"},\"status\":404}");
+                return;
+            }
+
+            boolean first = bulkRequests.incrementAndGet() == 1;
+            StringBuilder items = new StringBuilder();
+            String[] lines = body.split("\n");
+            for (int i = 0; i < lines.length; i += 2) {
+                JsonNode action = JSON.readTree(lines[i]).get("index");
+                String id = action.get("_id").asText();
+                int status = first ? 429 : id.endsWith("/bad") ? 400 : 201;
+                if (status == 201) {
+                    indexed.add(id);
+                }
+                items.append(items.length() > 0 ? "," : "")
+                        .append("{\"index\":{\"_index\":\"tika_metadata\",\"_id\":").append(JSON.writeValueAsString(id))
+                        .append(",\"status\":").append(status);
+                if (status != 201) {
+                    items.append(",\"error\":{\"type\":\"stub_exception\",\"reason\":\"rejected\"}");
+                }
+                items.append("}}");
+            }
+            respond(exchange, 200, "{\"took\":1,\"errors\":true,\"items\":[" + items + "]}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("X-Elastic-Product", "Elasticsearch");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
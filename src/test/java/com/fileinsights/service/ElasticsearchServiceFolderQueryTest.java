@@ -0,0 +1,128 @@
+package com.fileinsights.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Folder listings against a local HTTP server that answers like Elasticsearch, with the mapping of an
+ * index created from the template or of one that predates it.
+ */
+class ElasticsearchServiceFolderQueryTest {
+
+    private static final String TEMPLATE_MAPPING = "{\"tika_metadata\":{\"mappings\":{\"properties\":{\"filePath\":"
+            + "{\"type\":\"keyword\",\"fields\":{\"tree\":{\"type\":\"text\",\"analyzer\":\"path_tree\"}}}}}}}";
+    private static final String DYNAMIC_MAPPING = "{\"tika_metadata\":{\"mappings\":{\"properties\":{\"filePath\":"
+            + "{\"type\":\"text\",\"fields\":{\"keyword\":{\"type\":\"keyword\",\"ignore_above\":256}}}}}}}";
+
+    private static final String SHARDS = "{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0}";
+
+    private final List<String> searches = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+    private RestClient restClient;
+    private ElasticsearchService service;
+
+    @AfterEach
+    void stop() throws IOException {
+        service.closeBulkIngester();
+        restClient.close();
+        server.stop(0);
+    }
+
+    @Test
+    void templateIndicesAreQueriedOnThePathHierarchy() throws IOException {
+        start(TEMPLATE_MAPPING);
+
+        service.getMetadataByFolderPath("/data/docs", false);
+
+        assertEquals(1, searches.size());
+        assertTrue(searches.get(0).contains("\"filePath.tree\""), searches.get(0));
+        assertTrue(searches.get(0).contains("{\"filePath\":{\"order\":\"asc\"}}"), searches.get(0));
+    }
+
+    @Test
+    void indicesThatPredateTheTemplateFallBackToTheKeywordSubField() throws IOException {
+        start(DYNAMIC_MAPPING);
+
+        service.getMetadataByFolderPath("/data/docs", false);
+
+        assertEquals(1, searches.size());
+        assertFalse(searches.get(0).contains("filePath.tree"), searches.get(0));
+        assertTrue(searches.get(0).contains("\"prefix\":{\"filePath.keyword\""), searches.get(0));
+        assertTrue(searches.get(0).contains("{\"filePath.keyword\":{\"order\":\"asc\"}}"), searches.get(0));
+    }
+
+    private void start(String mapping) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> handle(exchange, mapping));
+        server.start();
+
+        restClient = RestClient.builder(new HttpHost("127.0.0.1", server.getAddress().getPort(), "http")).build();
+        service = new ElasticsearchService();
+        ReflectionTestUtils.setField(service, "elasticsearchClient",
+                new ElasticsearchClient(new RestClientTransport(restClient, new JacksonJsonpMapper())));
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "bulkMaxOperations", 1000);
+        ReflectionTestUtils.setField(service, "bulkMaxSizeBytes", 5L * 1024 * 1024);
+        ReflectionTestUtils.setField(service, "bulkFlushIntervalMs", 1000L);
+        ReflectionTestUtils.setField(service, "bulkMaxConcurrentRequests", 1);
+        ReflectionTestUtils.setField(service, "indexRefreshInterval", "1s");
+        ReflectionTestUtils.setField(service, "searchPageSize", 100);
+        service.init();
+    }
+
+    private void handle(HttpExchange exchange, String mapping) throws IOException {
+        try {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            if (path.endsWith("/_mapping")) {
+                respond(exchange, mapping);
+            } else if (path.endsWith("/_pit") && method.equals("POST")) {
+                respond(exchange, "{\"id\":\"pit-1\",\"_shards\":" + SHARDS + "}");
+            } else if (path.endsWith("/_pit")) {
+                respond(exchange, "{\"succeeded\":true,\"num_freed\":1}");
+            } else if (path.endsWith("/_search")) {
+                searches.add(body);
+                respond(exchange, "{\"took\":1,\"timed_out\":false,\"_shards\":" + SHARDS + ",\"hits\":{\"hits\":[]}}");
+            } else {
+                // Template, index existence and settings calls during init
+                respond(exchange, "{\"acknowledged\":true}");
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("X-Elastic-Product", "Elasticsearch");
+        boolean head = exchange.getRequestMethod().equals("HEAD");
+        exchange.sendResponseHeaders(200, head ? -1 : bytes.length);
+        if (!head) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+}
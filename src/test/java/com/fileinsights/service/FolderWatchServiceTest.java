@@ -0,0 +1,216 @@
+package com.fileinsights.service;
+
+import com.fileinsights.entity.FileMetadata;
+import com.fileinsights.entity.TikaMetadata;
+import com.fileinsights.model.FileExtraction;
+import com.fileinsights.model.FileFingerprints;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Native watching of a temporary folder with the parser and both stores mocked. The stored rows are those
+ * saved by the watcher itself, so a file saved once is unchanged for later flushes.
+ */
+@ExtendWith(MockitoExtension.class)
+class FolderWatchServiceTest {
+
+    private static final long DEBOUNCE_MS = 100;
+    private static final int BATCH_SIZE = 2;
+
+    @Mock
+    private FileMetadataService fileMetadataService;
+
+    @Mock
+    private ElasticsearchService elasticsearchService;
+
+    @Mock
+    private TikaService tikaService;
+
+    @Mock
+    private IngestionJobService ingestionJobService;
+
+    @InjectMocks
+    private FolderWatchService folderWatchService;
+
+    @TempDir
+    Path dir;
+
+    private final List<FileMetadata> saved = new ArrayList<>();
+    private final List<Integer> batchSizes = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(folderWatchService, "enabled", true);
+        ReflectionTestUtils.setField(folderWatchService, "roots", List.of(dir.toString()));
+        ReflectionTestUtils.setField(folderWatchService, "pollingRoots", List.of());
+        ReflectionTestUtils.setField(folderWatchService, "debounceMs", DEBOUNCE_MS);
+        ReflectionTestUtils.setField(folderWatchService, "pollIntervalMs", 300_000L);
+        ReflectionTestUtils.setField(folderWatchService, "persistBatchSize", BATCH_SIZE);
+        ReflectionTestUtils.setField(folderWatchService, "includeGlobs", List.of());
+        ReflectionTestUtils.setField(folderWatchService, "excludeGlobs", List.of("skipped", "*.tmp"));
+        ReflectionTestUtils.setField(folderWatchService, "maxDepth", -1);
+        ReflectionTestUtils.setField(folderWatchService, "followLinks", true);
+
+        lenient().when(fileMetadataService.extractMetadata(any(File.class), anyString())).thenCallRealMethod();
+        lenient().when(fileMetadataService.extractMetadata(any(Path.class), anyString(), any(BasicFileAttributes.class)))
+                .thenCallRealMethod();
+        lenient().when(tikaService.extract(any(File.class), anyString(), anyLong(), anyBoolean())).thenAnswer(invocation -> {
+            File file = invocation.getArgument(0);
+            TikaMetadata tikaMetadata = new TikaMetadata();
+            tikaMetadata.setFilePath(file.getAbsolutePath());
+            tikaMetadata.setContentType("text/plain");
+            return new FileExtraction(tikaMetadata, null, file.length());
+        });
+        lenient().when(fileMetadataService.loadFingerprints(anyList())).thenAnswer(invocation -> {
+            List<String> paths = invocation.getArgument(0);
+            FileFingerprints fingerprints = new FileFingerprints();
+            synchronized (saved) {
+                for (FileMetadata row : saved) {
+                    if (paths.contains(row.getPath())) {
+                        fingerprints.add(0, row.getPath(), row.getSize(), row.getMtime().getTime());
+                    }
+                }
+            }
+            return fingerprints;
+        });
+        lenient().doAnswer(invocation -> {
+            List<FileMetadata> rows = invocation.getArgument(0);
+            synchronized (saved) {
+                batchSizes.add(rows.size());
+                saved.addAll(rows);
+            }
+            return null;
+        }).when(fileMetadataService).saveFileMetadataBatch(anyList());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        folderWatchService.shutdown();
+    }
+
+    @Test
+    void filesOfANewFolderAreSavedOnceInChunks() throws Exception {
+        folderWatchService.start();
+
+        Path folder = Files.createDirectories(dir.resolve("new/deeper"));
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            paths.add(write(folder.resolve("f" + i + ".txt"), "content " + i));
+        }
+
+        await(() -> savedPaths().containsAll(paths));
+        // Later flushes of the files' own events find them unchanged
+        Thread.sleep(5 * DEBOUNCE_MS);
+        synchronized (saved) {
+            assertEquals(paths.size(), saved.size(), "saved " + savedPaths());
+            assertTrue(batchSizes.stream().allMatch(size -> size <= BATCH_SIZE), "batches " + batchSizes);
+        }
+    }
+
+    @Test
+    void touchedFilesAndModifiedFoldersAreNotExtractedAgain() throws Exception {
+        Path folder = Files.createDirectories(dir.resolve("docs"));
+        Path existing = folder.resolve("existing.txt");
+        String existingPath = write(existing, "stored");
+        Files.writeString(folder.resolve("other.txt"), "stored elsewhere");
+        synchronized (saved) {
+            saved.add(fileMetadataService.extractMetadata(existing.toFile(), "existing.txt"));
+        }
+        folderWatchService.start();
+
+        Files.setLastModifiedTime(existing, Files.getLastModifiedTime(existing));
+        Files.setLastModifiedTime(folder, FileTime.fromMillis(System.currentTimeMillis()));
+        String marker = write(dir.resolve("marker.txt"), "marker");
+
+        await(() -> savedPaths().contains(marker));
+        verify(tikaService, never()).extract(eq(existing.toFile()), anyString(), anyLong(), anyBoolean());
+        verify(tikaService, never()).extract(eq(folder.resolve("other.txt").toFile()), anyString(), anyLong(), anyBoolean());
+        assertEquals(Set.of(existingPath, marker), savedPaths());
+    }
+
+    @Test
+    void entriesExcludedFromScansAreNotWatched() throws Exception {
+        Files.createDirectories(dir.resolve("skipped"));
+        folderWatchService.start();
+
+        write(dir.resolve("skipped/existing.txt"), "not watched");
+        write(dir.resolve("draft.tmp"), "excluded by name");
+        Files.createDirectories(dir.resolve("new/skipped"));
+        write(dir.resolve("new/skipped/inside.txt"), "excluded folder");
+        String kept = write(dir.resolve("new/kept.txt"), "kept");
+
+        await(() -> savedPaths().contains(kept));
+        Thread.sleep(3 * DEBOUNCE_MS);
+        assertEquals(Set.of(kept), savedPaths());
+    }
+
+    @Test
+    void deletedFilesAreRemovedFromBothStores() throws Exception {
+        Path file = dir.resolve("gone.txt");
+        String path = write(file, "soon gone");
+        FileMetadata stored = fileMetadataService.extractMetadata(file.toFile(), "gone.txt");
+        stored.setId(7L);
+        lenient().when(fileMetadataService.getMetadataByPath(path)).thenReturn(stored);
+        lenient().when(fileMetadataService.loadFingerprints(anyString())).thenReturn(new FileFingerprints());
+        folderWatchService.start();
+
+        Files.delete(file);
+
+        await(() -> !mockingDetails(elasticsearchService).getInvocations().isEmpty());
+        verify(fileMetadataService).deleteMetadataByIds(List.of(7L));
+        verify(elasticsearchService).deleteMetadataByFilePaths(List.of(path));
+    }
+
+    private static String write(Path file, String content) throws IOException {
+        Files.writeString(file, content);
+        return file.toAbsolutePath().toString();
+    }
+
+    private Set<String> savedPaths() {
+        synchronized (saved) {
+            return saved.stream().map(FileMetadata::getPath).collect(Collectors.toSet());
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "watched change was not applied");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.fileinsights.service;
+
+import com.fileinsights.entity.FileMetadata;
+import com.fileinsights.entity.TikaMetadata;
+import com.fileinsights.model.FileExtraction;
+import com.fileinsights.model.FileFingerprints;
+import com.fileinsights.model.IngestionJob;
+import com.fileinsights.util.FileTreeWalker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Ingestion of temporary folder trees with the parser and both stores mocked. Files named "broken..." fail
+ * to parse; batches containing a file named "poison..." fail to save.
+ */
+@ExtendWith(MockitoExtension.class)
+class IngestionServiceTest {
+
+    private static final int PARSE_THREADS = 2;
+    private static final int WALK_THREADS = 2;
+    private static final int QUEUE_CAPACITY = 2;
+    private static final int BATCH_SIZE = 3;
+
+    @Mock
+    private FileMetadataService fileMetadataService;
+
+    @Mock
+    private ElasticsearchService elasticsearchService;
+
+    @Mock
+    private TikaService tikaService;
+
+    @InjectMocks
+    private IngestionService ingestionService;
+
+    @TempDir
+    Path dir;
+
+    private final List<FileMetadata> saved = new ArrayList<>();
+    private final List<Integer> failedBatchSizes = new ArrayList<>();
+    private final AtomicInteger parsing = new AtomicInteger();
+    private final AtomicInteger parsed = new AtomicInteger();
+    // Parses wait for this latch; counted down at once unless a test holds the parse stage
+    private CountDownLatch release = new CountDownLatch(0);
+    private ExecutorService caller;
+
+    @BeforeEach
+    void start() throws Exception {
+        IngestionMetrics metrics = new IngestionMetrics();
+        ReflectionTestUtils.setField(metrics, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(ingestionService, "metrics", metrics);
+        ReflectionTestUtils.setField(ingestionService, "walkThreads", WALK_THREADS);
+        ReflectionTestUtils.setField(ingestionService, "includeGlobs", List.of());
+        ReflectionTestUtils.setField(ingestionService, "excludeGlobs", List.of());
+        ReflectionTestUtils.setField(ingestionService, "maxDepth", -1);
+        ReflectionTestUtils.setField(ingestionService, "followLinks", true);
+        ReflectionTestUtils.setField(ingestionService, "parseThreads", PARSE_THREADS);
+        ReflectionTestUtils.setField(ingestionService, "persistThreads", 2);
+        ReflectionTestUtils.setField(ingestionService, "queueCapacity", QUEUE_CAPACITY);
+        ReflectionTestUtils.setField(ingestionService, "persistBatchSize", BATCH_SIZE);
+        ingestionService.start();
+        caller = Executors.newSingleThreadExecutor();
+
+        lenient().when(fileMetadataService.extractMetadata(any(Path.class), anyString(), any(BasicFileAttributes.class)))
+                .thenCallRealMethod();
+        lenient().when(tikaService.extract(any(File.class), anyString(), anyLong(), anyBoolean())).thenAnswer(invocation -> {
+            parsing.incrementAndGet();
+            try {
+                assertTrue(release.await(30, TimeUnit.SECONDS));
+                File file = invocation.getArgument(0);
+                if (file.getName().startsWith("broken")) {
+                    throw new IOException("Unparseable");
+                }
+                TikaMetadata tikaMetadata = new TikaMetadata();
+                tikaMetadata.setFilePath(file.getAbsolutePath());
+                tikaMetadata.setFileName(file.getName());
+                tikaMetadata.setContentType("text/plain");
+                parsed.incrementAndGet();
+                return new FileExtraction(tikaMetadata, null, file.length());
+            } finally {
+                parsing.decrementAndGet();
+            }
+        });
+        lenient().doAnswer(invocation -> {
+            List<FileMetadata> rows = invocation.getArgument(0);
+            synchronized (saved) {
+                if (rows.stream().anyMatch(row -> row.getName().startsWith("poison"))) {
+                    failedBatchSizes.add(rows.size());
+                    throw new IllegalStateException("Deadlock found when trying to get lock");
+                }
+                saved.addAll(rows);
+            }
+            return null;
+        }).when(fileMetadataService).saveFileMetadataBatch(anyList());
+    }
+
+    @AfterEach
+    void stop() {
+        release.countDown();
+        caller.shutdownNow();
+        ingestionService.shutdown();
+    }
+
+    @Test
+    void ingestsEveryFileOfTheTreeAndCountsTheOutcome() throws Exception {
+        Set<String> paths = tree(5, "a", "a/b", "a/b/c", "d");
+        paths.add(file("a/b/broken.pdf", 5));
+        IngestionJob job = new IngestionJob(dir.toString(), false);
+
+        ingestionService.ingest(dir.toFile(), job);
+
+        assertEquals(21, job.getFilesDiscovered());
+        assertEquals(20, job.getFilesProcessed());
+        assertEquals(1, job.getFilesFailed());
+        assertTrue(job.isWalkComplete());
+        // Basic metadata is saved even when the parse fails
+        assertEquals(paths, savedPaths());
+        assertEquals(saved.stream().filter(row -> !row.getName().startsWith("broken")).mapToLong(FileMetadata::getSize).sum(),
+                job.getBytesProcessed());
+        verify(elasticsearchService, times(20)).indexTikaMetadata(any(TikaMetadata.class), any(IngestionJob.class));
+        verify(elasticsearchService).beginBulkLoad();
+        verify(elasticsearchService).awaitIndexed(job);
+        verify(elasticsearchService).endBulkLoad();
+        verify(fileMetadataService, never()).deleteMetadataByIds(anyList());
+    }
+
+    @Test
+    void fullStagesBlockTheWalkInsteadOfFailingFiles() throws Exception {
+        tree(40, "");
+        release = new CountDownLatch(1);
+        IngestionJob job = new IngestionJob(dir.toString(), false);
+
+        Future<?> ingest = ingestAsync(job);
+        awaitParsing(PARSE_THREADS);
+        Thread.sleep(200);
+        // Files being parsed, queued for parsing, and one per walk thread waiting for room in the queue
+        long discovered = job.getFilesDiscovered();
+        assertTrue(discovered <= PARSE_THREADS + QUEUE_CAPACITY + WALK_THREADS, "discovered " + discovered);
+
+        release.countDown();
+        ingest.get(30, TimeUnit.SECONDS);
+        assertEquals(40, job.getFilesProcessed());
+        assertEquals(0, job.getFilesFailed());
+        assertEquals(40, saved.size());
+    }
+
+    @Test
+    void failedBatchWritesCountTheirFilesAsFailed() throws Exception {
+        Set<String> paths = tree(6, "x");
+        file("x/poison.txt", 3);
+        IngestionJob job = new IngestionJob(dir.toString(), false);
+
+        ingestionService.ingest(dir.toFile(), job);
+
+        assertEquals(1, failedBatchSizes.size());
+        int failed = failedBatchSizes.get(0);
+        assertTrue(failed >= 1 && failed <= BATCH_SIZE, "failed batch of " + failed);
+        assertEquals(failed, job.getFilesFailed());
+        assertEquals(7 - failed, job.getFilesProcessed());
+        assertEquals(7 - failed, saved.size());
+        assertTrue(paths.containsAll(savedPaths()));
+    }
+
+    @Test
+    void incrementalScanSkipsUnchangedFilesAndRemovesDeletedOnes() throws Exception {
+        String unchanged = file("same.txt", 10);
+        String changed = file("changed.txt", 10);
+        String added = file("new/added.txt", 10);
+        String gone = dir.resolve("gone.txt").toString();
+        FileFingerprints fingerprints = new FileFingerprints();
+        fingerprints.add(1, unchanged, 10, mtime(unchanged));
+        fingerprints.add(2, changed, 9, mtime(changed));
+        fingerprints.add(3, gone, 10, 0);
+        when(fileMetadataService.loadFingerprints(dir.toString())).thenReturn(fingerprints);
+        IngestionJob job = new IngestionJob(dir.toString(), true);
+
+        ingestionService.ingest(dir.toFile(), job);
+
+        assertEquals(1, job.getFilesUnchanged());
+        assertEquals(2, job.getFilesProcessed());
+        assertEquals(Set.of(changed, added), savedPaths());
+        verify(fileMetadataService).deleteMetadataByIds(List.of(3L));
+        verify(elasticsearchService).deleteMetadataByFilePaths(List.of(gone));
+        assertEquals(1, job.getFilesDeleted());
+    }
+
+    @Test
+    void incrementalScanKeepsRowsOfEntriesTheWalkLeavesOut() throws Exception {
+        ReflectionTestUtils.setField(ingestionService, "walker",
+                new FileTreeWalker(List.of("*.txt"), List.of("skipped"), 2, true));
+        String kept = file("kept.txt", 10);
+        String excluded = file("skipped/inside.txt", 10);
+        String tooDeep = file("a/b/deep.txt", 10);
+        String notIncluded = file("notes.md", 10);
+        String gone = dir.resolve("gone.txt").toString();
+        FileFingerprints fingerprints = new FileFingerprints();
+        fingerprints.add(1, kept, 10, mtime(kept));
+        fingerprints.add(2, excluded, 10, mtime(excluded));
+        fingerprints.add(3, tooDeep, 10, mtime(tooDeep));
+        fingerprints.add(4, notIncluded, 10, mtime(notIncluded));
+        fingerprints.add(5, gone, 10, 0);
+        when(fileMetadataService.loadFingerprints(dir.toString())).thenReturn(fingerprints);
+        IngestionJob job = new IngestionJob(dir.toString(), true);
+
+        ingestionService.ingest(dir.toFile(), job);
+
+        assertEquals(1, job.getFilesUnchanged());
+        verify(fileMetadataService).deleteMetadataByIds(List.of(5L));
+        verify(elasticsearchService).deleteMetadataByFilePaths(List.of(gone));
+    }
+
+    @Test
+    void cancelledJobDrainsWithoutParsingOrDeleting() throws Exception {
+        tree(30, "", "sub");
+        FileFingerprints fingerprints = new FileFingerprints();
+        fingerprints.add(1, dir.resolve("gone.txt").toString(), 1, 0);
+        when(fileMetadataService.loadFingerprints(dir.toString())).thenReturn(fingerprints);
+        release = new CountDownLatch(1);
+        IngestionJob job = new IngestionJob(dir.toString(), true);
+
+        Future<?> ingest = ingestAsync(job);
+        awaitParsing(PARSE_THREADS);
+        job.requestCancel();
+        release.countDown();
+        ingest.get(30, TimeUnit.SECONDS);
+
+        // Only the parses already running finish; their rows are not persisted after the cancel
+        assertEquals(PARSE_THREADS, parsed.get());
+        assertEquals(0, job.getFilesProcessed());
+        assertTrue(saved.isEmpty());
+        verify(fileMetadataService, never()).deleteMetadataByIds(anyList());
+        verify(elasticsearchService, never()).deleteMetadataByFilePaths(anyList());
+        verify(elasticsearchService).endBulkLoad();
+    }
+
+    private Future<?> ingestAsync(IngestionJob job) {
+        return caller.submit(() -> {
+            ingestionService.ingest(dir.toFile(), job);
+            return null;
+        });
+    }
+
+    private void awaitParsing(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (parsing.get() < count) {
+            assertTrue(System.nanoTime() < deadline, "parse threads did not start");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Creates the given number of files in each folder ("" is the root).
+     */
+    private Set<String> tree(int filesPerFolder, String... folders) throws IOException {
+        Set<String> paths = new HashSet<>();
+        for (String folder : folders) {
+            for (int i = 0; i < filesPerFolder; i++) {
+                paths.add(file((folder.isEmpty() ? "" : folder + "/") + "f" + i + ".txt", i + 1));
+            }
+        }
+        return paths;
+    }
+
+    private String file(String relative, int size) throws IOException {
+        Path file = dir.resolve(relative);
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[size]);
+        return file.toAbsolutePath().toString();
+    }
+
+    private static long mtime(String path) throws IOException {
+        return Files.getLastModifiedTime(Path.of(path)).toMillis();
+    }
+
+    private Set<String> savedPaths() {
+        synchronized (saved) {
+            return saved.stream().map(FileMetadata::getPath).collect(Collectors.toSet());
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.fileinsights.service;
+
+import com.fileinsights.model.FileExtraction;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.xml.sax.ContentHandler;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TikaServiceTimeoutTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private TikaService tikaService;
+
+    @BeforeEach
+    void setUp() {
+        tikaService = new TikaService();
+        ReflectionTestUtils.setField(tikaService, "parseTimeoutMs", 100L);
+        ReflectionTestUtils.setField(tikaService, "maxAbandonedParses", 1);
+        tikaService.init();
+        ReflectionTestUtils.setField(tikaService, "parser", new StuckParser());
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        tikaService.shutdown();
+    }
+
+    @Test
+    void parseIgnoringItsTimeoutHoldsThePoolAndLaterFilesFailFast() throws Exception {
+        FileExtraction first = tikaService.extract(content(), "/data/a.txt", "a.txt");
+        assertTrue(first.tikaMetadata().isParseTimedOut());
+
+        long start = System.nanoTime();
+        assertThrows(TikaException.class, () -> tikaService.extract(content(), "/data/b.txt", "b.txt"));
+        assertTrue(System.nanoTime() - start < 100_000_000L, "rejected without waiting for the timeout");
+    }
+
+    @Test
+    void concurrentParsesThatFinishInTimeNeverWaitForEachOther() throws Exception {
+        ReflectionTestUtils.setField(tikaService, "parser", new SlowParser());
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<FileExtraction>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                String name = "f" + i + ".txt";
+                results.add(callers.submit(() -> tikaService.extract(content(), "/data/" + name, name)));
+            }
+            for (Future<FileExtraction> result : results) {
+                assertFalse(result.get(10, TimeUnit.SECONDS).tikaMetadata().isParseTimedOut());
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    void parsesAreAcceptedAgainOnceTheAbandonedParseEnds() throws Exception {
+        assertTrue(tikaService.extract(content(), "/data/a.txt", "a.txt").tikaMetadata().isParseTimedOut());
+        assertThrows(TikaException.class, () -> tikaService.extract(content(), "/data/b.txt", "b.txt"));
+
+        ReflectionTestUtils.setField(tikaService, "parser", new SlowParser());
+        release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        FileExtraction extraction = null;
+        while (extraction == null) {
+            try {
+                extraction = tikaService.extract(content(), "/data/c.txt", "c.txt");
+            } catch (TikaException e) {
+                assertTrue(System.nanoTime() < deadline, "abandoned parse was never released");
+                Thread.sleep(10);
+            }
+        }
+        assertFalse(extraction.tikaMetadata().isParseTimedOut());
+    }
+
+    private static ByteArrayInputStream content() {
+        return new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Takes a while, but well within the timeout. */
+    private static class SlowParser implements Parser {
+
+        @Override
+        public Set<MediaType> getSupportedTypes(ParseContext context) {
+            return Set.of();
+        }
+
+        @Override
+        public void parse(InputStream stream, ContentHandler handler, Metadata metadata, ParseContext context)
+                throws TikaException {
+            try {
+                Thread.sleep(30);
+            } catch (InterruptedException e) {
+                throw new TikaException("Interrupted", e);
+            }
+        }
+    }
+
+    /** Blocks until the test ends, ignoring interrupts like a parser stuck in a tight loop. */
+    private class StuckParser implements Parser {
+
+        @Override
+        public Set<MediaType> getSupportedTypes(ParseContext context) {
+            return Set.of();
+        }
+
+        @Override
+        public void parse(InputStream stream, ContentHandler handler, Metadata metadata, ParseContext context) {
+            boolean released = false;
+            while (!released) {
+                try {
+                    release.await();
+                    released = true;
+                } catch (InterruptedException ignored) {
+                    // Keeps running, as a parser that never checks for interrupts would
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package com.fileinsights.service;
+
+import com.fileinsights.controller.FileUploadController;
+import com.fileinsights.entity.FileMetadata;
+import com.fileinsights.entity.TikaMetadata;
+import com.fileinsights.model.FileExtraction;
+import com.fileinsights.model.UploadManifest;
+import com.fileinsights.model.UploadResult;
+import com.fileinsights.util.ContentHasher;
+import com.fileinsights.util.MultipartReader;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+/**
+ * Batch uploads with the parser and both stores mocked: the parser reads and hashes each file's stream
+ * to its end, recording which thread parsed it, and the stores record what they were given.
+ */
+@ExtendWith(MockitoExtension.class)
+class UploadBatchServiceTest {
+
+    private static final String BOUNDARY = "batch-boundary";
+    private static final int BUFFER_BYTES = 1024;
+    private static final int MAX_BUFFERED_BYTES = 4 * BUFFER_BYTES;
+    private static final int PERSIST_BATCH_SIZE = 3;
+
+    @Mock
+    private FileMetadataService fileMetadataService;
+
+    @Mock
+    private ElasticsearchService elasticsearchService;
+
+    @Mock
+    private TikaService tikaService;
+
+    @InjectMocks
+    private UploadBatchService uploadBatchService;
+
+    private final Map<String, Thread> parsedOn = new ConcurrentHashMap<>();
+    private final List<Integer> savedBatchSizes = new ArrayList<>();
+    private final AtomicInteger parsing = new AtomicInteger();
+    private final AtomicInteger maxParsing = new AtomicInteger();
+
+    @BeforeEach
+    void start() throws Exception {
+        IngestionMetrics metrics = new IngestionMetrics();
+        ReflectionTestUtils.setField(metrics, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(uploadBatchService, "metrics", metrics);
+        ReflectionTestUtils.setField(uploadBatchService, "parseThreads", 2);
+        ReflectionTestUtils.setField(uploadBatchService, "bufferBytes", BUFFER_BYTES);
+        ReflectionTestUtils.setField(uploadBatchService, "maxBufferedBytes", MAX_BUFFERED_BYTES);
+        ReflectionTestUtils.setField(uploadBatchService, "persistBatchSize", PERSIST_BATCH_SIZE);
+        uploadBatchService.start();
+
+        lenient().when(tikaService.extract(any(InputStream.class), anyString(), anyString())).thenAnswer(invocation -> {
+            int running = parsing.incrementAndGet();
+            maxParsing.accumulateAndGet(running, Math::max);
+            try {
+                String path = invocation.getArgument(1);
+                String name = invocation.getArgument(2);
+                parsedOn.put(name, Thread.currentThread());
+                byte[] content = invocation.<InputStream>getArgument(0).readAllBytes();
+                TikaMetadata tikaMetadata = new TikaMetadata();
+                tikaMetadata.setFilePath(path);
+                tikaMetadata.setFileName(name);
+                tikaMetadata.setContentType("text/plain");
+                return new FileExtraction(tikaMetadata, hashes(content), content.length);
+            } finally {
+                parsing.decrementAndGet();
+            }
+        });
+        lenient().when(fileMetadataService.toUploadMetadata(anyString(), anyString(), any())).thenCallRealMethod();
+        lenient().doAnswer(invocation -> {
+            synchronized (savedBatchSizes) {
+                savedBatchSizes.add(invocation.<List<FileMetadata>>getArgument(0).size());
+            }
+            return null;
+        }).when(fileMetadataService).saveFileMetadataBatch(anyList());
+        // Documents of files named "reject..." are rejected by Elasticsearch
+        lenient().when(elasticsearchService.bulkIndexTikaMetadata(anyList())).thenAnswer(invocation -> {
+            Map<Integer, String> failures = new HashMap<>();
+            List<TikaMetadata> documents = invocation.getArgument(0);
+            for (int position = 0; position < documents.size(); position++) {
+                if (documents.get(position).getFileName().startsWith("reject")) {
+                    failures.put(position, "rejected");
+                }
+            }
+            return failures;
+        });
+    }
+
+    @AfterEach
+    void stop() {
+        uploadBatchService.shutdown();
+    }
+
+    @Test
+    void smallFilesAreParsedOnThePoolAndLargeFilesAsTheyStreamIn() throws Exception {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("small.txt", bytes(10));
+        files.put("large.bin", bytes(5 * BUFFER_BYTES));
+        files.put("exact.bin", bytes(BUFFER_BYTES));
+        files.put("over.bin", bytes(BUFFER_BYTES + 1));
+        files.put("empty.txt", new byte[0]);
+        files.put("reject.txt", bytes(20));
+
+        UploadManifest manifest = uploadBatchService.uploadParts(reader(multipart(files)), true);
+
+        assertNull(manifest.error());
+        assertEquals(6, manifest.files());
+        assertEquals(4, manifest.stored());
+        assertEquals(2, manifest.failed());
+        assertEquals(10 + 5 * BUFFER_BYTES + BUFFER_BYTES + BUFFER_BYTES + 1, manifest.storedBytes());
+
+        List<UploadResult> results = manifest.results();
+        assertEquals(List.copyOf(files.keySet()), results.stream().map(UploadResult::name).toList());
+        for (UploadResult result : results.subList(0, 4)) {
+            assertTrue(result.stored(), result.name());
+            byte[] content = files.get(result.name());
+            assertEquals(content.length, result.size(), result.name());
+            // The head read for the size check is parsed together with the rest of the stream
+            assertEquals(hashes(content).contentHash(), result.contentHash(), result.name());
+        }
+        assertEquals("File is empty", results.get(4).error());
+        assertFalse(results.get(5).stored());
+        assertEquals("Indexing failed: rejected", results.get(5).error());
+        assertNotNull(results.get(5).path());
+
+        Thread requestThread = Thread.currentThread();
+        assertSame(requestThread, parsedOn.get("large.bin"));
+        assertSame(requestThread, parsedOn.get("over.bin"));
+        assertTrue(parsedOn.get("small.txt").getName().startsWith("upload-parse-"));
+        assertTrue(parsedOn.get("exact.bin").getName().startsWith("upload-parse-"));
+        assertFalse(parsedOn.containsKey("empty.txt"));
+        assertEquals(List.of(3, 2), sorted(savedBatchSizes));
+        assertBudgetReleased();
+    }
+
+    @Test
+    void truncatedBodyListsTheFilesReceivedBeforeIt() throws Exception {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("a.txt", bytes(100));
+        files.put("b.bin", bytes(3 * BUFFER_BYTES));
+        files.put("c.txt", bytes(200));
+        byte[] body = multipart(files);
+        // Cut the body inside the content of the last part
+        byte[] truncated = Arrays.copyOf(body, body.length - ("--" + BOUNDARY + "--\r\n").length() - 150);
+
+        UploadManifest manifest = uploadBatchService.uploadParts(reader(truncated), true);
+
+        assertNotNull(manifest.error());
+        assertTrue(manifest.error().startsWith("Error reading the request body"), manifest.error());
+        assertEquals(3, manifest.files());
+        assertEquals(2, manifest.stored());
+        assertEquals(List.of(true, true, false), manifest.results().stream().map(UploadResult::stored).toList());
+        assertTrue(manifest.results().get(2).error().startsWith("Error reading the file"), manifest.results().get(2).error());
+        assertBudgetReleased();
+
+        // The controller answers 400 with the partial manifest
+        FileUploadController controller = new FileUploadController();
+        ReflectionTestUtils.setField(controller, "uploadBatchService", uploadBatchService);
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/upload/batch");
+        request.setContentType("multipart/form-data; boundary=" + BOUNDARY);
+        request.setContent(truncated);
+
+        ResponseEntity<?> response = controller.uploadBatch(request, true);
+
+        assertEquals(400, response.getStatusCode().value());
+        UploadManifest partial = (UploadManifest) response.getBody();
+        assertEquals(2, partial.stored());
+        assertEquals(3, partial.files());
+    }
+
+    @Test
+    void archivesAreExpandedIntoTheirFiles() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("docs/a.txt", bytes(50));
+        entries.put("docs/nested/b.bin", bytes(2 * BUFFER_BYTES));
+        entries.put("c.txt", bytes(1));
+
+        byte[] zip = zip(entries);
+        byte[] tar = tar(entries);
+        byte[] tarGz = gzip(tar);
+        for (Map.Entry<UploadBatchService.ArchiveFormat, byte[]> archive : Map.of(
+                UploadBatchService.ArchiveFormat.ZIP, zip,
+                UploadBatchService.ArchiveFormat.TAR, tar,
+                UploadBatchService.ArchiveFormat.TAR_GZ, tarGz).entrySet()) {
+            UploadManifest manifest = uploadBatchService.uploadArchive(new ByteArrayInputStream(archive.getValue()), archive.getKey());
+
+            assertNull(manifest.error(), archive.getKey().name());
+            assertEquals(List.copyOf(entries.keySet()), manifest.results().stream().map(UploadResult::name).toList());
+            assertEquals(3, manifest.stored(), archive.getKey().name());
+            for (UploadResult result : manifest.results()) {
+                assertEquals(hashes(entries.get(result.name())).contentHash(), result.contentHash(), result.name());
+                assertTrue(result.path().endsWith(result.name().substring(result.name().lastIndexOf('/') + 1)));
+            }
+        }
+
+        // Archive parts of a multipart body, expanded or stored as they are
+        Map<String, byte[]> parts = new LinkedHashMap<>();
+        parts.put("first.txt", bytes(10));
+        parts.put("bundle.zip", zip);
+        parts.put("bundle.tar.gz", tarGz);
+        UploadManifest expanded = uploadBatchService.uploadParts(reader(multipart(parts)), true);
+        assertNull(expanded.error());
+        assertEquals(7, expanded.stored());
+        assertEquals("first.txt", expanded.results().get(0).name());
+        assertEquals("docs/a.txt", expanded.results().get(1).name());
+        assertEquals("c.txt", expanded.results().get(6).name());
+
+        UploadManifest notExpanded = uploadBatchService.uploadParts(reader(multipart(parts)), false);
+        assertEquals(List.of("first.txt", "bundle.zip", "bundle.tar.gz"),
+                notExpanded.results().stream().map(UploadResult::name).toList());
+        assertEquals((long) zip.length, notExpanded.results().get(1).size());
+        assertBudgetReleased();
+    }
+
+    @Test
+    void concurrentParsesStayWithinThePoolAndTheBufferBudget() throws Exception {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        for (int i = 0; i < 50; i++) {
+            // Mostly small files, with a large one every tenth
+            files.put("f" + i + ".bin", bytes(i % 10 == 9 ? 3 * BUFFER_BYTES : BUFFER_BYTES - i));
+        }
+
+        UploadManifest manifest = uploadBatchService.uploadParts(reader(multipart(files)), true);
+
+        assertNull(manifest.error());
+        assertEquals(50, manifest.files());
+        assertEquals(50, manifest.stored());
+        assertEquals(List.copyOf(files.keySet()), manifest.results().stream().map(UploadResult::name).toList());
+        assertTrue(manifest.results().stream().allMatch(r -> r.error() == null));
+        // Two pool threads, plus the request thread parsing a large file
+        assertTrue(maxParsing.get() <= 3, "parses at once: " + maxParsing.get());
+        assertEquals(Set.of(PERSIST_BATCH_SIZE, 50 % PERSIST_BATCH_SIZE), Set.copyOf(savedBatchSizes));
+        assertEquals(50, savedBatchSizes.stream().mapToInt(Integer::intValue).sum());
+        assertBudgetReleased();
+        assertEquals(0, ((ThreadPoolExecutor) ReflectionTestUtils.getField(uploadBatchService,
+                "parseExecutor")).getQueue().size());
+    }
+
+    private void assertBudgetReleased() {
+        Semaphore budget = (Semaphore) ReflectionTestUtils.getField(uploadBatchService, "bufferBudget");
+        assertEquals(MAX_BUFFERED_BYTES, budget.availablePermits());
+    }
+
+    private static MultipartReader reader(byte[] body) {
+        return new MultipartReader(new ByteArrayInputStream(body), BOUNDARY);
+    }
+
+    private static byte[] multipart(Map<String, byte[]> files) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        // A form field, which is skipped
+        body.writeBytes(("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"comment\"\r\n\r\nhello\r\n")
+                .getBytes(StandardCharsets.UTF_8));
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            body.writeBytes(("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"files\"; filename=\""
+                    + file.getKey() + "\"\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            body.writeBytes(file.getValue());
+            body.writeBytes("\r\n".getBytes(StandardCharsets.UTF_8));
+        }
+        body.writeBytes(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return body.toByteArray();
+    }
+
+    private static byte[] zip(Map<String, byte[]> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("docs/"));
+            zip.closeEntry();
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue());
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] tar(Map<String, byte[]> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(bytes)) {
+            tar.putArchiveEntry(new TarArchiveEntry("docs/"));
+            tar.closeArchiveEntry();
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                TarArchiveEntry tarEntry = new TarArchiveEntry(entry.getKey());
+                tarEntry.setSize(entry.getValue().length);
+                tar.putArchiveEntry(tarEntry);
+                tar.write(entry.getValue());
+                tar.closeArchiveEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(content);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static ContentHasher.Hashes hashes(byte[] content) {
+        ContentHasher.Streaming hasher = ContentHasher.streaming(content.length);
+        hasher.update(content, 0, content.length);
+        return hasher.finish();
+    }
+
+    private static List<Integer> sorted(List<Integer> values) {
+        synchronized (values) {
+            return values.stream().sorted(Comparator.reverseOrder()).toList();
+        }
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
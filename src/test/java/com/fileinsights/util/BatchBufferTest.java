@@ -0,0 +1,69 @@
+package com.fileinsights.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchBufferTest {
+
+    @Test
+    void handsOutAChunkToTheAddThatFillsIt() {
+        BatchBuffer<Integer> buffer = new BatchBuffer<>(3);
+        assertNull(buffer.add(1));
+        assertNull(buffer.add(2));
+        assertEquals(List.of(1, 2, 3), buffer.add(3));
+        assertNull(buffer.add(4));
+        assertEquals(List.of(4), buffer.drain());
+        assertTrue(buffer.drain().isEmpty());
+    }
+
+    @Test
+    void rejectsABatchSizeBelowOne() {
+        assertThrows(IllegalArgumentException.class, () -> new BatchBuffer<>(0));
+    }
+
+    @Test
+    void everyItemEndsUpInExactlyOneChunkUnderConcurrentAdds() throws InterruptedException {
+        BatchBuffer<Integer> buffer = new BatchBuffer<>(7);
+        List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> chunkSizes = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 1000; i++) {
+                    List<Integer> chunk = buffer.add(thread * 1000 + i);
+                    if (chunk != null) {
+                        chunkSizes.add(chunk.size());
+                        written.addAll(chunk);
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        written.addAll(buffer.drain());
+
+        assertTrue(chunkSizes.stream().allMatch(size -> size == 7));
+        assertEquals(8000, written.size());
+        assertEquals(8000, written.stream().distinct().count());
+    }
+}
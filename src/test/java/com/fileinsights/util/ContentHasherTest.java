@@ -0,0 +1,104 @@
+package com.fileinsights.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class ContentHasherTest {
+
+    private static final int PARTIAL = ContentHasher.PARTIAL_BYTES;
+    private static final int BLOCK = ContentHasher.BLOCK_SIZE;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void streamedHashesEqualFileHashesAtBlockAndPartialEdges() throws IOException {
+        long[] sizes = {0, 1, PARTIAL - 1, PARTIAL, PARTIAL + 1, 2L * PARTIAL, 2L * PARTIAL + 1,
+                BLOCK - 1, BLOCK, BLOCK + 1, BLOCK + PARTIAL / 2, 2L * BLOCK, 3L * BLOCK + 17};
+        for (long size : sizes) {
+            Path file = write("f" + size, size, size);
+            ContentHasher.Hashes expected = ContentHasher.hashFile(file);
+
+            assertEquals(expected, stream(file, size, 8192), "size " + size);
+            assertEquals(expected.partialHash(), ContentHasher.partialHash(file, size), "size " + size);
+        }
+    }
+
+    @Test
+    void streamedHashesEqualMappedHashesAcrossMapWindows() throws IOException {
+        // Larger than one 64-block map window, so hashFile maps two windows
+        long size = 65L * BLOCK + 12345;
+        Path file = write("large", size, 7);
+
+        assertEquals(ContentHasher.hashFile(file), stream(file, size, 1 << 20));
+    }
+
+    @Test
+    void streamedHashesDoNotDependOnChunkSizesOrExpectedSize() throws IOException {
+        long size = 2L * BLOCK + 3;
+        Path file = write("chunks", size, 3);
+        ContentHasher.Hashes expected = ContentHasher.hashFile(file);
+
+        assertEquals(expected, stream(file, size, 1));
+        assertEquals(expected, stream(file, size, 4097));
+        // A file that grew since it was listed
+        assertEquals(expected, stream(file, 10, 65536));
+        assertEquals(expected, stream(file, 0, 65536));
+    }
+
+    @Test
+    void hashesDifferWhenTheMiddleOfTheFileDiffers() throws IOException {
+        long size = 3L * BLOCK;
+        Path a = write("a", size, 11);
+        Path b = write("b", size, 11);
+        byte[] changed = Files.readAllBytes(b);
+        changed[(int) (size / 2)] ^= 1;
+        Files.write(b, changed);
+
+        ContentHasher.Hashes hashesA = ContentHasher.hashFile(a);
+        ContentHasher.Hashes hashesB = ContentHasher.hashFile(b);
+        assertEquals(hashesA.partialHash(), hashesB.partialHash());
+        assertNotEquals(hashesA.contentHash(), hashesB.contentHash());
+        assertEquals(16, hashesA.partialHash().length());
+        assertEquals(32, hashesA.contentHash().length());
+    }
+
+    /**
+     * Feeds a file to a streaming hasher in chunks of at most {@code chunk} bytes.
+     */
+    private static ContentHasher.Hashes stream(Path file, long expectedSize, int chunk) throws IOException {
+        ContentHasher.Streaming hasher = ContentHasher.streaming(expectedSize);
+        byte[] buffer = new byte[chunk];
+        try (InputStream in = Files.newInputStream(file)) {
+            int count;
+            while ((count = in.read(buffer)) >= 0) {
+                hasher.update(buffer, 0, count);
+            }
+        }
+        assertEquals(Files.size(file), hasher.getTotal());
+        return hasher.finish();
+    }
+
+    private Path write(String name, long size, long seed) throws IOException {
+        Path file = dir.resolve(name);
+        Random random = new Random(seed);
+        byte[] buffer = new byte[64 * 1024];
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += buffer.length) {
+                random.nextBytes(buffer);
+                out.write(buffer, 0, (int) Math.min(buffer.length, size - written));
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,161 @@
+package com.fileinsights.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileTreeWalkerTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void walkVisitsEveryRegularFile() throws IOException {
+        createTree();
+
+        assertEquals(Set.of("a.pdf", "b.txt", "docs/c.pdf", "docs/deep/d.pdf", "archive/e.pdf"),
+                walk(new FileTreeWalker(List.of(), List.of(), 0, true)));
+    }
+
+    @Test
+    void includeAndExcludeGlobsMatchRelativePathsAndFileNames() throws IOException {
+        createTree();
+        FileTreeWalker walker = new FileTreeWalker(List.of("*.pdf"), List.of("archive/**", "archive"), 0, true);
+
+        assertEquals(Set.of("a.pdf", "docs/c.pdf", "docs/deep/d.pdf"), walk(walker));
+    }
+
+    @Test
+    void maxDepthLimitsTheWalk() throws IOException {
+        createTree();
+        FileTreeWalker walker = new FileTreeWalker(List.of(), List.of(), 2, true);
+
+        assertEquals(Set.of("a.pdf", "b.txt", "docs/c.pdf", "archive/e.pdf"), walk(walker));
+    }
+
+    @Test
+    void unfollowedLinksAreSkipped() throws IOException {
+        createTree();
+        Path outside = Files.createTempDirectory("walker-outside");
+        try {
+            Files.writeString(outside.resolve("linked.txt"), "x");
+            Files.createSymbolicLink(root.resolve("link"), outside);
+
+            assertTrue(walk(new FileTreeWalker(List.of(), List.of(), 0, true)).contains("link/linked.txt"));
+            Set<String> unfollowed = walk(new FileTreeWalker(List.of(), List.of(), 0, false));
+            assertTrue(unfollowed.stream().noneMatch(path -> path.startsWith("link")));
+        } finally {
+            Files.deleteIfExists(outside.resolve("linked.txt"));
+            Files.deleteIfExists(outside);
+        }
+    }
+
+    @Test
+    void entriesLeftOutByTheSettingsAreReportedAsSkipped() throws IOException {
+        createTree();
+        FileTreeWalker walker = new FileTreeWalker(List.of("*.pdf"), List.of("archive"), 2, true);
+        Set<String> files = new TreeSet<>();
+        Set<String> skipped = new TreeSet<>();
+
+        walker.walk(root, new FileTreeWalker.Visitor() {
+            @Override
+            public void visitFile(Path file, BasicFileAttributes attrs) {
+                files.add(relative(file));
+            }
+
+            @Override
+            public void visitSkipped(Path path, BasicFileAttributes attrs) {
+                skipped.add(relative(path));
+            }
+        });
+
+        assertEquals(Set.of("a.pdf", "docs/c.pdf"), files);
+        assertEquals(Set.of("b.txt", "archive", "docs/deep"), skipped);
+    }
+
+    @Test
+    void walkFromASubdirectoryAppliesTheSettingsRelativeToTheRoot() throws IOException {
+        createTree();
+        Files.createDirectories(root.resolve("docs/archive"));
+        Files.writeString(root.resolve("docs/archive/f.pdf"), "f");
+        FileTreeWalker walker = new FileTreeWalker(List.of(), List.of("docs/archive"), 2, true);
+        Set<String> files = new TreeSet<>();
+        Set<String> directories = new TreeSet<>();
+
+        walker.walk(root, root.resolve("docs"), new FileTreeWalker.Visitor() {
+            @Override
+            public void visitFile(Path file, BasicFileAttributes attrs) {
+                files.add(relative(file));
+            }
+
+            @Override
+            public void visitDirectory(Path directory, BasicFileAttributes attrs) {
+                directories.add(relative(directory));
+            }
+        });
+
+        assertEquals(Set.of("docs/c.pdf"), files);
+        assertEquals(Set.of("docs"), directories);
+        assertTrue(walker.includes(root, root.resolve("docs/c.pdf")));
+        assertFalse(walker.includes(root, root.resolve("docs/deep/d.pdf")));
+    }
+
+    @Test
+    void listReportsFilesAndSubdirectoriesOfOneDirectory() throws IOException {
+        createTree();
+        FileTreeWalker walker = new FileTreeWalker(List.of(), List.of("archive"), 0, true);
+        Set<String> files = new TreeSet<>();
+        List<Path> subdirectories = new ArrayList<>();
+
+        Set<String> skipped = new TreeSet<>();
+
+        walker.list(root, root, 0, new FileTreeWalker.Visitor() {
+            @Override
+            public void visitFile(Path file, BasicFileAttributes attrs) {
+                files.add(relative(file));
+            }
+
+            @Override
+            public void visitSkipped(Path path, BasicFileAttributes attrs) {
+                skipped.add(relative(path));
+            }
+        }, (directory, attrs) -> {
+            assertTrue(attrs.isDirectory());
+            subdirectories.add(directory);
+        });
+
+        assertEquals(Set.of("a.pdf", "b.txt"), files);
+        assertEquals(List.of(root.resolve("docs")), subdirectories);
+        assertEquals(Set.of("archive"), skipped);
+    }
+
+    private void createTree() throws IOException {
+        Files.createDirectories(root.resolve("docs/deep"));
+        Files.createDirectories(root.resolve("archive"));
+        for (String file : List.of("a.pdf", "b.txt", "docs/c.pdf", "docs/deep/d.pdf", "archive/e.pdf")) {
+            Files.writeString(root.resolve(file), file);
+        }
+    }
+
+    private Set<String> walk(FileTreeWalker walker) throws IOException {
+        Set<String> files = new TreeSet<>();
+        walker.walk(root, (file, attrs) -> files.add(relative(file)));
+        return files;
+    }
+
+    private String relative(Path file) {
+        return root.relativize(file).toString().replace('\\', '/');
+    }
+}
@@ -0,0 +1,62 @@
+package com.fileinsights.util;
+
+import com.fileinsights.entity.FileMetadata;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KeysetPagesTest {
+
+    @Test
+    void fullPagesCarryTheLastIdAsCursor() {
+        ResponseEntity<List<FileMetadata>> response = KeysetPages.ok(List.of(row(3, "/a/x"), row(7, "/a/y")), 2);
+
+        assertEquals("7", response.getHeaders().getFirst(KeysetPages.NEXT_CURSOR_HEADER));
+        assertEquals(2, response.getBody().size());
+    }
+
+    @Test
+    void theLastPageHasNoCursor() {
+        assertNull(KeysetPages.ok(List.of(row(3, "/a/x")), 2).getHeaders().getFirst(KeysetPages.NEXT_CURSOR_HEADER));
+        assertNull(KeysetPages.okFolder(List.of(), 2).getHeaders().getFirst(KeysetPages.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    void folderCursorsRoundTripTheParentKeyAndId() {
+        FileMetadata last = row(42, "/data/ünï cøde/100%_done/file.txt");
+        String cursor = KeysetPages.okFolder(List.of(last), 1).getHeaders().getFirst(KeysetPages.NEXT_CURSOR_HEADER);
+
+        KeysetPages.FolderCursor parsed = KeysetPages.FolderCursor.parse(cursor);
+        assertEquals(last.getParentKey(), parsed.parentKey());
+        assertEquals(42, parsed.id());
+        assertEquals(cursor, parsed.toString());
+    }
+
+    @Test
+    void malformedFolderCursorsAreRejected() {
+        for (String cursor : List.of("", "42", ".abc", "x.abc", "42.%%%")) {
+            assertThrows(IllegalArgumentException.class, () -> KeysetPages.FolderCursor.parse(cursor), cursor);
+        }
+    }
+
+    @Test
+    void pageSizesBelowOneAreRejectedAndLargeOnesCapped() {
+        assertThrows(IllegalArgumentException.class, () -> KeysetPages.pageSize(0));
+        assertThrows(IllegalArgumentException.class, () -> KeysetPages.pageSize(-5));
+        assertEquals(1, KeysetPages.pageSize(1));
+        assertEquals(KeysetPages.MAX_PAGE_SIZE, KeysetPages.pageSize(KeysetPages.MAX_PAGE_SIZE));
+        assertEquals(KeysetPages.MAX_PAGE_SIZE, KeysetPages.pageSize(Integer.MAX_VALUE));
+    }
+
+    private static FileMetadata row(long id, String path) {
+        FileMetadata fileMetadata = new FileMetadata();
+        fileMetadata.setId(id);
+        fileMetadata.setPath(path);
+        return fileMetadata;
+    }
+}
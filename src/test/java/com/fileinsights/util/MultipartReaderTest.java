@@ -0,0 +1,331 @@
+package com.fileinsights.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MultipartReaderTest {
+
+    private static final String BOUNDARY = "----FormBoundary7MA4YWxkTrZu0gW";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Test
+    void boundaryIsReadFromTheContentType() {
+        assertEquals("abc", MultipartReader.boundary("multipart/form-data; boundary=abc"));
+        assertEquals("a b;c", MultipartReader.boundary("Multipart/Form-Data; charset=UTF-8; boundary=\"a b;c\""));
+        assertNull(MultipartReader.boundary("multipart/form-data"));
+        assertNull(MultipartReader.boundary("application/json; boundary=abc"));
+        assertNull(MultipartReader.boundary(null));
+    }
+
+    @Test
+    void delimiterSplitAcrossBufferFillsIsFound() throws IOException {
+        Random random = new Random(1);
+        // Contents ending on every offset around the buffer size, so the delimiter straddles a fill()
+        for (int size = BUFFER_SIZE - 300; size <= BUFFER_SIZE + 100; size++) {
+            byte[] first = new byte[size];
+            random.nextBytes(first);
+            byte[] second = "second".getBytes(StandardCharsets.US_ASCII);
+            byte[] body = body(part("a.bin", first), part("b.txt", second));
+
+            MultipartReader reader = new MultipartReader(new ByteArrayInputStream(body), BOUNDARY);
+            assertArrayEquals(first, reader.next().getInputStream().readAllBytes(), "size " + size);
+            assertArrayEquals(second, reader.next().getInputStream().readAllBytes(), "size " + size);
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void bodiesArrivingInSmallChunksAreReadWhole() throws IOException {
+        byte[] first = new byte[3 * BUFFER_SIZE + 7];
+        new Random(2).nextBytes(first);
+        byte[] body = body(part("a.bin", first), part("b.txt", "x".getBytes(StandardCharsets.US_ASCII)));
+
+        for (int chunk : new int[]{1, 2, 3, 37, 4096}) {
+            MultipartReader reader = new MultipartReader(new TrickleInputStream(body, chunk), BOUNDARY);
+            MultipartReader.Part part = reader.next();
+            assertEquals("a.bin", part.getFileName());
+            assertArrayEquals(first, part.getInputStream().readAllBytes(), "chunk " + chunk);
+            assertEquals("b.txt", reader.next().getFileName());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void contentOfLineBreaksAndDashesIsNotMistakenForADelimiter() throws IOException {
+        byte[][] contents = {
+                new byte[0],
+                "\r\n".getBytes(StandardCharsets.US_ASCII),
+                "\r\n\r\n\r\n\r\n".getBytes(StandardCharsets.US_ASCII),
+                ("\r\n--" + BOUNDARY.substring(0, BOUNDARY.length() - 1) + "\r\n").getBytes(StandardCharsets.US_ASCII),
+                "\r\r\n\n--\r\n--".getBytes(StandardCharsets.US_ASCII),
+        };
+        MultipartReader.Part[] parts = new MultipartReader.Part[contents.length];
+        byte[][] encoded = new byte[contents.length][];
+        for (int i = 0; i < contents.length; i++) {
+            encoded[i] = part("f" + i, contents[i]);
+        }
+
+        MultipartReader reader = new MultipartReader(new TrickleInputStream(body(encoded), 1), BOUNDARY);
+        for (int i = 0; i < contents.length; i++) {
+            parts[i] = reader.next();
+            assertNotNull(parts[i]);
+            assertArrayEquals(contents[i], parts[i].getInputStream().readAllBytes(), "part " + i);
+        }
+        assertNull(reader.next());
+    }
+
+    @Test
+    void unreadPartsAreSkipped() throws IOException {
+        byte[] large = new byte[5 * BUFFER_SIZE];
+        new Random(3).nextBytes(large);
+        byte[] body = body(part("one", large), part("two", large), part("three", "last".getBytes(StandardCharsets.US_ASCII)));
+
+        MultipartReader reader = new MultipartReader(new ByteArrayInputStream(body), BOUNDARY);
+        MultipartReader.Part one = reader.next();
+        assertEquals(large[0] & 0xFF, one.getInputStream().read());
+        assertEquals("two", reader.next().getFileName());
+        MultipartReader.Part three = reader.next();
+        assertEquals("three", three.getFileName());
+        assertEquals("last", new String(three.getInputStream().readAllBytes(), StandardCharsets.US_ASCII));
+        assertNull(reader.next());
+        assertNull(reader.next());
+    }
+
+    @Test
+    void headersAndQuotedFileNamesAreParsed() throws IOException {
+        String headers = "Content-Disposition: form-data; name=\"files\"; filename=\"a; \\\"quoted\\\" name.txt\"\r\n"
+                + "Content-Type: text/plain\r\n";
+        String windows = "Content-Disposition: form-data; name=files; filename=\"C:\\Users\\me\\report.pdf\"\r\n";
+        String field = "content-disposition: form-data; name=\"comment\"\r\n";
+        byte[] body = body(
+                raw(headers, "one"),
+                raw(windows, "two"),
+                raw(field, "three"));
+
+        MultipartReader reader = new MultipartReader(new ByteArrayInputStream(body), BOUNDARY);
+        MultipartReader.Part quoted = reader.next();
+        assertEquals("files", quoted.getName());
+        assertEquals("a; \"quoted\" name.txt", quoted.getFileName());
+        assertEquals("text/plain", quoted.getContentType());
+        MultipartReader.Part path = reader.next();
+        assertEquals("files", path.getName());
+        assertEquals("C:\\Users\\me\\report.pdf", path.getFileName());
+        assertNull(path.getContentType());
+        MultipartReader.Part plain = reader.next();
+        assertEquals("comment", plain.getName());
+        assertNull(plain.getFileName());
+        assertEquals("three", new String(plain.getInputStream().readAllBytes(), StandardCharsets.US_ASCII));
+        assertNull(reader.next());
+    }
+
+    @Test
+    void missingClosingBoundaryIsAnError() throws IOException {
+        byte[] content = new byte[2 * BUFFER_SIZE];
+        String truncated = "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"files\"; filename=\"a.bin\"\r\n\r\n";
+
+        // Inside a part's content, whether it is read or skipped
+        MultipartReader reader = new MultipartReader(new ByteArrayInputStream(concat(truncated, content)), BOUNDARY);
+        InputStream part = reader.next().getInputStream();
+        assertThrows(EOFException.class, part::readAllBytes);
+        MultipartReader skipped = new MultipartReader(new ByteArrayInputStream(concat(truncated, content)), BOUNDARY);
+        skipped.next();
+        assertThrows(EOFException.class, skipped::next);
+
+        // After a delimiter, before "--"
+        byte[] noClose = concat(truncated, "content\r\n--" + BOUNDARY);
+        MultipartReader afterDelimiter = new MultipartReader(new ByteArrayInputStream(noClose), BOUNDARY);
+        assertEquals("content", new String(afterDelimiter.next().getInputStream().readAllBytes(), StandardCharsets.US_ASCII));
+        assertThrows(EOFException.class, afterDelimiter::next);
+
+        // Inside the headers
+        byte[] inHeaders = ("--" + BOUNDARY + "\r\nContent-Disposition: form-da").getBytes(StandardCharsets.US_ASCII);
+        assertThrows(EOFException.class, () -> new MultipartReader(new ByteArrayInputStream(inHeaders), BOUNDARY).next());
+
+        // An empty body
+        assertThrows(EOFException.class, () -> new MultipartReader(new ByteArrayInputStream(new byte[0]), BOUNDARY).next());
+    }
+
+    @Test
+    void oversizedHeadersAreRejected() {
+        String headers = "Content-Disposition: form-data; name=\"files\"; filename=\"" + "x".repeat(20 * 1024) + "\"\r\n";
+        MultipartReader reader = new MultipartReader(new ByteArrayInputStream(body(raw(headers, "x"))), BOUNDARY);
+
+        IOException e = assertThrows(IOException.class, reader::next);
+        assertTrue(e.getMessage().contains("exceed"), e.getMessage());
+    }
+
+    @Test
+    void largePartIsStreamedThroughAFixedWindow() throws IOException {
+        long size = 64L * 1024 * 1024 + 12345;
+        GeneratedBody body = new GeneratedBody(size);
+        MultipartReader reader = new MultipartReader(body, BOUNDARY);
+
+        MultipartReader.Part part = reader.next();
+        assertEquals("huge.bin", part.getFileName());
+        InputStream in = part.getInputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long total = 0;
+        int count;
+        while ((count = in.read(buffer)) >= 0) {
+            for (int i = 0; i < count; i++) {
+                if (buffer[i] != GeneratedBody.contentByte(total + i)) {
+                    throw new AssertionError("Content differs at offset " + (total + i));
+                }
+            }
+            total += count;
+            // Nothing is read ahead of the consumer beyond the reader's window
+            assertTrue(body.position - total <= 2 * BUFFER_SIZE, "read ahead " + (body.position - total));
+        }
+
+        assertEquals(size, total);
+        assertEquals("after", new String(reader.next().getInputStream().readAllBytes(), StandardCharsets.US_ASCII));
+        assertNull(reader.next());
+    }
+
+    @Test
+    void singleByteReadsAndAvailableAgreeWithBulkReads() throws IOException {
+        // Near misses of the delimiter across several buffer fills
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        Random random = new Random(5);
+        while (content.size() < 3 * BUFFER_SIZE) {
+            byte[] noise = new byte[random.nextInt(500)];
+            random.nextBytes(noise);
+            content.writeBytes(noise);
+            content.writeBytes(("\r\n--" + BOUNDARY.substring(0, random.nextInt(BOUNDARY.length()))).getBytes(StandardCharsets.US_ASCII));
+        }
+        byte[] first = content.toByteArray();
+        byte[] second = "second".getBytes(StandardCharsets.US_ASCII);
+        MultipartReader reader = new MultipartReader(new ByteArrayInputStream(body(part("a.bin", first), part("b.txt", second))), BOUNDARY);
+
+        InputStream in = reader.next().getInputStream();
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        int b;
+        while (true) {
+            int available = in.available();
+            if ((b = in.read()) < 0) {
+                assertEquals(0, available);
+                break;
+            }
+            read.write(b);
+        }
+        assertArrayEquals(first, read.toByteArray());
+        assertArrayEquals(second, reader.next().getInputStream().readAllBytes());
+        assertNull(reader.next());
+    }
+
+    private static byte[] part(String fileName, byte[] content) {
+        return raw("Content-Disposition: form-data; name=\"files\"; filename=\"" + fileName + "\"\r\n"
+                + "Content-Type: application/octet-stream\r\n", content);
+    }
+
+    private static byte[] raw(String headers, String content) {
+        return raw(headers, content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static byte[] raw(String headers, byte[] content) {
+        return concat("--" + BOUNDARY + "\r\n" + headers + "\r\n", content, "\r\n".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static byte[] body(byte[]... parts) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            body.writeBytes(part);
+        }
+        body.writeBytes(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        return body.toByteArray();
+    }
+
+    private static byte[] concat(String head, byte[]... rest) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(head.getBytes(StandardCharsets.US_ASCII));
+        for (byte[] bytes : rest) {
+            out.writeBytes(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(String head, String tail) {
+        return concat(head, tail.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Hands out at most {@code chunk} bytes per read, like a slow connection.
+     */
+    private static final class TrickleInputStream extends ByteArrayInputStream {
+        private final int chunk;
+
+        private TrickleInputStream(byte[] bytes, int chunk) {
+            super(bytes);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, chunk));
+        }
+    }
+
+    /**
+     * A body with one generated file part of the given size and a small part after it, produced on the fly.
+     * The content cycles through 251 bytes, line breaks and dashes included.
+     */
+    private static final class GeneratedBody extends InputStream {
+        private final byte[] head = ("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"files\"; filename=\"huge.bin\"\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII);
+        private final byte[] tail = ("\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"files\"; filename=\"after.txt\"\r\n\r\n"
+                + "after\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        private final long size;
+        private long position;
+
+        private GeneratedBody(long size) {
+            this.size = size;
+        }
+
+        private static byte contentByte(long offset) {
+            return (byte) (offset % 251);
+        }
+
+        @Override
+        public int read() {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) > 0 ? single[0] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            long contentEnd = head.length + size;
+            long end = contentEnd + tail.length;
+            if (position >= end) {
+                return -1;
+            }
+            int count = (int) Math.min(len, end - position);
+            for (int i = 0; i < count; i++, position++) {
+                if (position < head.length) {
+                    b[off + i] = head[(int) position];
+                } else if (position < contentEnd) {
+                    b[off + i] = contentByte(position - head.length);
+                } else {
+                    b[off + i] = tail[(int) (position - contentEnd)];
+                }
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.fileinsights.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PathKeysTest {
+
+    @Test
+    void hashIsTheSha256OfTheUtf8Path() throws Exception {
+        String path = local("/data/ünïcode/file.txt");
+        byte[] expected = MessageDigest.getInstance("SHA-256").digest(path.getBytes(StandardCharsets.UTF_8));
+
+        assertArrayEquals(expected, PathKeys.hash(path));
+        assertEquals(PathKeys.HASH_LENGTH, PathKeys.hash("x".repeat(1024)).length);
+    }
+
+    @Test
+    void parentKeepsTheTrailingSeparator() {
+        assertEquals(local("/data/a/"), PathKeys.parent(local("/data/a/b.txt")));
+        assertEquals(local("/"), PathKeys.parent(local("/b.txt")));
+        assertEquals("", PathKeys.parent("b.txt"));
+    }
+
+    @Test
+    void folderPrefixAddsASeparatorOnlyWhenMissing() {
+        assertEquals(local("/data/a/"), PathKeys.folderPrefix(local("/data/a")));
+        assertEquals(local("/data/a/"), PathKeys.folderPrefix(local("/data/a/")));
+    }
+
+    @Test
+    void likePrefixEscapesWildcardsAndTheEscapeCharacter() {
+        assertEquals("/data/100\\%\\_done/%", PathKeys.likePrefix("/data/100%_done/"));
+        assertEquals("C:\\\\data\\\\%", PathKeys.likePrefix("C:\\data\\"));
+    }
+
+    private static String local(String path) {
+        return path.replace('/', File.separatorChar);
+    }
+}
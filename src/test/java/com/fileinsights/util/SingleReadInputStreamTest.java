@@ -0,0 +1,131 @@
+package com.fileinsights.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleReadInputStreamTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void hashesEveryByteReadOnceThroughABufferWithMarkAndReset() throws IOException {
+        byte[] content = bytes(3 * ContentHasher.BLOCK_SIZE / 2);
+        Path file = dir.resolve("file");
+        Files.write(file, content);
+
+        ContentHasher.Streaming hasher = ContentHasher.streaming(content.length);
+        byte[] read;
+        try (SingleReadInputStream source = SingleReadInputStream.open(file, hasher);
+             InputStream in = new BufferedInputStream(source, 1 << 20)) {
+            // Type detection peeks at the start and rewinds
+            in.mark(4096);
+            assertEquals(4096, in.readNBytes(4096).length);
+            in.reset();
+            read = in.readAllBytes();
+            assertEquals(content.length, source.getBytesRead());
+        }
+
+        assertArrayEquals(content, read);
+        assertEquals(ContentHasher.hashFile(file), hasher.finish());
+    }
+
+    @Test
+    void drainHashesWhatTheConsumerLeftUnread() throws IOException {
+        byte[] content = bytes(200_000);
+        Path file = dir.resolve("file");
+        Files.write(file, content);
+
+        ContentHasher.Streaming hasher = ContentHasher.streaming(content.length);
+        try (SingleReadInputStream in = SingleReadInputStream.open(file, hasher)) {
+            assertEquals(1000, in.readNBytes(1000).length);
+            assertEquals(5000, in.skip(5000));
+            assertEquals(6000, in.getBytesRead());
+            in.drain();
+            assertEquals(content.length, in.getBytesRead());
+        }
+
+        assertEquals(ContentHasher.hashFile(file), hasher.finish());
+    }
+
+    @Test
+    void countsWithoutAHasher() throws IOException {
+        byte[] content = bytes(10_000);
+        try (SingleReadInputStream in = new SingleReadInputStream(new ByteArrayInputStream(content), null)) {
+            assertEquals(content[0] & 0xFF, in.read());
+            assertEquals(999, in.readNBytes(999).length);
+            in.drain();
+            assertEquals(content.length, in.getBytesRead());
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    void closeStopsReadsAndClosesTheSourceOnlyWhenAsked() throws IOException {
+        byte[] content = bytes(100_000);
+        ContentHasher.Streaming hasher = ContentHasher.streaming(content.length);
+        CloseTrackingStream source = new CloseTrackingStream(content);
+        SingleReadInputStream in = new SingleReadInputStream(source, hasher, false);
+        assertFalse(in.closesSource());
+
+        in.readNBytes(10);
+        in.close();
+        assertThrows(IOException.class, () -> in.read(new byte[10], 0, 10));
+        assertFalse(source.closed);
+
+        // The caller still sees the rest of the source after the consumer's stream was closed
+        in.drain();
+        assertEquals(content.length, in.getBytesRead());
+        ContentHasher.Streaming expected = ContentHasher.streaming(content.length);
+        expected.update(content, 0, content.length);
+        assertEquals(expected.finish(), hasher.finish());
+
+        CloseTrackingStream owned = new CloseTrackingStream(content);
+        SingleReadInputStream closing = new SingleReadInputStream(owned, null);
+        assertTrue(closing.closesSource());
+        closing.close();
+        assertTrue(owned.closed);
+    }
+
+    @Test
+    void markAndResetAreNotSupported() throws IOException {
+        try (SingleReadInputStream in = new SingleReadInputStream(new ByteArrayInputStream(bytes(10)), null)) {
+            assertFalse(in.markSupported());
+            in.mark(5);
+            assertThrows(IOException.class, in::reset);
+        }
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static final class CloseTrackingStream extends ByteArrayInputStream {
+        private boolean closed;
+
+        private CloseTrackingStream(byte[] content) {
+            super(content);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}